@@ -0,0 +1,165 @@
+package com.miniclaw.cache;
+
+import com.miniclaw.llm.EmbeddingVectors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 进程内的近似近邻索引
+ *
+ * 随机超平面 LSH：每个向量按与 {@value #SIGNATURE_BITS} 个随机超平面的符号得到一个签名，
+ * 签名相同的向量放进同一个桶。查询时探测自己的桶和只差一位的相邻桶（多探针），
+ * 再对候选做精确的余弦相似度比较，因此不会返回低于阈值的结果，只可能漏掉少数近邻，
+ * 漏掉的交给 pgvector 兜底。
+ *
+ * 向量在写入和查询前都已归一化，余弦相似度即点积。条目数有上限，按 LRU 淘汰。
+ */
+class LocalSemanticIndex {
+
+    static final int SIGNATURE_BITS = 12;
+
+    private final int maxEntries;
+    private final long seed;
+    private final Map<Integer, List<Entry>> buckets = new HashMap<>();
+    private final LinkedHashMap<Entry, Boolean> recency = new LinkedHashMap<>(256, 0.75f, true);
+    private float[][] hyperplanes;
+
+    LocalSemanticIndex(int maxEntries) {
+        this(maxEntries, 0x5EEDL);
+    }
+
+    LocalSemanticIndex(int maxEntries, long seed) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.seed = seed;
+    }
+
+    /**
+     * @param vector 已归一化的向量
+     * @return 相似度不低于阈值且未过期的最近条目的回答；没有时为 null
+     */
+    synchronized String search(String scope, float[] vector, double threshold, long now) {
+        if (hyperplanes == null || hyperplanes[0].length != vector.length) {
+            return null;
+        }
+
+        int signature = signature(vector);
+        Entry best = null;
+        double bestSimilarity = threshold;
+        for (int probe = -1; probe < SIGNATURE_BITS; probe++) {
+            int bucket = probe < 0 ? signature : signature ^ (1 << probe);
+            List<Entry> candidates = buckets.get(bucket);
+            if (candidates == null) {
+                continue;
+            }
+            for (Iterator<Entry> iterator = candidates.iterator(); iterator.hasNext(); ) {
+                Entry entry = iterator.next();
+                if (entry.expiresAt <= now) {
+                    iterator.remove();
+                    recency.remove(entry);
+                    continue;
+                }
+                if (!entry.scope.equals(scope)) {
+                    continue;
+                }
+                double similarity = EmbeddingVectors.dot(entry.vector, vector);
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (candidates.isEmpty()) {
+                buckets.remove(bucket);
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+        recency.get(best);
+        return best.response;
+    }
+
+    /**
+     * @param vector 已归一化的向量
+     */
+    synchronized void put(String scope, float[] vector, String response, long expiresAt) {
+        if (hyperplanes == null) {
+            hyperplanes = newHyperplanes(vector.length);
+        } else if (hyperplanes[0].length != vector.length) {
+            // Embedding 模型换了维度，旧条目已无法比较
+            clear();
+            hyperplanes = newHyperplanes(vector.length);
+        }
+
+        Entry entry = new Entry(scope, vector, response, expiresAt, signature(vector));
+        buckets.computeIfAbsent(entry.signature, ignored -> new ArrayList<>()).add(entry);
+        recency.put(entry, Boolean.TRUE);
+
+        while (recency.size() > maxEntries) {
+            Entry eldest = recency.keySet().iterator().next();
+            recency.remove(eldest);
+            List<Entry> bucket = buckets.get(eldest.signature);
+            if (bucket != null) {
+                bucket.remove(eldest);
+                if (bucket.isEmpty()) {
+                    buckets.remove(eldest.signature);
+                }
+            }
+        }
+    }
+
+    synchronized int size() {
+        return recency.size();
+    }
+
+    synchronized void clear() {
+        buckets.clear();
+        recency.clear();
+    }
+
+    private int signature(float[] vector) {
+        int signature = 0;
+        for (int bit = 0; bit < SIGNATURE_BITS; bit++) {
+            if (EmbeddingVectors.dot(hyperplanes[bit], vector) >= 0) {
+                signature |= 1 << bit;
+            }
+        }
+        return signature;
+    }
+
+    private float[][] newHyperplanes(int dimensions) {
+        Random random = new Random(seed);
+        float[][] planes = new float[SIGNATURE_BITS][dimensions];
+        for (float[] plane : planes) {
+            for (int i = 0; i < dimensions; i++) {
+                plane[i] = (float) random.nextGaussian();
+            }
+        }
+        return planes;
+    }
+
+    /**
+     * 按对象身份参与 LRU，不重写 equals/hashCode
+     */
+    private static final class Entry {
+        private final String scope;
+        private final float[] vector;
+        private final String response;
+        private final long expiresAt;
+        private final int signature;
+
+        private Entry(String scope, float[] vector, String response, long expiresAt, int signature) {
+            this.scope = scope;
+            this.vector = vector;
+            this.response = response;
+            this.expiresAt = expiresAt;
+            this.signature = signature;
+        }
+    }
+}
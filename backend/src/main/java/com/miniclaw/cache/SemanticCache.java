@@ -0,0 +1,184 @@
+package com.miniclaw.cache;
+
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.config.SemanticCacheProperties;
+import com.miniclaw.llm.EmbeddingClient;
+import com.miniclaw.llm.EmbeddingVectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * chat 的语义响应缓存
+ *
+ * 对 prompt 做 embedding 后两级查找：
+ * 1. 进程内 LSH 索引（{@link LocalSemanticIndex}），常见问题不离开 JVM
+ * 2. pgvector 表的 HNSW 近邻查询，命中后回填到进程内索引
+ *
+ * 余弦相似度不低于阈值才算命中。缓存按作用域（默认模型）隔离，不同模型的回答不会混用。
+ * embedding 或数据库出错时按未命中处理，不影响正常的 LLM 调用。
+ */
+@Slf4j
+@Component
+public class SemanticCache {
+
+    private final EmbeddingClient embeddingClient;
+    private final SemanticCacheStore store;
+    private final SemanticCacheProperties properties;
+    private final String scope;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final LocalSemanticIndex localIndex;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    @Autowired
+    public SemanticCache(EmbeddingClient embeddingClient,
+                         SemanticCacheStore store,
+                         SemanticCacheProperties properties,
+                         LlmProperties llmProperties) {
+        this(embeddingClient, store, properties, scopeOf(llmProperties),
+                Schedulers.boundedElastic(), Clock.systemUTC());
+    }
+
+    SemanticCache(EmbeddingClient embeddingClient,
+                  SemanticCacheStore store,
+                  SemanticCacheProperties properties,
+                  String scope,
+                  Scheduler scheduler,
+                  Clock clock) {
+        this.embeddingClient = embeddingClient;
+        this.store = store;
+        this.properties = properties;
+        this.scope = scope;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.localIndex = new LocalSemanticIndex(properties.getLocalMaxEntries());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 查找与 prompt 语义相近的已缓存回答
+     *
+     * 未启用时立即返回未命中，不调用 embedding
+     */
+    public Mono<Lookup> lookup(String prompt) {
+        if (!properties.isEnabled()) {
+            return Mono.just(new Lookup(prompt, null, null));
+        }
+
+        return embeddingClient.embed(prompt)
+                .map(EmbeddingVectors::normalize)
+                .flatMap(embedding -> {
+                    Instant now = clock.instant();
+                    String local = localIndex.search(scope, embedding, properties.getSimilarityThreshold(), now.toEpochMilli());
+                    if (local != null) {
+                        localHits.increment();
+                        return Mono.just(new Lookup(prompt, embedding, local));
+                    }
+                    return lookupRemote(prompt, embedding, now);
+                })
+                .onErrorResume(e -> {
+                    log.warn("Semantic cache embedding failed, treating as miss: {}", e.getMessage());
+                    misses.increment();
+                    return Mono.just(new Lookup(prompt, null, null));
+                });
+    }
+
+    /**
+     * 记录未命中请求的最终回答：同步写入进程内索引，异步写入 pgvector
+     */
+    public void store(Lookup lookup, String answer) {
+        if (lookup.embedding() == null || lookup.isHit() || answer == null || answer.isBlank()) {
+            return;
+        }
+
+        Instant now = clock.instant();
+        localIndex.put(scope, lookup.embedding(), answer, expiresAt(now));
+        stores.increment();
+
+        Mono.fromRunnable(() -> store.insert(scope, lookup.prompt(), lookup.embedding(), answer, now))
+                .subscribeOn(scheduler)
+                .subscribe(null, e -> log.warn("Failed to persist semantic cache entry: {}", e.getMessage()));
+    }
+
+    public long getLocalHits() {
+        return localHits.sum();
+    }
+
+    public long getRemoteHits() {
+        return remoteHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    public int getLocalEntries() {
+        return localIndex.size();
+    }
+
+    private Mono<Lookup> lookupRemote(String prompt, float[] embedding, Instant now) {
+        Instant notBefore = now.minus(ttl());
+        return Mono.fromCallable(() -> store.findNearest(scope, embedding, notBefore))
+                .subscribeOn(scheduler)
+                .map(match -> {
+                    if (match.isPresent() && match.get().similarity() >= properties.getSimilarityThreshold()) {
+                        remoteHits.increment();
+                        localIndex.put(scope, embedding, match.get().response(), expiresAt(match.get().createdAt()));
+                        return new Lookup(prompt, embedding, match.get().response());
+                    }
+                    misses.increment();
+                    return new Lookup(prompt, embedding, null);
+                })
+                .onErrorResume(e -> {
+                    // 数据库不可用时仍保留 embedding，回答至少能写进进程内索引
+                    log.warn("Semantic cache lookup failed, treating as miss: {}", e.getMessage());
+                    misses.increment();
+                    return Mono.just(new Lookup(prompt, embedding, null));
+                });
+    }
+
+    private static String scopeOf(LlmProperties llmProperties) {
+        return llmProperties.getDefaultModel() != null ? llmProperties.getDefaultModel() : llmProperties.getModel();
+    }
+
+    private long expiresAt(Instant createdAt) {
+        return createdAt.plus(ttl()).toEpochMilli();
+    }
+
+    private Duration ttl() {
+        return Duration.ofSeconds(Math.max(1, properties.getTtlSeconds()));
+    }
+
+    /**
+     * 一次查找的结果
+     *
+     * @param embedding 归一化后的 prompt 向量；未启用或 embedding 失败时为 null
+     * @param answer    命中时的缓存回答
+     */
+    public record Lookup(String prompt, float[] embedding, String answer) {
+
+        public boolean isHit() {
+            return answer != null;
+        }
+    }
+}
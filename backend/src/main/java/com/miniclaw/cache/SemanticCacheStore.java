@@ -0,0 +1,59 @@
+package com.miniclaw.cache;
+
+import com.miniclaw.llm.EmbeddingVectors;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 语义缓存的 pgvector 存储
+ *
+ * 向量以文本字面量传入，在 SQL 里转成 vector 类型（见 {@link EmbeddingVectors#toPgVector}）。
+ * 近邻查询按余弦距离排序并走 HNSW 索引，只取最近的一条，由调用方判断是否达到阈值。
+ */
+@Component
+public class SemanticCacheStore {
+
+    private static final String NEAREST_SQL = """
+            SELECT response, 1 - (embedding <=> ?::vector) AS similarity, created_at
+            FROM semantic_cache_entries
+            WHERE scope = ? AND created_at >= ?
+            ORDER BY embedding <=> ?::vector
+            LIMIT 1
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO semantic_cache_entries (scope, prompt, embedding, response, created_at)
+            VALUES (?, ?, ?::vector, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SemanticCacheStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param notBefore 早于该时间写入的条目视为过期
+     */
+    public Optional<Match> findNearest(String scope, float[] embedding, Instant notBefore) {
+        String vector = EmbeddingVectors.toPgVector(embedding);
+        List<Match> matches = jdbcTemplate.query(NEAREST_SQL, (rs, rowNum) -> new Match(
+                rs.getString("response"),
+                rs.getDouble("similarity"),
+                rs.getTimestamp("created_at").toInstant()
+        ), vector, scope, Timestamp.from(notBefore), vector);
+        return matches.stream().findFirst();
+    }
+
+    public void insert(String scope, String prompt, float[] embedding, String response, Instant createdAt) {
+        jdbcTemplate.update(INSERT_SQL, scope, prompt, EmbeddingVectors.toPgVector(embedding), response, Timestamp.from(createdAt));
+    }
+
+    public record Match(String response, double similarity, Instant createdAt) {
+    }
+}
@@ -0,0 +1,163 @@
+package com.miniclaw.config;
+
+import com.miniclaw.gateway.event.OutboundOverflowPolicy;
+import com.miniclaw.gateway.session.SessionDurabilityMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gateway 配置属性
+ *
+ * 从 application.yml 读取 gateway.* 配置
+ *
+ * 使用示例：
+ * <pre>
+ * gateway:
+ *   outbound:
+ *     queue-capacity: 1024
+ *     overflow-policy: COALESCE_DELTAS
+ *   lane:
+ *     max-queued-per-session: 8
+ *     max-concurrent-lanes: 256
+ *     max-waiting-lanes: 1024
+ *   chat:
+ *     delta-flush-interval-millis: 50
+ *     delta-flush-max-chars: 128
+ *   persistence:
+ *     mode: WRITE_BEHIND
+ *     flush-interval-millis: 100
+ *     batch-size: 200
+ *   history:
+ *     max-cached-sessions: 10000
+ *     max-tail-messages: 100
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway")
+public class GatewayProperties {
+
+    private Outbound outbound = new Outbound();
+
+    private Lane lane = new Lane();
+
+    private Chat chat = new Chat();
+
+    private Persistence persistence = new Persistence();
+
+    private History history = new History();
+
+    /**
+     * 单个 WebSocket 连接的出站队列配置
+     */
+    @Data
+    public static class Outbound {
+
+        /**
+         * 每个连接最多排队多少个出站事件
+         *
+         * 慢客户端（弱网手机）读不动时，事件会堆在这里，
+         * 上限保证一个连接不会把整个 Gateway 的堆撑大
+         */
+        private int queueCapacity = 1024;
+
+        /**
+         * 队列满了之后怎么办
+         *
+         * - COALESCE_DELTAS：把 chat.delta 合并进队尾，合并不了再丢最旧的 delta
+         * - DROP_OLDEST：丢掉最旧的 delta
+         * - DISCONNECT：直接断开这个客户端
+         *
+         * 只丢 chat.delta / chat.reasoning，completed、error 这类终止帧不丢；
+         * 队列里全是不能丢的事件时，前两种策略也会断开客户端
+         */
+        private OutboundOverflowPolicy overflowPolicy = OutboundOverflowPolicy.COALESCE_DELTAS;
+    }
+
+    /**
+     * 会话通道（SessionLane）的排队和并发配置
+     */
+    @Data
+    public static class Lane {
+
+        /**
+         * 每个会话最多排队多少个任务（不含正在执行的那个），超出时立即返回 RATE_LIMITED；
+         * 设为 0 表示不限制
+         */
+        private int maxQueuedPerSession = 8;
+
+        /**
+         * 同时在执行任务的会话数上限，拿不到名额的会话按到达顺序等待；设为 0 表示不限制
+         */
+        private int maxConcurrentLanes = 256;
+
+        /**
+         * 最多有多少个会话在等执行名额，超出时新会话的任务立即返回 BUSY；设为 0 表示不限制
+         */
+        private int maxWaitingLanes = 1024;
+    }
+
+    /**
+     * chat.send 流式输出配置
+     */
+    @Data
+    public static class Chat {
+
+        /**
+         * chat.delta 合并窗口（毫秒）
+         *
+         * 第一个 token 立即下发，之后的 token 在窗口内攒成一帧；
+         * 设为 0 表示不合并，每个 token 一帧
+         */
+        private long deltaFlushIntervalMillis = 50;
+
+        /**
+         * 攒够多少个字符就立即下发，不等窗口结束
+         */
+        private int deltaFlushMaxChars = 128;
+    }
+
+    /**
+     * 会话状态持久化配置
+     */
+    @Data
+    public static class Persistence {
+
+        /**
+         * 落库方式
+         *
+         * - WRITE_BEHIND：合并后批量异步写库，不阻塞 chat.send
+         * - WRITE_THROUGH：每次状态变化同步写库
+         */
+        private SessionDurabilityMode mode = SessionDurabilityMode.WRITE_BEHIND;
+
+        /**
+         * 后台刷写间隔（毫秒），也是 WRITE_BEHIND 下最多可能丢失的状态变化窗口
+         */
+        private long flushIntervalMillis = 100;
+
+        /**
+         * 单个 JDBC 批次的最大行数；积压达到该值时立即刷写，不等下一个间隔
+         */
+        private int batchSize = 200;
+    }
+
+    /**
+     * 多轮对话历史配置
+     */
+    @Data
+    public static class History {
+
+        /**
+         * 内存里最多缓存多少个会话的消息尾部，超出按最近最少使用淘汰
+         */
+        private int maxCachedSessions = 10000;
+
+        /**
+         * 每个会话缓存并带进 LLM 请求的最近消息条数；
+         * 缓存未命中时也只从数据库加载这么多条。超出后一次淘汰到 3/4，保持请求开头稳定
+         */
+        private int maxTailMessages = 100;
+    }
+}
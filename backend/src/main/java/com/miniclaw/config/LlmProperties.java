@@ -1,5 +1,7 @@
 package com.miniclaw.config;
 
+import com.miniclaw.llm.EmbeddingBackend;
+import com.miniclaw.llm.StreamRetryMode;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -98,8 +100,80 @@ public class LlmProperties {
 
     private Long retryMaxBackoffMillis = 2000L;
 
+    /**
+     * 流式请求中途失败时的重试方式
+     * 
+     * 默认只在还没有输出内容时重试；DEDUPLICATE 重放并丢弃已输出的前缀，CONTINUE 让上游从已输出处续写
+     */
+    private StreamRetryMode streamRetryMode = StreamRetryMode.BEFORE_FIRST_TOKEN;
+
+    /**
+     * 单端点（未配置 providers）时使用的连接池配置
+     * 
+     * 多 Provider 模式下各自使用 providers[].pool
+     */
+    private LlmProviderConfig.Pool pool = new LlmProviderConfig.Pool();
+
+    /**
+     * 单端点模式下模型的上下文窗口（token）；0 表示不裁剪历史
+     * 
+     * 多 Provider 模式下使用 providers[].context-window-tokens / context-windows
+     */
+    private int contextWindowTokens = 0;
+
+    /**
+     * 固定请求体布局：工具定义按函数名排序、JSON 对象按键排序，
+     * 让同一会话的 system 提示词、工具和历史轮次序列化后逐字节一致，命中上游前缀缓存
+     */
+    private boolean stablePromptLayout = true;
+
+    /**
+     * 流式请求带上 stream_options.include_usage，在流末尾拿到 usage 和缓存命中的 token 数
+     * 
+     * 不识别该字段的兼容网关可以关闭
+     */
+    private boolean streamIncludeUsage = true;
+
+    /**
+     * temperature 为 0 的确定性请求的响应缓存
+     */
+    private ResponseCache responseCache = new ResponseCache();
+
+    /**
+     * Embedding 模型配置（语义缓存、长期记忆）
+     */
+    private Embedding embedding = new Embedding();
+
     private String defaultModel;
 
+    /**
+     * 默认模型失败时依次尝试的备用模型，格式同 default-model（providerId:model）
+     * 
+     * 只对未指定 providerId / model 的请求生效；单端点模式下忽略。
+     * 默认为空：配置后主模型失败直接切换、不再重试，备用 Provider 的 api-key 必须可用
+     */
+    private List<String> fallbackModels = new ArrayList<>();
+
+    /**
+     * 流式请求的对冲：首 token 迟迟不到时向第一个备用模型并发发起请求，先出 token 的一方胜出
+     */
+    private Hedge hedge = new Hedge();
+
+    /**
+     * 每个 Provider 独立的熔断器：近期失败率过高时暂停向该 Provider 发请求
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * 每个 Provider 独立的自适应并发上限（AIMD）
+     */
+    private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+
+    /**
+     * 按 Provider + 模型的客户端限流（每分钟请求数和 token 数）
+     */
+    private RateLimit rateLimit = new RateLimit();
+
     private List<LlmProviderConfig> providers = new ArrayList<>();
 
     public String getDefaultProviderId() {
@@ -126,4 +200,158 @@ public class LlmProperties {
                 .findFirst()
                 .orElse(null);
     }
+
+    /**
+     * 精确匹配的响应缓存
+     * 
+     * 只缓存 temperature == 0 的请求（分类、标题生成、工具路由等），
+     * 键是映射后请求体（模型、消息、工具、参数）的规范化哈希
+     */
+    @Data
+    public static class ResponseCache {
+
+        private boolean enabled = false;
+
+        private int maxEntries = 1000;
+
+        private long ttlSeconds = 600;
+    }
+
+    /**
+     * Embedding 模型
+     * 
+     * 走 OpenAI 兼容的 /embeddings 接口，复用对应 Provider 的连接池
+     */
+    @Data
+    public static class Embedding {
+
+        /**
+         * 使用哪个 Provider；为空时使用 default-model 所在的 Provider
+         */
+        private String providerId;
+
+        private String model = "text-embedding-v3";
+
+        /**
+         * 向量维度，必须与 pgvector 表的 vector(N) 一致；0 表示使用模型默认维度
+         */
+        private int dimensions = 1024;
+
+        /**
+         * REMOTE 调用上游 /embeddings；LOCAL 使用进程内的确定性哈希向量，用于离线开发、测试和基准
+         */
+        private EmbeddingBackend backend = EmbeddingBackend.REMOTE;
+
+        /**
+         * 一批最多合并多少条不同的文本
+         */
+        private int maxBatchSize = 32;
+
+        /**
+         * 第一条文本进入批次后最多等待多久再发出；0 表示不等待，每次调用单独成批
+         */
+        private long batchWindowMillis = 5;
+
+        /**
+         * 按内容哈希缓存的向量条数
+         */
+        private int cacheMaxEntries = 10000;
+    }
+
+    /**
+     * 流式请求对冲
+     * 
+     * 等待时间取主模型最近首 token 延迟的分位数（默认 p95），样本不足时使用 initial-delay-millis，
+     * 并限制在 [min-delay-millis, max-delay-millis] 内。主请求在等待期间失败时立即发起对冲请求。
+     */
+    @Data
+    public static class Hedge {
+
+        private boolean enabled = false;
+
+        private double percentile = 0.95;
+
+        /**
+         * 至少有多少个首 token 样本才使用分位数
+         */
+        private int minSamples = 20;
+
+        private long initialDelayMillis = 1500;
+
+        private long minDelayMillis = 200;
+
+        private long maxDelayMillis = 5000;
+    }
+
+    /**
+     * 熔断器
+     * 
+     * 按最近 window-size 次调用的结果计算失败率，只有限流、5xx、超时和网络错误算失败，
+     * 其余错误（如 400、401）不影响熔断。打开后 open-duration-millis 内直接拒绝（CIRCUIT_OPEN），
+     * 之后放行 half-open-probes 个探测请求，全部成功才恢复。
+     */
+    @Data
+    public static class CircuitBreaker {
+
+        private boolean enabled = true;
+
+        private int windowSize = 20;
+
+        /**
+         * 窗口内至少有多少次调用才计算失败率
+         */
+        private int minimumCalls = 10;
+
+        private double failureRateThreshold = 0.5;
+
+        private long openDurationMillis = 30000;
+
+        private int halfOpenProbes = 3;
+    }
+
+    /**
+     * 自适应并发上限
+     * 
+     * 在途请求（流式请求算到流结束）达到上限时排队，最多等 max-wait-millis，仍拿不到名额才拒绝（CONCURRENCY_LIMITED）。
+     * 成功且并发用到上限一半以上时上限加 1；限流、5xx、超时时乘以 backoff-ratio。
+     * 初始上限与连接池默认的 max-connections 一致，健康的 Provider 不会被这里限住，只在过载后收缩。
+     */
+    @Data
+    public static class ConcurrencyLimit {
+
+        private boolean enabled = true;
+
+        private int initialLimit = 200;
+
+        /**
+         * 达到上限时等待名额的最长时间；0 表示不等待，立即拒绝
+         */
+        private long maxWaitMillis = 2000;
+
+        private int minLimit = 4;
+
+        private int maxLimit = 500;
+
+        private double backoffRatio = 0.9;
+    }
+
+    /**
+     * 客户端令牌桶限流
+     * 
+     * 每个 Provider + 模型一对令牌桶（RPM、TPM），容量来自 providers[].requests-per-minute /
+     * tokens-per-minute 或响应头 x-ratelimit-limit-*，剩余量按 x-ratelimit-remaining-* / reset-* 校准，
+     * 请求结束后按 usage 修正预估的 token 数。额度不足时在本地排队，预计等待超过 max-queue-millis 则直接拒绝。
+     */
+    @Data
+    public static class RateLimit {
+
+        private boolean enabled = true;
+
+        private long maxQueueMillis = 2000;
+
+        /**
+         * 上游要求的 Retry-After 超过该值时不再重试，直接失败（有备用模型时切换过去）
+         */
+        private long maxRetryAfterMillis = 30000;
+    }
 }
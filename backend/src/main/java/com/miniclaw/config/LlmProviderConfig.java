@@ -6,7 +6,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -26,6 +28,48 @@ public class LlmProviderConfig {
     @Builder.Default
     private List<String> multimodalModels = new ArrayList<>();
 
+    /**
+     * 默认上下文窗口（token），未在 contextWindows 中单独配置的模型使用；0 表示不裁剪历史
+     */
+    @Builder.Default
+    private int contextWindowTokens = 0;
+
+    /**
+     * 按模型配置的上下文窗口（token），key 为模型名
+     */
+    @Builder.Default
+    private Map<String, Integer> contextWindows = new HashMap<>();
+
+    /**
+     * 该 Provider 独占的 HTTP 连接池配置
+     */
+    @Builder.Default
+    private Pool pool = new Pool();
+
+    /**
+     * 每个模型每分钟的请求数上限；0 表示从响应头 x-ratelimit-limit-requests 学习
+     */
+    @Builder.Default
+    private int requestsPerMinute = 0;
+
+    /**
+     * 每个模型每分钟的 token 数上限；0 表示从响应头 x-ratelimit-limit-tokens 学习
+     */
+    @Builder.Default
+    private int tokensPerMinute = 0;
+
+    /**
+     * 默认的请求超时；未设置的项回退到 llm.timeout
+     */
+    @Builder.Default
+    private Timeouts timeouts = new Timeouts();
+
+    /**
+     * 按模型覆盖的请求超时，key 为模型名；未设置的项使用 timeouts
+     */
+    @Builder.Default
+    private Map<String, Timeouts> modelTimeouts = new HashMap<>();
+
     public String getDefaultModel() {
         return firstNonBlank(models);
     }
@@ -34,6 +78,25 @@ public class LlmProviderConfig {
         return firstNonBlank(multimodalModels);
     }
 
+    public int resolveContextWindow(String modelName) {
+        if (modelName != null && contextWindows != null) {
+            Integer window = contextWindows.get(modelName);
+            if (window != null) {
+                return window;
+            }
+        }
+        return contextWindowTokens;
+    }
+
+    /**
+     * 模型的超时配置：按项合并 modelTimeouts 与 timeouts，都未设置的项为 0
+     */
+    public Timeouts resolveTimeouts(String modelName) {
+        Timeouts defaults = timeouts != null ? timeouts : new Timeouts();
+        Timeouts override = modelName != null && modelTimeouts != null ? modelTimeouts.get(modelName) : null;
+        return override == null ? defaults : override.orElse(defaults);
+    }
+
     public boolean supportsMultimodal(String modelName) {
         if (modelName == null || modelName.isBlank() || multimodalModels == null) {
             return false;
@@ -51,4 +114,138 @@ public class LlmProviderConfig {
                 .findFirst()
                 .orElse(null);
     }
+
+    /**
+     * 单个请求的超时预算（毫秒），0 表示未设置
+     *
+     * 流式请求分段计时：收到响应头之前算建连，之后到第一个 chunk 算首 token，
+     * 之后相邻 chunk 的间隔算 token 间隔，另有整个请求的总时长上限。
+     * 推理模型可以放宽首 token、收紧 token 间隔，卡死的流很快失败，思考慢的流不受影响。
+     * 非流式请求的响应头随完整响应一起到达，只受总时长限制。
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Timeouts {
+
+        /**
+         * 建连、发送请求到收到响应头（流式请求），超时为 CONNECT_TIMEOUT
+         */
+        @Builder.Default
+        private long connectMillis = 0;
+
+        /**
+         * 收到响应头到第一个 chunk，超时为 FIRST_TOKEN_TIMEOUT
+         */
+        @Builder.Default
+        private long firstTokenMillis = 0;
+
+        /**
+         * 相邻两个 chunk 之间（SSE 注释形式的 keep-alive 不算），超时为 INTER_TOKEN_TIMEOUT
+         */
+        @Builder.Default
+        private long interTokenMillis = 0;
+
+        /**
+         * 整个请求的总时长，超时为 TOTAL_TIMEOUT；流式请求未设置时不限制
+         */
+        @Builder.Default
+        private long totalMillis = 0;
+
+        /**
+         * 未设置的项取 {@code defaults} 中的值
+         */
+        public Timeouts orElse(Timeouts defaults) {
+            return new Timeouts(
+                    connectMillis > 0 ? connectMillis : defaults.getConnectMillis(),
+                    firstTokenMillis > 0 ? firstTokenMillis : defaults.getFirstTokenMillis(),
+                    interTokenMillis > 0 ? interTokenMillis : defaults.getInterTokenMillis(),
+                    totalMillis > 0 ? totalMillis : defaults.getTotalMillis()
+            );
+        }
+    }
+
+    /**
+     * 上游 HTTP 连接池与传输参数
+     *
+     * 每个 Provider 一个命名连接池，突发的 chat.send 复用已建立的 TLS 连接，
+     * 池满时在有界的等待队列里排队，超时后快速失败，而不是无限堆积。
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Pool {
+
+        /**
+         * 最大连接数（HTTP/1.1 下即最大并发请求数）
+         */
+        @Builder.Default
+        private int maxConnections = 200;
+
+        /**
+         * 等待获取连接的最大请求数，超出后立即失败；-1 表示不限制
+         */
+        @Builder.Default
+        private int pendingAcquireMaxCount = 1000;
+
+        /**
+         * 等待获取连接的超时时间
+         */
+        @Builder.Default
+        private long pendingAcquireTimeoutMillis = 5000;
+
+        /**
+         * 连接空闲多久后关闭；应小于上游负载均衡器的空闲超时，避免拿到已被对端关闭的连接
+         */
+        @Builder.Default
+        private long maxIdleTimeMillis = 30000;
+
+        /**
+         * 连接最长存活时间，到期后不再复用，让 DNS 变化和上游扩缩容能生效
+         */
+        @Builder.Default
+        private long maxLifeTimeMillis = 300000;
+
+        /**
+         * 后台清理空闲/过期连接的间隔；0 表示只在获取连接时检查
+         */
+        @Builder.Default
+        private long evictInBackgroundMillis = 30000;
+
+        /**
+         * TCP 建连超时
+         */
+        @Builder.Default
+        private int connectTimeoutMillis = 5000;
+
+        /**
+         * 两次读之间允许的最长间隔；0 表示不设置，由 timeouts / llm.timeout 兜底。
+         * 推理模型首 token 前可能长时间无数据，设置时要留足余量。
+         */
+        @Builder.Default
+        private long responseTimeoutMillis = 0;
+
+        /**
+         * 对 https 端点协商 HTTP/2（ALPN），协商失败时回退 HTTP/1.1
+         */
+        @Builder.Default
+        private boolean http2 = false;
+
+        /**
+         * HTTP keep-alive
+         */
+        @Builder.Default
+        private boolean keepAlive = true;
+
+        /**
+         * 请求 gzip 压缩的响应
+         *
+         * 默认关闭：部分网关会攒够一个压缩块才下发 SSE，反而拉长首 token 时间。
+         * 非流式请求为主、带宽受限时再打开。
+         */
+        @Builder.Default
+        private boolean compression = false;
+    }
 }
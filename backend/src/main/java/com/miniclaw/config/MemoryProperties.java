@@ -0,0 +1,65 @@
+package com.miniclaw.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 长期记忆配置属性
+ *
+ * 从 application.yml 读取 memory.* 配置
+ *
+ * 使用示例：
+ * <pre>
+ * memory:
+ *   enabled: true
+ *   top-k: 5
+ *   min-similarity: 0.5
+ *   hot-cache-max-bytes: 268435456
+ *   hot-owner-max-vectors: 20000
+ *   promote-after-recalls: 3
+ *   trust-client-owner-id: false
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "memory")
+public class MemoryProperties {
+
+    /**
+     * 默认关闭：开启后有 ownerId 的会话每轮都会先做一次 embedding 检索
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每轮最多注入的记忆条数
+     */
+    private int topK = 5;
+
+    /**
+     * 余弦相似度低于该值的记忆不注入
+     */
+    private double minSimilarity = 0.5;
+
+    /**
+     * 堆外热点缓存的向量总字节数上限，超出后按 LRU 淘汰整个用户
+     */
+    private long hotCacheMaxBytes = 256L * 1024 * 1024;
+
+    /**
+     * 记忆条数超过该值的用户不进热点缓存，始终走 pgvector 的 HNSW 索引
+     */
+    private int hotOwnerMaxVectors = 20000;
+
+    /**
+     * 同一用户检索多少次后把它的向量整体加载进热点缓存
+     */
+    private int promoteAfterRecalls = 3;
+
+    /**
+     * 握手没有认证出用户时，是否采用客户端 session.create 提交的 ownerId
+     *
+     * 开启后任何客户端都能自称任意用户、读写别人的记忆，只能在所有客户端都可信的内网环境开启。
+     */
+    private boolean trustClientOwnerId = false;
+}
@@ -0,0 +1,45 @@
+package com.miniclaw.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 语义缓存配置属性
+ *
+ * 从 application.yml 读取 semantic-cache.* 配置
+ *
+ * 使用示例：
+ * <pre>
+ * semantic-cache:
+ *   enabled: true
+ *   similarity-threshold: 0.95
+ *   local-max-entries: 10000
+ *   ttl-seconds: 86400
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "semantic-cache")
+public class SemanticCacheProperties {
+
+    /**
+     * 默认关闭：开启后每个新会话的第一轮都会先调用一次 embeddings
+     */
+    private boolean enabled = false;
+
+    /**
+     * 余弦相似度不低于该值才视为命中
+     */
+    private double similarityThreshold = 0.95;
+
+    /**
+     * 进程内近邻索引最多保留的条目数，超出后按 LRU 淘汰
+     */
+    private int localMaxEntries = 10000;
+
+    /**
+     * 缓存的回答多久之后不再使用
+     */
+    private long ttlSeconds = 86400;
+}
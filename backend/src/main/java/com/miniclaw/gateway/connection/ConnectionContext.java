@@ -1,24 +1,52 @@
 package com.miniclaw.gateway.connection;
 
+import com.miniclaw.gateway.event.GatewayEvent;
+import com.miniclaw.gateway.event.OutboundMetrics;
+import com.miniclaw.gateway.event.OutboundQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
 
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 一个 WebSocket 物理连接的运行时上下文。
  * 第 5.2 节先只关心连接本身，以及这个连接绑定了哪些业务 session。
+ * 每个连接还持有一条自己的出站通道，事件按 connectionId 直接投递，
+ * 不再让所有连接去过滤同一条全局事件流。
+ * 出站通道底下是一个有界队列，慢客户端只会撑满自己的队列。
+ * 连接上进行中的请求按 requestId 登记，chat.cancel 或断开连接时通过它取消上游调用。
  */
+@Slf4j
 public class ConnectionContext {
 
     private final String connectionId;
     private final WebSocketSession webSocketSession;
     private final Set<String> sessionIds = ConcurrentHashMap.newKeySet();
+    private final OutboundQueue outboundQueue;
+    private final OutboundMetrics outboundMetrics;
+    private final Map<String, Sinks.One<String>> inFlightRequests = new ConcurrentHashMap<>();
 
-    public ConnectionContext(String connectionId, WebSocketSession webSocketSession) {
+    /**
+     * 出站通道只有当前连接的 WebSocket 一个订阅者，所以用 unicast。
+     * 多个线程可能同时投递（LLM 流和入站请求），emit 时自行加锁串行化。
+     */
+    private final Sinks.Many<GatewayEvent> outbound;
+
+    public ConnectionContext(String connectionId,
+                             WebSocketSession webSocketSession,
+                             OutboundMetrics outboundMetrics,
+                             OutboundQueue outboundQueue) {
         this.connectionId = connectionId;
         this.webSocketSession = webSocketSession;
+        this.outboundMetrics = outboundMetrics;
+        this.outboundQueue = outboundQueue;
+        this.outbound = Sinks.unsafe().many().unicast().onBackpressureBuffer(outboundQueue);
     }
 
     public String getConnectionId() {
@@ -44,4 +72,71 @@ public class ConnectionContext {
             sessionIds.remove(sessionId);
         }
     }
+
+    /**
+     * 投递一个出站事件。
+     * 队列满时由 OutboundQueue 按策略合并或丢弃增量；DISCONNECT 策略，或者队列里没有可丢的增量时断开连接。
+     */
+    public boolean emit(GatewayEvent event) {
+        Sinks.EmitResult result;
+        synchronized (outbound) {
+            result = outbound.tryEmitNext(event);
+        }
+
+        if (result == Sinks.EmitResult.FAIL_OVERFLOW || result == Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            disconnectSlowConsumer();
+        }
+        return result.isSuccess();
+    }
+
+    public Flux<GatewayEvent> outbound() {
+        return outbound.asFlux();
+    }
+
+    public void closeOutbound() {
+        synchronized (outbound) {
+            outbound.tryEmitComplete();
+        }
+    }
+
+    /**
+     * 登记一个可取消的进行中请求，返回的信号在请求被取消时发出取消原因
+     *
+     * @return 同一连接上已有同一 requestId 的请求在进行时为 null
+     */
+    public Sinks.One<String> trackRequest(String requestId) {
+        Sinks.One<String> cancellation = Sinks.one();
+        return inFlightRequests.putIfAbsent(requestId, cancellation) == null ? cancellation : null;
+    }
+
+    public void untrackRequest(String requestId, Sinks.One<String> cancellation) {
+        inFlightRequests.remove(requestId, cancellation);
+    }
+
+    /**
+     * @return 请求仍在进行且本次取消生效时为 true
+     */
+    public boolean cancelRequest(String requestId, String reason) {
+        Sinks.One<String> cancellation = requestId == null ? null : inFlightRequests.remove(requestId);
+        return cancellation != null && cancellation.tryEmitValue(reason).isSuccess();
+    }
+
+    public void cancelInFlightRequests(String reason) {
+        inFlightRequests.keySet().forEach(requestId -> cancelRequest(requestId, reason));
+    }
+
+    public int getOutboundQueueDepth() {
+        return outboundQueue.size();
+    }
+
+    private void disconnectSlowConsumer() {
+        log.warn("Outbound queue overflow, disconnecting slow client: connectionId={}, depth={}",
+                connectionId, outboundQueue.size());
+        outboundMetrics.recordOverflowDisconnect();
+        closeOutbound();
+        if (webSocketSession != null) {
+            webSocketSession.close(CloseStatus.SERVICE_OVERLOAD.withReason("Outbound queue overflow"))
+                    .subscribe(null, error -> log.debug("Failed to close slow client: connectionId={}", connectionId, error));
+        }
+    }
 }
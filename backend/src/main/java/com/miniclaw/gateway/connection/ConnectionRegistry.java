@@ -1,5 +1,9 @@
 package com.miniclaw.gateway.connection;
 
+import com.miniclaw.config.GatewayProperties;
+import com.miniclaw.gateway.event.OutboundMetrics;
+import com.miniclaw.gateway.event.OutboundQueue;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.socket.WebSocketSession;
 
@@ -15,10 +19,26 @@ public class ConnectionRegistry {
 
     private final ConcurrentHashMap<String, ConnectionContext> connections = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, String> sessionOwners = new ConcurrentHashMap<>();
+    private final GatewayProperties.Outbound outboundProperties;
+    private final OutboundMetrics outboundMetrics;
+
+    public ConnectionRegistry() {
+        this(new GatewayProperties(), new OutboundMetrics());
+    }
+
+    @Autowired
+    public ConnectionRegistry(GatewayProperties properties, OutboundMetrics outboundMetrics) {
+        this.outboundProperties = properties.getOutbound();
+        this.outboundMetrics = outboundMetrics;
+    }
 
     public ConnectionContext register(WebSocketSession session) {
         String connectionId = UUID.randomUUID().toString();
-        ConnectionContext context = new ConnectionContext(connectionId, session);
+        ConnectionContext context = new ConnectionContext(connectionId, session, outboundMetrics, new OutboundQueue(
+                outboundProperties.getQueueCapacity(),
+                outboundProperties.getOverflowPolicy(),
+                outboundMetrics
+        ));
         connections.put(connectionId, context);
         return context;
     }
@@ -30,9 +50,15 @@ public class ConnectionRegistry {
         }
 
         removed.getSessionIds().forEach(sessionOwners::remove);
+        // 客户端已经收不到结果，进行中的 LLM 流立即断开，不再占用会话队列
+        removed.cancelInFlightRequests("connection closed");
+        removed.closeOutbound();
     }
 
     public Optional<ConnectionContext> find(String connectionId) {
+        if (connectionId == null) {
+            return Optional.empty();
+        }
         return Optional.ofNullable(connections.get(connectionId));
     }
 
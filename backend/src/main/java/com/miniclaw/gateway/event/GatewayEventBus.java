@@ -1,22 +1,42 @@
 package com.miniclaw.gateway.event;
 
+import com.miniclaw.gateway.connection.ConnectionContext;
+import com.miniclaw.gateway.connection.ConnectionRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
+/**
+ * 按 connectionId 路由的出站事件总线。
+ * 发布一个事件只需要一次 ConnectionRegistry 查找，和当前在线连接数无关。
+ */
+@Slf4j
 @Component
 public class GatewayEventBus {
 
-    private final Sinks.Many<GatewayEvent> sink = Sinks.many().multicast().onBackpressureBuffer();
+    private final ConnectionRegistry connectionRegistry;
+
+    public GatewayEventBus(ConnectionRegistry connectionRegistry) {
+        this.connectionRegistry = connectionRegistry;
+    }
 
     public void publish(GatewayEvent event) {
-        Sinks.EmitResult result = sink.tryEmitNext(event);
-        if (result.isFailure()) {
-            throw new IllegalStateException("Failed to publish gateway event: " + result);
+        ConnectionContext connection = connectionRegistry.find(event.getConnectionId()).orElse(null);
+        if (connection == null) {
+            log.debug("Dropping gateway event for unknown connection: connectionId={}, requestId={}",
+                    event.getConnectionId(), event.getRequestId());
+            return;
+        }
+
+        if (!connection.emit(event)) {
+            log.debug("Dropping gateway event for closed connection: connectionId={}, requestId={}",
+                    event.getConnectionId(), event.getRequestId());
         }
     }
 
-    public Flux<GatewayEvent> events() {
-        return sink.asFlux();
+    public Flux<GatewayEvent> events(String connectionId) {
+        return connectionRegistry.find(connectionId)
+                .map(ConnectionContext::outbound)
+                .orElseGet(Flux::empty);
     }
 }
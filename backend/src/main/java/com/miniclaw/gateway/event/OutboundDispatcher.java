@@ -1,13 +1,28 @@
 package com.miniclaw.gateway.event;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketMessage;
 import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+
+/**
+ * 把某个连接的出站事件编码成 WebSocket 帧。
+ * 帧直接用 Jackson 写成 UTF-8 字节，落进 session 的 DataBuffer（Netty 下是池化的 ByteBuf），
+ * 中间不再产生 String 和 char[] -> byte[] 的二次编码。
+ */
 @Component
 public class OutboundDispatcher {
 
+    /**
+     * 大部分 chat.delta 帧在 100~300 字节之间，不够时 DataBuffer 会自动扩容
+     */
+    private static final int INITIAL_FRAME_CAPACITY = 256;
+
     private final GatewayEventBus eventBus;
     private final ObjectMapper objectMapper;
 
@@ -16,16 +31,19 @@ public class OutboundDispatcher {
         this.objectMapper = objectMapper;
     }
 
-    public Flux<String> outboundJson(String connectionId) {
-        return eventBus.events()
-                .filter(event -> connectionId.equals(event.getConnectionId()))
-                .map(event -> toJson(event.getFrame()));
+    public Flux<WebSocketMessage> outboundMessages(String connectionId, DataBufferFactory bufferFactory) {
+        return eventBus.events(connectionId)
+                .map(event -> new WebSocketMessage(WebSocketMessage.Type.TEXT, encode(event.getFrame(), bufferFactory)))
+                .doOnDiscard(WebSocketMessage.class, WebSocketMessage::release);
     }
 
-    private String toJson(Object frame) {
+    private DataBuffer encode(Object frame, DataBufferFactory bufferFactory) {
+        DataBuffer buffer = bufferFactory.allocateBuffer(INITIAL_FRAME_CAPACITY);
         try {
-            return objectMapper.writeValueAsString(frame);
-        } catch (JsonProcessingException exception) {
+            objectMapper.writeValue(buffer.asOutputStream(), frame);
+            return buffer;
+        } catch (IOException exception) {
+            DataBufferUtils.release(buffer);
             throw new IllegalStateException("Failed to serialize outbound frame", exception);
         }
     }
@@ -0,0 +1,61 @@
+package com.miniclaw.gateway.event;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所有连接出站队列的汇总指标。
+ * 队列深度用增减计数维护，读取时不需要遍历连接。
+ */
+@Component
+public class OutboundMetrics {
+
+    private final LongAdder queuedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder coalescedEvents = new LongAdder();
+    private final LongAdder overflowDisconnects = new LongAdder();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    void recordEnqueued(int depth) {
+        queuedEvents.increment();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    void recordDequeued(int count) {
+        queuedEvents.add(-count);
+    }
+
+    void recordDropped() {
+        droppedEvents.increment();
+    }
+
+    void recordCoalesced() {
+        coalescedEvents.increment();
+    }
+
+    public void recordOverflowDisconnect() {
+        overflowDisconnects.increment();
+    }
+
+    public long getQueuedEvents() {
+        return queuedEvents.sum();
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    public long getCoalescedEvents() {
+        return coalescedEvents.sum();
+    }
+
+    public long getOverflowDisconnects() {
+        return overflowDisconnects.sum();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+}
@@ -0,0 +1,10 @@
+package com.miniclaw.gateway.event;
+
+/**
+ * 出站队列写满时的处理策略。
+ */
+public enum OutboundOverflowPolicy {
+    COALESCE_DELTAS,
+    DROP_OLDEST,
+    DISCONNECT
+}
@@ -0,0 +1,161 @@
+package com.miniclaw.gateway.event;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.miniclaw.gateway.rpc.model.RpcEventFrame;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * 单个连接的有界出站队列。
+ * 它直接作为 unicast sink 的缓冲区使用，写满时按 {@link OutboundOverflowPolicy} 处理。
+ * 只有 chat.delta / chat.reasoning 这类文本增量可以被丢弃，completed、error 等终止帧和其他事件从不丢；
+ * 队列里没有可丢的增量，或者策略是 DISCONNECT 时，offer 返回 false，由调用方负责断开连接。
+ */
+public class OutboundQueue extends AbstractQueue<GatewayEvent> {
+
+    static final String DELTA_EVENT = "chat.delta";
+    static final String REASONING_EVENT = "chat.reasoning";
+    static final String DELTA_FIELD = "delta";
+
+    private final int capacity;
+    private final OutboundOverflowPolicy overflowPolicy;
+    private final OutboundMetrics metrics;
+    private final ArrayDeque<GatewayEvent> events = new ArrayDeque<>();
+
+    public OutboundQueue(int capacity, OutboundOverflowPolicy overflowPolicy, OutboundMetrics metrics) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Outbound queue capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+        this.metrics = metrics;
+    }
+
+    @Override
+    public synchronized boolean offer(GatewayEvent event) {
+        if (events.size() < capacity) {
+            events.addLast(event);
+            metrics.recordEnqueued(events.size());
+            return true;
+        }
+
+        if (overflowPolicy == OutboundOverflowPolicy.DISCONNECT) {
+            return false;
+        }
+
+        if (overflowPolicy == OutboundOverflowPolicy.COALESCE_DELTAS && coalesceIntoTail(event)) {
+            metrics.recordCoalesced();
+            return true;
+        }
+
+        if (!dropOldestDelta()) {
+            return false;
+        }
+        events.addLast(event);
+        metrics.recordDropped();
+        return true;
+    }
+
+    @Override
+    public synchronized GatewayEvent poll() {
+        GatewayEvent event = events.pollFirst();
+        if (event != null) {
+            metrics.recordDequeued(1);
+        }
+        return event;
+    }
+
+    @Override
+    public synchronized GatewayEvent peek() {
+        return events.peekFirst();
+    }
+
+    @Override
+    public synchronized int size() {
+        return events.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        metrics.recordDequeued(events.size());
+        events.clear();
+    }
+
+    /**
+     * 返回快照迭代器，避免和生产者/消费者争用内部队列。
+     */
+    @Override
+    public synchronized Iterator<GatewayEvent> iterator() {
+        return new ArrayList<>(events).iterator();
+    }
+
+    public OutboundOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * 丢掉最旧的一条文本增量；丢终止帧会让客户端永远等不到请求结束，所以宁可断开连接
+     */
+    private boolean dropOldestDelta() {
+        Iterator<GatewayEvent> iterator = events.iterator();
+        while (iterator.hasNext()) {
+            if (isDelta(iterator.next())) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean coalesceIntoTail(GatewayEvent event) {
+        GatewayEvent tail = events.peekLast();
+        if (tail == null || !isDelta(event) || !isDelta(tail)
+                || !Objects.equals(eventName(tail), eventName(event))
+                || !Objects.equals(tail.getRequestId(), event.getRequestId())
+                || !Objects.equals(tail.getSessionId(), event.getSessionId())) {
+            return false;
+        }
+
+        RpcEventFrame tailFrame = (RpcEventFrame) tail.getFrame();
+        RpcEventFrame frame = (RpcEventFrame) event.getFrame();
+        ObjectNode payload = tailFrame.getPayload() instanceof ObjectNode objectNode
+                ? objectNode.deepCopy()
+                : JsonNodeFactory.instance.objectNode();
+        payload.put(DELTA_FIELD, deltaText(tailFrame) + deltaText(frame));
+
+        events.pollLast();
+        events.addLast(GatewayEvent.outbound(
+                tail.getConnectionId(),
+                tail.getSessionId(),
+                tail.getRequestId(),
+                RpcEventFrame.of(tailFrame.getRequestId(), tailFrame.getSessionId(), tailFrame.getName(), payload)
+        ));
+        return true;
+    }
+
+    /**
+     * chat.delta 和 chat.reasoning 都是可以拼接的文本增量；只和同名事件合并
+     */
+    private boolean isDelta(GatewayEvent event) {
+        return event.getFrame() instanceof RpcEventFrame frame
+                && (DELTA_EVENT.equals(frame.getName()) || REASONING_EVENT.equals(frame.getName()));
+    }
+
+    private String eventName(GatewayEvent event) {
+        return ((RpcEventFrame) event.getFrame()).getName();
+    }
+
+    private String deltaText(RpcEventFrame frame) {
+        JsonNode payload = frame.getPayload();
+        if (payload == null) {
+            return "";
+        }
+        return payload.path(DELTA_FIELD).asText("");
+    }
+}
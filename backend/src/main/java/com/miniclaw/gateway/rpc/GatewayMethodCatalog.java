@@ -39,6 +39,8 @@ public class GatewayMethodCatalog {
         register(catalog, "session.get", GatewayInvocationMode.UNARY, true, false);
         register(catalog, "session.close", GatewayInvocationMode.UNARY, true, false);
         register(catalog, "chat.send", GatewayInvocationMode.STREAMING, true, false);
+        register(catalog, "chat.cancel", GatewayInvocationMode.UNARY, true, false);
+        register(catalog, "memory.add", GatewayInvocationMode.UNARY, true, false);
         return Collections.unmodifiableMap(catalog);
     }
 
@@ -0,0 +1,122 @@
+package com.miniclaw.gateway.rpc.handler;
+
+import com.miniclaw.config.GatewayProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 LLM 逐 token 的增量合并成更少、更大的 chat.delta 帧。
+ *
+ * 规则：
+ * - 第一个 token 立即下发，首字延迟不变
+ * - 之后的 token 先攒着，满 N 毫秒或 M 个字符就下发一帧，先到先算
+ * - 上游结束或出错前，把剩下的内容全部下发
+ */
+@Component
+public class ChatDeltaCoalescer {
+
+    private final long flushIntervalMillis;
+    private final int flushMaxChars;
+    private final Scheduler scheduler;
+
+    @Autowired
+    public ChatDeltaCoalescer(GatewayProperties properties) {
+        this(properties.getChat(), Schedulers.parallel());
+    }
+
+    ChatDeltaCoalescer(GatewayProperties.Chat properties, Scheduler scheduler) {
+        this.flushIntervalMillis = properties.getDeltaFlushIntervalMillis();
+        this.flushMaxChars = properties.getDeltaFlushMaxChars();
+        this.scheduler = scheduler;
+    }
+
+    public Flux<String> coalesce(Flux<String> deltas) {
+        if (flushIntervalMillis <= 0) {
+            return deltas;
+        }
+
+        return Flux.create(sink -> {
+            CoalescingState state = new CoalescingState(sink);
+            Disposable upstream = deltas.subscribe(state::onNext, state::onError, state::onComplete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                state.cancelTimer();
+            });
+        });
+    }
+
+    private final class CoalescingState {
+
+        private final FluxSink<String> sink;
+        private final StringBuilder buffer = new StringBuilder();
+        private boolean firstEmitted;
+        private Disposable pendingFlush;
+        private long flushGeneration;
+
+        private CoalescingState(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        private synchronized void onNext(String delta) {
+            if (delta == null || delta.isEmpty()) {
+                return;
+            }
+
+            if (!firstEmitted) {
+                firstEmitted = true;
+                sink.next(delta);
+                return;
+            }
+
+            buffer.append(delta);
+            if (flushMaxChars > 0 && buffer.length() >= flushMaxChars) {
+                flush();
+            } else if (pendingFlush == null) {
+                long generation = ++flushGeneration;
+                pendingFlush = scheduler.schedule(() -> flushOnTimer(generation), flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void onError(Throwable error) {
+            flush();
+            sink.error(error);
+        }
+
+        private synchronized void onComplete() {
+            flush();
+            sink.complete();
+        }
+
+        private synchronized void flushOnTimer(long generation) {
+            // 定时器触发时，窗口可能已经因为字符数或结束信号被提前刷掉了
+            if (pendingFlush == null || generation != flushGeneration) {
+                return;
+            }
+            pendingFlush = null;
+            flush();
+        }
+
+        private synchronized void cancelTimer() {
+            if (pendingFlush != null) {
+                pendingFlush.dispose();
+                pendingFlush = null;
+            }
+        }
+
+        private void flush() {
+            cancelTimer();
+            if (buffer.isEmpty()) {
+                return;
+            }
+            sink.next(buffer.toString());
+            buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.miniclaw.gateway.rpc.handler;
+
+import java.util.Locale;
+
+/**
+ * 推理模型思考过程（chat.reasoning 事件）的下发方式，由 chat.send 的 payload.reasoning 指定
+ */
+public enum ChatReasoningMode {
+
+    /**
+     * 与 chat.delta 一样按窗口合并后下发（默认）
+     */
+    COALESCE,
+
+    /**
+     * 每个推理增量一帧
+     */
+    STREAM,
+
+    /**
+     * 不下发推理内容
+     */
+    OFF;
+
+    /**
+     * 不区分大小写；为空时取 COALESCE，无法识别时返回 null
+     */
+    public static ChatReasoningMode parse(String value) {
+        if (value == null || value.isBlank()) {
+            return COALESCE;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
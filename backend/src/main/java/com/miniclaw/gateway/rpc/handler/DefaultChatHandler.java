@@ -2,55 +2,88 @@ package com.miniclaw.gateway.rpc.handler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.miniclaw.cache.SemanticCache;
+import com.miniclaw.gateway.connection.ConnectionContext;
+import com.miniclaw.gateway.connection.ConnectionRegistry;
 import com.miniclaw.gateway.event.GatewayEvent;
 import com.miniclaw.gateway.event.GatewayEventBus;
 import com.miniclaw.gateway.rpc.model.RpcCompletedFrame;
 import com.miniclaw.gateway.rpc.model.RpcErrorFrame;
 import com.miniclaw.gateway.rpc.model.RpcEventFrame;
 import com.miniclaw.gateway.rpc.model.RpcRequestFrame;
+import com.miniclaw.gateway.session.ConversationHistoryService;
 import com.miniclaw.gateway.session.GatewaySession;
 import com.miniclaw.gateway.session.PersistentSessionService;
 import com.miniclaw.gateway.session.SessionLane;
+import com.miniclaw.gateway.session.SessionLaneRejectedException;
 import com.miniclaw.gateway.session.SessionState;
 import com.miniclaw.gateway.session.SessionStateMachine;
 import com.miniclaw.llm.LlmClient;
+import com.miniclaw.llm.model.LlmChunk;
 import com.miniclaw.llm.model.LlmRequest;
+import com.miniclaw.memory.MemoryService;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 public class DefaultChatHandler implements ChatHandler {
 
+    private static final String DELTA_EVENT = "chat.delta";
+
+    private static final String REASONING_EVENT = "chat.reasoning";
+
     private final PersistentSessionService sessionService;
     private final SessionStateMachine stateMachine;
     private final SessionLane sessionLane;
+    private final ConnectionRegistry connectionRegistry;
     private final GatewayEventBus eventBus;
     private final LlmClient llmClient;
+    private final ChatDeltaCoalescer deltaCoalescer;
+    private final ConversationHistoryService historyService;
+    private final SemanticCache semanticCache;
+    private final MemoryService memoryService;
     private final ObjectMapper objectMapper;
 
     public DefaultChatHandler(PersistentSessionService sessionService,
                               SessionStateMachine stateMachine,
                               SessionLane sessionLane,
+                              ConnectionRegistry connectionRegistry,
                               GatewayEventBus eventBus,
                               LlmClient llmClient,
+                              ChatDeltaCoalescer deltaCoalescer,
+                              ConversationHistoryService historyService,
+                              SemanticCache semanticCache,
+                              MemoryService memoryService,
                               ObjectMapper objectMapper) {
         this.sessionService = sessionService;
         this.stateMachine = stateMachine;
         this.sessionLane = sessionLane;
+        this.connectionRegistry = connectionRegistry;
         this.eventBus = eventBus;
         this.llmClient = llmClient;
+        this.deltaCoalescer = deltaCoalescer;
+        this.historyService = historyService;
+        this.semanticCache = semanticCache;
+        this.memoryService = memoryService;
         this.objectMapper = objectMapper;
     }
 
     @Override
     public List<String> supportedMethods() {
-        return List.of("chat.send");
+        return List.of("chat.send", "chat.cancel");
     }
 
     @Override
     public Mono<Object> handle(String connectionId, RpcRequestFrame request) {
+        if ("chat.cancel".equals(request.getMethod())) {
+            return cancel(connectionId, request);
+        }
+
         GatewaySession session = sessionService.find(request.getSessionId()).orElse(null);
         if (session == null) {
             return Mono.just(RpcErrorFrame.of(
@@ -82,21 +115,93 @@ public class DefaultChatHandler implements ChatHandler {
             ));
         }
 
-        return sessionLane.submit(session.getSessionId(), () -> executeChat(connectionId, session, request, message));
+        ChatReasoningMode reasoningMode = ChatReasoningMode.parse(request.getPayload().path("reasoning").asText(null));
+        if (reasoningMode == null) {
+            return Mono.just(RpcErrorFrame.of(
+                    request.getRequestId(),
+                    request.getSessionId(),
+                    "INVALID_PAYLOAD",
+                    "payload.reasoning must be one of coalesce, stream, off"
+            ));
+        }
+
+        Mono<Object> chat = sessionLane.submit(session.getSessionId(),
+                        () -> executeChat(connectionId, session, request, message, reasoningMode))
+                .onErrorResume(SessionLaneRejectedException.class, rejected -> Mono.just(RpcErrorFrame.of(
+                        request.getRequestId(),
+                        request.getSessionId(),
+                        rejected.getCode(),
+                        rejected.getMessage()
+                )));
+        ConnectionContext connection = connectionRegistry.find(connectionId).orElse(null);
+        if (connection == null || request.getRequestId() == null) {
+            return chat;
+        }
+
+        Sinks.One<String> cancellation = connection.trackRequest(request.getRequestId());
+        if (cancellation == null) {
+            return Mono.just(RpcErrorFrame.of(
+                    request.getRequestId(),
+                    request.getSessionId(),
+                    "DUPLICATE_REQUEST",
+                    "Request " + request.getRequestId() + " is already in flight"
+            ));
+        }
+
+        // 取消信号先到时丢弃 chat，取消会一路传到 SessionLane 和 LLM 的 HTTP 流
+        return Mono.firstWithSignal(
+                        chat,
+                        cancellation.asMono().map(reason -> (Object) RpcErrorFrame.of(
+                                request.getRequestId(),
+                                request.getSessionId(),
+                                "CANCELLED",
+                                "chat.send cancelled: " + reason
+                        )))
+                .doFinally(ignored -> connection.untrackRequest(request.getRequestId(), cancellation));
+    }
+
+    /**
+     * chat.cancel 按 payload.requestId 取消同一连接上进行中的 chat.send；
+     * 还在排队的请求不会再执行，正在执行的请求立即断开上游流，已经收到的部分回答照常记入历史
+     */
+    private Mono<Object> cancel(String connectionId, RpcRequestFrame request) {
+        String targetRequestId = request.getPayload() == null ? null : request.getPayload().path("requestId").asText(null);
+        if (targetRequestId == null || targetRequestId.isBlank()) {
+            return Mono.just(RpcErrorFrame.of(
+                    request.getRequestId(),
+                    request.getSessionId(),
+                    "INVALID_PAYLOAD",
+                    "chat.cancel requires payload.requestId"
+            ));
+        }
+
+        boolean cancelled = connectionRegistry.find(connectionId)
+                .map(connection -> connection.cancelRequest(targetRequestId, "chat.cancel"))
+                .orElse(false);
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("requestId", targetRequestId);
+        payload.put("cancelled", cancelled);
+        return Mono.just(RpcCompletedFrame.of(request.getRequestId(), request.getSessionId(), payload));
     }
 
     private Mono<Object> executeChat(String connectionId,
                                      GatewaySession session,
                                      RpcRequestFrame request,
-                                     String message) {
+                                     String message,
+                                     ChatReasoningMode reasoningMode) {
         return Mono.defer(() -> {
             stateMachine.transition(session, SessionState.RUNNING);
             sessionService.save(session);
 
-            return llmClient.stream(LlmRequest.builder()
-                            .messages(List.of(LlmRequest.Message.user(message)))
-                            .build())
-                    .doOnNext(chunk -> publishDelta(connectionId, request, chunk.getDelta()))
+            StringBuilder reply = new StringBuilder();
+            AtomicBoolean finished = new AtomicBoolean(false);
+            return historyService.startTurn(session.getSessionId(), message)
+                    .flatMapMany(messages -> memoryService.recall(session.getOwnerId(), message)
+                            .flatMapMany(memories -> memories.isEmpty()
+                                    ? answer(messages, message, reply, reasoningMode)
+                                    // 带了个人记忆的回答不适合跨用户复用，不走语义缓存
+                                    : streamReply(memoryService.inject(messages, memories), reply, reasoningMode)))
+                    .doOnNext(output -> publish(connectionId, request, output))
                     .then(Mono.fromSupplier(() -> (Object) RpcCompletedFrame.of(
                             request.getRequestId(),
                             request.getSessionId(),
@@ -108,22 +213,103 @@ public class DefaultChatHandler implements ChatHandler {
                             "CHAT_STREAM_FAILED",
                             exception.getMessage()
                     )))
-                    .doFinally(ignored -> resetToIdle(session));
+                    // 结束帧发出之前收尾，调用方拿到结果时会话已经回到 IDLE；被取消时在 doFinally 里收尾
+                    .doOnNext(ignored -> finishTurn(session, reply, finished))
+                    .doFinally(ignored -> finishTurn(session, reply, finished));
+        });
+    }
+
+    /**
+     * 先记下助手回复再回到 IDLE，同一会话的下一轮才能看到这一轮；每轮只执行一次
+     */
+    private void finishTurn(GatewaySession session, StringBuilder reply, AtomicBoolean finished) {
+        if (finished.compareAndSet(false, true)) {
+            historyService.completeTurn(session.getSessionId(), reply.toString());
+            resetToIdle(session);
+        }
+    }
+
+    /**
+     * 会话的第一轮（没有历史）先查语义缓存，命中时整段回答作为一帧 delta 返回；
+     * 有历史的轮次回答依赖上下文，不走缓存
+     */
+    private Flux<ChatOutput> answer(List<LlmRequest.Message> messages,
+                                    String message,
+                                    StringBuilder reply,
+                                    ChatReasoningMode reasoningMode) {
+        if (messages.size() > 1 || !semanticCache.isEnabled()) {
+            return streamReply(messages, reply, reasoningMode);
+        }
+
+        return semanticCache.lookup(message).flatMapMany(lookup -> {
+            if (lookup.isHit()) {
+                reply.append(lookup.answer());
+                return Flux.just(new ChatOutput(DELTA_EVENT, lookup.answer()));
+            }
+            return streamReply(messages, reply, reasoningMode)
+                    .doOnComplete(() -> semanticCache.store(lookup, reply.toString()));
         });
     }
 
-    private void publishDelta(String connectionId, RpcRequestFrame request, String delta) {
-        if (delta == null || delta.isBlank()) {
+    /**
+     * 推理模型先输出思考过程（chat.reasoning）再输出回答（chat.delta）。
+     * 按事件类型切成连续的阶段，每个阶段单独合并，阶段结束时刷掉剩余内容，两类事件不会交错乱序；
+     * 推理内容只下发给客户端，不计入回答和会话历史
+     */
+    private Flux<ChatOutput> streamReply(List<LlmRequest.Message> messages,
+                                         StringBuilder reply,
+                                         ChatReasoningMode reasoningMode) {
+        return llmClient.stream(LlmRequest.builder()
+                        .messages(messages)
+                        .build())
+                .concatMapIterable(chunk -> outputs(chunk, reasoningMode))
+                .doOnNext(output -> {
+                    if (DELTA_EVENT.equals(output.event())) {
+                        reply.append(output.text());
+                    }
+                })
+                .windowUntilChanged(ChatOutput::event)
+                .concatMap(phase -> phase.switchOnFirst((first, outputs) -> {
+                    if (!first.hasValue()) {
+                        return outputs;
+                    }
+                    String event = first.get().event();
+                    if (REASONING_EVENT.equals(event) && reasoningMode == ChatReasoningMode.STREAM) {
+                        return outputs;
+                    }
+                    return deltaCoalescer.coalesce(outputs.map(ChatOutput::text))
+                            .map(text -> new ChatOutput(event, text));
+                }));
+    }
+
+    private List<ChatOutput> outputs(LlmChunk chunk, ChatReasoningMode reasoningMode) {
+        boolean hasReasoning = reasoningMode != ChatReasoningMode.OFF
+                && chunk.getReasoningDelta() != null && !chunk.getReasoningDelta().isEmpty();
+        boolean hasDelta = chunk.getDelta() != null && !chunk.getDelta().isEmpty();
+        if (hasReasoning && hasDelta) {
+            return List.of(
+                    new ChatOutput(REASONING_EVENT, chunk.getReasoningDelta()),
+                    new ChatOutput(DELTA_EVENT, chunk.getDelta()));
+        }
+        if (hasReasoning) {
+            return List.of(new ChatOutput(REASONING_EVENT, chunk.getReasoningDelta()));
+        }
+        return hasDelta ? List.of(new ChatOutput(DELTA_EVENT, chunk.getDelta())) : List.of();
+    }
+
+    private void publish(String connectionId, RpcRequestFrame request, ChatOutput output) {
+        // 只有空白的帧（例如段落之间的 "\n\n"）也是回答的一部分，只跳过真正的空串
+        if (output.text() == null || output.text().isEmpty()) {
             return;
         }
 
         ObjectNode payload = objectMapper.createObjectNode();
-        payload.put("delta", delta);
+        payload.put("delta", output.text());
         eventBus.publish(GatewayEvent.outbound(
                 connectionId,
                 request.getSessionId(),
                 request.getRequestId(),
-                RpcEventFrame.of(request.getRequestId(), request.getSessionId(), "chat.delta", payload)
+                RpcEventFrame.of(request.getRequestId(), request.getSessionId(), output.event(), payload)
         ));
     }
 
@@ -133,4 +319,10 @@ public class DefaultChatHandler implements ChatHandler {
             sessionService.save(session);
         }
     }
+
+    /**
+     * 一帧要下发的事件：chat.delta 或 chat.reasoning
+     */
+    private record ChatOutput(String event, String text) {
+    }
 }
@@ -0,0 +1,96 @@
+package com.miniclaw.gateway.rpc.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.miniclaw.gateway.rpc.model.RpcCompletedFrame;
+import com.miniclaw.gateway.rpc.model.RpcErrorFrame;
+import com.miniclaw.gateway.rpc.model.RpcRequestFrame;
+import com.miniclaw.gateway.session.GatewaySession;
+import com.miniclaw.gateway.session.PersistentSessionService;
+import com.miniclaw.memory.MemoryService;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * memory.add：为会话所属用户写入一条长期记忆
+ */
+@Component
+public class DefaultMemoryHandler implements MemoryHandler {
+
+    private final PersistentSessionService sessionService;
+    private final MemoryService memoryService;
+    private final ObjectMapper objectMapper;
+
+    public DefaultMemoryHandler(PersistentSessionService sessionService,
+                                MemoryService memoryService,
+                                ObjectMapper objectMapper) {
+        this.sessionService = sessionService;
+        this.memoryService = memoryService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public List<String> supportedMethods() {
+        return List.of("memory.add");
+    }
+
+    @Override
+    public Mono<Object> handle(String connectionId, RpcRequestFrame request) {
+        GatewaySession session = sessionService.find(request.getSessionId()).orElse(null);
+        if (session == null) {
+            return Mono.just(RpcErrorFrame.of(
+                    request.getRequestId(),
+                    request.getSessionId(),
+                    "SESSION_NOT_FOUND",
+                    "Unknown session: " + request.getSessionId()
+            ));
+        }
+        if (session.getOwnerId() == null) {
+            return Mono.just(RpcErrorFrame.of(
+                    request.getRequestId(),
+                    request.getSessionId(),
+                    "OWNER_REQUIRED",
+                    "memory.add requires a session with an authenticated owner"
+            ));
+        }
+        if (!memoryService.isEnabled()) {
+            return Mono.just(RpcErrorFrame.of(
+                    request.getRequestId(),
+                    request.getSessionId(),
+                    "MEMORY_DISABLED",
+                    "Memory is disabled"
+            ));
+        }
+
+        String content = request.getPayload() == null ? null : request.getPayload().path("content").asText(null);
+        if (content == null || content.isBlank()) {
+            return Mono.just(RpcErrorFrame.of(
+                    request.getRequestId(),
+                    request.getSessionId(),
+                    "INVALID_PAYLOAD",
+                    "memory.add requires payload.content"
+            ));
+        }
+
+        return memoryService.remember(session.getOwnerId(), content)
+                .map(memoryId -> (Object) RpcCompletedFrame.of(
+                        request.getRequestId(),
+                        request.getSessionId(),
+                        completedPayload(memoryId)
+                ))
+                .onErrorResume(exception -> Mono.just(RpcErrorFrame.of(
+                        request.getRequestId(),
+                        request.getSessionId(),
+                        "MEMORY_WRITE_FAILED",
+                        exception.getMessage()
+                )));
+    }
+
+    private ObjectNode completedPayload(long memoryId) {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("memoryId", memoryId);
+        return payload;
+    }
+}
@@ -6,19 +6,25 @@ import com.miniclaw.gateway.rpc.model.RpcCompletedFrame;
 import com.miniclaw.gateway.rpc.model.RpcRequestFrame;
 import com.miniclaw.gateway.session.GatewaySession;
 import com.miniclaw.gateway.session.PersistentSessionService;
+import com.miniclaw.gateway.session.SessionOwnerResolver;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Optional;
 
 @Component
 public class DefaultSessionHandler implements SessionHandler {
 
     private final PersistentSessionService sessionService;
+    private final SessionOwnerResolver ownerResolver;
     private final ObjectMapper objectMapper;
 
-    public DefaultSessionHandler(PersistentSessionService sessionService, ObjectMapper objectMapper) {
+    public DefaultSessionHandler(PersistentSessionService sessionService,
+                                 SessionOwnerResolver ownerResolver,
+                                 ObjectMapper objectMapper) {
         this.sessionService = sessionService;
+        this.ownerResolver = ownerResolver;
         this.objectMapper = objectMapper;
     }
 
@@ -29,18 +35,27 @@ public class DefaultSessionHandler implements SessionHandler {
 
     @Override
     public Mono<Object> handle(String connectionId, RpcRequestFrame request) {
-        GatewaySession session = sessionService.create(connectionId);
-        return Mono.just(RpcCompletedFrame.of(
-                request.getRequestId(),
-                session.getSessionId(),
-                completedPayload(session)
-        ));
+        // ownerId 由服务端决定，客户端 payload.ownerId 默认不被信任
+        return ownerResolver.resolve(connectionId, request.getPayload())
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .map(ownerId -> {
+                    GatewaySession session = sessionService.create(connectionId, ownerId.orElse(null));
+                    return RpcCompletedFrame.of(
+                            request.getRequestId(),
+                            session.getSessionId(),
+                            completedPayload(session)
+                    );
+                });
     }
 
     private ObjectNode completedPayload(GatewaySession session) {
         ObjectNode payload = objectMapper.createObjectNode();
         payload.put("created", true);
         payload.put("sessionId", session.getSessionId());
+        if (session.getOwnerId() != null) {
+            payload.put("ownerId", session.getOwnerId());
+        }
         return payload;
     }
 }
@@ -0,0 +1,4 @@
+package com.miniclaw.gateway.rpc.handler;
+
+public interface MemoryHandler extends RpcHandler {
+}
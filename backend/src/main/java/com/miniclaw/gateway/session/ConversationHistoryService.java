@@ -0,0 +1,243 @@
+package com.miniclaw.gateway.session;
+
+import com.miniclaw.config.GatewayProperties;
+import com.miniclaw.gateway.session.persistence.SessionMessageEntity;
+import com.miniclaw.gateway.session.persistence.SessionMessageRepository;
+import com.miniclaw.llm.model.LlmRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会话消息历史
+ *
+ * 每个会话在内存里保留最近 maxTailMessages 条消息（热尾部），按 LRU 缓存；
+ * 拼装下一轮 LlmRequest.messages 时直接取热尾部，不从 PostgreSQL 重新加载整段历史。
+ * 尾部超出上限时成块淘汰到 {@link #TAIL_LOW_WATERMARK_RATIO} 并对齐到 user 消息，
+ * 而不是每轮挤掉最早的一条：请求开头在之后若干轮里保持不变，Provider 的前缀缓存才能命中。
+ * 只有缓存未命中（重启、淘汰）时才在 boundedElastic 上加载一次尾部。
+ *
+ * 新消息先写进缓存，再异步落库；有未完成写入或进行中对话轮次的会话不会被淘汰，
+ * 避免重新加载时读不到还没落库的消息。
+ */
+@Slf4j
+@Component
+public class ConversationHistoryService {
+
+    static final String ROLE_USER = "user";
+    static final String ROLE_ASSISTANT = "assistant";
+
+    /**
+     * 尾部超出上限时淘汰到的低水位，相对 maxTailMessages
+     */
+    static final double TAIL_LOW_WATERMARK_RATIO = 0.75;
+
+    private final SessionMessageRepository repository;
+    private final GatewayProperties.History settings;
+    private final Scheduler persistenceScheduler;
+    private final LinkedHashMap<String, Conversation> conversations;
+
+    @Autowired
+    public ConversationHistoryService(SessionMessageRepository repository, GatewayProperties properties) {
+        this(repository, properties.getHistory(), Schedulers.boundedElastic());
+    }
+
+    ConversationHistoryService(SessionMessageRepository repository,
+                               GatewayProperties.History settings,
+                               Scheduler persistenceScheduler) {
+        this.repository = repository;
+        this.settings = settings;
+        this.persistenceScheduler = persistenceScheduler;
+        this.conversations = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Conversation> eldest) {
+                return size() > settings.getMaxCachedSessions() && eldest.getValue().isEvictable();
+            }
+        };
+    }
+
+    /**
+     * 开始一轮对话：追加用户消息，返回这一轮要发给 LLM 的消息列表
+     *
+     * 之后必须调用 {@link #completeTurn(String, String)} 结束这一轮
+     */
+    public Mono<List<LlmRequest.Message>> startTurn(String sessionId, String userMessage) {
+        return conversation(sessionId).map(conversation -> {
+            conversation.beginTurn();
+            append(sessionId, conversation, ROLE_USER, userMessage);
+            return conversation.snapshot();
+        });
+    }
+
+    /**
+     * 结束一轮对话：追加助手回复（为空时不记录）
+     */
+    public void completeTurn(String sessionId, String assistantMessage) {
+        Conversation conversation = cached(sessionId);
+        if (conversation == null) {
+            return;
+        }
+
+        if (assistantMessage != null && !assistantMessage.isBlank()) {
+            append(sessionId, conversation, ROLE_ASSISTANT, assistantMessage);
+        }
+        conversation.endTurn();
+    }
+
+    /**
+     * 当前会话的消息尾部
+     */
+    public Mono<List<LlmRequest.Message>> history(String sessionId) {
+        return conversation(sessionId).map(Conversation::snapshot);
+    }
+
+    public int cachedSessions() {
+        synchronized (conversations) {
+            return conversations.size();
+        }
+    }
+
+    private Mono<Conversation> conversation(String sessionId) {
+        Conversation cached = cached(sessionId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+
+        return Mono.fromCallable(() -> load(sessionId))
+                .subscribeOn(persistenceScheduler)
+                .map(loaded -> {
+                    synchronized (conversations) {
+                        // 并发加载同一会话时以先放进缓存的为准
+                        Conversation existing = conversations.get(sessionId);
+                        if (existing != null) {
+                            return existing;
+                        }
+                        conversations.put(sessionId, loaded);
+                        return loaded;
+                    }
+                });
+    }
+
+    private Conversation cached(String sessionId) {
+        synchronized (conversations) {
+            return conversations.get(sessionId);
+        }
+    }
+
+    private Conversation load(String sessionId) {
+        List<SessionMessageEntity> newestFirst = repository.findBySessionIdOrderBySeqDesc(
+                sessionId, PageRequest.of(0, maxTailMessages()));
+
+        Conversation conversation = new Conversation(maxTailMessages());
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            SessionMessageEntity entity = newestFirst.get(i);
+            conversation.restore(entity.getSeq(), toMessage(entity.getRole(), entity.getContent()));
+        }
+        return conversation;
+    }
+
+    private void append(String sessionId, Conversation conversation, String role, String content) {
+        int seq = conversation.append(toMessage(role, content));
+        SessionMessageEntity entity = SessionMessageEntity.builder()
+                .sessionId(sessionId)
+                .seq(seq)
+                .role(role)
+                .content(content)
+                .createdAt(Instant.now())
+                .build();
+
+        Mono.fromRunnable(() -> repository.save(entity))
+                .subscribeOn(persistenceScheduler)
+                .doFinally(ignored -> conversation.writeFinished())
+                .subscribe(null, error -> log.warn("Failed to persist session message: sessionId={}, seq={}, message={}",
+                        sessionId, seq, error.getMessage()));
+    }
+
+    private LlmRequest.Message toMessage(String role, String content) {
+        return switch (role) {
+            case ROLE_ASSISTANT -> LlmRequest.Message.assistant(content);
+            case "system" -> LlmRequest.Message.system(content);
+            default -> LlmRequest.Message.user(content);
+        };
+    }
+
+    private int maxTailMessages() {
+        return Math.max(1, settings.getMaxTailMessages());
+    }
+
+    /**
+     * 单个会话的热尾部
+     */
+    private static final class Conversation {
+
+        private final int capacity;
+        private final int lowWatermark;
+        private final ArrayDeque<LlmRequest.Message> tail;
+        private int lastSeq;
+        private int pendingWrites;
+        private int activeTurns;
+
+        private Conversation(int capacity) {
+            this.capacity = capacity;
+            this.lowWatermark = Math.max(1, (int) (capacity * TAIL_LOW_WATERMARK_RATIO));
+            this.tail = new ArrayDeque<>(Math.min(capacity, 16));
+        }
+
+        private synchronized void restore(int seq, LlmRequest.Message message) {
+            push(message);
+            lastSeq = Math.max(lastSeq, seq);
+        }
+
+        /**
+         * @return 新消息的 seq
+         */
+        private synchronized int append(LlmRequest.Message message) {
+            push(message);
+            pendingWrites++;
+            return ++lastSeq;
+        }
+
+        private synchronized List<LlmRequest.Message> snapshot() {
+            return List.copyOf(tail);
+        }
+
+        private synchronized void beginTurn() {
+            activeTurns++;
+        }
+
+        private synchronized void endTurn() {
+            activeTurns = Math.max(0, activeTurns - 1);
+        }
+
+        private synchronized void writeFinished() {
+            pendingWrites--;
+        }
+
+        private synchronized boolean isEvictable() {
+            return pendingWrites == 0 && activeTurns == 0;
+        }
+
+        private void push(LlmRequest.Message message) {
+            tail.addLast(message);
+            if (tail.size() <= capacity) {
+                return;
+            }
+            while (tail.size() > lowWatermark) {
+                tail.removeFirst();
+            }
+            while (tail.size() > 1 && !ROLE_USER.equals(tail.peekFirst().getRole())) {
+                tail.removeFirst();
+            }
+        }
+    }
+}
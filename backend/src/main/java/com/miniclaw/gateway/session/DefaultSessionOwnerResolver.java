@@ -0,0 +1,50 @@
+package com.miniclaw.gateway.session;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.miniclaw.config.MemoryProperties;
+import com.miniclaw.gateway.connection.ConnectionContext;
+import com.miniclaw.gateway.connection.ConnectionRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.HandshakeInfo;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+
+/**
+ * 默认的会话归属：取 WebSocket 握手时认证出的 Principal
+ *
+ * 没有认证（握手不带 Principal）时会话是匿名的，不读写长期记忆。
+ * 只有开启 memory.trust-client-owner-id 时才退回使用客户端 payload.ownerId，
+ * 这等于让任何客户端自称任意用户，只能用在所有客户端都可信的内网环境。
+ */
+@Component
+public class DefaultSessionOwnerResolver implements SessionOwnerResolver {
+
+    private final ConnectionRegistry connectionRegistry;
+    private final MemoryProperties memoryProperties;
+
+    public DefaultSessionOwnerResolver(ConnectionRegistry connectionRegistry, MemoryProperties memoryProperties) {
+        this.connectionRegistry = connectionRegistry;
+        this.memoryProperties = memoryProperties;
+    }
+
+    @Override
+    public Mono<String> resolve(String connectionId, JsonNode payload) {
+        return Mono.justOrEmpty(connectionRegistry.find(connectionId))
+                .mapNotNull(ConnectionContext::getWebSocketSession)
+                .mapNotNull(WebSocketSession::getHandshakeInfo)
+                .flatMap(HandshakeInfo::getPrincipal)
+                .mapNotNull(Principal::getName)
+                .filter(name -> !name.isBlank())
+                .switchIfEmpty(Mono.fromSupplier(() -> clientOwnerId(payload)));
+    }
+
+    private String clientOwnerId(JsonNode payload) {
+        if (!memoryProperties.isTrustClientOwnerId() || payload == null) {
+            return null;
+        }
+        String ownerId = payload.path("ownerId").asText(null);
+        return ownerId == null || ownerId.isBlank() ? null : ownerId;
+    }
+}
@@ -11,13 +11,22 @@ public class GatewaySession {
     private final String sessionId;
     private final String connectionId;
     private final Instant createdAt;
+    private final String ownerId;
     private SessionState state;
 
     public GatewaySession(String sessionId, String connectionId, Instant createdAt, SessionState state) {
+        this(sessionId, connectionId, createdAt, state, null);
+    }
+
+    /**
+     * @param ownerId 会话所属用户，长期记忆按它隔离；匿名会话为 null
+     */
+    public GatewaySession(String sessionId, String connectionId, Instant createdAt, SessionState state, String ownerId) {
         this.sessionId = sessionId;
         this.connectionId = connectionId;
         this.createdAt = createdAt;
         this.state = state;
+        this.ownerId = ownerId;
     }
 
     public String getSessionId() {
@@ -32,6 +41,10 @@ public class GatewaySession {
         return createdAt;
     }
 
+    public String getOwnerId() {
+        return ownerId;
+    }
+
     public SessionState getState() {
         return state;
     }
@@ -7,6 +7,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -14,24 +15,38 @@ import java.util.concurrent.ConcurrentHashMap;
  * 业务 session 的内存态注册表。
  * 它和 ConnectionRegistry 配合工作：
  * ConnectionRegistry 管物理连接，SessionRegistry 管业务会话。
+ *
+ * 另外维护 connectionId -> sessionIds 的二级索引，断线清理只触及该连接自己的会话，
+ * 不随全局会话数增长；大批量重连时不会退化成平方级。
  */
 @Component
 public class InMemorySessionRegistry {
 
     private final ConnectionRegistry connectionRegistry;
     private final ConcurrentHashMap<String, GatewaySession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> sessionIdsByConnection = new ConcurrentHashMap<>();
 
     public InMemorySessionRegistry(ConnectionRegistry connectionRegistry) {
         this.connectionRegistry = connectionRegistry;
     }
 
     public GatewaySession create(String connectionId) {
+        return create(connectionId, null);
+    }
+
+    public GatewaySession create(String connectionId, String ownerId) {
         connectionRegistry.find(connectionId)
                 .orElseThrow(() -> new IllegalArgumentException("Unknown connection: " + connectionId));
 
         String sessionId = UUID.randomUUID().toString();
-        GatewaySession session = new GatewaySession(sessionId, connectionId, Instant.now(), SessionState.IDLE);
+        GatewaySession session = new GatewaySession(sessionId, connectionId, Instant.now(), SessionState.IDLE, ownerId);
         sessions.put(sessionId, session);
+        sessionIdsByConnection.compute(connectionId, (ignored, sessionIds) -> {
+            // 在 compute 内部 add，避免和 unindex 摘掉空集合交错后写进一个已脱离索引的集合
+            Set<String> indexed = sessionIds != null ? sessionIds : ConcurrentHashMap.newKeySet();
+            indexed.add(sessionId);
+            return indexed;
+        });
         connectionRegistry.bindSession(connectionId, sessionId);
         return session;
     }
@@ -41,23 +56,36 @@ public class InMemorySessionRegistry {
     }
 
     public List<GatewaySession> findByConnection(String connectionId) {
-        return sessions.values().stream()
-                .filter(session -> session.getConnectionId().equals(connectionId))
-                .toList();
+        Set<String> sessionIds = sessionIdsByConnection.get(connectionId);
+        if (sessionIds == null) {
+            return List.of();
+        }
+
+        List<GatewaySession> result = new ArrayList<>(sessionIds.size());
+        for (String sessionId : sessionIds) {
+            GatewaySession session = sessions.get(sessionId);
+            if (session != null) {
+                result.add(session);
+            }
+        }
+        return result;
     }
 
     public Optional<GatewaySession> remove(String sessionId) {
         GatewaySession removed = sessions.remove(sessionId);
         if (removed != null) {
+            unindex(removed.getConnectionId(), sessionId);
             connectionRegistry.unbindSession(removed.getConnectionId(), removed.getSessionId());
         }
         return Optional.ofNullable(removed);
     }
 
     public void removeAllByConnection(String connectionId) {
-        List<String> sessionIds = new ArrayList<>(findByConnection(connectionId).stream()
-                .map(GatewaySession::getSessionId)
-                .toList());
+        // 整个索引项一次摘掉；之后并发 create 的会话会落到新的索引项里，不会丢
+        Set<String> sessionIds = sessionIdsByConnection.remove(connectionId);
+        if (sessionIds == null) {
+            return;
+        }
 
         sessionIds.forEach(sessionId -> {
             GatewaySession removed = sessions.remove(sessionId);
@@ -70,4 +98,11 @@ public class InMemorySessionRegistry {
     public int size() {
         return sessions.size();
     }
+
+    private void unindex(String connectionId, String sessionId) {
+        sessionIdsByConnection.computeIfPresent(connectionId, (ignored, sessionIds) -> {
+            sessionIds.remove(sessionId);
+            return sessionIds.isEmpty() ? null : sessionIds;
+        });
+    }
 }
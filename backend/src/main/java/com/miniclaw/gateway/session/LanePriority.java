@@ -0,0 +1,18 @@
+package com.miniclaw.gateway.session;
+
+/**
+ * 同一会话排队任务的优先级，排在前面的先执行；同一优先级按提交顺序。
+ * 只决定排队中的任务谁先跑，不会打断正在执行的任务
+ */
+public enum LanePriority {
+
+    /**
+     * 系统任务（例如会话收尾、记忆整理），先于用户消息执行
+     */
+    SYSTEM,
+
+    /**
+     * 用户发起的 chat.send
+     */
+    USER
+}
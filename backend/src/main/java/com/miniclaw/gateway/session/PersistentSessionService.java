@@ -1,7 +1,10 @@
 package com.miniclaw.gateway.session;
 
+import com.miniclaw.config.GatewayProperties;
 import com.miniclaw.gateway.session.persistence.SessionEntity;
 import com.miniclaw.gateway.session.persistence.SessionEntityRepository;
+import com.miniclaw.gateway.session.persistence.SessionWriteBehindQueue;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
@@ -12,33 +15,76 @@ public class PersistentSessionService {
 
     private final InMemorySessionRegistry runtimeRegistry;
     private final SessionEntityRepository repository;
+    private final SessionWriteBehindQueue writeBehindQueue;
 
+    /**
+     * 同步写库（WRITE_THROUGH）
+     */
     public PersistentSessionService(InMemorySessionRegistry runtimeRegistry, SessionEntityRepository repository) {
+        this(runtimeRegistry, repository, null);
+    }
+
+    @Autowired
+    public PersistentSessionService(InMemorySessionRegistry runtimeRegistry,
+                                    SessionEntityRepository repository,
+                                    SessionWriteBehindQueue writeBehindQueue,
+                                    GatewayProperties properties) {
+        this(runtimeRegistry, repository,
+                properties.getPersistence().getMode() == SessionDurabilityMode.WRITE_BEHIND ? writeBehindQueue : null);
+    }
+
+    /**
+     * @param writeBehindQueue 为 null 时同步写库
+     */
+    PersistentSessionService(InMemorySessionRegistry runtimeRegistry,
+                             SessionEntityRepository repository,
+                             SessionWriteBehindQueue writeBehindQueue) {
         this.runtimeRegistry = runtimeRegistry;
         this.repository = repository;
+        this.writeBehindQueue = writeBehindQueue;
     }
 
     public GatewaySession create(String connectionId) {
-        GatewaySession session = runtimeRegistry.create(connectionId);
-        repository.save(toEntity(session));
+        return create(connectionId, null);
+    }
+
+    public GatewaySession create(String connectionId, String ownerId) {
+        GatewaySession session = runtimeRegistry.create(connectionId, ownerId);
+        persist(session);
         return session;
     }
 
     public Optional<GatewaySession> find(String sessionId) {
         return runtimeRegistry.find(sessionId)
+                .or(() -> findPending(sessionId))
                 .or(() -> repository.findById(sessionId).map(this::toDomain));
     }
 
     public GatewaySession save(GatewaySession session) {
-        repository.save(toEntity(session));
+        persist(session);
         return session;
     }
 
+    private void persist(GatewaySession session) {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.enqueue(toEntity(session));
+            return;
+        }
+        repository.save(toEntity(session));
+    }
+
+    private Optional<GatewaySession> findPending(String sessionId) {
+        if (writeBehindQueue == null) {
+            return Optional.empty();
+        }
+        return writeBehindQueue.findPending(sessionId).map(this::toDomain);
+    }
+
     private SessionEntity toEntity(GatewaySession session) {
         Instant closedAt = session.getState() == SessionState.CLOSED ? Instant.now() : null;
         return SessionEntity.builder()
                 .id(session.getSessionId())
-                .ownerId(null)
+                .ownerId(session.getOwnerId())
                 .title(null)
                 .status(session.getState())
                 .createdAt(session.getCreatedAt())
@@ -52,7 +98,8 @@ public class PersistentSessionService {
                 entity.getId(),
                 null,
                 entity.getCreatedAt(),
-                entity.getStatus()
+                entity.getStatus(),
+                entity.getOwnerId()
         );
     }
 }
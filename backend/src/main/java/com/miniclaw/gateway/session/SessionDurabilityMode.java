@@ -0,0 +1,18 @@
+package com.miniclaw.gateway.session;
+
+/**
+ * 会话状态落库方式
+ */
+public enum SessionDurabilityMode {
+
+    /**
+     * 每次状态变化同步写库，返回前已落盘
+     */
+    WRITE_THROUGH,
+
+    /**
+     * 状态变化先进内存队列，同一会话的多次变化合并后由后台线程批量写库；
+     * 进程崩溃时可能丢失最近一个刷写间隔内的状态变化
+     */
+    WRITE_BEHIND
+}
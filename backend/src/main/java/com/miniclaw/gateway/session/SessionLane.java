@@ -1,83 +1,276 @@
 package com.miniclaw.gateway.session;
 
+import com.miniclaw.config.GatewayProperties;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
 
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
+/**
+ * 按会话串行执行任务的通道。
+ * 同一会话的任务按优先级、再按提交顺序逐个执行；每个会话最多排队 max-queued-per-session 个任务，
+ * 超出时立即以 RATE_LIMITED 拒绝。同时在执行任务的会话数受 max-concurrent-lanes 限制，
+ * 拿不到名额的会话按 FIFO 等待，等待的会话也满了时以 BUSY 拒绝。
+ */
 @Component
 public class SessionLane {
 
     private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final GatewayProperties.Lane properties;
+    private final SessionLaneMetrics metrics;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 全局执行名额：持有名额的会话数，以及在等名额的会话。只在 permits 锁内读写
+     */
+    private final Object permits = new Object();
+    private final ArrayDeque<Lane> waitingLanes = new ArrayDeque<>();
+    private int runningLanes;
+
+    public SessionLane() {
+        this(new GatewayProperties(), new SessionLaneMetrics());
+    }
+
+    @Autowired
+    public SessionLane(GatewayProperties properties, SessionLaneMetrics metrics) {
+        this.properties = properties.getLane();
+        this.metrics = metrics;
+    }
 
     public <T> Mono<T> submit(String sessionId, Supplier<Mono<T>> taskSupplier) {
-        return Mono.create(sink -> lane(sessionId).enqueue(new LaneTask<>(taskSupplier, sink)));
+        return submit(sessionId, LanePriority.USER, taskSupplier);
+    }
+
+    /**
+     * 提交一个任务；被拒绝时返回的 Mono 以 {@link SessionLaneRejectedException} 立即失败
+     */
+    public <T> Mono<T> submit(String sessionId, LanePriority priority, Supplier<Mono<T>> taskSupplier) {
+        return Mono.create(sink -> {
+            LaneTask<T> task = new LaneTask<>(taskSupplier, sink, priority, sequence.getAndIncrement());
+            sink.onCancel(() -> {
+                task.cancel();
+                withdraw(sessionId, task);
+            });
+            enqueue(sessionId, task);
+        });
+    }
+
+    private void enqueue(String sessionId, LaneTask<?> task) {
+        // 拿到的通道恰好刚空闲退出时重新取一个
+        while (!lanes.computeIfAbsent(sessionId, Lane::new).offer(task)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 排队中的任务被取消时立即移出队列，不再占用会话的排队名额
+     */
+    private void withdraw(String sessionId, LaneTask<?> task) {
+        Lane lane = lanes.get(sessionId);
+        if (lane != null) {
+            lane.remove(task);
+        }
+    }
+
+    private Admission admit(Lane lane) {
+        synchronized (permits) {
+            int maxConcurrent = properties.getMaxConcurrentLanes();
+            if (maxConcurrent <= 0 || runningLanes < maxConcurrent) {
+                runningLanes++;
+                metrics.updateLanes(runningLanes, waitingLanes.size());
+                return Admission.RUN;
+            }
+            int maxWaiting = properties.getMaxWaitingLanes();
+            if (maxWaiting > 0 && waitingLanes.size() >= maxWaiting) {
+                return Admission.BUSY;
+            }
+            waitingLanes.add(lane);
+            metrics.updateLanes(runningLanes, waitingLanes.size());
+            return Admission.WAIT;
+        }
+    }
+
+    /**
+     * 会话的任务都跑完后交还执行名额；有会话在等时名额直接交给等待最久的那个
+     */
+    private void release() {
+        Lane next;
+        synchronized (permits) {
+            next = waitingLanes.poll();
+            if (next == null) {
+                runningLanes--;
+            }
+            metrics.updateLanes(runningLanes, waitingLanes.size());
+        }
+        if (next != null) {
+            next.runNext();
+        }
     }
 
-    private Lane lane(String sessionId) {
-        return lanes.computeIfAbsent(sessionId, ignored -> new Lane(sessionId));
+    private enum Admission {
+        RUN,
+        WAIT,
+        BUSY
     }
 
     private final class Lane {
 
         private final String sessionId;
-        private final ConcurrentLinkedQueue<LaneTask<?>> queue = new ConcurrentLinkedQueue<>();
-        private final AtomicBoolean running = new AtomicBoolean(false);
+        private final PriorityQueue<LaneTask<?>> queue = new PriorityQueue<>(LaneTask.ORDER);
+
+        /**
+         * 持有或正在等待执行名额
+         */
+        private boolean active;
+
+        /**
+         * 已经从 lanes 中移除，之后提交的任务进新的通道
+         */
+        private boolean retired;
 
         private Lane(String sessionId) {
             this.sessionId = sessionId;
         }
 
-        private void enqueue(LaneTask<?> task) {
-            queue.add(task);
-            drain();
+        /**
+         * @return 通道已退出时为 false，调用方需要重新取通道
+         */
+        private boolean offer(LaneTask<?> task) {
+            String rejectedCode = null;
+            String rejectedMessage = null;
+            boolean start = false;
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                int maxQueued = properties.getMaxQueuedPerSession();
+                if (maxQueued > 0 && queue.size() >= maxQueued) {
+                    rejectedCode = SessionLaneRejectedException.RATE_LIMITED;
+                    rejectedMessage = "Session " + sessionId + " already has " + queue.size() + " queued tasks";
+                } else if (!active) {
+                    Admission admission = admit(this);
+                    if (admission == Admission.BUSY) {
+                        rejectedCode = SessionLaneRejectedException.BUSY;
+                        rejectedMessage = "Gateway is busy, too many sessions are waiting to run";
+                        retire();
+                    } else {
+                        active = true;
+                        start = admission == Admission.RUN;
+                    }
+                }
+                if (rejectedCode == null) {
+                    queue.add(task);
+                    metrics.recordEnqueued(queue.size());
+                }
+            }
+
+            if (rejectedCode != null) {
+                metrics.recordRejected(rejectedCode);
+                task.reject(new SessionLaneRejectedException(rejectedCode, rejectedMessage));
+            } else if (start) {
+                runNext();
+            }
+            return true;
         }
 
-        private void drain() {
-            if (!running.compareAndSet(false, true)) {
-                return;
+        private synchronized void remove(LaneTask<?> task) {
+            if (queue.remove(task)) {
+                metrics.recordDequeued();
             }
-            runNext();
         }
 
         private void runNext() {
-            LaneTask<?> task = queue.poll();
-            if (task == null) {
-                running.set(false);
-                if (queue.isEmpty()) {
-                    lanes.remove(sessionId, this);
-                    return;
+            LaneTask<?> task;
+            synchronized (this) {
+                task = queue.poll();
+                // 排队期间已被取消的任务直接跳过
+                while (task != null && task.isCancelled()) {
+                    metrics.recordDequeued();
+                    task = queue.poll();
+                }
+                if (task != null) {
+                    metrics.recordDequeued();
+                } else {
+                    active = false;
+                    retire();
                 }
-                drain();
+            }
+            if (task == null) {
+                release();
                 return;
             }
 
+            metrics.recordStarted(System.nanoTime() - task.submittedAt);
             task.execute()
                     .doFinally(ignored -> runNext())
                     .subscribe();
         }
+
+        /**
+         * 调用方持有当前通道的锁
+         */
+        private void retire() {
+            if (queue.isEmpty() && !active) {
+                retired = true;
+                lanes.remove(sessionId, this);
+            }
+        }
     }
 
+    /**
+     * 订阅方取消时，排队中的任务不再执行；执行中的任务取消内部订阅（例如 LLM 流），
+     * 并立即让出通道给下一个任务
+     */
     private static final class LaneTask<T> {
 
+        private static final Comparator<LaneTask<?>> ORDER = Comparator
+                .<LaneTask<?>, LanePriority>comparing(task -> task.priority)
+                .thenComparingLong(task -> task.sequence);
+
         private final Supplier<Mono<T>> taskSupplier;
         private final MonoSink<T> sink;
+        private final LanePriority priority;
+        private final long sequence;
+        private final long submittedAt = System.nanoTime();
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private final Sinks.Empty<Void> cancellation = Sinks.empty();
 
-        private LaneTask(Supplier<Mono<T>> taskSupplier, MonoSink<T> sink) {
+        private LaneTask(Supplier<Mono<T>> taskSupplier, MonoSink<T> sink, LanePriority priority, long sequence) {
             this.taskSupplier = taskSupplier;
             this.sink = sink;
+            this.priority = priority != null ? priority : LanePriority.USER;
+            this.sequence = sequence;
         }
 
         private Mono<Void> execute() {
             return Mono.defer(taskSupplier)
+                    .takeUntilOther(cancellation.asMono())
                     .doOnSuccess(sink::success)
                     .doOnError(sink::error)
                     .onErrorResume(ignored -> Mono.empty())
                     .then();
         }
+
+        private void reject(SessionLaneRejectedException rejection) {
+            sink.error(rejection);
+        }
+
+        private void cancel() {
+            cancelled.set(true);
+            cancellation.tryEmitEmpty();
+        }
+
+        private boolean isCancelled() {
+            return cancelled.get();
+        }
     }
 }
@@ -0,0 +1,90 @@
+package com.miniclaw.gateway.session;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所有会话通道的汇总指标：排队深度、排队等待时间、拒绝次数和全局执行名额占用。
+ */
+@Component
+public class SessionLaneMetrics {
+
+    private final LongAdder queuedTasks = new LongAdder();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LongAdder startedTasks = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder rateLimitedTasks = new LongAdder();
+    private final LongAdder busyRejections = new LongAdder();
+    private final AtomicInteger runningLanes = new AtomicInteger();
+    private final AtomicInteger waitingLanes = new AtomicInteger();
+
+    void recordEnqueued(int depth) {
+        queuedTasks.increment();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    void recordDequeued() {
+        queuedTasks.decrement();
+    }
+
+    void recordStarted(long waitNanos) {
+        startedTasks.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    void recordRejected(String code) {
+        if (SessionLaneRejectedException.RATE_LIMITED.equals(code)) {
+            rateLimitedTasks.increment();
+        } else {
+            busyRejections.increment();
+        }
+    }
+
+    void updateLanes(int running, int waiting) {
+        runningLanes.set(running);
+        waitingLanes.set(waiting);
+    }
+
+    public long getQueuedTasks() {
+        return queuedTasks.sum();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getStartedTasks() {
+        return startedTasks.sum();
+    }
+
+    public long getAverageWaitMillis() {
+        long started = startedTasks.sum();
+        return started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum() / started);
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public long getRateLimitedTasks() {
+        return rateLimitedTasks.sum();
+    }
+
+    public long getBusyRejections() {
+        return busyRejections.sum();
+    }
+
+    public int getRunningLanes() {
+        return runningLanes.get();
+    }
+
+    public int getWaitingLanes() {
+        return waitingLanes.get();
+    }
+}
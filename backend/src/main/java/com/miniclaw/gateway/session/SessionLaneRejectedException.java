@@ -0,0 +1,23 @@
+package com.miniclaw.gateway.session;
+
+/**
+ * SessionLane 拒绝接收任务：会话排队已满（RATE_LIMITED）或全局执行名额和等待队列都已占满（BUSY）。
+ * 在任务入队时立即抛出，调用方直接按 code 返回错误帧
+ */
+public class SessionLaneRejectedException extends RuntimeException {
+
+    public static final String RATE_LIMITED = "RATE_LIMITED";
+
+    public static final String BUSY = "BUSY";
+
+    private final String code;
+
+    public SessionLaneRejectedException(String code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
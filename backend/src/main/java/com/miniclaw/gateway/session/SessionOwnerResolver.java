@@ -0,0 +1,20 @@
+package com.miniclaw.gateway.session;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import reactor.core.publisher.Mono;
+
+/**
+ * 决定 session.create 创建的会话属于哪个用户
+ *
+ * 长期记忆按 ownerId 隔离，所以 ownerId 必须来自服务端可信的来源（握手认证、网关注入的身份等），
+ * 不能直接取客户端提交的值。接入自己的认证体系时，提供一个实现并标注 {@code @Primary} 替换默认实现。
+ */
+public interface SessionOwnerResolver {
+
+    /**
+     * @param connectionId 发起 session.create 的连接
+     * @param payload      session.create 的 payload，可能为 null
+     * @return 会话所属用户；为空时创建匿名会话
+     */
+    Mono<String> resolve(String connectionId, JsonNode payload);
+}
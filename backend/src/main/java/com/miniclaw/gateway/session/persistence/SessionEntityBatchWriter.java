@@ -0,0 +1,59 @@
+package com.miniclaw.gateway.session.persistence;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 会话行的 JDBC 批量 upsert
+ *
+ * 不走 JPA merge：merge 对每个实体先 SELECT 再决定 INSERT/UPDATE，批量写时每行多一次往返。
+ * 这里一条 INSERT ... ON CONFLICT 语句按批发送，配合 reWriteBatchedInserts 一个批次一次往返。
+ */
+@Component
+public class SessionEntityBatchWriter {
+
+    /**
+     * updated_at 更旧的写入不覆盖已有行，避免乱序刷写把状态写回去
+     */
+    private static final String UPSERT_SQL = """
+            INSERT INTO sessions (id, owner_id, title, status, created_at, updated_at, closed_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (id) DO UPDATE SET
+                owner_id = EXCLUDED.owner_id,
+                title = EXCLUDED.title,
+                status = EXCLUDED.status,
+                updated_at = EXCLUDED.updated_at,
+                closed_at = EXCLUDED.closed_at
+            WHERE sessions.updated_at <= EXCLUDED.updated_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SessionEntityBatchWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void upsert(List<SessionEntity> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(UPSERT_SQL, entities, entities.size(), (statement, entity) -> {
+            statement.setString(1, entity.getId());
+            statement.setString(2, entity.getOwnerId());
+            statement.setString(3, entity.getTitle());
+            statement.setString(4, entity.getStatus().name());
+            statement.setTimestamp(5, toTimestamp(entity.getCreatedAt()));
+            statement.setTimestamp(6, toTimestamp(entity.getUpdatedAt()));
+            statement.setTimestamp(7, toTimestamp(entity.getClosedAt()));
+        });
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
+    }
+}
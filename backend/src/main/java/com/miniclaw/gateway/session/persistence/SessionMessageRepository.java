@@ -0,0 +1,14 @@
+package com.miniclaw.gateway.session.persistence;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface SessionMessageRepository extends JpaRepository<SessionMessageEntity, Long> {
+
+    /**
+     * 按 seq 倒序取会话最近的若干条消息
+     */
+    List<SessionMessageEntity> findBySessionIdOrderBySeqDesc(String sessionId, Pageable pageable);
+}
@@ -0,0 +1,175 @@
+package com.miniclaw.gateway.session.persistence;
+
+import com.miniclaw.config.GatewayProperties;
+import com.miniclaw.gateway.session.SessionDurabilityMode;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话状态的写后（write-behind）队列
+ *
+ * 一次 chat.send 至少有 RUNNING、IDLE 两次状态变化，同步写库会在响应式链路里阻塞线程等 PostgreSQL。
+ * 这里按 sessionId 只保留最新状态：同一会话在一个刷写间隔内的多次变化合并成一行，
+ * 由专用线程按批 upsert，调用方只做一次 Map 写入。
+ *
+ * 刷写失败的行会放回队列（不覆盖期间产生的更新状态），下个间隔重试。
+ *
+ * 定时刷写在 {@link #start()} 里启动，而不是在构造器里，避免把还没构造完的对象交给刷写线程。
+ */
+@Slf4j
+@Component
+public class SessionWriteBehindQueue implements DisposableBean {
+
+    private final SessionEntityBatchWriter writer;
+    private final GatewayProperties.Persistence settings;
+    private final Scheduler scheduler;
+    private final ConcurrentHashMap<String, SessionEntity> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile Disposable periodicFlush;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    @Autowired
+    public SessionWriteBehindQueue(SessionEntityBatchWriter writer, GatewayProperties properties) {
+        this(writer, properties.getPersistence(), Schedulers.newSingle("session-write-behind", true));
+    }
+
+    SessionWriteBehindQueue(SessionEntityBatchWriter writer, GatewayProperties.Persistence settings, Scheduler scheduler) {
+        this.writer = writer;
+        this.settings = settings;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * WRITE_BEHIND 模式下启动定时刷写；重复调用无效
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (settings.getMode() != SessionDurabilityMode.WRITE_BEHIND || periodicFlush != null) {
+            return;
+        }
+        long interval = Math.max(1, settings.getFlushIntervalMillis());
+        periodicFlush = scheduler.schedulePeriodically(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 放入一个会话的最新状态；同一会话尚未刷写的旧状态直接被替换
+     */
+    public void enqueue(SessionEntity entity) {
+        enqueued.increment();
+        if (pending.put(entity.getId(), entity) != null) {
+            coalesced.increment();
+        }
+
+        if (pending.size() >= batchSize() && flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 读取还没刷到数据库的最新状态，保证写后读一致
+     */
+    public Optional<SessionEntity> findPending(String sessionId) {
+        return Optional.ofNullable(pending.get(sessionId));
+    }
+
+    /**
+     * 把当前积压全部写库；正常由专用线程调用，关闭时同步调用一次
+     */
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<SessionEntity> batch = new ArrayList<>(Math.min(pending.size(), batchSize()));
+        for (String sessionId : pending.keySet()) {
+            SessionEntity entity = pending.remove(sessionId);
+            if (entity == null) {
+                continue;
+            }
+            batch.add(entity);
+            if (batch.size() >= batchSize()) {
+                write(batch);
+                batch = new ArrayList<>(batchSize());
+            }
+        }
+        write(batch);
+    }
+
+    @Override
+    public void destroy() {
+        Disposable flushTask = periodicFlush;
+        if (flushTask != null) {
+            flushTask.dispose();
+        }
+        flush();
+        scheduler.dispose();
+    }
+
+    public int getPendingSessions() {
+        return pending.size();
+    }
+
+    public long getEnqueuedUpdates() {
+        return enqueued.sum();
+    }
+
+    public long getCoalescedUpdates() {
+        return coalesced.sum();
+    }
+
+    public long getWrittenRows() {
+        return written.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    private void write(List<SessionEntity> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            writer.upsert(batch);
+            written.add(batch.size());
+            batches.increment();
+        } catch (RuntimeException exception) {
+            failedBatches.increment();
+            // 期间同一会话若有更新的状态，保留更新的那个
+            batch.forEach(entity -> pending.putIfAbsent(entity.getId(), entity));
+            log.warn("Session write-behind flush failed, will retry: rows={}, message={}",
+                    batch.size(), exception.getMessage());
+        }
+    }
+
+    private int batchSize() {
+        return Math.max(1, settings.getBatchSize());
+    }
+}
@@ -53,14 +53,15 @@ public class GatewayWebSocketHandler implements WebSocketHandler {
         ConnectionContext connection = connectionRegistry.register(session);
         log.info("Gateway websocket connected: connectionId={}", connection.getConnectionId());
 
+        // 客户端一断开就取消进行中的请求，不等 flatMap 里的 chat.send 自己跑完
         Mono<Void> inbound = session.receive()
+                .doFinally(signalType -> connection.cancelInFlightRequests("connection closed"))
                 .filter(message -> message.getType() == WebSocketMessage.Type.TEXT)
                 .flatMap(message -> handleInboundText(connection.getConnectionId(), message.getPayloadAsText()))
                 .then();
 
         Mono<Void> outbound = session.send(
-                outboundDispatcher.outboundJson(connection.getConnectionId())
-                        .map(session::textMessage)
+                outboundDispatcher.outboundMessages(connection.getConnectionId(), session.bufferFactory())
         );
 
         return Mono.when(inbound, outbound)
@@ -0,0 +1,170 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.config.LlmProperties;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个 Provider 的 AIMD 并发上限
+ *
+ * 在途请求达到上限时按 FIFO 排队，最多等待给定时长，有请求结束时依次放行；等不到才拒绝。
+ * 成功返回且获取许可时并发已用到上限一半以上，上限加 1（加性增）；
+ * 上游过载（限流、5xx、超时）时上限乘以 backoffRatio（乘性减），并限制在 [minLimit, maxLimit] 内。
+ * 上限长期用不满时不再增长，避免空闲一段时间后突然放出大量并发。
+ */
+class AdaptiveConcurrencyLimiter {
+
+    private final LlmProperties.ConcurrencyLimit settings;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+
+    AdaptiveConcurrencyLimiter(LlmProperties.ConcurrencyLimit settings) {
+        this.settings = settings;
+        this.limit = clamp(settings.getInitialLimit());
+    }
+
+    /**
+     * @return 获取许可时的在途请求数（含本次）；达到上限时返回 -1
+     */
+    synchronized int tryAcquire() {
+        if (inFlight >= (int) limit || !waiters.isEmpty()) {
+            return -1;
+        }
+        return ++inFlight;
+    }
+
+    /**
+     * 获取许可，达到上限时最多排队 maxWait
+     *
+     * @return 获取许可时的在途请求数（含本次）；等待超时或 maxWait 为 0 时为空
+     */
+    Mono<Integer> acquire(Duration maxWait) {
+        return Mono.defer(() -> {
+            Waiter waiter;
+            synchronized (this) {
+                int acquired = tryAcquire();
+                if (acquired > 0) {
+                    return Mono.just(acquired);
+                }
+                if (maxWait.isZero() || maxWait.isNegative()) {
+                    return Mono.empty();
+                }
+                waiter = new Waiter();
+                waiters.addLast(waiter);
+            }
+            return waiter.slot.asMono()
+                    .timeout(maxWait, Mono.fromRunnable(() -> abandon(waiter)))
+                    .doOnNext(ignored -> waiter.claimed = true)
+                    .doOnCancel(() -> abandon(waiter));
+        });
+    }
+
+    void onSuccess(int inFlightAtAcquire) {
+        List<Waiter> granted;
+        synchronized (this) {
+            inFlight--;
+            if (inFlightAtAcquire * 2 >= (int) limit) {
+                limit = clamp(limit + 1);
+            }
+            granted = grantWaiters();
+        }
+        wake(granted);
+    }
+
+    void onOverload() {
+        List<Waiter> granted;
+        synchronized (this) {
+            inFlight--;
+            limit = clamp(limit * settings.getBackoffRatio());
+            granted = grantWaiters();
+        }
+        wake(granted);
+    }
+
+    void onIgnored() {
+        List<Waiter> granted;
+        synchronized (this) {
+            inFlight--;
+            granted = grantWaiters();
+        }
+        wake(granted);
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int waiting() {
+        return waiters.size();
+    }
+
+    /**
+     * 等待超时或被取消：还在排队就移出队列；名额已经分到但没被取走时交还
+     */
+    private void abandon(Waiter waiter) {
+        List<Waiter> granted;
+        synchronized (this) {
+            if (!waiter.granted) {
+                waiters.remove(waiter);
+                return;
+            }
+            if (waiter.claimed || waiter.returned) {
+                return;
+            }
+            waiter.returned = true;
+            inFlight--;
+            granted = grantWaiters();
+        }
+        wake(granted);
+    }
+
+    /**
+     * 调用方持有锁；在锁外通知分到名额的等待者
+     */
+    private List<Waiter> grantWaiters() {
+        List<Waiter> granted = List.of();
+        while (inFlight < (int) limit && !waiters.isEmpty()) {
+            Waiter waiter = waiters.pollFirst();
+            waiter.granted = true;
+            waiter.inFlightAtAcquire = ++inFlight;
+            if (granted.isEmpty()) {
+                granted = new ArrayList<>();
+            }
+            granted.add(waiter);
+        }
+        return granted;
+    }
+
+    private static void wake(List<Waiter> granted) {
+        for (Waiter waiter : granted) {
+            waiter.slot.tryEmitValue(waiter.inFlightAtAcquire);
+        }
+    }
+
+    private double clamp(double value) {
+        int min = Math.max(1, settings.getMinLimit());
+        return Math.max(min, Math.min(Math.max(min, settings.getMaxLimit()), value));
+    }
+
+    /**
+     * 排队中的请求；granted / returned 只在限流器的锁内读写
+     */
+    private static final class Waiter {
+        private final Sinks.One<Integer> slot = Sinks.one();
+        private boolean granted;
+        private boolean returned;
+        private int inFlightAtAcquire;
+        private volatile boolean claimed;
+    }
+}
@@ -0,0 +1,269 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.config.LlmProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 应用内统一使用的 {@link EmbeddingClient}
+ *
+ * 在真正的后端（上游 /embeddings 或 {@link LocalEmbeddingClient}）前面做三件事：
+ * 1. 按内容哈希（模型 + 文本的 SHA-256）缓存向量，重复文本不再计算
+ * 2. 同一文本已在等待或计算中时直接复用那一次的结果，不重复提交
+ * 3. 并发到来的不同文本合并成一批：攒满 maxBatchSize 条立即发出，
+ *    否则在第一条进入后 batchWindowMillis 发出
+ *
+ * 返回的向量是副本，调用方可以随意修改。
+ */
+@Slf4j
+@Component
+public class BatchingEmbeddingClient implements EmbeddingClient {
+
+    private final EmbeddingClient backend;
+    private final LlmProperties.Embedding settings;
+    private final Scheduler timer;
+    private final LinkedHashMap<String, float[]> cache;
+
+    private final Object lock = new Object();
+    private final Map<String, Pending> inFlight = new HashMap<>();
+    private List<Pending> batch = new ArrayList<>();
+    private Disposable scheduledFlush;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder backendTexts = new LongAdder();
+
+    @Autowired
+    public BatchingEmbeddingClient(OpenAiCompatibleLlmClient llmClient, LlmProperties properties, ObjectMapper objectMapper) {
+        this(backendFor(llmClient, properties, objectMapper), properties.getEmbedding());
+    }
+
+    public BatchingEmbeddingClient(EmbeddingClient backend, LlmProperties.Embedding settings) {
+        this(backend, settings, Schedulers.parallel());
+    }
+
+    BatchingEmbeddingClient(EmbeddingClient backend, LlmProperties.Embedding settings, Scheduler timer) {
+        this.backend = backend;
+        this.settings = settings;
+        this.timer = timer;
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > Math.max(0, settings.getCacheMaxEntries());
+            }
+        };
+    }
+
+    @Override
+    public Mono<List<float[]>> embedAll(List<String> texts) {
+        if (texts.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        if (texts.size() == 1) {
+            return embed(texts.get(0)).map(List::of);
+        }
+
+        List<Mono<float[]>> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embed(text));
+        }
+        return Mono.zip(vectors, results -> {
+            List<float[]> ordered = new ArrayList<>(results.length);
+            for (Object result : results) {
+                ordered.add((float[]) result);
+            }
+            return ordered;
+        });
+    }
+
+    @Override
+    public Mono<float[]> embed(String text) {
+        return Mono.defer(() -> {
+            requests.increment();
+            String key = keyOf(text);
+
+            Pending pending;
+            List<Pending> ready = null;
+            synchronized (lock) {
+                float[] cached = cache.get(key);
+                if (cached != null) {
+                    cacheHits.increment();
+                    return Mono.just(cached.clone());
+                }
+
+                pending = inFlight.get(key);
+                if (pending != null) {
+                    deduplicated.increment();
+                } else {
+                    pending = new Pending(key, text);
+                    inFlight.put(key, pending);
+                    batch.add(pending);
+                    if (batch.size() >= Math.max(1, settings.getMaxBatchSize()) || settings.getBatchWindowMillis() <= 0) {
+                        ready = takeBatch();
+                    } else if (batch.size() == 1) {
+                        List<Pending> scheduledBatch = batch;
+                        scheduledFlush = timer.schedule(() -> flushScheduled(scheduledBatch),
+                                settings.getBatchWindowMillis(), TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+
+            if (ready != null) {
+                send(ready);
+            }
+            return pending.result.asMono().map(float[]::clone);
+        });
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * 与正在等待或计算中的相同文本合并的次数
+     */
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * 实际交给后端计算的文本条数
+     */
+    public long getBackendTexts() {
+        return backendTexts.sum();
+    }
+
+    private void flushScheduled(List<Pending> scheduledBatch) {
+        List<Pending> ready;
+        synchronized (lock) {
+            // 这一批已经因为攒满被发出，定时器来晚了
+            if (batch != scheduledBatch) {
+                return;
+            }
+            ready = takeBatch();
+        }
+        send(ready);
+    }
+
+    /**
+     * 调用方持有 lock
+     */
+    private List<Pending> takeBatch() {
+        List<Pending> ready = batch;
+        batch = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.dispose();
+            scheduledFlush = null;
+        }
+        return ready;
+    }
+
+    private void send(List<Pending> ready) {
+        batches.increment();
+        backendTexts.add(ready.size());
+
+        List<String> texts = new ArrayList<>(ready.size());
+        for (Pending pending : ready) {
+            texts.add(pending.text);
+        }
+
+        backend.embedAll(texts).subscribe(
+                vectors -> complete(ready, vectors),
+                error -> fail(ready, error)
+        );
+    }
+
+    private void complete(List<Pending> ready, List<float[]> vectors) {
+        if (vectors.size() != ready.size()) {
+            fail(ready, new LlmException(LlmErrorType.INVALID_RESPONSE, false, null,
+                    "Embedding backend returned " + vectors.size() + " vectors for " + ready.size() + " texts"));
+            return;
+        }
+
+        synchronized (lock) {
+            for (int i = 0; i < ready.size(); i++) {
+                cache.put(ready.get(i).key, vectors.get(i));
+                inFlight.remove(ready.get(i).key);
+            }
+        }
+        for (int i = 0; i < ready.size(); i++) {
+            ready.get(i).result.tryEmitValue(vectors.get(i));
+        }
+    }
+
+    private void fail(List<Pending> ready, Throwable error) {
+        log.warn("Embedding batch failed: size={}, message={}", ready.size(), error.getMessage());
+        synchronized (lock) {
+            for (Pending pending : ready) {
+                inFlight.remove(pending.key);
+            }
+        }
+        for (Pending pending : ready) {
+            pending.result.tryEmitError(error);
+        }
+    }
+
+    private String keyOf(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(settings.getModel()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static EmbeddingClient backendFor(OpenAiCompatibleLlmClient llmClient,
+                                              LlmProperties properties,
+                                              ObjectMapper objectMapper) {
+        LlmProperties.Embedding settings = properties.getEmbedding();
+        if (settings.getBackend() == EmbeddingBackend.LOCAL) {
+            int dimensions = settings.getDimensions() > 0 ? settings.getDimensions() : 1024;
+            log.info("Using local embedding backend: dimensions={}", dimensions);
+            return new LocalEmbeddingClient(dimensions);
+        }
+        return new OpenAiCompatibleEmbeddingClient(llmClient, properties, objectMapper);
+    }
+
+    private static final class Pending {
+        private final String key;
+        private final String text;
+        private final Sinks.One<float[]> result = Sinks.one();
+
+        private Pending(String key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+}
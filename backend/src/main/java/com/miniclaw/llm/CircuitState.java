@@ -0,0 +1,10 @@
+package com.miniclaw.llm;
+
+/**
+ * Provider 熔断器状态
+ */
+public enum CircuitState {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+}
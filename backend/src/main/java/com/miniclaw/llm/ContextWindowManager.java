@@ -0,0 +1,108 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.llm.model.LlmRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上下文窗口裁剪
+ *
+ * 消息总量超过模型预算时，保留开头的 system 消息和最近的对话，按轮次丢弃最早的历史：
+ * 裁剪点尽量落在 user 消息上，不留下缺少前文的 assistant 回复或 tool 结果。
+ * 最后一条消息（本轮输入）总是保留，即使它自己就超出预算，交给上游返回明确的错误。
+ *
+ * 裁剪带滞回：超出预算时一次裁到预算的 {@link #LOW_WATERMARK_RATIO}，之后几轮历史继续增长，
+ * 只要没有再次超出预算，保留的第一条消息就不变，Provider 的前缀缓存可以持续命中。
+ * 如果每轮只丢掉刚好够用的几条，请求开头每轮都在移动，前缀缓存每轮都会失效。
+ *
+ * 裁剪点不保存状态，而是从列表开头按轮次重放得出：同一段历史每次算出的裁剪点相同，
+ * 因此要求调用方每轮传入的历史开头保持稳定（见 ConversationHistoryService 的成块淘汰）。
+ * 每条消息的 token 数由 {@link TokenEstimator} 按文本缓存，每轮只需要扫描新增的消息。
+ */
+@Slf4j
+class ContextWindowManager {
+
+    /**
+     * 超出预算时裁到的低水位，相对扣除 system 消息后的预算
+     */
+    static final double LOW_WATERMARK_RATIO = 0.75;
+
+    private final TokenEstimator estimator;
+
+    ContextWindowManager(TokenEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    /**
+     * @param budget 可用于输入消息的 token 数；不大于 0 表示不裁剪
+     * @return 不需要裁剪时返回原列表
+     */
+    List<LlmRequest.Message> fit(List<LlmRequest.Message> messages, int budget) {
+        if (budget <= 0 || messages == null || messages.size() < 2) {
+            return messages;
+        }
+
+        int size = messages.size();
+        int systemCount = 0;
+        int systemTokens = 0;
+        while (systemCount < size - 1 && "system".equals(messages.get(systemCount).getRole())) {
+            systemTokens += estimator.estimate(messages.get(systemCount));
+            systemCount++;
+        }
+
+        // prefix[i]：system 之后到第 i 条（不含）的 token 数
+        int[] prefix = new int[size + 1];
+        for (int i = systemCount; i < size; i++) {
+            prefix[i + 1] = prefix[i] + estimator.estimate(messages.get(i));
+        }
+
+        int historyBudget = budget - systemTokens;
+        if (prefix[size] <= historyBudget) {
+            return messages;
+        }
+
+        // 按轮次重放：每一轮以 user 消息结束时检查一次，只有超出预算才把裁剪点往后移到低水位
+        int lowWatermark = (int) (Math.max(0, historyBudget) * LOW_WATERMARK_RATIO);
+        int start = systemCount;
+        for (int end = systemCount + 1; end <= size; end++) {
+            if (end < size && !isUser(messages.get(end - 1))) {
+                continue;
+            }
+            if (prefix[end] - prefix[start] > historyBudget) {
+                start = cut(messages, prefix, start, end, lowWatermark);
+            }
+        }
+
+        List<LlmRequest.Message> fitted = new ArrayList<>(systemCount + size - start);
+        fitted.addAll(messages.subList(0, systemCount));
+        fitted.addAll(messages.subList(start, size));
+
+        log.debug("Trimmed conversation to fit context budget: budget={}, dropped={}, kept={}",
+                budget, start - systemCount, fitted.size());
+        return fitted;
+    }
+
+    /**
+     * 在 [start, end) 里找新的裁剪点：剩余部分不超过低水位，并对齐到 user 消息
+     */
+    private static int cut(List<LlmRequest.Message> messages, int[] prefix, int start, int end, int lowWatermark) {
+        int last = end - 1;
+        int target = Math.min(start + 1, last);
+        while (target < last && prefix[end] - prefix[target] > lowWatermark) {
+            target++;
+        }
+        for (int turn = target; turn <= last; turn++) {
+            if (isUser(messages.get(turn))) {
+                return turn;
+            }
+        }
+        // 低水位内没有完整的轮次（例如一长串工具调用），退回到按消息裁剪
+        return target;
+    }
+
+    private static boolean isUser(LlmRequest.Message message) {
+        return "user".equals(message.getRole());
+    }
+}
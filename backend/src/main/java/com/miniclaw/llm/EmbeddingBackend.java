@@ -0,0 +1,17 @@
+package com.miniclaw.llm;
+
+/**
+ * Embedding 的计算后端
+ */
+public enum EmbeddingBackend {
+
+    /**
+     * 调用 Provider 的 OpenAI 兼容 /embeddings 接口
+     */
+    REMOTE,
+
+    /**
+     * 进程内的确定性哈希向量，不访问网络；只保留字面相似度，不代表语义
+     */
+    LOCAL
+}
@@ -0,0 +1,25 @@
+package com.miniclaw.llm;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 文本向量化接口
+ *
+ * 语义缓存、记忆检索都只依赖这个接口，测试里可以直接用 lambda 实现。
+ */
+public interface EmbeddingClient {
+
+    /**
+     * 单条文本的向量
+     */
+    default Mono<float[]> embed(String text) {
+        return embedAll(List.of(text)).map(vectors -> vectors.get(0));
+    }
+
+    /**
+     * 批量向量化，返回顺序与输入一致
+     */
+    Mono<List<float[]>> embedAll(List<String> texts);
+}
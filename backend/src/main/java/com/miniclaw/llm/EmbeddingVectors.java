@@ -0,0 +1,69 @@
+package com.miniclaw.llm;
+
+/**
+ * Embedding 向量的工具方法
+ *
+ * 向量检索统一用归一化后的向量：余弦相似度等于点积。
+ * pgvector 的值以文本字面量 "[x,y,...]" 传递，不引入 pgvector 的 JDBC 类型依赖。
+ */
+public final class EmbeddingVectors {
+
+    private EmbeddingVectors() {
+    }
+
+    /**
+     * @return 新数组；零向量原样复制
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += (double) value * value;
+        }
+        if (norm == 0) {
+            return vector.clone();
+        }
+
+        float scale = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    public static double dot(float[] left, float[] right) {
+        double sum = 0;
+        for (int i = 0; i < left.length; i++) {
+            sum += (double) left[i] * right[i];
+        }
+        return sum;
+    }
+
+    public static String toPgVector(float[] vector) {
+        StringBuilder literal = new StringBuilder(vector.length * 10 + 2).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(vector[i]);
+        }
+        return literal.append(']').toString();
+    }
+
+    public static float[] parsePgVector(String literal) {
+        String body = literal.trim();
+        if (body.startsWith("[")) {
+            body = body.substring(1, body.length() - 1);
+        }
+        if (body.isBlank()) {
+            return new float[0];
+        }
+
+        String[] parts = body.split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i].trim());
+        }
+        return vector;
+    }
+}
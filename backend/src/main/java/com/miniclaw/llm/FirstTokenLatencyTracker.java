@@ -0,0 +1,56 @@
+package com.miniclaw.llm;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 Provider 保存最近的首 token 延迟样本，用于计算对冲等待时间
+ *
+ * 每个 Provider 一个固定大小的环形缓冲区，只反映最近一段时间的延迟分布。
+ * 被对冲取消的主请求按取消时已等待的时间记一个样本（真实延迟的下界），
+ * 避免慢请求总被取消而让分位数越来越低。
+ */
+class FirstTokenLatencyTracker {
+
+    static final int WINDOW_SIZE = 256;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    void record(String providerId, long nanos) {
+        windows.computeIfAbsent(providerId, ignored -> new Window()).add(nanos);
+    }
+
+    /**
+     * @return 最近样本的分位数（纳秒）；样本数少于 minSamples 时返回 -1
+     */
+    long percentileNanos(String providerId, double percentile, int minSamples) {
+        Window window = windows.get(providerId);
+        return window == null ? -1 : window.percentile(percentile, Math.max(1, minSamples));
+    }
+
+    private static final class Window {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int next;
+        private int count;
+
+        private synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        private long percentile(double percentile, int minSamples) {
+            long[] sorted;
+            synchronized (this) {
+                if (count < minSamples) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(samples, count);
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(Math.min(1, Math.max(0, percentile)) * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+    }
+}
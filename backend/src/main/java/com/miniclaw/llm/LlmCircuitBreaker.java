@@ -0,0 +1,129 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.config.LlmProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 单个 Provider 的计数窗口熔断器
+ *
+ * CLOSED：记录最近 N 次调用的成败，调用数达到 minimumCalls 且失败率达到阈值时打开。
+ * OPEN：拒绝所有调用，openDuration 之后转为 HALF_OPEN。
+ * HALF_OPEN：最多同时放行 halfOpenProbes 个探测调用，全部成功则关闭并清空窗口，任一失败重新打开。
+ *
+ * 只有探测调用的结果会影响 HALF_OPEN 的状态；状态切换前发出的普通调用稍后返回时被忽略。
+ */
+class LlmCircuitBreaker {
+
+    enum Admission {
+        REJECTED,
+        NORMAL,
+        PROBE
+    }
+
+    private final LlmProperties.CircuitBreaker settings;
+    private final LongSupplier clock;
+    private final boolean[] outcomes;
+
+    private CircuitState state = CircuitState.CLOSED;
+    private int next;
+    private int calls;
+    private int failures;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    LlmCircuitBreaker(LlmProperties.CircuitBreaker settings, LongSupplier clock) {
+        this.settings = settings;
+        this.clock = clock;
+        this.outcomes = new boolean[Math.max(1, settings.getWindowSize())];
+    }
+
+    synchronized Admission tryAcquire() {
+        if (state == CircuitState.OPEN) {
+            if (clock.getAsLong() - openedAt < TimeUnit.MILLISECONDS.toNanos(settings.getOpenDurationMillis())) {
+                return Admission.REJECTED;
+            }
+            state = CircuitState.HALF_OPEN;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+        }
+
+        if (state == CircuitState.HALF_OPEN) {
+            if (probesInFlight >= Math.max(1, settings.getHalfOpenProbes())) {
+                return Admission.REJECTED;
+            }
+            probesInFlight++;
+            return Admission.PROBE;
+        }
+        return Admission.NORMAL;
+    }
+
+    synchronized void onSuccess(Admission admission) {
+        if (admission == Admission.PROBE && state == CircuitState.HALF_OPEN) {
+            probesInFlight--;
+            if (++probeSuccesses >= Math.max(1, settings.getHalfOpenProbes())) {
+                close();
+            }
+        } else if (admission == Admission.NORMAL && state == CircuitState.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure(Admission admission) {
+        if (admission == Admission.PROBE && state == CircuitState.HALF_OPEN) {
+            open();
+        } else if (admission == Admission.NORMAL && state == CircuitState.CLOSED) {
+            record(true);
+            if (calls >= Math.max(1, settings.getMinimumCalls())
+                    && (double) failures / calls >= settings.getFailureRateThreshold()) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * 调用被取消或以不计入熔断的错误结束：只归还探测名额
+     */
+    synchronized void onIgnored(Admission admission) {
+        if (admission == Admission.PROBE && state == CircuitState.HALF_OPEN) {
+            probesInFlight--;
+        }
+    }
+
+    synchronized CircuitState state() {
+        return state;
+    }
+
+    synchronized double failureRate() {
+        return calls == 0 ? 0 : (double) failures / calls;
+    }
+
+    private void record(boolean failure) {
+        if (calls == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = CircuitState.OPEN;
+        openedAt = clock.getAsLong();
+    }
+
+    private void close() {
+        state = CircuitState.CLOSED;
+        next = 0;
+        calls = 0;
+        failures = 0;
+    }
+}
@@ -4,6 +4,8 @@ import com.miniclaw.llm.model.LlmChunk;
 import com.miniclaw.llm.model.LlmRequest;
 import com.miniclaw.llm.model.LlmResponse;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * LLM 客户端接口
@@ -24,6 +26,8 @@ public interface LlmClient {
     /**
      * 同步调用 LLM
      * 
+     * 会阻塞调用线程，不能在 Netty 事件循环线程上使用，此时请用 chatAsync()
+     * 
      * 适用场景：
      * - 单次问答
      * - 批量处理
@@ -34,6 +38,30 @@ public interface LlmClient {
      */
     LlmResponse chat(LlmRequest request);
 
+    /**
+     * 异步调用 LLM
+     * 
+     * 适用场景：
+     * - 摘要、标题生成、工具循环等需要并发发起大量补全的后台任务
+     * - 运行在 Netty 事件循环线程上的调用方（这里禁止 block）
+     * 
+     * 为什么需要单独的异步方法？
+     * - chat() 会阻塞调用线程直到响应返回
+     * - 几百个并发补全会占满几百个平台线程
+     * - 返回 Mono 后，等待期间不占用任何线程
+     * 
+     * 默认实现把 chat() 放到 boundedElastic 上执行，兼容只实现了同步方法的客户端；
+     * 设置 -Dreactor.schedulers.defaultBoundedElasticOnVirtualThreads=true 后会改用虚拟线程。
+     * 基于 WebClient 的实现应直接覆盖为非阻塞版本。
+     * 
+     * @param request LLM 请求
+     * @return LLM 响应（完整内容），订阅时才发起请求
+     */
+    default Mono<LlmResponse> chatAsync(LlmRequest request) {
+        return Mono.fromCallable(() -> chat(request))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
     /**
      * 流式调用 LLM
      * 
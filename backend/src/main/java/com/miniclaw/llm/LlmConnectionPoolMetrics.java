@@ -0,0 +1,94 @@
+package com.miniclaw.llm;
+
+import org.springframework.stereotype.Component;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LLM 上游连接池指标
+ *
+ * 作为 Reactor Netty 的 {@link ConnectionProvider.MeterRegistrar} 接收每个
+ * （Provider 连接池, 远端地址）子池的实时计数，不依赖 Micrometer。
+ * 连接池名为 {@code llm-<providerId>}。
+ */
+@Component
+public class LlmConnectionPoolMetrics implements ConnectionProvider.MeterRegistrar {
+
+    private final Map<String, RegisteredPool> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(key(poolName, id, remoteAddress), new RegisteredPool(poolName, String.valueOf(remoteAddress), metrics));
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(key(poolName, id, remoteAddress));
+    }
+
+    /**
+     * 每个子池一条快照
+     */
+    public List<PoolSnapshot> snapshot() {
+        List<PoolSnapshot> snapshots = new ArrayList<>(pools.size());
+        for (RegisteredPool pool : pools.values()) {
+            ConnectionPoolMetrics metrics = pool.metrics();
+            snapshots.add(new PoolSnapshot(
+                    pool.poolName(),
+                    pool.remoteAddress(),
+                    metrics.acquiredSize(),
+                    metrics.idleSize(),
+                    metrics.allocatedSize(),
+                    metrics.pendingAcquireSize(),
+                    metrics.maxAllocatedSize(),
+                    metrics.maxPendingAcquireSize()
+            ));
+        }
+        return snapshots;
+    }
+
+    /**
+     * 某个连接池下所有远端地址的等待获取连接数之和
+     */
+    public int getPendingAcquires(String poolName) {
+        return pools.values().stream()
+                .filter(pool -> pool.poolName().equals(poolName))
+                .mapToInt(pool -> pool.metrics().pendingAcquireSize())
+                .sum();
+    }
+
+    /**
+     * 某个连接池下所有远端地址正在使用的连接数之和
+     */
+    public int getAcquiredConnections(String poolName) {
+        return pools.values().stream()
+                .filter(pool -> pool.poolName().equals(poolName))
+                .mapToInt(pool -> pool.metrics().acquiredSize())
+                .sum();
+    }
+
+    private static String key(String poolName, String id, SocketAddress remoteAddress) {
+        return poolName + '|' + id + '|' + remoteAddress;
+    }
+
+    private record RegisteredPool(String poolName, String remoteAddress, ConnectionPoolMetrics metrics) {
+    }
+
+    public record PoolSnapshot(
+            String poolName,
+            String remoteAddress,
+            int acquired,
+            int idle,
+            int allocated,
+            int pendingAcquires,
+            int maxAllocated,
+            int maxPendingAcquires
+    ) {
+    }
+}
@@ -8,7 +8,13 @@ public enum LlmErrorType {
     RATE_LIMIT,
     SERVER_ERROR,
     TIMEOUT,
+    CONNECT_TIMEOUT,
+    FIRST_TOKEN_TIMEOUT,
+    INTER_TOKEN_TIMEOUT,
+    TOTAL_TIMEOUT,
     NETWORK,
     INVALID_RESPONSE,
+    CIRCUIT_OPEN,
+    CONCURRENCY_LIMITED,
     UNKNOWN
 }
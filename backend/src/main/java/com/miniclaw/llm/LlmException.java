@@ -1,16 +1,27 @@
 package com.miniclaw.llm;
 
+import java.time.Duration;
+
 public class LlmException extends RuntimeException {
 
     private final LlmErrorType errorType;
     private final boolean retryable;
     private final Integer httpStatus;
+    private final Duration retryAfter;
 
     public LlmException(LlmErrorType errorType, boolean retryable, Integer httpStatus, String message) {
+        this(errorType, retryable, httpStatus, message, (Duration) null);
+    }
+
+    /**
+     * @param retryAfter 上游（Retry-After、x-ratelimit-reset-*）或本地限流给出的最早重试时间；未知时为 null
+     */
+    public LlmException(LlmErrorType errorType, boolean retryable, Integer httpStatus, String message, Duration retryAfter) {
         super(message);
         this.errorType = errorType;
         this.retryable = retryable;
         this.httpStatus = httpStatus;
+        this.retryAfter = retryAfter;
     }
 
     public LlmException(LlmErrorType errorType, boolean retryable, Integer httpStatus, String message, Throwable cause) {
@@ -18,6 +29,7 @@ public class LlmException extends RuntimeException {
         this.errorType = errorType;
         this.retryable = retryable;
         this.httpStatus = httpStatus;
+        this.retryAfter = null;
     }
 
     public LlmErrorType getErrorType() {
@@ -31,4 +43,8 @@ public class LlmException extends RuntimeException {
     public Integer getHttpStatus() {
         return httpStatus;
     }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
 }
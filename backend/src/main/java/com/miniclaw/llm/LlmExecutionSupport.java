@@ -4,7 +4,13 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miniclaw.config.LlmProperties;
+import com.miniclaw.config.LlmProviderConfig;
+import com.miniclaw.llm.model.LlmResponse;
+import io.netty.channel.ConnectTimeoutException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.ClientResponse;
@@ -12,12 +18,21 @@ import org.springframework.web.reactive.function.client.WebClientRequestExceptio
 import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
 import reactor.util.retry.Retry;
-import reactor.util.retry.RetryBackoffSpec;
 
+import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 @Slf4j
 class LlmExecutionSupport {
@@ -26,34 +41,293 @@ class LlmExecutionSupport {
 
     private final LlmProperties properties;
     private final ObjectMapper objectMapper;
+    private final LlmProviderHealth providerHealth;
+    private final LlmRateLimiter rateLimiter;
 
     LlmExecutionSupport(LlmProperties properties, ObjectMapper objectMapper) {
+        this(properties, objectMapper, new LlmProviderHealth(properties));
+    }
+
+    LlmExecutionSupport(LlmProperties properties, ObjectMapper objectMapper, LlmProviderHealth providerHealth) {
         this.properties = properties;
         this.objectMapper = objectMapper;
+        this.providerHealth = providerHealth;
+        this.rateLimiter = new LlmRateLimiter(properties);
     }
 
     Mono<String> executeChat(ResolvedLlmContext context, OpenAiChatCompletionRequest request) {
-        Mono<String> pipeline = context.getClient().post()
-                .uri("/chat/completions")
-                .bodyValue(request)
-                .exchangeToMono(this::readChatBody)
-                .timeout(Duration.ofSeconds(properties.getTimeout()))
-                .onErrorMap(this::asLlmException);
+        return executeChat(context, request, true);
+    }
 
-        return applyRetry(pipeline, "chat");
+    /**
+     * @param retry 为 false 时失败直接返回，不在同一 Provider 上重试（后面还有备用模型时）
+     */
+    Mono<String> executeChat(ResolvedLlmContext context, OpenAiChatCompletionRequest request, boolean retry) {
+        return executeJson(context, "/chat/completions", request, "chat", retry,
+                request.getModel(), rateLimiter.estimateTokens(request));
     }
 
-    Flux<String> executeStream(ResolvedLlmContext context, OpenAiChatCompletionRequest request) {
-        Flux<String> pipeline = context.getClient().post()
-                .uri("/chat/completions")
+    /**
+     * 发起非流式 JSON 请求（chat、embeddings），返回响应体；错误映射与重试策略与 chat 一致
+     */
+    Mono<String> executeJson(ResolvedLlmContext context, String uri, Object request, String operation) {
+        return executeJson(context, uri, request, operation, true, null, 0);
+    }
+
+    /**
+     * @param model 按哪个模型限流；为 null 时不经过客户端限流（embeddings）
+     */
+    private Mono<String> executeJson(ResolvedLlmContext context,
+                                     String uri,
+                                     Object request,
+                                     String operation,
+                                     boolean retry,
+                                     String model,
+                                     int estimatedTokens) {
+        Mono<String> pipeline = rateLimited(context, model, estimatedTokens, guarded(context, context.getClient().post()
+                .uri(uri)
                 .bodyValue(request)
-                .accept(MediaType.TEXT_EVENT_STREAM)
-                .exchangeToFlux(this::readStreamBody)
-                .timeout(Duration.ofSeconds(properties.getTimeout()))
-                .filter(line -> !line.isBlank())
-                .onErrorMap(this::asLlmException);
+                .exchangeToMono(response -> readJsonBody(response, context, model))
+                .timeout(totalTimeout(context, model), Mono.error(() -> timeoutException(
+                        LlmErrorType.TOTAL_TIMEOUT, "LLM " + operation + " request exceeded its total time budget")))
+                .onErrorMap(this::asLlmException)));
+
+        return retry ? applyRetry(pipeline, operation) : pipeline;
+    }
+
+    /**
+     * 发起一次流式请求，按原始字节解码 SSE 并交给解析器。
+     *
+     * <p>这里不做重试：流中途失败时已经输出的内容需要去重或续写，由 {@link LlmStreamRetry} 负责。
+     * 每次订阅都会从 {@code parserFactory} 取一个新的解析器，
+     * 并使用新的 {@link SseEventDecoder}，避免上一次尝试残留的半行或流状态串入。
+     *
+     * @param firstToken 哪些元素算首 token；之前的元素（role 空 chunk 等）仍在首 token 预算内，之后才按 token 间隔计时
+     * @param usageOf    从元素中取 usage，用来在这次尝试结束时修正限流预估；没有 usage 的元素返回 null
+     */
+    <T> Flux<T> executeStream(
+            ResolvedLlmContext context,
+            OpenAiChatCompletionRequest request,
+            Supplier<SseEventDecoder.DataParser<T>> parserFactory,
+            Predicate<? super T> firstToken,
+            Function<? super T, LlmResponse.Usage> usageOf
+    ) {
+        int estimatedTokens = rateLimiter.estimateTokens(request);
+        LlmProviderConfig.Timeouts timeouts = streamTimeouts(context, request.getModel());
+        return rateLimited(context, request.getModel(), estimatedTokens, usageOf, guarded(context, Flux.defer(() -> {
+                    SseEventDecoder decoder = new SseEventDecoder();
+                    SseEventDecoder.DataParser<T> parser = parserFactory.get();
+                    Sinks.Empty<Void> headersReceived = Sinks.empty();
+                    AtomicLong headersReceivedAt = new AtomicLong();
+                    AtomicBoolean producing = new AtomicBoolean();
+
+                    Flux<T> chunks = context.getClient().post()
+                            .uri("/chat/completions")
+                            .bodyValue(request)
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .exchangeToFlux(response -> {
+                                headersReceivedAt.set(System.nanoTime());
+                                headersReceived.tryEmitEmpty();
+                                return readStreamBody(response, context, request.getModel());
+                            })
+                            .concatMapIterable(buffer -> decoder.decode(buffer, parser))
+                            .concatWith(Flux.defer(() -> Flux.fromIterable(decoder.finish(parser))))
+                            .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                            .timeout(firstChunkDeadline(headersReceived.asMono(), timeouts), chunk -> {
+                                if (producing.get() || firstToken.test(chunk)) {
+                                    producing.set(true);
+                                    return deadline(timeouts.getInterTokenMillis(), LlmErrorType.INTER_TOKEN_TIMEOUT,
+                                            "LLM stream went idle between tokens");
+                                }
+                                return remainingFirstTokenDeadline(headersReceivedAt.get(), timeouts);
+                            });
+                    return timeouts.getTotalMillis() > 0
+                            ? chunks.takeUntilOther(deadline(timeouts.getTotalMillis(), LlmErrorType.TOTAL_TIMEOUT,
+                                    "LLM stream exceeded its total time budget"))
+                            : chunks;
+                })
+                .onErrorMap(this::asLlmException)));
+    }
+
+    /**
+     * 第一个 chunk 的截止时间：响应头在建连预算内到达后，再给首 token 预算
+     */
+    private Mono<Void> firstChunkDeadline(Mono<Void> headersReceived, LlmProviderConfig.Timeouts timeouts) {
+        Mono<Void> headers = timeouts.getConnectMillis() > 0
+                ? headersReceived.timeout(Duration.ofMillis(timeouts.getConnectMillis()), Mono.error(() -> timeoutException(
+                        LlmErrorType.CONNECT_TIMEOUT, "LLM stream did not receive response headers in time")))
+                : headersReceived;
+        return headers.then(deadline(timeouts.getFirstTokenMillis(), LlmErrorType.FIRST_TOKEN_TIMEOUT,
+                "LLM stream did not produce a first token in time"));
+    }
+
+    /**
+     * 首 token 之前到达的元素不重置首 token 预算：仍从响应头到达时算起，只剩下没用完的部分
+     */
+    private Mono<Void> remainingFirstTokenDeadline(long headersReceivedAt, LlmProviderConfig.Timeouts timeouts) {
+        long budget = timeouts.getFirstTokenMillis();
+        if (budget <= 0) {
+            return Mono.never();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - headersReceivedAt);
+        return Mono.delay(Duration.ofMillis(Math.max(0, budget - elapsed)))
+                .then(Mono.error(() -> timeoutException(LlmErrorType.FIRST_TOKEN_TIMEOUT,
+                        "LLM stream did not produce a first token in time (" + budget + "ms)")));
+    }
+
+    /**
+     * 到期时以对应类型的超时失败；预算为 0 时永不到期
+     */
+    private Mono<Void> deadline(long millis, LlmErrorType type, String message) {
+        if (millis <= 0) {
+            return Mono.never();
+        }
+        return Mono.delay(Duration.ofMillis(millis))
+                .then(Mono.error(() -> timeoutException(type, message + " (" + millis + "ms)")));
+    }
+
+    private LlmException timeoutException(LlmErrorType type, String message) {
+        // 总时长已经用完，重试只会再等一遍
+        return new LlmException(type, type != LlmErrorType.TOTAL_TIMEOUT, null, message);
+    }
+
+    /**
+     * 流式请求的超时：模型 / Provider 配置优先，建连、首 token、token 间隔未设置时回退到 llm.timeout
+     */
+    private LlmProviderConfig.Timeouts streamTimeouts(ResolvedLlmContext context, String model) {
+        long fallbackMillis = TimeUnit.SECONDS.toMillis(properties.getTimeout());
+        LlmProviderConfig.Timeouts defaults = new LlmProviderConfig.Timeouts(fallbackMillis, fallbackMillis, fallbackMillis, 0);
+        LlmProviderConfig provider = context.getProvider();
+        return provider == null ? defaults : provider.resolveTimeouts(model).orElse(defaults);
+    }
+
+    /**
+     * 非流式请求的总时长：模型 / Provider 配置的 totalMillis，未设置时为 llm.timeout
+     */
+    private Duration totalTimeout(ResolvedLlmContext context, String model) {
+        LlmProviderConfig provider = context.getProvider();
+        long totalMillis = provider != null ? provider.resolveTimeouts(model).getTotalMillis() : 0;
+        return totalMillis > 0 ? Duration.ofMillis(totalMillis) : Duration.ofSeconds(properties.getTimeout());
+    }
+
+    /**
+     * 非流式 chat 拿到响应后，用 usage 中的实际 token 数修正发送前按请求预估、从限流额度里扣掉的 token。
+     * 流式请求在 {@link #executeStream} 里按尝试结算，不走这里
+     */
+    void recordUsage(ResolvedLlmContext context, OpenAiChatCompletionRequest request, LlmResponse.Usage usage) {
+        rateLimiter.reconcile(context, request.getModel(), rateLimiter.estimateTokens(request), totalTokens(usage));
+    }
 
-        return applyRetry(pipeline, "stream");
+    /**
+     * 每次尝试（包括重试）先在本地令牌桶里预留额度，需要时排队等待，再发出请求。
+     * 尝试失败或被取消（包括还在排队时）退回预留的 token；成功时保留预估，由 {@link #recordUsage} 修正
+     */
+    private <T> Mono<T> rateLimited(ResolvedLlmContext context, String model, int estimatedTokens, Mono<T> attempt) {
+        if (model == null) {
+            return attempt;
+        }
+        return Mono.defer(() -> {
+            Duration wait = rateLimiter.reserve(context, model, estimatedTokens);
+            TokenReservation reservation = new TokenReservation(context, model, estimatedTokens);
+            return (wait.isZero() ? attempt : Mono.delay(wait).then(attempt))
+                    .doOnNext(ignored -> reservation.keep())
+                    .doFinally(reservation::settle);
+        });
+    }
+
+    /**
+     * 流式尝试结束时结算一次：流里出现过 usage 就按最后一次的实际用量修正，
+     * 没有 usage 时正常结束保留预估，失败或取消则退回
+     */
+    private <T> Flux<T> rateLimited(ResolvedLlmContext context,
+                                    String model,
+                                    int estimatedTokens,
+                                    Function<? super T, LlmResponse.Usage> usageOf,
+                                    Flux<T> attempt) {
+        if (model == null) {
+            return attempt;
+        }
+        return Flux.defer(() -> {
+            Duration wait = rateLimiter.reserve(context, model, estimatedTokens);
+            TokenReservation reservation = new TokenReservation(context, model, estimatedTokens);
+            return (wait.isZero() ? attempt : Mono.delay(wait).thenMany(attempt))
+                    .doOnNext(item -> reservation.observe(usageOf.apply(item)))
+                    .doFinally(reservation::settle);
+        });
+    }
+
+    private static Integer totalTokens(LlmResponse.Usage usage) {
+        if (usage == null) {
+            return null;
+        }
+        Integer actual = usage.getTotalTokens();
+        if (actual == null && usage.getPromptTokens() != null && usage.getCompletionTokens() != null) {
+            actual = usage.getPromptTokens() + usage.getCompletionTokens();
+        }
+        return actual;
+    }
+
+    /**
+     * 每次尝试（包括重试）单独向 {@link LlmProviderHealth} 获取许可，结束、失败或取消时归还
+     */
+    private <T> Mono<T> guarded(ResolvedLlmContext context, Mono<T> attempt) {
+        return providerHealth.acquireAsync(context.getProviderId())
+                .flatMap(permit -> attempt
+                        .doOnSuccess(ignored -> permit.onSuccess())
+                        .doOnError(permit::onError)
+                        .doOnCancel(permit::onCancel));
+    }
+
+    private <T> Flux<T> guarded(ResolvedLlmContext context, Flux<T> attempt) {
+        return providerHealth.acquireAsync(context.getProviderId())
+                .flatMapMany(permit -> attempt
+                        .doOnComplete(permit::onSuccess)
+                        .doOnError(permit::onError)
+                        .doOnCancel(permit::onCancel));
+    }
+
+    /**
+     * 一次尝试从令牌桶里预留的 token，只结算一次
+     */
+    private final class TokenReservation {
+
+        private final ResolvedLlmContext context;
+        private final String model;
+        private final int estimatedTokens;
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile Integer actualTokens;
+
+        private TokenReservation(ResolvedLlmContext context, String model, int estimatedTokens) {
+            this.context = context;
+            this.model = model;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        private void observe(LlmResponse.Usage usage) {
+            Integer actual = totalTokens(usage);
+            if (actual != null) {
+                actualTokens = actual;
+            }
+        }
+
+        /**
+         * 保留预估，之后由调用方按 usage 修正
+         */
+        private void keep() {
+            settled.set(true);
+        }
+
+        private void settle(SignalType signal) {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            Integer actual = actualTokens;
+            if (actual != null) {
+                rateLimiter.reconcile(context, model, estimatedTokens, actual);
+            } else if (signal != SignalType.ON_COMPLETE) {
+                rateLimiter.refund(context, model, estimatedTokens);
+            }
+        }
     }
 
     LlmException asLlmException(Throwable throwable) {
@@ -63,6 +337,10 @@ class LlmExecutionSupport {
         }
 
         if (failure instanceof WebClientRequestException requestException) {
+            if (hasCause(requestException, ConnectTimeoutException.class)) {
+                return new LlmException(LlmErrorType.CONNECT_TIMEOUT, true, null,
+                        "LLM connection timed out: " + rootMessage(requestException), requestException);
+            }
             if (hasCause(requestException, TimeoutException.class) || hasCause(requestException, SocketTimeoutException.class)) {
                 return new LlmException(LlmErrorType.TIMEOUT, true, null,
                         "LLM request timed out", requestException);
@@ -77,29 +355,53 @@ class LlmExecutionSupport {
                     "LLM request timed out", failure);
         }
 
+        // 响应体读到一半连接被关闭（如 PrematureCloseException），不会包成 WebClientRequestException
+        if (failure instanceof IOException && !(failure instanceof JsonProcessingException)) {
+            return new LlmException(LlmErrorType.NETWORK, true, null,
+                    "LLM connection closed while reading the response: " + rootMessage(failure), failure);
+        }
+
         return new LlmException(LlmErrorType.UNKNOWN, false, null,
                 "LLM request failed: " + rootMessage(failure), failure);
     }
 
-    private Mono<String> readChatBody(ClientResponse response) {
+    private Mono<String> readJsonBody(ClientResponse response, ResolvedLlmContext context, String model) {
+        Duration retryAfter = observeRateLimits(response, context, model);
         if (response.statusCode().isError()) {
             return response.bodyToMono(String.class)
                     .defaultIfEmpty("")
-                    .flatMap(body -> Mono.error(toHttpException(response.statusCode(), body)));
+                    .flatMap(body -> Mono.error(toHttpException(response.statusCode(), body, retryAfter)));
         }
         return response.bodyToMono(String.class);
     }
 
-    private Flux<String> readStreamBody(ClientResponse response) {
+    private Flux<DataBuffer> readStreamBody(ClientResponse response, ResolvedLlmContext context, String model) {
+        Duration retryAfter = observeRateLimits(response, context, model);
         if (response.statusCode().isError()) {
             return response.bodyToMono(String.class)
                     .defaultIfEmpty("")
-                    .flatMapMany(body -> Flux.error(toHttpException(response.statusCode(), body)));
+                    .flatMapMany(body -> Flux.error(toHttpException(response.statusCode(), body, retryAfter)));
         }
-        return response.bodyToFlux(String.class);
+        return response.bodyToFlux(DataBuffer.class);
     }
 
-    private LlmException toHttpException(HttpStatusCode status, String responseBody) {
+    /**
+     * 用响应头校准本地限流额度
+     *
+     * @return 错误响应的 Retry-After（或耗尽的 x-ratelimit-reset-*）；成功响应或没有给出时为 null
+     */
+    private Duration observeRateLimits(ClientResponse response, ResolvedLlmContext context, String model) {
+        HttpHeaders headers = response.headers().asHttpHeaders();
+        Duration retryAfter = response.statusCode().isError()
+                ? LlmRateLimiter.retryAfter(headers, response.statusCode().value())
+                : null;
+        if (model != null) {
+            rateLimiter.update(context, model, headers, retryAfter);
+        }
+        return retryAfter;
+    }
+
+    private LlmException toHttpException(HttpStatusCode status, String responseBody, Duration retryAfter) {
         int statusCode = status.value();
         String detail = extractErrorMessage(responseBody);
 
@@ -113,16 +415,17 @@ class LlmExecutionSupport {
             case 404 -> new LlmException(LlmErrorType.NOT_FOUND, false, statusCode,
                     "LLM endpoint or model was not found: " + detail);
             case 408 -> new LlmException(LlmErrorType.TIMEOUT, true, statusCode,
-                    "LLM request timed out: " + detail);
+                    "LLM request timed out: " + detail, retryAfter);
             case 429 -> new LlmException(LlmErrorType.RATE_LIMIT, true, statusCode,
-                    "LLM rate limit exceeded: " + detail);
+                    "LLM rate limit exceeded: " + detail, retryAfter);
             default -> {
                 boolean retryable = statusCode >= 500;
                 yield new LlmException(
                         retryable ? LlmErrorType.SERVER_ERROR : LlmErrorType.UNKNOWN,
                         retryable,
                         statusCode,
-                        "LLM request failed with HTTP " + statusCode + ": " + detail
+                        "LLM request failed with HTTP " + statusCode + ": " + detail,
+                        retryAfter
                 );
             }
         };
@@ -169,36 +472,60 @@ class LlmExecutionSupport {
         if (maxRetries() <= 0) {
             return pipeline;
         }
-        return pipeline.retryWhen(buildRetrySpec(operation));
+        return pipeline.retryWhen(buildRetry(operation));
     }
 
-    private <T> Flux<T> applyRetry(Flux<T> pipeline, String operation) {
-        if (maxRetries() <= 0) {
-            return pipeline;
+    private Retry buildRetry(String operation) {
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            long attempt = signal.totalRetries() + 1;
+            Duration delay = retryDelay(signal.failure(), attempt, operation);
+            return delay == null
+                    ? Mono.error(signal.failure())
+                    : Mono.delay(delay).thenReturn(attempt);
+        }));
+    }
+
+    /**
+     * 第 {@code attempt} 次重试前等待多久：指数退避加抖动；上游给了 Retry-After 时至少等到该时间
+     *
+     * @return 不应重试（不可重试的错误、次数用完、Retry-After 超过 max-retry-after-millis）时为 null
+     */
+    Duration retryDelay(Throwable throwable, long attempt, String operation) {
+        LlmException failure = asLlmException(throwable);
+        if (!failure.isRetryable() || attempt > maxRetries()) {
+            return null;
         }
-        return pipeline.retryWhen(buildRetrySpec(operation));
-    }
-
-    private RetryBackoffSpec buildRetrySpec(String operation) {
-        return Retry.backoff(maxRetries(), Duration.ofMillis(minBackoffMillis()))
-                .maxBackoff(Duration.ofMillis(maxBackoffMillis()))
-                .jitter(RETRY_JITTER)
-                .filter(this::isRetryableFailure)
-                .doBeforeRetry(signal -> {
-                    LlmException failure = asLlmException(signal.failure());
-                    log.warn("Retrying LLM {} request: attempt={}/{}, type={}, status={}, message={}",
-                            operation,
-                            signal.totalRetriesInARow() + 1,
-                            maxRetries(),
-                            failure.getErrorType(),
-                            failure.getHttpStatus(),
-                            failure.getMessage());
-                })
-                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+
+        Duration delay = backoff(attempt);
+        Duration retryAfter = failure.getRetryAfter();
+        if (retryAfter != null) {
+            if (retryAfter.toMillis() > properties.getRateLimit().getMaxRetryAfterMillis()) {
+                log.warn("Not retrying LLM {} request: retryAfter={}ms exceeds limit, type={}, status={}",
+                        operation, retryAfter.toMillis(), failure.getErrorType(), failure.getHttpStatus());
+                return null;
+            }
+            if (retryAfter.compareTo(delay) > 0) {
+                delay = retryAfter;
+            }
+        }
+
+        log.warn("Retrying LLM {} request: attempt={}/{}, delay={}ms, type={}, status={}, message={}",
+                operation,
+                attempt,
+                maxRetries(),
+                delay.toMillis(),
+                failure.getErrorType(),
+                failure.getHttpStatus(),
+                failure.getMessage());
+        return delay;
     }
 
-    private boolean isRetryableFailure(Throwable throwable) {
-        return asLlmException(throwable).isRetryable();
+    private Duration backoff(long attempt) {
+        long min = minBackoffMillis();
+        long max = Math.max(min, maxBackoffMillis());
+        double base = Math.min(max, min * Math.pow(2, attempt - 1));
+        double jittered = base + base * RETRY_JITTER * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return Duration.ofMillis(Math.round(Math.max(min, Math.min(max, jittered))));
     }
 
     private int maxRetries() {
@@ -0,0 +1,96 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.llm.model.LlmRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 备用模型链
+ *
+ * 把 llm.fallback-models 解析成有序的 providerId:model 列表。请求没有显式指定
+ * providerId / model 时，候选依次是原请求（走 default-model）和各个备用模型；
+ * 显式指定了路由的请求、多模态请求以及单端点模式都只有原请求一个候选。
+ *
+ * 启动时跳过格式不对、Provider 不存在或与 default-model 相同的条目。
+ */
+@Slf4j
+class LlmFallbackChain {
+
+    private final List<Route> routes;
+
+    LlmFallbackChain(LlmProperties properties) {
+        this.routes = parse(properties);
+    }
+
+    List<LlmRequest> candidates(LlmRequest request) {
+        if (routes.isEmpty() || hasExplicitRoute(request) || isMultimodal(request)) {
+            return List.of(request);
+        }
+
+        List<LlmRequest> candidates = new ArrayList<>(routes.size() + 1);
+        candidates.add(request);
+        for (Route route : routes) {
+            candidates.add(request.toBuilder()
+                    .providerId(route.providerId())
+                    .model(route.model())
+                    .build());
+        }
+        return candidates;
+    }
+
+    private static List<Route> parse(LlmProperties properties) {
+        if (properties.getProviders() == null || properties.getProviders().isEmpty()
+                || properties.getFallbackModels() == null) {
+            return List.of();
+        }
+
+        List<Route> routes = new ArrayList<>();
+        for (String entry : properties.getFallbackModels()) {
+            if (entry == null || !entry.contains(":")) {
+                log.warn("Ignoring LLM fallback model without provider prefix: {}", entry);
+                continue;
+            }
+            String[] parts = entry.trim().split(":", 2);
+            if (parts[0].isBlank() || parts[1].isBlank() || properties.getProvider(parts[0]) == null) {
+                log.warn("Ignoring LLM fallback model with unknown provider: {}", entry);
+                continue;
+            }
+            Route route = new Route(parts[0], parts[1]);
+            if (route.matches(properties.getDefaultProviderId(), properties.getDefaultModelName())
+                    || routes.contains(route)) {
+                continue;
+            }
+            routes.add(route);
+        }
+
+        if (!routes.isEmpty()) {
+            log.info("LLM fallback chain configured: {} -> {}", properties.getDefaultModel(), routes);
+        }
+        return List.copyOf(routes);
+    }
+
+    private static boolean hasExplicitRoute(LlmRequest request) {
+        return (request.getProviderId() != null && !request.getProviderId().isBlank())
+                || (request.getModel() != null && !request.getModel().isBlank());
+    }
+
+    private static boolean isMultimodal(LlmRequest request) {
+        return request.getMessages() != null
+                && request.getMessages().stream().anyMatch(LlmRequest.Message::hasImageContent);
+    }
+
+    private record Route(String providerId, String model) {
+
+        private boolean matches(String otherProviderId, String otherModel) {
+            return providerId.equals(otherProviderId) && model.equals(otherModel);
+        }
+
+        @Override
+        public String toString() {
+            return providerId + ":" + model;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.config.LlmProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 每个 Provider 的熔断器和自适应并发上限
+ *
+ * 每次上游调用（包括重试）发出前先获取许可：熔断器打开时立即以 CIRCUIT_OPEN 失败；
+ * 在途请求达到上限时最多排队 max-wait-millis，仍拿不到名额才以 CONCURRENCY_LIMITED 失败。两者都不可重试，
+ * 请求会失败或切到备用模型，而不是继续在出问题的 Provider 上排队重试。
+ *
+ * 调用结束后按 {@link LlmErrorType} 归类：限流、5xx、超时（总时长超限除外）、网络错误算 Provider 故障，
+ * 计入熔断失败率并收缩并发上限；其余错误（请求本身的问题）只归还许可。
+ */
+@Component
+public class LlmProviderHealth {
+
+    private final LlmProperties properties;
+    private final LongSupplier clock;
+    private final Map<String, ProviderGuard> guards = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LlmProviderHealth(LlmProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    LlmProviderHealth(LlmProperties properties, LongSupplier clock) {
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    /**
+     * 不等待地获取许可
+     *
+     * @throws LlmException 熔断器打开或并发达到上限
+     */
+    Permit acquire(String providerId) {
+        ProviderGuard guard = guard(providerId);
+        LlmCircuitBreaker.Admission admission = admit(guard, providerId);
+
+        int inFlightAtAcquire = 0;
+        if (properties.getConcurrencyLimit().isEnabled()) {
+            inFlightAtAcquire = guard.limiter.tryAcquire();
+            if (inFlightAtAcquire < 0) {
+                throw concurrencyLimited(guard, admission, providerId);
+            }
+        }
+        return new Permit(guard, admission, inFlightAtAcquire);
+    }
+
+    /**
+     * 获取许可；并发达到上限时排队等待，最多等 concurrency-limit.max-wait-millis
+     */
+    Mono<Permit> acquireAsync(String providerId) {
+        return Mono.defer(() -> {
+            ProviderGuard guard = guard(providerId);
+            LlmCircuitBreaker.Admission admission = admit(guard, providerId);
+            if (!properties.getConcurrencyLimit().isEnabled()) {
+                return Mono.just(new Permit(guard, admission, 0));
+            }
+            Duration maxWait = Duration.ofMillis(Math.max(0, properties.getConcurrencyLimit().getMaxWaitMillis()));
+            return guard.limiter.acquire(maxWait)
+                    // 排队期间被取消时交还熔断器的名额（半开探测）
+                    .doOnCancel(() -> guard.breaker.onIgnored(admission))
+                    .map(inFlightAtAcquire -> new Permit(guard, admission, inFlightAtAcquire))
+                    .switchIfEmpty(Mono.error(() -> concurrencyLimited(guard, admission, providerId)));
+        });
+    }
+
+    /**
+     * 熔断关闭时返回 null，熔断器不记录任何结果
+     */
+    private LlmCircuitBreaker.Admission admit(ProviderGuard guard, String providerId) {
+        if (!properties.getCircuitBreaker().isEnabled()) {
+            return null;
+        }
+        LlmCircuitBreaker.Admission admission = guard.breaker.tryAcquire();
+        if (admission == LlmCircuitBreaker.Admission.REJECTED) {
+            guard.circuitRejections.increment();
+            throw new LlmException(LlmErrorType.CIRCUIT_OPEN, false, null,
+                    "LLM provider " + providerId + " circuit is open");
+        }
+        return admission;
+    }
+
+    private LlmException concurrencyLimited(ProviderGuard guard, LlmCircuitBreaker.Admission admission, String providerId) {
+        guard.breaker.onIgnored(admission);
+        guard.concurrencyRejections.increment();
+        return new LlmException(LlmErrorType.CONCURRENCY_LIMITED, false, null,
+                "LLM provider " + providerId + " concurrency limit reached: " + guard.limiter.limit());
+    }
+
+    /**
+     * 每个 Provider 一条快照
+     */
+    public List<HealthSnapshot> snapshot() {
+        List<HealthSnapshot> snapshots = new ArrayList<>(guards.size());
+        guards.forEach((providerId, guard) -> snapshots.add(guard.snapshot(providerId)));
+        return snapshots;
+    }
+
+    public CircuitState getCircuitState(String providerId) {
+        ProviderGuard guard = guards.get(providerId);
+        return guard == null ? CircuitState.CLOSED : guard.breaker.state();
+    }
+
+    /**
+     * 当前并发上限；Provider 还没有调用过时为初始上限
+     */
+    public int getConcurrencyLimit(String providerId) {
+        ProviderGuard guard = guards.get(providerId);
+        return guard == null ? properties.getConcurrencyLimit().getInitialLimit() : guard.limiter.limit();
+    }
+
+    static boolean isProviderFailure(LlmErrorType errorType) {
+        return errorType == LlmErrorType.RATE_LIMIT
+                || errorType == LlmErrorType.SERVER_ERROR
+                || errorType == LlmErrorType.TIMEOUT
+                || errorType == LlmErrorType.CONNECT_TIMEOUT
+                || errorType == LlmErrorType.FIRST_TOKEN_TIMEOUT
+                || errorType == LlmErrorType.INTER_TOKEN_TIMEOUT
+                || errorType == LlmErrorType.NETWORK;
+    }
+
+    private ProviderGuard guard(String providerId) {
+        return guards.computeIfAbsent(providerId, ignored -> new ProviderGuard(
+                new LlmCircuitBreaker(properties.getCircuitBreaker(), clock),
+                new AdaptiveConcurrencyLimiter(properties.getConcurrencyLimit())));
+    }
+
+    /**
+     * 一次上游调用的许可；成功、失败、取消只会生效一次
+     */
+    final class Permit {
+        private final ProviderGuard guard;
+        private final LlmCircuitBreaker.Admission admission;
+        private final int inFlightAtAcquire;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(ProviderGuard guard, LlmCircuitBreaker.Admission admission, int inFlightAtAcquire) {
+            this.guard = guard;
+            this.admission = admission;
+            this.inFlightAtAcquire = inFlightAtAcquire;
+        }
+
+        void onSuccess() {
+            if (released.compareAndSet(false, true)) {
+                guard.breaker.onSuccess(admission);
+                if (limiting()) {
+                    guard.limiter.onSuccess(inFlightAtAcquire);
+                }
+            }
+        }
+
+        void onError(Throwable failure) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (failure instanceof LlmException llmException && isProviderFailure(llmException.getErrorType())) {
+                guard.breaker.onFailure(admission);
+                if (limiting()) {
+                    guard.limiter.onOverload();
+                }
+            } else {
+                guard.breaker.onIgnored(admission);
+                if (limiting()) {
+                    guard.limiter.onIgnored();
+                }
+            }
+        }
+
+        void onCancel() {
+            if (released.compareAndSet(false, true)) {
+                guard.breaker.onIgnored(admission);
+                if (limiting()) {
+                    guard.limiter.onIgnored();
+                }
+            }
+        }
+
+        private boolean limiting() {
+            return inFlightAtAcquire > 0;
+        }
+    }
+
+    private static final class ProviderGuard {
+        private final LlmCircuitBreaker breaker;
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final LongAdder circuitRejections = new LongAdder();
+        private final LongAdder concurrencyRejections = new LongAdder();
+
+        private ProviderGuard(LlmCircuitBreaker breaker, AdaptiveConcurrencyLimiter limiter) {
+            this.breaker = breaker;
+            this.limiter = limiter;
+        }
+
+        private HealthSnapshot snapshot(String providerId) {
+            return new HealthSnapshot(
+                    providerId,
+                    breaker.state(),
+                    breaker.failureRate(),
+                    limiter.limit(),
+                    limiter.inFlight(),
+                    circuitRejections.sum(),
+                    concurrencyRejections.sum()
+            );
+        }
+    }
+
+    public record HealthSnapshot(
+            String providerId,
+            CircuitState circuitState,
+            double failureRate,
+            int concurrencyLimit,
+            int inFlight,
+            long circuitRejections,
+            long concurrencyRejections
+    ) {
+    }
+}
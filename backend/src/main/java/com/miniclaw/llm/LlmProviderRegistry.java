@@ -4,8 +4,14 @@ import com.miniclaw.config.LlmProviderConfig;
 import com.miniclaw.config.LlmProperties;
 import com.miniclaw.llm.model.LlmRequest;
 import lombok.extern.slf4j.Slf4j;
+import io.netty.channel.ChannelOption;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -14,12 +20,22 @@ class LlmProviderRegistry {
 
     private static final String LEGACY_CLIENT_KEY = "__legacy__";
 
+    private static final String POOL_NAME_PREFIX = "llm-";
+
     private final LlmProperties properties;
+    private final LlmConnectionPoolMetrics poolMetrics;
     private final Map<String, WebClient> clientCache;
+    private final Map<String, ConnectionProvider> connectionProviders;
 
     LlmProviderRegistry(LlmProperties properties) {
+        this(properties, new LlmConnectionPoolMetrics());
+    }
+
+    LlmProviderRegistry(LlmProperties properties, LlmConnectionPoolMetrics poolMetrics) {
         this.properties = properties;
+        this.poolMetrics = poolMetrics;
         this.clientCache = new ConcurrentHashMap<>();
+        this.connectionProviders = new ConcurrentHashMap<>();
         initializeClients();
     }
 
@@ -48,19 +64,46 @@ class LlmProviderRegistry {
                     continue;
                 }
                 String endpoint = normalizeEndpoint(provider.getEndpoint());
-                clientCache.put(provider.getId(), buildWebClient(endpoint, provider.getApiKey()));
+                clientCache.put(provider.getId(),
+                        buildWebClient(provider.getId(), endpoint, provider.getApiKey(), provider.getPool()));
                 log.info("LLM provider initialized: id={}, endpoint={}", provider.getId(), endpoint);
             }
             return;
         }
 
         String endpoint = normalizeEndpoint(properties.getEndpoint());
-        clientCache.put(LEGACY_CLIENT_KEY, buildWebClient(endpoint, properties.getApiKey()));
+        clientCache.put(LEGACY_CLIENT_KEY,
+                buildWebClient("default", endpoint, properties.getApiKey(), properties.getPool()));
         log.info("LLM Client initialized: endpoint={}, model={}", endpoint, properties.getModel());
     }
 
-    private WebClient buildWebClient(String endpoint, String apiKey) {
+    /**
+     * 关闭所有 Provider 的连接池
+     */
+    void dispose() {
+        connectionProviders.values().forEach(ConnectionProvider::dispose);
+        connectionProviders.clear();
+    }
+
+    private WebClient buildWebClient(String poolKey, String endpoint, String apiKey, LlmProviderConfig.Pool pool) {
+        LlmProviderConfig.Pool settings = pool != null ? pool : new LlmProviderConfig.Pool();
+        ConnectionProvider connectionProvider = buildConnectionProvider(POOL_NAME_PREFIX + poolKey, settings);
+        connectionProviders.put(poolKey, connectionProvider);
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, settings.getConnectTimeoutMillis())
+                .keepAlive(settings.isKeepAlive())
+                .compress(settings.isCompression());
+        if (settings.getResponseTimeoutMillis() > 0) {
+            httpClient = httpClient.responseTimeout(Duration.ofMillis(settings.getResponseTimeoutMillis()));
+        }
+        if (settings.isHttp2() && endpoint.startsWith("https://")) {
+            // ALPN 协商，不支持 h2 的上游自动回退 HTTP/1.1
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
         WebClient.Builder builder = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .baseUrl(endpoint)
                 .defaultHeader("Content-Type", "application/json");
 
@@ -71,6 +114,24 @@ class LlmProviderRegistry {
         return builder.build();
     }
 
+    private ConnectionProvider buildConnectionProvider(String poolName, LlmProviderConfig.Pool settings) {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(poolName)
+                .maxConnections(settings.getMaxConnections())
+                .pendingAcquireMaxCount(settings.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(settings.getPendingAcquireTimeoutMillis()))
+                .maxIdleTime(Duration.ofMillis(settings.getMaxIdleTimeMillis()))
+                .maxLifeTime(Duration.ofMillis(settings.getMaxLifeTimeMillis()))
+                .metrics(true, () -> poolMetrics);
+        if (settings.getEvictInBackgroundMillis() > 0) {
+            builder.evictInBackground(Duration.ofMillis(settings.getEvictInBackgroundMillis()));
+        }
+
+        log.info("LLM connection pool configured: name={}, maxConnections={}, pendingAcquireMaxCount={}, maxIdleTime={}ms, maxLifeTime={}ms, http2={}",
+                poolName, settings.getMaxConnections(), settings.getPendingAcquireMaxCount(),
+                settings.getMaxIdleTimeMillis(), settings.getMaxLifeTimeMillis(), settings.isHttp2());
+        return builder.build();
+    }
+
     private String normalizeEndpoint(String endpoint) {
         if (endpoint == null || endpoint.isBlank()) {
             return "http://localhost:11434/v1";
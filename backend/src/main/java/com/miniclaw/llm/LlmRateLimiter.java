@@ -0,0 +1,328 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.config.LlmProviderConfig;
+import com.miniclaw.llm.model.LlmRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按 Provider + 模型的客户端令牌桶限流
+ *
+ * 每个键一对桶：每分钟请求数（RPM）和每分钟 token 数（TPM），按容量 / 60 秒匀速回填。
+ * 容量优先取 Provider 配置，否则从 x-ratelimit-limit-* 学习；还不知道容量时不限流。
+ * 每次响应按 x-ratelimit-remaining-* 把可用额度校准到不超过上游剩余值，剩余为 0 时
+ * 在 x-ratelimit-reset-* 之前不放行；429 / Retry-After 同样暂停该键直到给出的时间。
+ *
+ * 发送前按请求预估 token（输入估算 + max_tokens）扣额度，额度为负时计算需要等待的时间，
+ * 拿到 usage 后用实际 token 数修正；尝试失败或被取消时退回预留的 token。
+ */
+@Slf4j
+class LlmRateLimiter {
+
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final LlmProperties properties;
+    private final LongSupplier clock;
+    private final TokenEstimator estimator = new TokenEstimator();
+    private final Map<String, Limits> limits = new ConcurrentHashMap<>();
+
+    LlmRateLimiter(LlmProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    LlmRateLimiter(LlmProperties properties, LongSupplier clock) {
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    /**
+     * 为一次调用预留 1 个请求和 {@code tokens} 个 token
+     *
+     * @return 需要等待多久才能发出；不需要等待时为 {@link Duration#ZERO}
+     * @throws LlmException 预计等待超过 max-queue-millis（RATE_LIMIT，不可重试，带 retryAfter）
+     */
+    Duration reserve(ResolvedLlmContext context, String model, int tokens) {
+        if (!properties.getRateLimit().isEnabled()) {
+            return Duration.ZERO;
+        }
+
+        Limits entry = limits(context, model);
+        long waitNanos;
+        synchronized (entry) {
+            long now = clock.getAsLong();
+            waitNanos = Math.max(entry.requests.waitNanos(1, now), entry.tokens.waitNanos(tokens, now));
+            if (waitNanos > TimeUnit.MILLISECONDS.toNanos(properties.getRateLimit().getMaxQueueMillis())) {
+                throw new LlmException(LlmErrorType.RATE_LIMIT, false, null,
+                        "LLM rate limit for " + context.getProviderId() + ":" + model
+                                + " would delay the request by " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + "ms",
+                        Duration.ofNanos(waitNanos));
+            }
+            entry.requests.take(1);
+            entry.tokens.take(tokens);
+        }
+
+        if (waitNanos > 0) {
+            log.debug("Queueing LLM request locally: provider={}, model={}, wait={}ms",
+                    context.getProviderId(), model, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        }
+        return Duration.ofNanos(waitNanos);
+    }
+
+    /**
+     * 按响应头校准额度；429 / 503 时再按 retryAfter 暂停该键
+     */
+    void update(ResolvedLlmContext context, String model, HttpHeaders headers, Duration retryAfter) {
+        if (!properties.getRateLimit().isEnabled()) {
+            return;
+        }
+
+        Limits entry = limits(context, model);
+        synchronized (entry) {
+            long now = clock.getAsLong();
+            entry.requests.sync(headers, "requests", now);
+            entry.tokens.sync(headers, "tokens", now);
+            if (retryAfter != null) {
+                entry.requests.blockUntil(now + retryAfter.toNanos());
+            }
+        }
+    }
+
+    /**
+     * 用 usage 中的实际 token 数修正发送前的预估
+     */
+    void reconcile(ResolvedLlmContext context, String model, int estimatedTokens, Integer actualTokens) {
+        if (!properties.getRateLimit().isEnabled() || actualTokens == null) {
+            return;
+        }
+
+        Limits entry = limits(context, model);
+        synchronized (entry) {
+            entry.tokens.take(actualTokens - estimatedTokens);
+        }
+    }
+
+    /**
+     * 尝试失败或被取消、没有拿到 usage 时退回预留的 token；请求数不退，上游多半已经计了这次请求
+     */
+    void refund(ResolvedLlmContext context, String model, int estimatedTokens) {
+        reconcile(context, model, estimatedTokens, 0);
+    }
+
+    /**
+     * 发送前的 token 预估：消息文本估算 + 为输出预留的 max_tokens
+     */
+    int estimateTokens(OpenAiChatCompletionRequest request) {
+        int tokens = request.getMaxTokens() != null ? request.getMaxTokens() : 0;
+        if (request.getMessages() == null) {
+            return tokens;
+        }
+        for (OpenAiChatCompletionRequest.OpenAiChatMessage message : request.getMessages()) {
+            tokens += TokenEstimator.MESSAGE_OVERHEAD_TOKENS;
+            if (message.getContent() instanceof String text) {
+                tokens += estimator.estimate(text);
+            } else if (message.getContent() instanceof List<?> parts) {
+                for (Object part : parts) {
+                    if (part instanceof LlmRequest.Message.ContentPart contentPart) {
+                        tokens += contentPart.isImageUrl() ? TokenEstimator.IMAGE_TOKENS : estimator.estimate(contentPart.getText());
+                    }
+                }
+            }
+            if (message.getToolCalls() != null) {
+                for (OpenAiChatCompletionRequest.OpenAiChatToolCall toolCall : message.getToolCalls()) {
+                    if (toolCall.getFunction() != null) {
+                        tokens += estimator.estimate(toolCall.getFunction().getArguments());
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 解析 Retry-After / retry-after-ms；429 没有这两个头时取耗尽的那个 x-ratelimit-reset-*
+     */
+    static Duration retryAfter(HttpHeaders headers, int statusCode) {
+        Duration retryAfterMillis = parseMillis(headers.getFirst("retry-after-ms"));
+        if (retryAfterMillis != null) {
+            return retryAfterMillis;
+        }
+
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null && !retryAfter.isBlank()) {
+            try {
+                return Duration.ofMillis(Math.round(Double.parseDouble(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException ignored) {
+                try {
+                    Duration until = Duration.between(ZonedDateTime.now(),
+                            ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                    return until.isNegative() ? Duration.ZERO : until;
+                } catch (DateTimeParseException e) {
+                    log.debug("Ignoring unparseable Retry-After header: {}", retryAfter);
+                }
+            }
+        }
+
+        if (statusCode != 429) {
+            return null;
+        }
+        Duration reset = null;
+        for (String kind : List.of("requests", "tokens")) {
+            if ("0".equals(headers.getFirst("x-ratelimit-remaining-" + kind))) {
+                Duration candidate = parseDuration(headers.getFirst("x-ratelimit-reset-" + kind));
+                if (candidate != null && (reset == null || candidate.compareTo(reset) > 0)) {
+                    reset = candidate;
+                }
+            }
+        }
+        return reset;
+    }
+
+    /**
+     * 解析 x-ratelimit-reset-* 的时长格式：1s、6m0s、59.5ms、1h2m3.5s；纯数字按秒
+     */
+    static Duration parseDuration(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Duration.ofMillis(Math.round(Double.parseDouble(trimmed) * 1000));
+        } catch (NumberFormatException ignored) {
+            // 带单位的格式
+        }
+
+        Matcher matcher = DURATION_PART.matcher(trimmed);
+        double millis = 0;
+        int end = 0;
+        while (matcher.find()) {
+            if (matcher.start() != end) {
+                return null;
+            }
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1000;
+                default -> amount;
+            };
+            end = matcher.end();
+        }
+        return end == trimmed.length() && end > 0 ? Duration.ofMillis(Math.round(millis)) : null;
+    }
+
+    private static Duration parseMillis(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofMillis(Math.round(Double.parseDouble(value.trim())));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Limits limits(ResolvedLlmContext context, String model) {
+        return limits.computeIfAbsent(context.getProviderId() + ':' + model, ignored -> {
+            LlmProviderConfig provider = context.getProvider();
+            return new Limits(
+                    new Bucket(provider != null ? provider.getRequestsPerMinute() : 0, clock.getAsLong()),
+                    new Bucket(provider != null ? provider.getTokensPerMinute() : 0, clock.getAsLong()));
+        });
+    }
+
+    private record Limits(Bucket requests, Bucket tokens) {
+    }
+
+    /**
+     * 每分钟容量的令牌桶；可用额度可以为负（已预留给排队中的请求）。调用方持有 {@link Limits} 的锁
+     */
+    private static final class Bucket {
+        private final boolean configured;
+        private double capacity;
+        private double available;
+        private long refilledAt;
+        private long blockedUntil;
+
+        private Bucket(int capacity, long now) {
+            this.configured = capacity > 0;
+            this.capacity = Math.max(0, capacity);
+            this.available = this.capacity;
+            this.refilledAt = now;
+            this.blockedUntil = now;
+        }
+
+        private long waitNanos(double amount, long now) {
+            refill(now);
+            long wait = Math.max(0, blockedUntil - now);
+            if (capacity > 0 && available - amount < 0) {
+                wait = Math.max(wait, (long) Math.ceil((amount - available) / capacity * MINUTE_NANOS));
+            }
+            return wait;
+        }
+
+        private void take(double amount) {
+            if (capacity > 0) {
+                available = Math.min(capacity, available - amount);
+            }
+        }
+
+        private void blockUntil(long deadline) {
+            blockedUntil = Math.max(blockedUntil, deadline);
+        }
+
+        private void sync(HttpHeaders headers, String kind, long now) {
+            refill(now);
+            Long limit = parseLong(headers.getFirst("x-ratelimit-limit-" + kind));
+            if (limit != null && limit > 0 && !configured) {
+                if (capacity == 0) {
+                    available = limit;
+                }
+                capacity = limit;
+            }
+
+            Long remaining = parseLong(headers.getFirst("x-ratelimit-remaining-" + kind));
+            if (remaining != null && capacity > 0) {
+                available = Math.min(available, remaining);
+            }
+            if (remaining != null && remaining == 0) {
+                Duration reset = parseDuration(headers.getFirst("x-ratelimit-reset-" + kind));
+                if (reset != null) {
+                    blockUntil(now + reset.toNanos());
+                }
+            }
+        }
+
+        private void refill(long now) {
+            if (capacity > 0 && now > refilledAt) {
+                available = Math.min(capacity, available + capacity * (now - refilledAt) / MINUTE_NANOS);
+            }
+            refilledAt = Math.max(refilledAt, now);
+        }
+
+        private static Long parseLong(String value) {
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
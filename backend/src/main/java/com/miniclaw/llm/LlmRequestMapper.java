@@ -5,34 +5,54 @@ import com.miniclaw.config.LlmProperties;
 import com.miniclaw.llm.model.LlmRequest;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 class LlmRequestMapper {
 
     private final LlmProperties properties;
+    private final ContextWindowManager contextWindowManager;
 
     LlmRequestMapper(LlmProperties properties) {
+        this(properties, new ContextWindowManager(new TokenEstimator()));
+    }
+
+    LlmRequestMapper(LlmProperties properties, ContextWindowManager contextWindowManager) {
         this.properties = properties;
+        this.contextWindowManager = contextWindowManager;
     }
 
     OpenAiChatCompletionRequest map(LlmRequest request, ResolvedLlmContext context, boolean stream) {
-        List<OpenAiChatCompletionRequest.OpenAiChatMessage> messages = request.getMessages().stream()
+        String model = resolveModel(request, context);
+        Integer maxTokens = request.getMaxTokens() != null
+                ? request.getMaxTokens()
+                : properties.getMaxTokens();
+
+        List<OpenAiChatCompletionRequest.OpenAiChatMessage> messages = contextWindowManager
+                .fit(request.getMessages(), inputBudget(context, model, maxTokens))
+                .stream()
                 .map(this::convertMessage)
                 .toList();
 
         OpenAiChatCompletionRequest.OpenAiChatCompletionRequestBuilder builder = OpenAiChatCompletionRequest.builder()
-                .model(resolveModel(request, context))
+                .model(model)
                 .messages(messages)
                 .temperature(request.getTemperature() != null
                         ? request.getTemperature()
                         : properties.getTemperature())
-                .maxTokens(request.getMaxTokens() != null
-                        ? request.getMaxTokens()
-                        : properties.getMaxTokens())
+                .maxTokens(maxTokens)
                 .stream(stream);
 
+        if (stream && properties.isStreamIncludeUsage()) {
+            builder.streamOptions(new OpenAiChatCompletionRequest.StreamOptions(true));
+        }
+
         if (request.getTools() != null && !request.getTools().isEmpty()) {
-            builder.tools(request.getTools());
+            builder.tools(properties.isStablePromptLayout()
+                    ? canonicalTools(request.getTools())
+                    : request.getTools());
             builder.toolChoice(request.getToolChoice() != null
                     ? request.getToolChoice()
                     : "auto");
@@ -41,6 +61,62 @@ class LlmRequestMapper {
         return builder.build();
     }
 
+    /**
+     * 工具定义的规范形式：按函数名排序，嵌套的 JSON 对象按键排序
+     *
+     * 调用方常用 Map.of / HashMap 构造工具定义，它们的迭代顺序在不同 JVM 进程间并不固定，
+     * 工具又位于提示词前缀里，顺序一变上游的前缀缓存就整段失效。
+     */
+    private List<Map<String, Object>> canonicalTools(List<Map<String, Object>> tools) {
+        List<Map<String, Object>> canonical = new ArrayList<>(tools.size());
+        for (Map<String, Object> tool : tools) {
+            canonical.add(canonicalObject(tool));
+        }
+        canonical.sort(Comparator.comparing(LlmRequestMapper::toolName, Comparator.nullsLast(Comparator.naturalOrder())));
+        return canonical;
+    }
+
+    private static String toolName(Map<String, Object> tool) {
+        Object function = tool.get("function");
+        if (function instanceof Map<?, ?> functionMap && functionMap.get("name") instanceof String name) {
+            return name;
+        }
+        return null;
+    }
+
+    private Map<String, Object> canonicalObject(Map<?, ?> value) {
+        Map<String, Object> sorted = new TreeMap<>();
+        value.forEach((key, nested) -> sorted.put(String.valueOf(key), canonicalValue(nested)));
+        return sorted;
+    }
+
+    private Object canonicalValue(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            return canonicalObject(map);
+        }
+        if (value instanceof List<?> list) {
+            // 数组元素顺序有语义（如 required、enum），只规范化元素内部
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(element -> copy.add(canonicalValue(element)));
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * 输入消息可用的 token 数：上下文窗口减去为输出预留的 max_tokens；未配置窗口时不裁剪
+     */
+    private int inputBudget(ResolvedLlmContext context, String model, Integer maxTokens) {
+        LlmProviderConfig provider = context.getProvider();
+        int window = provider != null
+                ? provider.resolveContextWindow(model)
+                : properties.getContextWindowTokens();
+        if (window <= 0) {
+            return 0;
+        }
+        return Math.max(1, window - (maxTokens != null ? maxTokens : 0));
+    }
+
     private String resolveModel(LlmRequest request, ResolvedLlmContext context) {
         boolean multimodalRequest = isMultimodalRequest(request);
         LlmProviderConfig provider = context.getProvider();
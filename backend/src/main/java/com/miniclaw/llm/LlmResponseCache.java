@@ -0,0 +1,185 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.llm.model.LlmChunk;
+import com.miniclaw.llm.model.LlmResponse;
+import com.miniclaw.llm.model.ToolCall;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 确定性请求的精确匹配响应缓存
+ *
+ * 只缓存 temperature == 0 的请求。键是映射后请求体的 SHA-256：先去掉 stream / stream_options，
+ * 再按键排序序列化，因此同一请求的 chat 与 stream 共用一份结果，工具定义里 Map 的顺序也不影响命中。
+ *
+ * 条目按 LRU 淘汰并有 TTL；流式请求只有完整结束（收到 finish_reason）才写入，
+ * 命中时把缓存的结果重放成一个合成的 chunk 流。
+ */
+@Slf4j
+class LlmResponseCache {
+
+    private final LlmProperties.ResponseCache settings;
+    private final ObjectMapper canonicalMapper;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, CachedResponse> entries;
+
+    LlmResponseCache(LlmProperties.ResponseCache settings, ObjectMapper objectMapper) {
+        this(settings, objectMapper, System::nanoTime);
+    }
+
+    LlmResponseCache(LlmProperties.ResponseCache settings, ObjectMapper objectMapper, LongSupplier clock) {
+        this.settings = settings;
+        this.canonicalMapper = objectMapper.copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > Math.max(1, settings.getMaxEntries());
+            }
+        };
+    }
+
+    /**
+     * @return 缓存键；请求不可缓存（未启用或 temperature 不为 0）时为 null
+     */
+    String keyOf(String providerId, OpenAiChatCompletionRequest request) {
+        if (!settings.isEnabled() || request.getTemperature() == null || request.getTemperature() != 0d) {
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(providerId).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(canonicalMapper.writeValueAsBytes(request.toBuilder()
+                    .stream(null)
+                    .streamOptions(null)
+                    .build()));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            log.warn("Failed to compute LLM response cache key, skipping cache: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    LlmResponse get(String key) {
+        synchronized (entries) {
+            CachedResponse cached = entries.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (clock.getAsLong() - cached.expiresAt() >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return copy(cached.response());
+        }
+    }
+
+    void put(String key, LlmResponse response) {
+        long expiresAt = clock.getAsLong() + TimeUnit.SECONDS.toNanos(Math.max(1, settings.getTtlSeconds()));
+        synchronized (entries) {
+            entries.put(key, new CachedResponse(copy(response), expiresAt));
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 把缓存的结果重放成与上游流相同形状的 chunk：内容、带 finish_reason 的结束 chunk、[DONE]
+     */
+    Flux<LlmChunk> replay(LlmResponse response) {
+        List<LlmChunk> chunks = new ArrayList<>(3);
+        if (response.getContent() != null && !response.getContent().isEmpty()) {
+            chunks.add(LlmChunk.builder().delta(response.getContent()).build());
+        }
+        chunks.add(LlmChunk.builder()
+                .toolCalls(response.getToolCalls())
+                .finishReason(response.getFinishReason())
+                .done(true)
+                .build());
+        chunks.add(LlmChunk.builder().done(true).build());
+        return Flux.fromIterable(chunks);
+    }
+
+    /**
+     * 在流经过时拼出完整响应，流正常结束且收到 finish_reason 后写入缓存
+     */
+    Flux<LlmChunk> recordStream(String key, Flux<LlmChunk> chunks) {
+        return Flux.defer(() -> {
+            StreamedResponse streamed = new StreamedResponse();
+            return chunks
+                    .doOnNext(streamed::append)
+                    .doOnComplete(() -> {
+                        if (streamed.finishReason != null) {
+                            put(key, streamed.toResponse());
+                        }
+                    });
+        });
+    }
+
+    private LlmResponse copy(LlmResponse response) {
+        return LlmResponse.builder()
+                .content(response.getContent())
+                .toolCalls(response.getToolCalls() == null ? null : List.copyOf(response.getToolCalls()))
+                .finishReason(response.getFinishReason())
+                .usage(response.getUsage())
+                .build();
+    }
+
+    private record CachedResponse(LlmResponse response, long expiresAt) {
+    }
+
+    private static final class StreamedResponse {
+        private final StringBuilder content = new StringBuilder();
+        private List<ToolCall> toolCalls;
+        private String finishReason;
+        private LlmResponse.Usage usage;
+
+        private void append(LlmChunk chunk) {
+            if (chunk.getDelta() != null) {
+                content.append(chunk.getDelta());
+            }
+            if (chunk.hasToolCalls()) {
+                if (toolCalls == null) {
+                    toolCalls = new ArrayList<>(chunk.getToolCalls().size());
+                }
+                toolCalls.addAll(chunk.getToolCalls());
+            }
+            if (chunk.getFinishReason() != null) {
+                finishReason = chunk.getFinishReason();
+            }
+            if (chunk.getUsage() != null) {
+                usage = chunk.getUsage();
+            }
+        }
+
+        private LlmResponse toResponse() {
+            return LlmResponse.builder()
+                    .content(content.isEmpty() ? null : content.toString())
+                    .toolCalls(toolCalls)
+                    .finishReason(finishReason)
+                    .usage(usage)
+                    .build();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.miniclaw.llm;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miniclaw.llm.model.LlmChunk;
@@ -8,6 +10,8 @@ import com.miniclaw.llm.model.LlmResponse;
 import com.miniclaw.llm.model.ToolCall;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -15,6 +19,8 @@ import java.util.Optional;
 @Slf4j
 class LlmResponseParser {
 
+    private static final byte[] DONE_MARKER = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+
     private final ObjectMapper objectMapper;
 
     LlmResponseParser(ObjectMapper objectMapper) {
@@ -73,44 +79,218 @@ class LlmResponseParser {
             return Optional.empty();
         }
 
-        if ("[DONE]".equals(data)) {
-            return Optional.of(LlmChunk.builder().done(true).build());
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        return Optional.ofNullable(parseSseData(bytes, 0, bytes.length, new StreamingToolCallAccumulator()));
+    }
+
+    /**
+     * 为一个流创建解析器；工具调用片段在同一个流内按 index 累积。
+     */
+    SseEventDecoder.DataParser<LlmChunk> newStreamParser() {
+        StreamingToolCallAccumulator toolCalls = new StreamingToolCallAccumulator();
+        return (data, offset, length) -> parseSseData(data, offset, length, toolCalls);
+    }
+
+    /**
+     * 直接在 SSE data 负载的字节上做流式解析，只取 choices[0] 中的 delta.content、delta.tool_calls
+     * 与 finish_reason，以及顶层 usage，其余字段跳过，不构建 JSON 树。返回 null 表示该事件不产生 chunk。
+     *
+     * <p>工具调用一旦完整（出现下一个 index，或 finish_reason / [DONE] 到达）就放进该事件 chunk 的 toolCalls。
+     */
+    LlmChunk parseSseData(byte[] data, int offset, int length, StreamingToolCallAccumulator toolCalls) {
+        if (isDoneMarker(data, offset, length)) {
+            List<ToolCall> completed = toolCalls.completeAll();
+            return LlmChunk.builder()
+                    .toolCalls(completed.isEmpty() ? null : completed)
+                    .done(true)
+                    .build();
         }
 
-        try {
-            JsonNode root = objectMapper.readTree(data);
-            JsonNode choices = root.get("choices");
-            if (choices == null || choices.isEmpty()) {
-                return Optional.empty();
+        try (JsonParser parser = objectMapper.getFactory().createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
             }
 
-            JsonNode firstChoice = choices.get(0);
-            JsonNode delta = firstChoice.get("delta");
-            JsonNode finishReasonNode = firstChoice.get("finish_reason");
+            StreamDelta delta = new StreamDelta(toolCalls);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    readChoices(parser, delta);
+                } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    // 只在流末尾出现一次，直接读成树
+                    delta.usage = readUsage(objectMapper.readTree(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
 
-            String content = null;
-            if (delta != null && delta.has("content") && !delta.get("content").isNull()) {
-                content = delta.get("content").asText();
+            boolean done = delta.finishReason != null;
+            if (done) {
+                delta.addCompleted(toolCalls.completeAll());
+            }
+            if (delta.content == null && delta.reasoning == null && !done && !delta.hasToolCallFragment && delta.usage == null) {
+                return null;
             }
 
-            String finishReason = null;
-            if (finishReasonNode != null && !finishReasonNode.isNull()) {
-                finishReason = finishReasonNode.asText();
+            return LlmChunk.builder()
+                    .delta(delta.content)
+                    .reasoningDelta(delta.reasoning)
+                    .toolCalls(delta.completedToolCalls)
+                    .toolCallIndex(delta.hasToolCallFragment ? delta.toolCallIndex : null)
+                    .toolCallFunctionName(delta.toolCallFunctionName)
+                    .toolCallArgumentsDelta(delta.toolCallArgumentsDelta)
+                    .finishReason(delta.finishReason)
+                    .usage(delta.usage)
+                    .done(done)
+                    .build();
+        } catch (IOException e) {
+            log.warn("Failed to parse SSE chunk: {}", new String(data, offset, length, StandardCharsets.UTF_8));
+            return null;
+        }
+    }
+
+    private void readChoices(JsonParser parser, StreamDelta delta) throws IOException {
+        boolean first = true;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (first && parser.currentToken() == JsonToken.START_OBJECT) {
+                readChoice(parser, delta);
+            } else {
+                parser.skipChildren();
             }
+            first = false;
+        }
+    }
 
-            boolean done = finishReason != null;
-            if (content == null && !done) {
-                return Optional.empty();
+    private void readChoice(JsonParser parser, StreamDelta delta) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "delta" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        readDelta(parser, delta);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "finish_reason" -> delta.finishReason = textOrNull(parser, value);
+                default -> parser.skipChildren();
             }
+        }
+    }
 
-            return Optional.of(LlmChunk.builder()
-                    .delta(content)
-                    .finishReason(finishReason)
-                    .done(done)
-                    .build());
-        } catch (JsonProcessingException e) {
-            log.warn("Failed to parse SSE chunk: {}", data);
-            return Optional.empty();
+    private void readDelta(JsonParser parser, StreamDelta delta) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field)) {
+                delta.content = textOrNull(parser, value);
+            } else if ("reasoning_content".equals(field)) {
+                delta.reasoning = textOrNull(parser, value);
+            } else if ("tool_calls".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readToolCallFragment(parser, delta);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readToolCallFragment(JsonParser parser, StreamDelta delta) throws IOException {
+        Integer index = null;
+        String id = null;
+        String type = null;
+        String name = null;
+        String arguments = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "index" -> index = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+                case "id" -> id = textOrNull(parser, value);
+                case "type" -> type = textOrNull(parser, value);
+                case "function" -> {
+                    if (value != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String functionField = parser.currentName();
+                        JsonToken functionValue = parser.nextToken();
+                        if ("name".equals(functionField)) {
+                            name = textOrNull(parser, functionValue);
+                        } else if ("arguments".equals(functionField)) {
+                            arguments = textOrNull(parser, functionValue);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        delta.addCompleted(delta.toolCalls.append(index, id, type, name, arguments));
+        delta.hasToolCallFragment = true;
+        delta.toolCallIndex = delta.toolCalls.lastIndex();
+        delta.toolCallFunctionName = name;
+        delta.toolCallArgumentsDelta = arguments;
+    }
+
+    private String textOrNull(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getText();
+    }
+
+    private boolean isDoneMarker(byte[] data, int offset, int length) {
+        if (length != DONE_MARKER.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[offset + i] != DONE_MARKER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 单个 SSE 事件里需要的字段。
+     */
+    private static final class StreamDelta {
+        private final StreamingToolCallAccumulator toolCalls;
+        private String content;
+        private String reasoning;
+        private String finishReason;
+        private boolean hasToolCallFragment;
+        private int toolCallIndex;
+        private String toolCallFunctionName;
+        private String toolCallArgumentsDelta;
+        private List<ToolCall> completedToolCalls;
+        private LlmResponse.Usage usage;
+
+        private StreamDelta(StreamingToolCallAccumulator toolCalls) {
+            this.toolCalls = toolCalls;
+        }
+
+        private void addCompleted(List<ToolCall> completed) {
+            if (completed.isEmpty()) {
+                return;
+            }
+            if (completedToolCalls == null) {
+                completedToolCalls = new ArrayList<>(completed);
+            } else {
+                completedToolCalls.addAll(completed);
+            }
         }
     }
 
@@ -141,11 +321,31 @@ class LlmResponseParser {
             return null;
         }
 
-        JsonNode usageNode = root.get("usage");
+        return readUsage(root.get("usage"));
+    }
+
+    /**
+     * 缓存命中的 token 数：DeepSeek 放在 prompt_cache_hit_tokens，
+     * OpenAI / 通义千问兼容模式放在 prompt_tokens_details.cached_tokens
+     */
+    private LlmResponse.Usage readUsage(JsonNode usageNode) {
+        if (usageNode == null || !usageNode.isObject()) {
+            return null;
+        }
+
+        JsonNode cacheHit = usageNode.has("prompt_cache_hit_tokens")
+                ? usageNode.get("prompt_cache_hit_tokens")
+                : usageNode.path("prompt_tokens_details").path("cached_tokens");
+
         return LlmResponse.Usage.builder()
-                .promptTokens(usageNode.get("prompt_tokens").asInt())
-                .completionTokens(usageNode.get("completion_tokens").asInt())
-                .totalTokens(usageNode.get("total_tokens").asInt())
+                .promptTokens(intOrNull(usageNode.get("prompt_tokens")))
+                .completionTokens(intOrNull(usageNode.get("completion_tokens")))
+                .totalTokens(intOrNull(usageNode.get("total_tokens")))
+                .cacheReadInputTokens(intOrNull(cacheHit))
                 .build();
     }
+
+    private Integer intOrNull(JsonNode node) {
+        return node != null && node.isNumber() ? node.asInt() : null;
+    }
 }
@@ -0,0 +1,210 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.llm.model.LlmChunk;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * 流式请求的重试
+ *
+ * 每次订阅记录已经输出给下游的回答正文、推理内容和是否输出过工具调用片段。失败时按
+ * {@link LlmExecutionSupport#retryDelay} 决定是否重试、等多久；还没有输出内容时直接重发，
+ * 已经输出内容时按 {@link StreamRetryMode}：
+ * <ul>
+ *   <li>BEFORE_FIRST_TOKEN：不重试，错误交给下游</li>
+ *   <li>DEDUPLICATE：重发同一请求，重放内容里与已输出部分相同的前缀被丢弃；前缀对不上时以 INVALID_RESPONSE 失败</li>
+ *   <li>CONTINUE：在原请求末尾追加已输出内容作为 assistant 前缀，上游只生成剩余部分</li>
+ * </ul>
+ * 输出过工具调用片段的流无法拼接参数，任何模式下都不在输出后重试；
+ * 输出过推理内容的流不能用 CONTINUE 续写。
+ */
+@Slf4j
+class LlmStreamRetry {
+
+    private final LlmExecutionSupport executionSupport;
+    private final StreamRetryMode mode;
+
+    LlmStreamRetry(LlmExecutionSupport executionSupport, StreamRetryMode mode) {
+        this.executionSupport = executionSupport;
+        this.mode = mode != null ? mode : StreamRetryMode.BEFORE_FIRST_TOKEN;
+    }
+
+    /**
+     * @param attempt 对给定请求发起一次（不重试的）流式调用
+     */
+    Flux<LlmChunk> apply(OpenAiChatCompletionRequest request,
+                         Function<OpenAiChatCompletionRequest, Flux<LlmChunk>> attempt) {
+        return Flux.defer(() -> attempt(request, request, attempt, new Progress(), 1));
+    }
+
+    private Flux<LlmChunk> attempt(OpenAiChatCompletionRequest original,
+                                   OpenAiChatCompletionRequest request,
+                                   Function<OpenAiChatCompletionRequest, Flux<LlmChunk>> attempt,
+                                   Progress progress,
+                                   long retry) {
+        return attempt.apply(request)
+                .mapNotNull(progress::accept)
+                .onErrorResume(failure -> {
+                    if (!progress.canResume()) {
+                        return Flux.error(failure);
+                    }
+                    Duration delay = executionSupport.retryDelay(failure, retry, "stream");
+                    if (delay == null) {
+                        return Flux.error(failure);
+                    }
+                    if (progress.hasOutput()) {
+                        log.info("Resuming LLM stream: mode={}, emittedChars={}, emittedReasoningChars={}",
+                                mode, progress.content.length(), progress.reasoning.length());
+                    }
+                    OpenAiChatCompletionRequest next = progress.nextRequest(original);
+                    return Mono.delay(delay).thenMany(attempt(original, next, attempt, progress, retry + 1));
+                });
+    }
+
+    /**
+     * 单次订阅内已经输出的内容；同一订阅的 chunk 串行到达，不需要同步
+     */
+    private final class Progress {
+        private final EmittedText content = new EmittedText("content");
+        private final EmittedText reasoning = new EmittedText("reasoning");
+        private boolean toolCallsEmitted;
+
+        private LlmChunk accept(LlmChunk chunk) {
+            if (chunk.getToolCallIndex() != null || chunk.getToolCalls() != null) {
+                toolCallsEmitted = true;
+            }
+            String delta = content.accept(chunk.getDelta());
+            String reasoningDelta = reasoning.accept(chunk.getReasoningDelta());
+            if (chunk.isDone() && (content.replaying() || reasoning.replaying())) {
+                throw diverged("ended early");
+            }
+            if (Objects.equals(delta, chunk.getDelta()) && Objects.equals(reasoningDelta, chunk.getReasoningDelta())) {
+                return chunk;
+            }
+            // 整块都是重复内容且没有别的信息时丢弃
+            if (delta == null && reasoningDelta == null && carriesOnlyText(chunk)) {
+                return null;
+            }
+            return chunk.toBuilder().delta(delta).reasoningDelta(reasoningDelta).build();
+        }
+
+        private boolean hasOutput() {
+            return content.hasOutput() || reasoning.hasOutput() || toolCallsEmitted;
+        }
+
+        /**
+         * 输出过工具调用片段的流都不能接上；CONTINUE 只能把回答正文作为前缀，推理内容无法续写
+         */
+        private boolean canResume() {
+            if (!hasOutput()) {
+                return true;
+            }
+            return switch (mode) {
+                case BEFORE_FIRST_TOKEN -> false;
+                case DEDUPLICATE -> !toolCallsEmitted;
+                case CONTINUE -> !toolCallsEmitted && !reasoning.hasOutput();
+            };
+        }
+
+        private OpenAiChatCompletionRequest nextRequest(OpenAiChatCompletionRequest original) {
+            if (!hasOutput()) {
+                return original;
+            }
+            if (mode == StreamRetryMode.DEDUPLICATE) {
+                content.startReplay();
+                reasoning.startReplay();
+                return original;
+            }
+
+            OpenAiChatCompletionRequest.OpenAiChatMessage prefix = new OpenAiChatCompletionRequest.OpenAiChatMessage();
+            prefix.setRole("assistant");
+            prefix.setContent(content.text());
+            prefix.setPrefix(true);
+            List<OpenAiChatCompletionRequest.OpenAiChatMessage> messages = new ArrayList<>(original.getMessages());
+            messages.add(prefix);
+            return original.toBuilder().messages(messages).build();
+        }
+
+        private boolean carriesOnlyText(LlmChunk chunk) {
+            return chunk.getFinishReason() == null
+                    && chunk.getToolCallIndex() == null
+                    && chunk.getToolCalls() == null
+                    && !chunk.isDone()
+                    && chunk.getUsage() == null;
+        }
+    }
+
+    /**
+     * 一路文本增量（回答正文或推理内容）已经输出的部分，以及 DEDUPLICATE 重放时的比对位置
+     */
+    private static final class EmittedText {
+        private final String channel;
+        private final StringBuilder emitted = new StringBuilder();
+
+        /**
+         * 重放时已经对上的字符数；追上已输出内容后回到 -1，之后的增量照常输出
+         */
+        private int replayed = -1;
+
+        private EmittedText(String channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return 去掉重放部分后要输出的增量；整段都是重放内容时为 null
+         */
+        private String accept(String delta) {
+            if (delta == null || delta.isEmpty()) {
+                return delta;
+            }
+            if (replaying()) {
+                int overlap = Math.min(delta.length(), emitted.length() - replayed);
+                if (!delta.startsWith(emitted.substring(replayed, replayed + overlap))) {
+                    throw diverged(channel + " differs at char " + replayed);
+                }
+                replayed += overlap;
+                if (replayed == emitted.length()) {
+                    replayed = -1;
+                }
+                delta = delta.substring(overlap);
+                if (delta.isEmpty()) {
+                    return null;
+                }
+            }
+            emitted.append(delta);
+            return delta;
+        }
+
+        private void startReplay() {
+            replayed = emitted.isEmpty() ? -1 : 0;
+        }
+
+        private boolean replaying() {
+            return replayed >= 0;
+        }
+
+        private boolean hasOutput() {
+            return !emitted.isEmpty();
+        }
+
+        private String text() {
+            return emitted.toString();
+        }
+
+        private int length() {
+            return emitted.length();
+        }
+    }
+
+    private static LlmException diverged(String detail) {
+        return new LlmException(LlmErrorType.INVALID_RESPONSE, false, null,
+                "LLM stream replay diverged from the already emitted output: " + detail);
+    }
+}
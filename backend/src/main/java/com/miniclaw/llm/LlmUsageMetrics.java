@@ -0,0 +1,163 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.llm.model.LlmResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LLM 用量与首 token 延迟指标
+ *
+ * 按 Provider 累计上游 usage 中的输入、输出和前缀缓存命中 token 数，
+ * 以及流式请求从订阅到第一个内容或工具调用片段的时间（含重试），不依赖 Micrometer。
+ * 同时统计精确匹配响应缓存的命中与未命中次数，以及切换到备用模型和流式对冲的次数。
+ */
+@Component
+public class LlmUsageMetrics {
+
+    private final Map<String, ProviderUsage> providers = new ConcurrentHashMap<>();
+    private final LongAdder responseCacheHits = new LongAdder();
+    private final LongAdder responseCacheMisses = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder hedgesStarted = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+
+    void recordUsage(String providerId, LlmResponse.Usage usage) {
+        if (usage == null) {
+            return;
+        }
+
+        ProviderUsage stats = stats(providerId);
+        stats.responses.increment();
+        stats.promptTokens.add(valueOrZero(usage.getPromptTokens()));
+        stats.completionTokens.add(valueOrZero(usage.getCompletionTokens()));
+        stats.cachedPromptTokens.add(valueOrZero(usage.getCacheReadInputTokens()));
+    }
+
+    void recordFirstToken(String providerId, long nanos) {
+        ProviderUsage stats = stats(providerId);
+        stats.firstTokens.increment();
+        stats.firstTokenNanos.add(nanos);
+        stats.maxFirstTokenNanos.accumulate(nanos);
+    }
+
+    void recordResponseCacheLookup(boolean hit) {
+        (hit ? responseCacheHits : responseCacheMisses).increment();
+    }
+
+    void recordFailover() {
+        failovers.increment();
+    }
+
+    void recordHedgeStarted() {
+        hedgesStarted.increment();
+    }
+
+    void recordHedgeWon() {
+        hedgesWon.increment();
+    }
+
+    /**
+     * 每个 Provider 一条快照
+     */
+    public List<UsageSnapshot> snapshot() {
+        List<UsageSnapshot> snapshots = new ArrayList<>(providers.size());
+        providers.forEach((providerId, stats) -> snapshots.add(stats.snapshot(providerId)));
+        return snapshots;
+    }
+
+    /**
+     * 输入 token 中命中上游前缀缓存的比例；没有数据时为 0
+     */
+    public double getPromptCacheHitRatio(String providerId) {
+        ProviderUsage stats = providers.get(providerId);
+        return stats == null ? 0 : stats.snapshot(providerId).promptCacheHitRatio();
+    }
+
+    public long getCachedPromptTokens(String providerId) {
+        ProviderUsage stats = providers.get(providerId);
+        return stats == null ? 0 : stats.cachedPromptTokens.sum();
+    }
+
+    /**
+     * 精确匹配响应缓存的命中次数（只统计可缓存的请求）
+     */
+    public long getResponseCacheHits() {
+        return responseCacheHits.sum();
+    }
+
+    public long getResponseCacheMisses() {
+        return responseCacheMisses.sum();
+    }
+
+    /**
+     * 某个候选模型失败后切换到下一个备用模型的次数
+     */
+    public long getFailovers() {
+        return failovers.sum();
+    }
+
+    /**
+     * 发起对冲请求的次数；其中对冲一方先出首 token 的次数见 {@link #getHedgesWon()}
+     */
+    public long getHedgesStarted() {
+        return hedgesStarted.sum();
+    }
+
+    public long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    private ProviderUsage stats(String providerId) {
+        return providers.computeIfAbsent(providerId, ignored -> new ProviderUsage());
+    }
+
+    private static long valueOrZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private static final class ProviderUsage {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder cachedPromptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder firstTokens = new LongAdder();
+        private final LongAdder firstTokenNanos = new LongAdder();
+        private final LongAccumulator maxFirstTokenNanos = new LongAccumulator(Math::max, 0);
+
+        private UsageSnapshot snapshot(String providerId) {
+            long firstTokenCount = firstTokens.sum();
+            return new UsageSnapshot(
+                    providerId,
+                    responses.sum(),
+                    promptTokens.sum(),
+                    cachedPromptTokens.sum(),
+                    completionTokens.sum(),
+                    firstTokenCount,
+                    firstTokenCount == 0 ? 0 : firstTokenNanos.sum() / firstTokenCount / 1_000_000,
+                    maxFirstTokenNanos.get() / 1_000_000
+            );
+        }
+    }
+
+    public record UsageSnapshot(
+            String providerId,
+            long responses,
+            long promptTokens,
+            long cachedPromptTokens,
+            long completionTokens,
+            long firstTokens,
+            long averageFirstTokenMillis,
+            long maxFirstTokenMillis
+    ) {
+
+        public double promptCacheHitRatio() {
+            return promptTokens == 0 ? 0 : (double) cachedPromptTokens / promptTokens;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.miniclaw.llm;
+
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 确定性的本地 embedding
+ *
+ * 特征哈希：英文按单词、中日韩文字按单字和相邻两字取特征，每个特征哈希到一个维度并带上符号，
+ * 最后归一化。同一文本在任何进程里得到相同的向量，字面越接近的文本余弦相似度越高。
+ *
+ * 只用于离线开发、测试和基准，不具备真实模型的语义能力。
+ */
+public class LocalEmbeddingClient implements EmbeddingClient {
+
+    private final int dimensions;
+
+    public LocalEmbeddingClient(int dimensions) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive: " + dimensions);
+        }
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public Mono<List<float[]>> embedAll(List<String> texts) {
+        return Mono.fromSupplier(() -> {
+            List<float[]> vectors = new ArrayList<>(texts.size());
+            for (String text : texts) {
+                vectors.add(vectorize(text));
+            }
+            return vectors;
+        });
+    }
+
+    float[] vectorize(String text) {
+        float[] vector = new float[dimensions];
+        String normalized = text == null ? "" : text.toLowerCase(Locale.ROOT);
+
+        StringBuilder word = new StringBuilder();
+        int previousCjk = -1;
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (isCjk(codePoint)) {
+                addWord(vector, word);
+                addFeature(vector, "u:" + Character.toString(codePoint));
+                if (previousCjk >= 0) {
+                    addFeature(vector, "b:" + Character.toString(previousCjk) + Character.toString(codePoint));
+                }
+                previousCjk = codePoint;
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+                previousCjk = -1;
+            } else {
+                addWord(vector, word);
+                previousCjk = -1;
+            }
+        }
+        addWord(vector, word);
+
+        return EmbeddingVectors.normalize(vector);
+    }
+
+    private void addWord(float[] vector, StringBuilder word) {
+        if (!word.isEmpty()) {
+            addFeature(vector, "w:" + word);
+            word.setLength(0);
+        }
+    }
+
+    private void addFeature(float[] vector, String feature) {
+        int hash = mix(feature.hashCode());
+        int index = Math.floorMod(hash, dimensions);
+        vector[index] += (hash & 0x8000_0000) == 0 ? 1f : -1f;
+    }
+
+    /**
+     * murmur3 的 fmix32，打散 String.hashCode 的低位
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
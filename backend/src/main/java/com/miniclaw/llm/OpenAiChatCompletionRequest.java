@@ -2,6 +2,7 @@ package com.miniclaw.llm;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -10,9 +11,16 @@ import lombok.NoArgsConstructor;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Chat Completions 请求体
+ *
+ * 字段顺序固定：model、messages、tools 在前，每轮会变化的采样参数在后，
+ * 同一会话连续请求的序列化结果从头开始逐字节一致，便于上游命中前缀缓存。
+ */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"model", "messages", "tools", "tool_choice", "temperature", "max_tokens", "stream", "stream_options"})
 class OpenAiChatCompletionRequest {
 
     private String model;
@@ -28,8 +36,24 @@ class OpenAiChatCompletionRequest {
     @JsonProperty("tool_choice")
     private String toolChoice;
 
+    @JsonProperty("stream_options")
+    private StreamOptions streamOptions;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    static class StreamOptions {
+
+        /**
+         * 在流末尾返回 usage（含缓存命中的 token 数）
+         */
+        @JsonProperty("include_usage")
+        private Boolean includeUsage;
+    }
+
     @Data
     @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonPropertyOrder({"role", "content", "tool_calls", "tool_call_id", "prefix"})
     static class OpenAiChatMessage {
         private String role;
         private Object content;
@@ -39,10 +63,16 @@ class OpenAiChatCompletionRequest {
 
         @JsonProperty("tool_call_id")
         private String toolCallId;
+
+        /**
+         * 末尾 assistant 消息作为续写前缀（DeepSeek 的 prefix completion）；只在流式续写重试时设置
+         */
+        private Boolean prefix;
     }
 
     @Data
     @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonPropertyOrder({"id", "type", "function"})
     static class OpenAiChatToolCall {
         private String id;
         private String type;
@@ -51,6 +81,7 @@ class OpenAiChatCompletionRequest {
         @Data
         @AllArgsConstructor
         @NoArgsConstructor
+        @JsonPropertyOrder({"name", "arguments"})
         static class Function {
             private String name;
             private String arguments;
@@ -0,0 +1,99 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.llm.model.LlmRequest;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * OpenAI 兼容的 /embeddings 客户端
+ *
+ * 复用 {@link OpenAiCompatibleLlmClient} 的 Provider 连接池和执行链路：错误映射、重试与 chat 请求一致，
+ * 并和 chat 共用同一个 {@link LlmProviderHealth}，embeddings 的失败同样计入熔断，熔断打开时同样被拒绝。
+ * 应用内不直接注入它，而是经过 {@link BatchingEmbeddingClient} 的缓存和批量合并。
+ */
+public class OpenAiCompatibleEmbeddingClient implements EmbeddingClient {
+
+    private final LlmProviderRegistry providerRegistry;
+    private final LlmExecutionSupport executionSupport;
+    private final LlmProperties.Embedding settings;
+    private final ObjectMapper objectMapper;
+
+    public OpenAiCompatibleEmbeddingClient(OpenAiCompatibleLlmClient llmClient,
+                                           LlmProperties properties,
+                                           ObjectMapper objectMapper) {
+        this(llmClient.providerRegistry(), llmClient.executionSupport(), properties.getEmbedding(), objectMapper);
+    }
+
+    OpenAiCompatibleEmbeddingClient(LlmProviderRegistry providerRegistry,
+                                    LlmExecutionSupport executionSupport,
+                                    LlmProperties.Embedding settings,
+                                    ObjectMapper objectMapper) {
+        this.providerRegistry = providerRegistry;
+        this.executionSupport = executionSupport;
+        this.settings = settings;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Mono<List<float[]>> embedAll(List<String> texts) {
+        if (texts.isEmpty()) {
+            return Mono.just(List.of());
+        }
+
+        return Mono.defer(() -> {
+                    ResolvedLlmContext context = providerRegistry.resolve(LlmRequest.builder()
+                            .providerId(settings.getProviderId())
+                            .build());
+                    OpenAiEmbeddingRequest request = new OpenAiEmbeddingRequest(
+                            settings.getModel(),
+                            texts,
+                            settings.getDimensions() > 0 ? settings.getDimensions() : null
+                    );
+                    return executionSupport.executeJson(context, "/embeddings", request, "embeddings");
+                })
+                .map(body -> parse(body, texts.size()))
+                .onErrorMap(executionSupport::asLlmException);
+    }
+
+    /**
+     * 按 data[].index 还原输入顺序
+     */
+    List<float[]> parse(String body, int expected) {
+        JsonNode data;
+        try {
+            data = objectMapper.readTree(body).path("data");
+        } catch (IOException e) {
+            throw new LlmException(LlmErrorType.INVALID_RESPONSE, false, null,
+                    "Failed to parse embeddings response: " + e.getMessage(), e);
+        }
+
+        float[][] vectors = new float[expected][];
+        for (int i = 0; i < data.size(); i++) {
+            JsonNode item = data.get(i);
+            int index = item.path("index").asInt(i);
+            JsonNode embedding = item.path("embedding");
+            if (index < 0 || index >= expected || !embedding.isArray()) {
+                continue;
+            }
+            float[] vector = new float[embedding.size()];
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = (float) embedding.get(j).asDouble();
+            }
+            vectors[index] = vector;
+        }
+
+        for (float[] vector : vectors) {
+            if (vector == null) {
+                throw new LlmException(LlmErrorType.INVALID_RESPONSE, false, null,
+                        "Embeddings response is missing vectors: expected " + expected);
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+}
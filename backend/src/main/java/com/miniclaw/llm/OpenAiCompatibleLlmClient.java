@@ -6,27 +6,81 @@ import com.miniclaw.llm.model.LlmChunk;
 import com.miniclaw.llm.model.LlmRequest;
 import com.miniclaw.llm.model.LlmResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.SynchronousSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * OpenAI 兼容的 LLM 客户端
+ *
+ * 配置了 llm.fallback-models 时，默认路由的请求按顺序尝试主模型和各个备用模型：
+ * 除最后一个候选外都不在同一 Provider 上重试，失败（请求本身有误的 BAD_REQUEST 除外）立即切到下一个；
+ * 流式请求只在还没有输出任何 chunk 时切换，已经输出的内容不会被另一个模型的回答接上；
+ * 同一模型上的流式重试见 {@link LlmStreamRetry}。
+ *
+ * 开启 llm.hedge 后，流式请求在主模型首 token 超过等待时间（近期首 token 延迟的分位数）仍未到达时，
+ * 向备用链并发发起第二个请求，先输出 chunk 的一方胜出，另一方被取消。
+ *
+ * 每次上游调用都经过 {@link LlmProviderHealth}：Provider 熔断或并发已满时立即失败（不重试），
+ * 有备用模型的请求随即切换过去。
+ */
 @Slf4j
 @Component
-public class OpenAiCompatibleLlmClient implements LlmClient {
+public class OpenAiCompatibleLlmClient implements LlmClient, DisposableBean {
 
     private final LlmProviderRegistry providerRegistry;
     private final LlmRequestMapper requestMapper;
     private final LlmExecutionSupport executionSupport;
     private final LlmResponseParser responseParser;
+    private final LlmUsageMetrics usageMetrics;
+    private final LlmResponseCache responseCache;
+    private final LlmFallbackChain fallbackChain;
+    private final LlmProperties.Hedge hedge;
+    private final LlmStreamRetry streamRetry;
+    private final FirstTokenLatencyTracker firstTokenLatencies = new FirstTokenLatencyTracker();
 
-    @Autowired
     public OpenAiCompatibleLlmClient(LlmProperties properties, ObjectMapper objectMapper) {
+        this(properties, objectMapper, new LlmConnectionPoolMetrics());
+    }
+
+    public OpenAiCompatibleLlmClient(LlmProperties properties, ObjectMapper objectMapper, LlmConnectionPoolMetrics poolMetrics) {
+        this(properties, objectMapper, poolMetrics, new LlmUsageMetrics());
+    }
+
+    public OpenAiCompatibleLlmClient(LlmProperties properties,
+                                     ObjectMapper objectMapper,
+                                     LlmConnectionPoolMetrics poolMetrics,
+                                     LlmUsageMetrics usageMetrics) {
+        this(properties, objectMapper, poolMetrics, usageMetrics, new LlmProviderHealth(properties));
+    }
+
+    @Autowired
+    public OpenAiCompatibleLlmClient(LlmProperties properties,
+                                     ObjectMapper objectMapper,
+                                     LlmConnectionPoolMetrics poolMetrics,
+                                     LlmUsageMetrics usageMetrics,
+                                     LlmProviderHealth providerHealth) {
         this(
-                new LlmProviderRegistry(properties),
+                new LlmProviderRegistry(properties, poolMetrics),
                 new LlmRequestMapper(properties),
-                new LlmExecutionSupport(properties, objectMapper),
-                new LlmResponseParser(objectMapper)
+                new LlmExecutionSupport(properties, objectMapper, providerHealth),
+                new LlmResponseParser(objectMapper),
+                usageMetrics,
+                new LlmResponseCache(properties.getResponseCache(), objectMapper),
+                new LlmFallbackChain(properties),
+                properties.getHedge(),
+                properties.getStreamRetryMode()
         );
     }
 
@@ -34,45 +88,49 @@ public class OpenAiCompatibleLlmClient implements LlmClient {
             LlmProviderRegistry providerRegistry,
             LlmRequestMapper requestMapper,
             LlmExecutionSupport executionSupport,
-            LlmResponseParser responseParser
+            LlmResponseParser responseParser,
+            LlmUsageMetrics usageMetrics,
+            LlmResponseCache responseCache,
+            LlmFallbackChain fallbackChain,
+            LlmProperties.Hedge hedge,
+            StreamRetryMode streamRetryMode
     ) {
         this.providerRegistry = providerRegistry;
         this.requestMapper = requestMapper;
         this.executionSupport = executionSupport;
         this.responseParser = responseParser;
+        this.usageMetrics = usageMetrics;
+        this.responseCache = responseCache;
+        this.fallbackChain = fallbackChain;
+        this.hedge = hedge != null ? hedge : new LlmProperties.Hedge();
+        this.streamRetry = new LlmStreamRetry(executionSupport, streamRetryMode);
     }
 
     @Override
     public LlmResponse chat(LlmRequest request) {
-        ResolvedLlmContext context = providerRegistry.resolve(request);
-        OpenAiChatCompletionRequest apiRequest = requestMapper.map(request, context, false);
-
-        try {
-            LlmResponse response = executionSupport.executeChat(context, apiRequest)
-                    .map(responseParser::parseChat)
-                    .onErrorMap(executionSupport::asLlmException)
-                    .block();
+        return chatAsync(request).block();
+    }
 
-            if (response == null) {
-                throw new LlmException(LlmErrorType.INVALID_RESPONSE, false, null, "LLM returned an empty response");
-            }
-            return response;
-        } catch (RuntimeException e) {
-            LlmException failure = executionSupport.asLlmException(e);
-            log.error("LLM chat request failed: type={}, status={}, retryable={}, message={}",
-                    failure.getErrorType(), failure.getHttpStatus(), failure.isRetryable(), failure.getMessage());
-            throw failure;
-        }
+    @Override
+    public Mono<LlmResponse> chatAsync(LlmRequest request) {
+        return Mono.defer(() -> chatWithFailover(fallbackChain.candidates(request), 0))
+                .switchIfEmpty(Mono.error(() -> new LlmException(
+                        LlmErrorType.INVALID_RESPONSE, false, null, "LLM returned an empty response")))
+                .onErrorMap(executionSupport::asLlmException)
+                .doOnError(e -> {
+                    LlmException failure = executionSupport.asLlmException(e);
+                    log.error("LLM chat request failed: type={}, status={}, retryable={}, message={}",
+                            failure.getErrorType(), failure.getHttpStatus(), failure.isRetryable(), failure.getMessage());
+                });
     }
 
     @Override
     public Flux<LlmChunk> stream(LlmRequest request) {
-        ResolvedLlmContext context = providerRegistry.resolve(request);
-        OpenAiChatCompletionRequest apiRequest = requestMapper.map(request, context, true);
-
-        return executionSupport.executeStream(context, apiRequest)
-                .handle((String line, SynchronousSink<LlmChunk> sink) ->
-                        responseParser.parseSseLine(line).ifPresent(sink::next))
+        List<LlmRequest> candidates = fallbackChain.candidates(request);
+        Flux<LlmChunk> chunks = hedge.isEnabled() && candidates.size() > 1
+                ? hedgedStream(candidates)
+                : streamWithFailover(candidates, 0);
+        return chunks
                 .onErrorMap(executionSupport::asLlmException)
                 .doOnError(e -> {
                     LlmException failure = executionSupport.asLlmException(e);
@@ -80,4 +138,238 @@ public class OpenAiCompatibleLlmClient implements LlmClient {
                             failure.getErrorType(), failure.getHttpStatus(), failure.isRetryable(), failure.getMessage());
                 });
     }
+
+    private Mono<LlmResponse> chatWithFailover(List<LlmRequest> candidates, int index) {
+        boolean last = index == candidates.size() - 1;
+        Mono<LlmResponse> attempt = chatOnce(candidates.get(index), last);
+        if (last) {
+            return attempt;
+        }
+        return attempt.onErrorResume(this::shouldFailOver, e -> {
+            logFailover("chat", candidates, index, e);
+            return chatWithFailover(candidates, index + 1);
+        });
+    }
+
+    private Mono<LlmResponse> chatOnce(LlmRequest request, boolean retry) {
+        return Mono.defer(() -> {
+            ResolvedLlmContext context = providerRegistry.resolve(request);
+            OpenAiChatCompletionRequest apiRequest = requestMapper.map(request, context, false);
+            String cacheKey = responseCache.keyOf(context.getProviderId(), apiRequest);
+            LlmResponse cached = lookupCached(cacheKey);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+
+            return executionSupport.executeChat(context, apiRequest, retry)
+                    .map(responseParser::parseChat)
+                    .doOnNext(response -> {
+                        usageMetrics.recordUsage(context.getProviderId(), response.getUsage());
+                        executionSupport.recordUsage(context, apiRequest, response.getUsage());
+                        if (cacheKey != null) {
+                            responseCache.put(cacheKey, response);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 依次尝试候选模型；某个候选一旦输出了实际内容（见 {@link LlmChunk#hasOutput()}），之后的错误直接透传
+     */
+    private Flux<LlmChunk> streamWithFailover(List<LlmRequest> candidates, int index) {
+        boolean last = index == candidates.size() - 1;
+        // 主请求保持原来的行为：路由和映射错误在调用 stream() 时直接抛出
+        Flux<LlmChunk> attempt = index == 0
+                ? streamOnce(candidates.get(index), last)
+                : Flux.defer(() -> streamOnce(candidates.get(index), last));
+        if (last) {
+            return attempt;
+        }
+        return Flux.defer(() -> {
+            AtomicBoolean emitted = new AtomicBoolean();
+            return attempt
+                    .doOnNext(chunk -> {
+                        if (chunk.hasOutput()) {
+                            emitted.set(true);
+                        }
+                    })
+                    .onErrorResume(e -> !emitted.get() && shouldFailOver(e), e -> {
+                        logFailover("stream", candidates, index, e);
+                        return streamWithFailover(candidates, index + 1);
+                    });
+        });
+    }
+
+    private Flux<LlmChunk> streamOnce(LlmRequest request, boolean retry) {
+        ResolvedLlmContext context = providerRegistry.resolve(request);
+        OpenAiChatCompletionRequest apiRequest = requestMapper.map(request, context, true);
+
+        String cacheKey = responseCache.keyOf(context.getProviderId(), apiRequest);
+        Flux<LlmChunk> chunks = retry
+                ? streamRetry.apply(apiRequest, attempt -> streamAttempt(context, attempt))
+                : streamAttempt(context, apiRequest);
+        return Flux.defer(() -> {
+            LlmResponse cached = lookupCached(cacheKey);
+            if (cached != null) {
+                return responseCache.replay(cached);
+            }
+            Flux<LlmChunk> measured = recordStreamMetrics(context.getProviderId(), chunks);
+            return cacheKey != null ? responseCache.recordStream(cacheKey, measured) : measured;
+        });
+    }
+
+    private Flux<LlmChunk> streamAttempt(ResolvedLlmContext context, OpenAiChatCompletionRequest apiRequest) {
+        return executionSupport.executeStream(context, apiRequest, responseParser::newStreamParser,
+                LlmChunk::hasOutput, LlmChunk::getUsage);
+    }
+
+    /**
+     * 主请求不重试；等待时间到了或主请求先失败时，从第一个备用模型开始发起对冲请求。
+     * 先输出实际内容的一方胜出（开头只有 role 的空 chunk 先压住，和首个实际内容一起放出），
+     * 两边都失败时返回主请求的错误。
+     */
+    private Flux<LlmChunk> hedgedStream(List<LlmRequest> candidates) {
+        Flux<LlmChunk> primary = streamOnce(candidates.get(0), false);
+        Flux<LlmChunk> fallback = streamWithFailover(candidates, 1);
+        String primaryProviderId = providerIdOf(candidates.get(0));
+
+        return Flux.defer(() -> {
+            Duration delay = hedgeDelay(primaryProviderId);
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            AtomicReference<Throwable> primaryFailure = new AtomicReference<>();
+            AtomicBoolean decided = new AtomicBoolean();
+
+            Flux<LlmChunk> primaryLeg = holdUntilOutput(primary)
+                    .doOnNext(chunk -> decided.compareAndSet(false, true))
+                    .doOnError(e -> {
+                        primaryFailure.set(e);
+                        if (shouldFailOver(e)) {
+                            primaryFailed.tryEmitEmpty();
+                        } else {
+                            primaryFailed.tryEmitError(e);
+                        }
+                    })
+                    .doOnComplete(primaryFailed::tryEmitEmpty);
+
+            Flux<LlmChunk> hedgeLeg = holdUntilOutput(fallback)
+                    .doOnSubscribe(subscription -> {
+                        if (primaryFailure.get() == null) {
+                            usageMetrics.recordHedgeStarted();
+                            log.info("Hedging LLM stream: primary={}, delay={}ms", primaryProviderId, delay.toMillis());
+                        }
+                    })
+                    .delaySubscription(Mono.firstWithSignal(Mono.delay(delay), primaryFailed.asMono()))
+                    .doOnNext(chunk -> {
+                        if (decided.compareAndSet(false, true) && primaryFailure.get() == null) {
+                            usageMetrics.recordHedgeWon();
+                        }
+                    });
+
+            return Flux.firstWithValue(primaryLeg, hedgeLeg)
+                    .onErrorMap(NoSuchElementException.class, e -> primaryFailure.get() != null ? primaryFailure.get() : e);
+        });
+    }
+
+    /**
+     * 把首个实际内容之前的 chunk（role 空 chunk 等）攒起来，和它一起下发；
+     * 流没有任何实际内容就结束时，在结束前放出攒下的 chunk
+     */
+    private static Flux<LlmChunk> holdUntilOutput(Flux<LlmChunk> chunks) {
+        return Flux.defer(() -> {
+            List<LlmChunk> held = new ArrayList<>();
+            AtomicBoolean started = new AtomicBoolean();
+            return chunks
+                    .concatMapIterable(chunk -> {
+                        if (started.get()) {
+                            return List.of(chunk);
+                        }
+                        held.add(chunk);
+                        if (!chunk.hasOutput() && !chunk.isDone() && chunk.getFinishReason() == null) {
+                            return List.of();
+                        }
+                        started.set(true);
+                        List<LlmChunk> released = new ArrayList<>(held);
+                        held.clear();
+                        return released;
+                    })
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(held)));
+        });
+    }
+
+    private Duration hedgeDelay(String providerId) {
+        long nanos = firstTokenLatencies.percentileNanos(providerId, hedge.getPercentile(), hedge.getMinSamples());
+        long millis = nanos < 0 ? hedge.getInitialDelayMillis() : TimeUnit.NANOSECONDS.toMillis(nanos);
+        long min = Math.max(0, hedge.getMinDelayMillis());
+        return Duration.ofMillis(Math.max(min, Math.min(Math.max(min, hedge.getMaxDelayMillis()), millis)));
+    }
+
+    private String providerIdOf(LlmRequest request) {
+        return providerRegistry.resolve(request).getProviderId();
+    }
+
+    private boolean shouldFailOver(Throwable throwable) {
+        return executionSupport.asLlmException(throwable).getErrorType() != LlmErrorType.BAD_REQUEST;
+    }
+
+    private void logFailover(String operation, List<LlmRequest> candidates, int index, Throwable throwable) {
+        usageMetrics.recordFailover();
+        LlmException failure = executionSupport.asLlmException(throwable);
+        LlmRequest next = candidates.get(index + 1);
+        log.warn("LLM {} request failed over to {}:{}: type={}, status={}, message={}",
+                operation, next.getProviderId(), next.getModel(),
+                failure.getErrorType(), failure.getHttpStatus(), failure.getMessage());
+    }
+
+    private LlmResponse lookupCached(String cacheKey) {
+        if (cacheKey == null) {
+            return null;
+        }
+        LlmResponse cached = responseCache.get(cacheKey);
+        usageMetrics.recordResponseCacheLookup(cached != null);
+        return cached;
+    }
+
+    /**
+     * 记录首 token 延迟（从订阅算起，含重试）和流末尾的 usage；
+     * 首 token 之前被取消（对冲落败）时按已等待的时间记一个延迟样本
+     */
+    private Flux<LlmChunk> recordStreamMetrics(String providerId, Flux<LlmChunk> chunks) {
+        return Flux.defer(() -> {
+            long subscribedAt = System.nanoTime();
+            AtomicBoolean firstTokenSeen = new AtomicBoolean();
+            return chunks
+                    .doOnNext(chunk -> {
+                        if (chunk.hasOutput() && firstTokenSeen.compareAndSet(false, true)) {
+                            long nanos = System.nanoTime() - subscribedAt;
+                            usageMetrics.recordFirstToken(providerId, nanos);
+                            firstTokenLatencies.record(providerId, nanos);
+                        }
+                        usageMetrics.recordUsage(providerId, chunk.getUsage());
+                    })
+                    .doOnCancel(() -> {
+                        if (firstTokenSeen.compareAndSet(false, true)) {
+                            firstTokenLatencies.record(providerId, System.nanoTime() - subscribedAt);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 同一组上游连接池，供 embeddings 等其他接口复用
+     */
+    LlmProviderRegistry providerRegistry() {
+        return providerRegistry;
+    }
+
+    /**
+     * 同一套熔断、并发上限和限流，供 embeddings 等其他接口复用
+     */
+    LlmExecutionSupport executionSupport() {
+        return executionSupport;
+    }
+
+    @Override
+    public void destroy() {
+        providerRegistry.dispose();
+    }
 }
@@ -0,0 +1,24 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Embeddings 请求体
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"model", "input", "dimensions"})
+class OpenAiEmbeddingRequest {
+
+    private String model;
+    private List<String> input;
+    private Integer dimensions;
+}
@@ -0,0 +1,151 @@
+package com.miniclaw.llm;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 增量 SSE 解码器：直接在响应 {@link DataBuffer} 上切分行，把 {@code data:} 负载以字节区间交给解析器。
+ *
+ * <p>不为每一行创建 String，也不依赖 Spring 的 SSE 读取器；一行跨越多个网络包时
+ * 在内部行缓冲区里拼接，缓冲区按需扩容并在整个流中复用。
+ *
+ * <p>每次请求尝试（包括重试）必须使用新的实例，实例本身不是线程安全的。
+ */
+class SseEventDecoder {
+
+    private static final int INITIAL_LINE_CAPACITY = 1024;
+    private static final byte[] DATA_FIELD = {'d', 'a', 't', 'a', ':'};
+
+    private byte[] line = new byte[INITIAL_LINE_CAPACITY];
+    private int lineLength;
+    private boolean skipLineFeed;
+
+    /**
+     * 解析 SSE data 负载。返回 null 表示该事件不产生结果。
+     */
+    @FunctionalInterface
+    interface DataParser<T> {
+
+        T parse(byte[] data, int offset, int length);
+    }
+
+    /**
+     * 解码一个数据块，返回其中完整 data 行的解析结果；解码后释放该数据块。
+     */
+    <T> List<T> decode(DataBuffer buffer, DataParser<T> parser) {
+        List<T> results = null;
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                results = decode(iterator.next(), parser, results);
+            }
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+        return results != null ? results : Collections.emptyList();
+    }
+
+    /**
+     * 流结束时处理没有以换行结尾的最后一行。
+     */
+    <T> List<T> finish(DataParser<T> parser) {
+        if (lineLength == 0) {
+            return Collections.emptyList();
+        }
+        List<T> results = dispatchLine(parser, null);
+        return results != null ? results : Collections.emptyList();
+    }
+
+    private <T> List<T> decode(ByteBuffer bytes, DataParser<T> parser, List<T> results) {
+        int start = bytes.position();
+        int limit = bytes.limit();
+
+        for (int i = start; i < limit; i++) {
+            byte b = bytes.get(i);
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (b == '\n') {
+                    start = i + 1;
+                    continue;
+                }
+            }
+            if (b != '\n' && b != '\r') {
+                continue;
+            }
+
+            append(bytes, start, i);
+            results = dispatchLine(parser, results);
+            skipLineFeed = b == '\r';
+            start = i + 1;
+        }
+
+        append(bytes, start, limit);
+        return results;
+    }
+
+    private void append(ByteBuffer bytes, int from, int to) {
+        int length = to - from;
+        if (length <= 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            byte[] expanded = new byte[Math.max(line.length * 2, lineLength + length)];
+            System.arraycopy(line, 0, expanded, 0, lineLength);
+            line = expanded;
+        }
+        bytes.get(from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private <T> List<T> dispatchLine(DataParser<T> parser, List<T> results) {
+        int length = lineLength;
+        lineLength = 0;
+        if (length == 0) {
+            return results;
+        }
+
+        int offset;
+        if (startsWithDataField(length)) {
+            offset = DATA_FIELD.length;
+            if (offset < length && line[offset] == ' ') {
+                offset++;
+            }
+        } else if (line[0] == '{') {
+            // 部分兼容网关不带 SSE 字段名，直接逐行输出 JSON
+            offset = 0;
+        } else {
+            // 注释行（":"）以及 event/id/retry 字段与 chat 流无关
+            return results;
+        }
+
+        if (offset >= length) {
+            return results;
+        }
+
+        T parsed = parser.parse(line, offset, length - offset);
+        if (parsed == null) {
+            return results;
+        }
+        if (results == null) {
+            results = new ArrayList<>(2);
+        }
+        results.add(parsed);
+        return results;
+    }
+
+    private boolean startsWithDataField(int length) {
+        if (length < DATA_FIELD.length) {
+            return false;
+        }
+        for (int i = 0; i < DATA_FIELD.length; i++) {
+            if (line[i] != DATA_FIELD[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
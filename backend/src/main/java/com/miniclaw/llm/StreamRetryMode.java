@@ -0,0 +1,24 @@
+package com.miniclaw.llm;
+
+/**
+ * 流式请求中途失败后如何重试
+ */
+public enum StreamRetryMode {
+
+    /**
+     * 只在还没有输出任何内容时重试；已经输出内容的流直接失败
+     */
+    BEFORE_FIRST_TOKEN,
+
+    /**
+     * 重新发起同一个请求，丢弃与已输出内容重复的前缀；重放内容与已输出内容不一致时失败。
+     * 适合 temperature 为 0 的确定性请求，输入和已输出部分的 token 会再计一次费
+     */
+    DEDUPLICATE,
+
+    /**
+     * 把已输出的内容作为末尾的 assistant 前缀发起续写请求，只生成剩余部分。
+     * 需要上游支持 assistant 前缀续写
+     */
+    CONTINUE
+}
@@ -0,0 +1,117 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.llm.model.ToolCall;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 单个流内的工具调用累积器
+ *
+ * 流式 tool_calls 以 index 区分，id 和函数名只在第一个片段出现，arguments 分片到达。
+ * 兼容服务按 index 顺序输出调用，因此出现更大的 index 时，之前的调用就已经完整；
+ * 剩余调用在 finish_reason 或 [DONE] 时完成。
+ *
+ * 每个流（每次请求尝试）一个实例，非线程安全。
+ */
+class StreamingToolCallAccumulator {
+
+    private final TreeMap<Integer, PendingToolCall> pending = new TreeMap<>();
+    private int lastIndex = -1;
+
+    /**
+     * 追加一个 tool_calls 片段
+     *
+     * @param index 片段的 index；缺失时为 null
+     * @return 因为新 index 出现而完成的调用，没有则为空列表
+     */
+    List<ToolCall> append(Integer index, String id, String type, String name, String argumentsDelta) {
+        int resolvedIndex = resolveIndex(index, id);
+        lastIndex = resolvedIndex;
+
+        List<ToolCall> completed = completeBefore(resolvedIndex);
+
+        PendingToolCall call = pending.computeIfAbsent(resolvedIndex, ignored -> new PendingToolCall());
+        if (id != null && !id.isEmpty()) {
+            call.id = id;
+        }
+        if (type != null && !type.isEmpty()) {
+            call.type = type;
+        }
+        if (name != null && !name.isEmpty()) {
+            // 个别服务在每个片段里重复完整函数名，也有分片输出函数名的
+            if (call.name == null) {
+                call.name = name;
+            } else if (!call.name.equals(name)) {
+                call.name = call.name + name;
+            }
+        }
+        if (argumentsDelta != null) {
+            call.arguments.append(argumentsDelta);
+        }
+        return completed;
+    }
+
+    /**
+     * 流结束：完成所有未完成的调用
+     */
+    List<ToolCall> completeAll() {
+        return completeBefore(Integer.MAX_VALUE);
+    }
+
+    int lastIndex() {
+        return lastIndex;
+    }
+
+    private int resolveIndex(Integer index, String id) {
+        if (index != null) {
+            return index;
+        }
+        if (lastIndex < 0) {
+            return 0;
+        }
+        // 少数服务不带 index：出现新的 id 视为下一个调用
+        PendingToolCall current = pending.get(lastIndex);
+        if (id != null && !id.isEmpty() && current != null && current.id != null && !id.equals(current.id)) {
+            return lastIndex + 1;
+        }
+        return lastIndex;
+    }
+
+    private List<ToolCall> completeBefore(int index) {
+        if (pending.isEmpty() || pending.firstKey() >= index) {
+            return Collections.emptyList();
+        }
+
+        List<ToolCall> completed = new ArrayList<>(1);
+        Iterator<Map.Entry<Integer, PendingToolCall>> iterator = pending.headMap(index, false).entrySet().iterator();
+        while (iterator.hasNext()) {
+            completed.add(iterator.next().getValue().toToolCall());
+            iterator.remove();
+        }
+        return completed;
+    }
+
+    private static final class PendingToolCall {
+        private String id;
+        private String type = "function";
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+
+        private ToolCall toToolCall() {
+            return ToolCall.builder()
+                    .id(id)
+                    .type(type)
+                    .function(ToolCall.FunctionCall.builder()
+                            .name(name)
+                            // 无参函数有的服务一个参数片段都不发
+                            .arguments(arguments.isEmpty() ? "{}" : arguments.toString())
+                            .build())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.llm.model.LlmRequest;
+import com.miniclaw.llm.model.ToolCall;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 消息 token 数估算
+ *
+ * 不依赖具体模型的分词器：中日韩字符按 1 个 token 计，其余字符按 4 个一组计，
+ * 再加上每条消息的格式开销。估算偏保守，只用于上下文裁剪，不用于计费。
+ *
+ * 估算结果按文本缓存（弱引用，文本不再被引用后自动清除）。多轮对话里历史消息的文本
+ * 是同一批字符串，因此每轮只需要逐字符扫描新增的消息。缓存键用不可变的 String，
+ * 而不是可变的 {@link LlmRequest.Message}：消息内容被改过之后不会命中旧的估算。
+ */
+class TokenEstimator {
+
+    /**
+     * 每条消息的 role、分隔符等格式开销
+     */
+    static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    /**
+     * 单张图片按高精度模式的典型开销计
+     */
+    static final int IMAGE_TOKENS = 765;
+
+    private final Map<String, Integer> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    int estimate(LlmRequest.Message message) {
+        int tokens = MESSAGE_OVERHEAD_TOKENS + estimate(message.getContent());
+
+        if (message.hasContentParts()) {
+            for (LlmRequest.Message.ContentPart part : message.getContentParts()) {
+                tokens += part.isImageUrl() ? IMAGE_TOKENS : estimate(part.getText());
+            }
+        }
+        if (message.getToolCalls() != null) {
+            for (ToolCall toolCall : message.getToolCalls()) {
+                if (toolCall.getFunction() != null) {
+                    tokens += estimate(toolCall.getFunction().getName()) + estimate(toolCall.getFunction().getArguments());
+                }
+            }
+        }
+        return tokens;
+    }
+
+    int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+
+        Integer cached = cache.get(text);
+        if (cached != null) {
+            return cached;
+        }
+
+        int tokens = count(text);
+        cache.put(text, tokens);
+        return tokens;
+    }
+
+    int cachedTexts() {
+        return cache.size();
+    }
+
+    private int count(String text) {
+        int tokens = 0;
+        int otherChars = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                tokens++;
+            } else {
+                otherChars++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return tokens + (otherChars + 3) / 4;
+    }
+
+    private boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
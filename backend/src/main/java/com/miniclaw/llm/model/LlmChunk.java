@@ -24,7 +24,7 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class LlmChunk {
 
     /**
@@ -41,11 +41,21 @@ public class LlmChunk {
      */
     private String delta;
 
+    /**
+     * 推理内容增量（可选）
+     * 
+     * 对应 delta.reasoning_content，deepseek-reasoner 等推理模型在正式回答之前输出的思考过程
+     * 与 delta 分开：推理内容只用于展示，不计入回答，也不写入会话历史
+     */
+    private String reasoningDelta;
+
     /**
      * 工具调用列表（可选）
      * 
-     * 在 finishReason = "tool_calls" 时才有
-     * 包含完整的工具调用信息（已累积完成）
+     * 某个调用的参数累积完成时才有：
+     * - 下一个 index 的片段到达时，之前的调用已完整
+     * - finishReason 或 [DONE] 到达时，剩余调用全部完整
+     * 包含完整的工具调用信息（已累积完成），每个调用只出现一次
      * 
      * 为什么在 Chunk 中返回？
      * - 流式输出结束时，需要知道完整的 tool_calls
@@ -75,6 +85,14 @@ public class LlmChunk {
      */
     private boolean done;
 
+    /**
+     * 工具调用序号（仅工具调用片段有值）
+     * 
+     * 对应 delta.tool_calls[].index
+     * 并行调用多个工具时，用于区分 toolCallFunctionName / toolCallArgumentsDelta 属于哪一个调用
+     */
+    private Integer toolCallIndex;
+
     /**
      * 工具调用函数名（首次 delta 时有值）
      * 
@@ -120,4 +138,17 @@ public class LlmChunk {
     public boolean hasToolCalls() {
         return toolCalls != null && !toolCalls.isEmpty();
     }
+
+    /**
+     * 判断是否带有实际输出：非空的回答、推理内容或工具调用
+     * 
+     * DeepSeek、Qwen 的流都以只有 role 的空 chunk（delta = ""）开头，
+     * 它在响应头之后立刻到达，不代表模型已经开始生成，首 token、故障转移和对冲都不能以它为准
+     */
+    public boolean hasOutput() {
+        return (delta != null && !delta.isEmpty())
+                || (reasoningDelta != null && !reasoningDelta.isEmpty())
+                || toolCallIndex != null
+                || hasToolCalls();
+    }
 }
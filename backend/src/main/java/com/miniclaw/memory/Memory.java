@@ -0,0 +1,9 @@
+package com.miniclaw.memory;
+
+/**
+ * 一条检索到的长期记忆
+ *
+ * @param similarity 与查询的余弦相似度
+ */
+public record Memory(long id, String content, double similarity) {
+}
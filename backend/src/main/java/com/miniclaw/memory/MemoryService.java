@@ -0,0 +1,210 @@
+package com.miniclaw.memory;
+
+import com.miniclaw.config.MemoryProperties;
+import com.miniclaw.llm.EmbeddingClient;
+import com.miniclaw.llm.EmbeddingVectors;
+import com.miniclaw.llm.model.LlmRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 长期记忆：按用户写入和检索文本片段
+ *
+ * 检索先看堆外热点缓存（{@link OffHeapVectorCache}），没有再查 pgvector 的 HNSW 索引。
+ * 同一用户检索达到一定次数后，把它的全部向量异步加载进热点缓存，之后的检索不再访问数据库；
+ * 记忆太多的用户不加载，始终走索引。
+ *
+ * 匿名会话（没有 ownerId）不读写记忆。embedding 或数据库出错时返回空结果，不影响对话。
+ *
+ * 这里不做鉴权，传入的 ownerId 就是隔离边界，调用方必须保证它来自可信来源。
+ * 网关会话的 ownerId 由 {@link com.miniclaw.gateway.session.SessionOwnerResolver} 决定，
+ * 默认取握手认证出的 Principal；客户端自报的 ownerId 只在开启 memory.trust-client-owner-id 时采用，
+ * 仅适用于所有客户端都可信的内网环境。
+ */
+@Slf4j
+@Component
+public class MemoryService {
+
+    /**
+     * 检索计数表的上限，超过后整体清空重新计数，避免被大量一次性用户撑大
+     */
+    private static final int MAX_TRACKED_OWNERS = 100_000;
+
+    private final EmbeddingClient embeddingClient;
+    private final MemoryStore store;
+    private final MemoryProperties properties;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final OffHeapVectorCache hotCache;
+    private final Map<String, AtomicInteger> recallCounts = new ConcurrentHashMap<>();
+    private final Set<String> loadingOwners = ConcurrentHashMap.newKeySet();
+    private final Set<String> staleLoads = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hotRecalls = new LongAdder();
+    private final LongAdder indexRecalls = new LongAdder();
+
+    @Autowired
+    public MemoryService(EmbeddingClient embeddingClient, MemoryStore store, MemoryProperties properties) {
+        this(embeddingClient, store, properties, Schedulers.boundedElastic(), Clock.systemUTC());
+    }
+
+    MemoryService(EmbeddingClient embeddingClient,
+                  MemoryStore store,
+                  MemoryProperties properties,
+                  Scheduler scheduler,
+                  Clock clock) {
+        this.embeddingClient = embeddingClient;
+        this.store = store;
+        this.properties = properties;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.hotCache = new OffHeapVectorCache(properties.getHotCacheMaxBytes());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 写入一条记忆
+     *
+     * @return 新记忆的 id
+     */
+    public Mono<Long> remember(String ownerId, String content) {
+        if (!properties.isEnabled()) {
+            return Mono.error(new IllegalStateException("Memory is disabled"));
+        }
+        if (ownerId == null || content == null || content.isBlank()) {
+            return Mono.error(new IllegalArgumentException("Memory requires ownerId and content"));
+        }
+
+        return embeddingClient.embed(content)
+                .map(EmbeddingVectors::normalize)
+                .flatMap(embedding -> Mono.fromCallable(() -> {
+                            long id = store.insert(ownerId, content, embedding, clock.instant());
+                            if (!hotCache.appendIfPresent(ownerId, id, content, embedding) && loadingOwners.contains(ownerId)) {
+                                // 正在整体加载，这一条可能没被读到，加载完成后作废
+                                staleLoads.add(ownerId);
+                            }
+                            return id;
+                        })
+                        .subscribeOn(scheduler));
+    }
+
+    /**
+     * 检索与 query 最相关的记忆，按相似度从高到低
+     */
+    public Mono<List<Memory>> recall(String ownerId, String query) {
+        if (!properties.isEnabled() || ownerId == null || query == null || query.isBlank()) {
+            return Mono.just(List.of());
+        }
+
+        return embeddingClient.embed(query)
+                .map(EmbeddingVectors::normalize)
+                .flatMap(embedding -> {
+                    List<Memory> hot = hotCache.search(ownerId, embedding, properties.getTopK(), properties.getMinSimilarity());
+                    if (hot != null) {
+                        hotRecalls.increment();
+                        return Mono.just(hot);
+                    }
+                    return Mono.fromCallable(() -> store.search(ownerId, embedding, properties.getTopK()))
+                            .subscribeOn(scheduler)
+                            .map(memories -> memories.stream()
+                                    .filter(memory -> memory.similarity() >= properties.getMinSimilarity())
+                                    .toList())
+                            .doOnNext(ignored -> {
+                                indexRecalls.increment();
+                                notePromotion(ownerId);
+                            });
+                })
+                .onErrorResume(e -> {
+                    log.warn("Memory recall failed for owner {}, continuing without memories: {}", ownerId, e.getMessage());
+                    return Mono.just(List.of());
+                });
+    }
+
+    /**
+     * 把记忆作为一条 system 消息插到本轮输入之前
+     *
+     * 插在末尾而不是开头：前面的历史消息保持不变，不破坏上游的前缀缓存
+     */
+    public List<LlmRequest.Message> inject(List<LlmRequest.Message> messages, List<Memory> memories) {
+        if (memories.isEmpty() || messages.isEmpty()) {
+            return messages;
+        }
+
+        StringBuilder content = new StringBuilder("以下是与用户相关的长期记忆，仅在与当前问题相关时参考：");
+        for (Memory memory : memories) {
+            content.append("\n- ").append(memory.content());
+        }
+
+        List<LlmRequest.Message> injected = new ArrayList<>(messages.size() + 1);
+        injected.addAll(messages.subList(0, messages.size() - 1));
+        injected.add(LlmRequest.Message.system(content.toString()));
+        injected.add(messages.get(messages.size() - 1));
+        return injected;
+    }
+
+    public long getHotRecalls() {
+        return hotRecalls.sum();
+    }
+
+    public long getIndexRecalls() {
+        return indexRecalls.sum();
+    }
+
+    public int getHotOwners() {
+        return hotCache.owners();
+    }
+
+    public long getHotCacheBytes() {
+        return hotCache.usedBytes();
+    }
+
+    private void notePromotion(String ownerId) {
+        if (recallCounts.size() > MAX_TRACKED_OWNERS) {
+            recallCounts.clear();
+        }
+        int recalls = recallCounts.computeIfAbsent(ownerId, ignored -> new AtomicInteger()).incrementAndGet();
+        if (recalls < properties.getPromoteAfterRecalls() || !loadingOwners.add(ownerId)) {
+            return;
+        }
+
+        Mono.fromRunnable(() -> promote(ownerId))
+                .subscribeOn(scheduler)
+                .doFinally(ignored -> loadingOwners.remove(ownerId))
+                .subscribe(null, e -> log.warn("Failed to load memories of owner {} into hot cache: {}", ownerId, e.getMessage()));
+    }
+
+    private void promote(String ownerId) {
+        int limit = properties.getHotOwnerMaxVectors();
+        staleLoads.remove(ownerId);
+        List<MemoryStore.MemoryVector> vectors = store.loadOwner(ownerId, limit + 1);
+        recallCounts.remove(ownerId);
+        if (vectors.size() > limit) {
+            log.debug("Owner {} has more than {} memories, keeping it on the HNSW index", ownerId, limit);
+            return;
+        }
+        if (!hotCache.put(ownerId, vectors)) {
+            return;
+        }
+        if (staleLoads.remove(ownerId)) {
+            hotCache.remove(ownerId);
+            return;
+        }
+        log.debug("Loaded {} memories of owner {} into hot cache", vectors.size(), ownerId);
+    }
+}
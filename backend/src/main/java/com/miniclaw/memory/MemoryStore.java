@@ -0,0 +1,91 @@
+package com.miniclaw.memory;
+
+import com.miniclaw.llm.EmbeddingVectors;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 长期记忆的 pgvector 存储
+ *
+ * top-k 检索走 HNSW 索引。索引本身不区分用户，按 owner_id 过滤后结果可能不足 k 条，
+ * 因此在只读事务里打开 pgvector 0.8 的迭代扫描（strict_order），不足时继续向下扫描，
+ * 结果仍按距离有序。
+ */
+@Component
+public class MemoryStore {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO memory_entries (owner_id, content, embedding, created_at)
+            VALUES (?, ?, ?::vector, ?)
+            RETURNING id
+            """;
+
+    private static final String SEARCH_SQL = """
+            SELECT id, content, 1 - (embedding <=> ?::vector) AS similarity
+            FROM memory_entries
+            WHERE owner_id = ?
+            ORDER BY embedding <=> ?::vector
+            LIMIT ?
+            """;
+
+    private static final String LOAD_OWNER_SQL = """
+            SELECT id, content, embedding::text AS embedding
+            FROM memory_entries
+            WHERE owner_id = ?
+            ORDER BY id
+            LIMIT ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public MemoryStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * @param embedding 已归一化的向量
+     * @return 新记忆的 id
+     */
+    public long insert(String ownerId, String content, float[] embedding, Instant createdAt) {
+        Long id = jdbcTemplate.queryForObject(INSERT_SQL, Long.class,
+                ownerId, content, EmbeddingVectors.toPgVector(embedding), Timestamp.from(createdAt));
+        return id != null ? id : -1;
+    }
+
+    public List<Memory> search(String ownerId, float[] embedding, int topK) {
+        String vector = EmbeddingVectors.toPgVector(embedding);
+        return readOnlyTransaction.execute(status -> {
+            jdbcTemplate.execute("SET LOCAL hnsw.iterative_scan = strict_order");
+            return jdbcTemplate.query(SEARCH_SQL, (rs, rowNum) -> new Memory(
+                    rs.getLong("id"),
+                    rs.getString("content"),
+                    rs.getDouble("similarity")
+            ), vector, ownerId, vector, topK);
+        });
+    }
+
+    /**
+     * 按写入顺序读出用户的全部向量，用于加载热点缓存
+     *
+     * @param limit 最多读取的条数；调用方传上限 + 1 来判断是否超限
+     */
+    public List<MemoryVector> loadOwner(String ownerId, int limit) {
+        return jdbcTemplate.query(LOAD_OWNER_SQL, (rs, rowNum) -> new MemoryVector(
+                rs.getLong("id"),
+                rs.getString("content"),
+                EmbeddingVectors.parsePgVector(rs.getString("embedding"))
+        ), ownerId, limit);
+    }
+
+    public record MemoryVector(long id, String content, float[] embedding) {
+    }
+}
@@ -0,0 +1,210 @@
+package com.miniclaw.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 热点用户的堆外向量缓存
+ *
+ * 每个用户的向量连续存放在一块 direct buffer 里（行优先，每行一个归一化向量），
+ * 不占用堆、不给 GC 增加扫描压力；id 和文本仍在堆上。检索是对整块做精确的点积扫描，
+ * 只有记忆条数不多的用户才会被放进来，比跨网络查 HNSW 更快且结果精确。
+ *
+ * 按整个用户做 LRU 淘汰，所有块的字节数之和不超过上限。
+ *
+ * 块本身不可变：追加时如果容量够，就把新向量写到旧块已用范围之外，再发布一个 size + 1 的新块，
+ * 已经拿到旧块的检索只读前 size 行，不受影响；容量不够时按倍数扩容后复制。
+ */
+class OffHeapVectorCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Block> blocks = new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes;
+
+    OffHeapVectorCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 用给定的向量整体替换该用户的缓存
+     *
+     * @return 放不下（单个用户超过总上限）时为 false
+     */
+    synchronized boolean put(String ownerId, List<MemoryStore.MemoryVector> vectors) {
+        remove(ownerId);
+        if (vectors.isEmpty()) {
+            return false;
+        }
+
+        int dimensions = vectors.get(0).embedding().length;
+        Block block = Block.allocate(dimensions, vectors.size());
+        if (block.bytes() > maxBytes) {
+            return false;
+        }
+        for (MemoryStore.MemoryVector vector : vectors) {
+            if (vector.embedding().length != dimensions) {
+                return false;
+            }
+            block = block.append(vector.id(), vector.content(), vector.embedding());
+        }
+
+        blocks.put(ownerId, block);
+        usedBytes += block.bytes();
+        evictOverBudget(ownerId);
+        return true;
+    }
+
+    /**
+     * 用户已在缓存中时追加一条
+     *
+     * @return 用户不在缓存中时为 false；id 不大于已缓存的最后一条（整体加载时已读到）时忽略
+     */
+    synchronized boolean appendIfPresent(String ownerId, long id, String content, float[] embedding) {
+        Block block = blocks.get(ownerId);
+        if (block == null) {
+            return false;
+        }
+        if (block.size > 0 && id <= block.ids[block.size - 1]) {
+            return true;
+        }
+        if (embedding.length != block.dimensions) {
+            remove(ownerId);
+            return false;
+        }
+
+        Block appended = block.append(id, content, embedding);
+        blocks.put(ownerId, appended);
+        usedBytes += appended.bytes() - block.bytes();
+        evictOverBudget(ownerId);
+        return true;
+    }
+
+    synchronized boolean contains(String ownerId) {
+        return blocks.containsKey(ownerId);
+    }
+
+    synchronized void remove(String ownerId) {
+        Block removed = blocks.remove(ownerId);
+        if (removed != null) {
+            usedBytes -= removed.bytes();
+        }
+    }
+
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    synchronized int owners() {
+        return blocks.size();
+    }
+
+    /**
+     * @param query 已归一化的向量
+     * @return 相似度从高到低的前 topK 条；用户不在缓存中时为 null
+     */
+    List<Memory> search(String ownerId, float[] query, int topK, double minSimilarity) {
+        Block block;
+        synchronized (this) {
+            block = blocks.get(ownerId);
+        }
+        if (block == null) {
+            return null;
+        }
+        if (query.length != block.dimensions || topK <= 0) {
+            return List.of();
+        }
+        return block.search(query, topK, minSimilarity);
+    }
+
+    private void evictOverBudget(String keep) {
+        Iterator<Map.Entry<String, Block>> iterator = blocks.entrySet().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Block> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            usedBytes -= eldest.getValue().bytes();
+            iterator.remove();
+        }
+    }
+
+    private static final class Block {
+        private final int dimensions;
+        private final FloatBuffer vectors;
+        private final long[] ids;
+        private final String[] contents;
+        private final int size;
+
+        private Block(int dimensions, FloatBuffer vectors, long[] ids, String[] contents, int size) {
+            this.dimensions = dimensions;
+            this.vectors = vectors;
+            this.ids = ids;
+            this.contents = contents;
+            this.size = size;
+        }
+
+        private static Block allocate(int dimensions, int capacity) {
+            FloatBuffer vectors = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, dimensions) * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            return new Block(dimensions, vectors, new long[capacity], new String[capacity], 0);
+        }
+
+        private long bytes() {
+            return (long) ids.length * dimensions * Float.BYTES;
+        }
+
+        private Block append(long id, String content, float[] embedding) {
+            Block target = this;
+            if (size == ids.length) {
+                target = allocate(dimensions, Math.max(16, ids.length * 2));
+                target.vectors.put(0, vectors, 0, size * dimensions);
+                System.arraycopy(ids, 0, target.ids, 0, size);
+                System.arraycopy(contents, 0, target.contents, 0, size);
+            }
+            target.vectors.put(size * dimensions, embedding);
+            target.ids[size] = id;
+            target.contents[size] = content;
+            return new Block(dimensions, target.vectors, target.ids, target.contents, size + 1);
+        }
+
+        private List<Memory> search(float[] query, int topK, double minSimilarity) {
+            // 按相似度降序维护的前 k 个候选，k 很小，插入排序即可
+            int[] best = new int[topK];
+            double[] scores = new double[topK];
+            int found = 0;
+
+            for (int row = 0; row < size; row++) {
+                int offset = row * dimensions;
+                double score = 0;
+                for (int i = 0; i < dimensions; i++) {
+                    score += (double) vectors.get(offset + i) * query[i];
+                }
+                if (score < minSimilarity || (found == topK && score <= scores[topK - 1])) {
+                    continue;
+                }
+
+                int position = found < topK ? found++ : topK - 1;
+                while (position > 0 && scores[position - 1] < score) {
+                    best[position] = best[position - 1];
+                    scores[position] = scores[position - 1];
+                    position--;
+                }
+                best[position] = row;
+                scores[position] = score;
+            }
+
+            List<Memory> memories = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                memories.add(new Memory(ids[best[i]], contents[best[i]], scores[i]));
+            }
+            return memories;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+-- 会话消息日志：按 seq 追加，读取时只取尾部
+-- 不对 sessions 建外键：会话行可能还在写后队列里，消息先落库
+CREATE TABLE session_messages (
+    id BIGSERIAL PRIMARY KEY,
+    session_id VARCHAR(36) NOT NULL,
+    seq INTEGER NOT NULL,
+    role VARCHAR(20) NOT NULL,
+    content TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_session_messages_session_seq UNIQUE (session_id, seq)
+);
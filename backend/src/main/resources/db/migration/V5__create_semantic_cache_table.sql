@@ -0,0 +1,19 @@
+-- 语义缓存：按 prompt 向量做近邻检索，相似度超过阈值时直接返回缓存的回答
+-- 向量维度与 llm.embedding.dimensions 一致
+CREATE EXTENSION IF NOT EXISTS vector;
+
+CREATE TABLE semantic_cache_entries (
+    id BIGSERIAL PRIMARY KEY,
+    scope VARCHAR(255) NOT NULL,
+    prompt TEXT NOT NULL,
+    embedding vector(1024) NOT NULL,
+    response TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- HNSW 近似近邻索引，按余弦距离（<=>）检索
+CREATE INDEX idx_semantic_cache_embedding ON semantic_cache_entries
+    USING hnsw (embedding vector_cosine_ops) WITH (m = 16, ef_construction = 64);
+
+-- 过期清理
+CREATE INDEX idx_semantic_cache_created_at ON semantic_cache_entries (created_at);
@@ -0,0 +1,16 @@
+-- 长期记忆：按用户（owner_id）存储的文本片段及其向量
+-- 向量维度与 llm.embedding.dimensions 一致，写入前已归一化
+CREATE TABLE memory_entries (
+    id BIGSERIAL PRIMARY KEY,
+    owner_id VARCHAR(255) NOT NULL,
+    content TEXT NOT NULL,
+    embedding vector(1024) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- HNSW 近似近邻索引，按余弦距离（<=>）检索；按用户过滤依赖 pgvector 0.8 的迭代扫描
+CREATE INDEX idx_memory_entries_embedding ON memory_entries
+    USING hnsw (embedding vector_cosine_ops) WITH (m = 16, ef_construction = 64);
+
+-- 记忆较少的用户走该索引后直接排序，也用于热点缓存整体加载
+CREATE INDEX idx_memory_entries_owner_id ON memory_entries (owner_id, id);
@@ -0,0 +1,71 @@
+package com.miniclaw.cache;
+
+import com.miniclaw.llm.EmbeddingVectors;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LocalSemanticIndexTest {
+
+    private static final int DIMENSIONS = 256;
+
+    @Test
+    void findsNearDuplicateAboveThreshold() {
+        LocalSemanticIndex index = new LocalSemanticIndex(100);
+        Random random = new Random(7);
+        float[] stored = randomVector(random);
+        index.put("deepseek:deepseek-chat", stored, "cached answer", Long.MAX_VALUE);
+
+        assertEquals("cached answer", index.search("deepseek:deepseek-chat", perturb(stored, random, 0.05f), 0.95, 0));
+        assertNull(index.search("deepseek:deepseek-chat", randomVector(random), 0.95, 0));
+    }
+
+    @Test
+    void isolatesScopesAndSkipsExpiredEntries() {
+        LocalSemanticIndex index = new LocalSemanticIndex(100);
+        float[] vector = randomVector(new Random(11));
+        index.put("qwen:qwen3.5-plus", vector, "qwen answer", 1_000);
+
+        assertNull(index.search("deepseek:deepseek-chat", vector, 0.95, 0));
+        assertEquals("qwen answer", index.search("qwen:qwen3.5-plus", vector, 0.95, 999));
+        assertNull(index.search("qwen:qwen3.5-plus", vector, 0.95, 1_000));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() {
+        LocalSemanticIndex index = new LocalSemanticIndex(2);
+        Random random = new Random(13);
+        float[] first = randomVector(random);
+        float[] second = randomVector(random);
+        float[] third = randomVector(random);
+
+        index.put("scope", first, "first", Long.MAX_VALUE);
+        index.put("scope", second, "second", Long.MAX_VALUE);
+        index.search("scope", first, 0.95, 0);
+        index.put("scope", third, "third", Long.MAX_VALUE);
+
+        assertEquals(2, index.size());
+        assertEquals("first", index.search("scope", first, 0.95, 0));
+        assertNull(index.search("scope", second, 0.95, 0));
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return EmbeddingVectors.normalize(vector);
+    }
+
+    private float[] perturb(float[] vector, Random random, float noise) {
+        float[] perturbed = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            perturbed[i] = vector[i] + (float) random.nextGaussian() * noise / (float) Math.sqrt(DIMENSIONS);
+        }
+        return EmbeddingVectors.normalize(perturbed);
+    }
+}
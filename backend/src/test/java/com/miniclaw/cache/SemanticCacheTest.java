@@ -0,0 +1,107 @@
+package com.miniclaw.cache;
+
+import com.miniclaw.config.SemanticCacheProperties;
+import com.miniclaw.llm.EmbeddingClient;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SemanticCacheTest {
+
+    private static final String SCOPE = "deepseek:deepseek-chat";
+    private static final Instant NOW = Instant.parse("2026-03-22T14:30:00Z");
+
+    private final Map<String, float[]> vectors = Map.of(
+            "什么是向量数据库", new float[]{1f, 0f, 0f},
+            "向量数据库是什么", new float[]{0.99f, 0.05f, 0f},
+            "今天天气怎么样", new float[]{0f, 1f, 0f}
+    );
+
+    @Test
+    void servesSimilarPromptFromLocalTierWithoutQueryingDatabase() {
+        SemanticCacheStore store = mock(SemanticCacheStore.class);
+        when(store.findNearest(eq(SCOPE), any(), any())).thenReturn(Optional.empty());
+        SemanticCache cache = cache(store, new AtomicInteger());
+
+        SemanticCache.Lookup miss = cache.lookup("什么是向量数据库").block();
+        assertFalse(miss.isHit());
+        cache.store(miss, "向量数据库用于存储和检索向量");
+
+        SemanticCache.Lookup hit = cache.lookup("向量数据库是什么").block();
+        assertTrue(hit.isHit());
+        assertEquals("向量数据库用于存储和检索向量", hit.answer());
+        assertEquals(1, cache.getLocalHits());
+        verify(store, times(1)).findNearest(eq(SCOPE), any(), any());
+        verify(store).insert(eq(SCOPE), eq("什么是向量数据库"), any(), eq("向量数据库用于存储和检索向量"), eq(NOW));
+
+        assertFalse(cache.lookup("今天天气怎么样").block().isHit());
+    }
+
+    @Test
+    void promotesDatabaseHitIntoLocalTier() {
+        SemanticCacheStore store = mock(SemanticCacheStore.class);
+        when(store.findNearest(eq(SCOPE), any(), eq(NOW.minusSeconds(86400))))
+                .thenReturn(Optional.of(new SemanticCacheStore.Match("persisted answer", 0.98, NOW.minusSeconds(60))));
+        SemanticCache cache = cache(store, new AtomicInteger());
+
+        assertEquals("persisted answer", cache.lookup("什么是向量数据库").block().answer());
+        assertEquals("persisted answer", cache.lookup("向量数据库是什么").block().answer());
+
+        assertEquals(1, cache.getRemoteHits());
+        assertEquals(1, cache.getLocalHits());
+        verify(store, times(1)).findNearest(any(), any(), any());
+    }
+
+    @Test
+    void treatsFailuresAsMissesAndSkipsWhenDisabled() {
+        SemanticCacheStore store = mock(SemanticCacheStore.class);
+        when(store.findNearest(any(), any(), any())).thenThrow(new IllegalStateException("database down"));
+        AtomicInteger embeddings = new AtomicInteger();
+        SemanticCache cache = cache(store, embeddings);
+
+        SemanticCache.Lookup lookup = cache.lookup("什么是向量数据库").block();
+        assertNull(lookup.answer());
+        assertEquals(1, cache.getMisses());
+
+        SemanticCacheProperties disabled = new SemanticCacheProperties();
+        SemanticCache disabledCache = new SemanticCache(embeddingClient(embeddings), store, disabled, SCOPE,
+                Schedulers.immediate(), Clock.fixed(NOW, ZoneOffset.UTC));
+        disabledCache.lookup("什么是向量数据库").block();
+        assertEquals(1, embeddings.get());
+        verify(store, never()).insert(any(), any(), any(), any(), any());
+    }
+
+    private SemanticCache cache(SemanticCacheStore store, AtomicInteger embeddings) {
+        SemanticCacheProperties properties = new SemanticCacheProperties();
+        properties.setEnabled(true);
+        return new SemanticCache(embeddingClient(embeddings), store, properties, SCOPE,
+                Schedulers.immediate(), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private EmbeddingClient embeddingClient(AtomicInteger calls) {
+        return texts -> {
+            calls.incrementAndGet();
+            return Mono.just(texts.stream().map(vectors::get).toList());
+        };
+    }
+}
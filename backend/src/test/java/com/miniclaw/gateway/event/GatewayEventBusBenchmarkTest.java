@@ -0,0 +1,114 @@
+package com.miniclaw.gateway.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.gateway.connection.ConnectionContext;
+import com.miniclaw.gateway.connection.ConnectionRegistry;
+import com.miniclaw.gateway.rpc.model.RpcEventFrame;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 出站事件总线的负载基准。
+ * 默认不跑，使用 mvn test -Dbenchmark=true -Dtest=GatewayEventBusBenchmarkTest 手动执行。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class GatewayEventBusBenchmarkTest {
+
+    private static final int[] CONNECTION_COUNTS = {10, 100, 1_000, 10_000};
+    private static final int WARMUP_EVENTS = 200_000;
+    private static final int MEASURED_EVENTS = 1_000_000;
+    private static final int LEGACY_MEASURED_EVENTS = 2_000;
+
+    @Test
+    void publishCostStaysFlatAsConnectionCountGrows() {
+        Map<Integer, Double> routedNanos = new LinkedHashMap<>();
+        Map<Integer, Double> legacyNanos = new LinkedHashMap<>();
+        for (int connectionCount : CONNECTION_COUNTS) {
+            routedNanos.put(connectionCount, measure(connectionCount));
+            legacyNanos.put(connectionCount, measureLegacyMulticast(connectionCount));
+        }
+
+        routedNanos.forEach((connections, nanos) ->
+                System.out.printf("[event-bus benchmark] connections=%d routed ns/event=%.1f legacy ns/event=%.1f%n",
+                        connections, nanos, legacyNanos.get(connections)));
+
+        int largestCount = CONNECTION_COUNTS[CONNECTION_COUNTS.length - 1];
+        double smallest = routedNanos.get(CONNECTION_COUNTS[0]);
+        double largest = routedNanos.get(largestCount);
+        // 1 万连接时 ConnectionContext 已经放不进 CPU cache，允许常数级的波动，但不能随连接数线性增长
+        assertTrue(largest < smallest * 10,
+                "publish cost should not scale with connection count: " + routedNanos);
+        assertTrue(largest * 10 < legacyNanos.get(largestCount),
+                "routed bus should be far cheaper than multicast + filter: " + routedNanos + " vs " + legacyNanos);
+    }
+
+    private double measure(int connectionCount) {
+        ConnectionRegistry registry = new ConnectionRegistry();
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
+        WebSocketSession webSocketSession = mock(WebSocketSession.class);
+        LongAdder delivered = new LongAdder();
+
+        List<GatewayEvent> events = new ArrayList<>(connectionCount);
+        RpcEventFrame frame = RpcEventFrame.of("req-bench", "session-bench", "chat.delta",
+                new ObjectMapper().createObjectNode().put("delta", "token"));
+        for (int i = 0; i < connectionCount; i++) {
+            ConnectionContext connection = registry.register(webSocketSession);
+            connection.outbound().subscribe(ignored -> delivered.increment());
+            events.add(GatewayEvent.outbound(connection.getConnectionId(), "session-bench", "req-bench", frame));
+        }
+
+        publish(eventBus, events, WARMUP_EVENTS);
+        delivered.reset();
+
+        long start = System.nanoTime();
+        publish(eventBus, events, MEASURED_EVENTS);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(MEASURED_EVENTS, delivered.sum());
+        return (double) elapsed / MEASURED_EVENTS;
+    }
+
+    /**
+     * 旧实现的对照组：一个全局 multicast sink，每个连接订阅后按 connectionId 过滤。
+     */
+    private double measureLegacyMulticast(int connectionCount) {
+        Sinks.Many<GatewayEvent> sink = Sinks.many().multicast().onBackpressureBuffer();
+        LongAdder delivered = new LongAdder();
+
+        List<GatewayEvent> events = new ArrayList<>(connectionCount);
+        for (int i = 0; i < connectionCount; i++) {
+            String connectionId = "connection-" + i;
+            sink.asFlux()
+                    .filter(event -> connectionId.equals(event.getConnectionId()))
+                    .subscribe(ignored -> delivered.increment());
+            events.add(GatewayEvent.outbound(connectionId, "session-bench", "req-bench", null));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LEGACY_MEASURED_EVENTS; i++) {
+            sink.tryEmitNext(events.get(i % events.size()));
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(LEGACY_MEASURED_EVENTS, delivered.sum());
+        return (double) elapsed / LEGACY_MEASURED_EVENTS;
+    }
+
+    private void publish(GatewayEventBus eventBus, List<GatewayEvent> events, int count) {
+        for (int i = 0; i < count; i++) {
+            eventBus.publish(events.get(i % events.size()));
+        }
+    }
+}
@@ -2,12 +2,25 @@ package com.miniclaw.gateway.event;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.miniclaw.config.GatewayProperties;
+import com.miniclaw.gateway.connection.ConnectionContext;
+import com.miniclaw.gateway.connection.ConnectionRegistry;
 import com.miniclaw.gateway.rpc.model.RpcEventFrame;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.time.Duration;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class GatewayEventBusTest {
 
@@ -15,7 +28,9 @@ class GatewayEventBusTest {
 
     @Test
     void shouldPublishEventsWithConnectionSessionAndRequestMetadata() {
-        GatewayEventBus eventBus = new GatewayEventBus();
+        ConnectionRegistry registry = new ConnectionRegistry();
+        ConnectionContext connection = registry.register(mock(WebSocketSession.class));
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
         RpcEventFrame frame = RpcEventFrame.builder()
                 .requestId("req-001")
                 .sessionId("session-001")
@@ -23,14 +38,14 @@ class GatewayEventBusTest {
                 .payload(payload("delta", "hello"))
                 .build();
 
-        GatewayEvent published = GatewayEvent.outbound("connection-1", "session-001", "req-001", frame);
-        GatewayEvent observed = eventBus.events()
+        GatewayEvent published = GatewayEvent.outbound(connection.getConnectionId(), "session-001", "req-001", frame);
+        GatewayEvent observed = eventBus.events(connection.getConnectionId())
                 .take(1)
                 .timeout(Duration.ofSeconds(1))
                 .doOnSubscribe(subscription -> eventBus.publish(published))
                 .blockFirst();
 
-        assertEquals("connection-1", observed.getConnectionId());
+        assertEquals(connection.getConnectionId(), observed.getConnectionId());
         assertEquals("session-001", observed.getSessionId());
         assertEquals("req-001", observed.getRequestId());
         assertEquals("chat.delta", ((RpcEventFrame) observed.getFrame()).getName());
@@ -38,15 +53,19 @@ class GatewayEventBusTest {
 
     @Test
     void outboundDispatcherShouldOnlyEmitFramesForMatchingConnection() {
-        GatewayEventBus eventBus = new GatewayEventBus();
+        ConnectionRegistry registry = new ConnectionRegistry();
+        ConnectionContext first = registry.register(mock(WebSocketSession.class));
+        ConnectionContext second = registry.register(mock(WebSocketSession.class));
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
         OutboundDispatcher dispatcher = new OutboundDispatcher(eventBus, objectMapper);
 
-        String outboundJson = dispatcher.outboundJson("connection-2")
+        String outboundJson = dispatcher.outboundMessages(second.getConnectionId(), DefaultDataBufferFactory.sharedInstance)
+                .map(WebSocketMessage::getPayloadAsText)
                 .take(1)
                 .timeout(Duration.ofSeconds(1))
                 .doOnSubscribe(subscription -> {
                     eventBus.publish(GatewayEvent.outbound(
-                            "connection-1",
+                            first.getConnectionId(),
                             "session-001",
                             "req-001",
                             RpcEventFrame.builder()
@@ -57,7 +76,7 @@ class GatewayEventBusTest {
                                     .build()
                     ));
                     eventBus.publish(GatewayEvent.outbound(
-                            "connection-2",
+                            second.getConnectionId(),
                             "session-002",
                             "req-002",
                             RpcEventFrame.builder()
@@ -76,6 +95,56 @@ class GatewayEventBusTest {
         );
     }
 
+    @Test
+    void shouldDropEventsForUnknownConnectionWithoutFailing() {
+        GatewayEventBus eventBus = new GatewayEventBus(new ConnectionRegistry());
+
+        eventBus.publish(GatewayEvent.outbound("missing-connection", "session-001", "req-001",
+                RpcEventFrame.of("req-001", "session-001", "chat.delta", payload("delta", "lost"))));
+
+        StepVerifier.create(eventBus.events("missing-connection"))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldCompleteOutboundStreamWhenConnectionIsRemoved() {
+        ConnectionRegistry registry = new ConnectionRegistry();
+        ConnectionContext connection = registry.register(mock(WebSocketSession.class));
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
+
+        StepVerifier.create(eventBus.events(connection.getConnectionId()))
+                .then(() -> eventBus.publish(GatewayEvent.outbound(connection.getConnectionId(), "session-001", "req-001",
+                        RpcEventFrame.of("req-001", "session-001", "chat.delta", payload("delta", "hello")))))
+                .expectNextCount(1)
+                .then(() -> registry.remove(connection.getConnectionId()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void shouldDisconnectSlowConsumerWhenOutboundQueueOverflows() {
+        GatewayProperties properties = new GatewayProperties();
+        properties.getOutbound().setQueueCapacity(2);
+        properties.getOutbound().setOverflowPolicy(OutboundOverflowPolicy.DISCONNECT);
+        OutboundMetrics metrics = new OutboundMetrics();
+        ConnectionRegistry registry = new ConnectionRegistry(properties, metrics);
+        WebSocketSession webSocketSession = mock(WebSocketSession.class);
+        when(webSocketSession.close(any(CloseStatus.class))).thenReturn(Mono.empty());
+        ConnectionContext connection = registry.register(webSocketSession);
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
+
+        for (int i = 0; i < 3; i++) {
+            eventBus.publish(GatewayEvent.outbound(connection.getConnectionId(), "session-001", "req-001",
+                    RpcEventFrame.of("req-001", "session-001", "chat.delta", payload("delta", "token-" + i))));
+        }
+
+        verify(webSocketSession).close(any(CloseStatus.class));
+        assertEquals(1, metrics.getOverflowDisconnects());
+        StepVerifier.create(eventBus.events(connection.getConnectionId()))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
     private ObjectNode payload(String key, String value) {
         ObjectNode payload = objectMapper.createObjectNode();
         payload.put(key, value);
@@ -0,0 +1,85 @@
+package com.miniclaw.gateway.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.gateway.rpc.model.RpcEventFrame;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 出站帧编码的分配基准：旧路径（String + getBytes）对比直接写入池化 DataBuffer。
+ * 默认不跑，使用 mvn test -Dbenchmark=true -Dtest=OutboundDispatcherAllocationBenchmarkTest 手动执行。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class OutboundDispatcherAllocationBenchmarkTest {
+
+    private static final int WARMUP_FRAMES = 100_000;
+    private static final int MEASURED_FRAMES = 500_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void directDataBufferEncodingAllocatesLessPerFrame() throws IOException {
+        RpcEventFrame frame = RpcEventFrame.of(
+                "req-bench-0001",
+                "2f1d5c1e-9a3b-4f55-8a7e-3c1f0b8a9d21",
+                "chat.delta",
+                objectMapper.createObjectNode().put("delta", "这是一段用于基准测试的中文增量文本，mixed with English tokens.")
+        );
+
+        encodeViaString(frame, WARMUP_FRAMES);
+        encodeDirect(frame, WARMUP_FRAMES);
+
+        double legacyBytes = bytesPerFrame(() -> encodeViaString(frame, MEASURED_FRAMES));
+        double directBytes = bytesPerFrame(() -> encodeDirect(frame, MEASURED_FRAMES));
+
+        System.out.printf("[outbound allocation benchmark] string path=%.0f B/frame, direct DataBuffer=%.0f B/frame%n",
+                legacyBytes, directBytes);
+        assertTrue(directBytes < legacyBytes, "direct encoding should allocate less heap than the String path");
+    }
+
+    private double bytesPerFrame(IoRunnable runnable) throws IOException {
+        long before = threadMXBean.getCurrentThreadAllocatedBytes();
+        runnable.run();
+        return (double) (threadMXBean.getCurrentThreadAllocatedBytes() - before) / MEASURED_FRAMES;
+    }
+
+    /**
+     * 旧路径：writeValueAsString，再由 session.textMessage 编码成 UTF-8 字节。
+     */
+    private void encodeViaString(RpcEventFrame frame, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            String json = objectMapper.writeValueAsString(frame);
+            DataBuffer buffer = bufferFactory.wrap(json.getBytes(StandardCharsets.UTF_8));
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    /**
+     * 新路径：和 OutboundDispatcher 一样直接写进池化 DataBuffer。
+     */
+    private void encodeDirect(RpcEventFrame frame, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            DataBuffer buffer = bufferFactory.allocateBuffer(256);
+            objectMapper.writeValue(buffer.asOutputStream(), frame);
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoRunnable {
+        void run() throws IOException;
+    }
+}
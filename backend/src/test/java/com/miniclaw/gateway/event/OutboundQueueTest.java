@@ -0,0 +1,144 @@
+package com.miniclaw.gateway.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.gateway.rpc.model.RpcCompletedFrame;
+import com.miniclaw.gateway.rpc.model.RpcEventFrame;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundQueueTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void shouldCoalesceDeltasIntoTailWhenFull() {
+        OutboundMetrics metrics = new OutboundMetrics();
+        OutboundQueue queue = new OutboundQueue(2, OutboundOverflowPolicy.COALESCE_DELTAS, metrics);
+
+        assertTrue(queue.offer(delta("req-001", "a")));
+        assertTrue(queue.offer(delta("req-001", "b")));
+        assertTrue(queue.offer(delta("req-001", "c")));
+        assertTrue(queue.offer(delta("req-001", "d")));
+
+        assertEquals(2, queue.size());
+        assertEquals(List.of("a", "bcd"), drainDeltas(queue));
+        assertEquals(2, metrics.getCoalescedEvents());
+        assertEquals(0, metrics.getDroppedEvents());
+        assertEquals(0, metrics.getQueuedEvents());
+    }
+
+    @Test
+    void shouldCoalesceReasoningOnlyWithReasoning() {
+        OutboundMetrics metrics = new OutboundMetrics();
+        OutboundQueue queue = new OutboundQueue(2, OutboundOverflowPolicy.COALESCE_DELTAS, metrics);
+
+        queue.offer(delta("req-001", "a"));
+        queue.offer(event("chat.reasoning", "req-001", "x"));
+        queue.offer(event("chat.reasoning", "req-001", "y"));
+        queue.offer(delta("req-001", "b"));
+
+        assertEquals(2, queue.size());
+        assertEquals("chat.reasoning", ((RpcEventFrame) queue.peek().getFrame()).getName());
+        assertEquals(List.of("xy", "b"), drainDeltas(queue));
+        assertEquals(1, metrics.getCoalescedEvents());
+        assertEquals(1, metrics.getDroppedEvents());
+    }
+
+    @Test
+    void shouldDropOldestWhenDeltaCannotBeCoalesced() {
+        OutboundMetrics metrics = new OutboundMetrics();
+        OutboundQueue queue = new OutboundQueue(2, OutboundOverflowPolicy.COALESCE_DELTAS, metrics);
+
+        queue.offer(delta("req-001", "a"));
+        queue.offer(completed("req-001"));
+        queue.offer(delta("req-002", "b"));
+
+        assertEquals(2, queue.size());
+        assertTrue(queue.poll().getFrame() instanceof RpcCompletedFrame);
+        assertEquals(List.of("b"), drainDeltas(queue));
+        assertEquals(1, metrics.getDroppedEvents());
+    }
+
+    @Test
+    void shouldDropOldestEventsUnderDropOldestPolicy() {
+        OutboundMetrics metrics = new OutboundMetrics();
+        OutboundQueue queue = new OutboundQueue(2, OutboundOverflowPolicy.DROP_OLDEST, metrics);
+
+        queue.offer(delta("req-001", "a"));
+        queue.offer(delta("req-001", "b"));
+        queue.offer(delta("req-001", "c"));
+
+        assertEquals(List.of("b", "c"), drainDeltas(queue));
+        assertEquals(1, metrics.getDroppedEvents());
+        assertEquals(2, metrics.getMaxQueueDepth());
+    }
+
+    @Test
+    void shouldDropOldestDeltaInsteadOfTerminalFrame() {
+        OutboundMetrics metrics = new OutboundMetrics();
+        OutboundQueue queue = new OutboundQueue(2, OutboundOverflowPolicy.DROP_OLDEST, metrics);
+
+        queue.offer(completed("req-001"));
+        queue.offer(delta("req-002", "a"));
+        assertTrue(queue.offer(delta("req-002", "b")));
+
+        assertTrue(queue.poll().getFrame() instanceof RpcCompletedFrame);
+        assertEquals(List.of("b"), drainDeltas(queue));
+        assertEquals(1, metrics.getDroppedEvents());
+    }
+
+    @Test
+    void shouldRejectOfferWhenFullQueueHoldsOnlyTerminalFrames() {
+        for (OutboundOverflowPolicy policy : List.of(OutboundOverflowPolicy.COALESCE_DELTAS, OutboundOverflowPolicy.DROP_OLDEST)) {
+            OutboundMetrics metrics = new OutboundMetrics();
+            OutboundQueue queue = new OutboundQueue(2, policy, metrics);
+
+            queue.offer(completed("req-001"));
+            queue.offer(completed("req-002"));
+
+            assertFalse(queue.offer(delta("req-003", "a")), policy.name());
+            assertEquals(2, queue.size());
+            assertTrue(queue.poll().getFrame() instanceof RpcCompletedFrame);
+            assertTrue(queue.poll().getFrame() instanceof RpcCompletedFrame);
+            assertEquals(0, metrics.getDroppedEvents());
+        }
+    }
+
+    @Test
+    void shouldRejectOfferUnderDisconnectPolicy() {
+        OutboundQueue queue = new OutboundQueue(1, OutboundOverflowPolicy.DISCONNECT, new OutboundMetrics());
+
+        assertTrue(queue.offer(delta("req-001", "a")));
+        assertFalse(queue.offer(delta("req-001", "b")));
+        assertEquals(List.of("a"), drainDeltas(queue));
+    }
+
+    private GatewayEvent completed(String requestId) {
+        return GatewayEvent.outbound("connection-1", "session-001", requestId,
+                RpcCompletedFrame.of(requestId, "session-001", null));
+    }
+
+    private GatewayEvent delta(String requestId, String delta) {
+        return event("chat.delta", requestId, delta);
+    }
+
+    private GatewayEvent event(String name, String requestId, String delta) {
+        return GatewayEvent.outbound("connection-1", "session-001", requestId,
+                RpcEventFrame.of(requestId, "session-001", name, objectMapper.createObjectNode().put("delta", delta)));
+    }
+
+    private List<String> drainDeltas(OutboundQueue queue) {
+        List<String> deltas = new ArrayList<>();
+        GatewayEvent event;
+        while ((event = queue.poll()) != null) {
+            deltas.add(((RpcEventFrame) event.getFrame()).getPayload().get("delta").asText());
+        }
+        return deltas;
+    }
+}
@@ -16,6 +16,8 @@ class GatewayMethodCatalogTest {
         assertTrue(catalog.supports("session.get"));
         assertTrue(catalog.supports("session.close"));
         assertTrue(catalog.supports("chat.send"));
+        assertTrue(catalog.supports("chat.cancel"));
+        assertTrue(catalog.supports("memory.add"));
     }
 
     @Test
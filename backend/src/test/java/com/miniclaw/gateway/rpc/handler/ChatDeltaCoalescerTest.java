@@ -0,0 +1,69 @@
+package com.miniclaw.gateway.rpc.handler;
+
+import com.miniclaw.config.GatewayProperties;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+
+class ChatDeltaCoalescerTest {
+
+    @Test
+    void shouldEmitFirstDeltaImmediatelyAndFlushRestOnInterval() {
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        ChatDeltaCoalescer coalescer = new ChatDeltaCoalescer(chatProperties(50, 128), scheduler);
+        Sinks.Many<String> deltas = Sinks.many().unicast().onBackpressureBuffer();
+
+        StepVerifier.create(coalescer.coalesce(deltas.asFlux()))
+                .then(() -> deltas.tryEmitNext("Hel"))
+                .expectNext("Hel")
+                .then(() -> {
+                    deltas.tryEmitNext("lo");
+                    deltas.tryEmitNext(", ");
+                    deltas.tryEmitNext("world");
+                })
+                .expectNoEvent(Duration.ZERO)
+                .then(() -> scheduler.advanceTimeBy(Duration.ofMillis(50)))
+                .expectNext("lo, world")
+                .then(deltas::tryEmitComplete)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldFlushAsSoonAsCharacterLimitIsReached() {
+        ChatDeltaCoalescer coalescer = new ChatDeltaCoalescer(chatProperties(10_000, 4), VirtualTimeScheduler.create());
+
+        StepVerifier.create(coalescer.coalesce(Flux.just("a", "bc", "de", "f", "g")))
+                .expectNext("a", "bcde", "fg")
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldFlushBufferedDeltasBeforePropagatingError() {
+        ChatDeltaCoalescer coalescer = new ChatDeltaCoalescer(chatProperties(10_000, 128), VirtualTimeScheduler.create());
+
+        StepVerifier.create(coalescer.coalesce(Flux.just("a", "b", "c")
+                        .concatWith(Flux.error(new IllegalStateException("boom")))))
+                .expectNext("a", "bc")
+                .verifyErrorMessage("boom");
+    }
+
+    @Test
+    void shouldPassThroughWhenCoalescingIsDisabled() {
+        ChatDeltaCoalescer coalescer = new ChatDeltaCoalescer(chatProperties(0, 128), VirtualTimeScheduler.create());
+
+        StepVerifier.create(coalescer.coalesce(Flux.just("a", "b", "c")))
+                .expectNext("a", "b", "c")
+                .verifyComplete();
+    }
+
+    private GatewayProperties.Chat chatProperties(long intervalMillis, int maxChars) {
+        GatewayProperties.Chat chat = new GatewayProperties.Chat();
+        chat.setDeltaFlushIntervalMillis(intervalMillis);
+        chat.setDeltaFlushMaxChars(maxChars);
+        return chat;
+    }
+}
@@ -0,0 +1,175 @@
+package com.miniclaw.gateway.rpc.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.cache.SemanticCache;
+import com.miniclaw.config.GatewayProperties;
+import com.miniclaw.config.MemoryProperties;
+import com.miniclaw.gateway.connection.ConnectionContext;
+import com.miniclaw.gateway.connection.ConnectionRegistry;
+import com.miniclaw.gateway.event.GatewayEventBus;
+import com.miniclaw.gateway.rpc.model.RpcCompletedFrame;
+import com.miniclaw.gateway.rpc.model.RpcRequestFrame;
+import com.miniclaw.gateway.session.ConversationHistoryService;
+import com.miniclaw.gateway.session.GatewaySession;
+import com.miniclaw.gateway.session.InMemorySessionRegistry;
+import com.miniclaw.gateway.session.PersistentSessionService;
+import com.miniclaw.gateway.session.SessionDurabilityMode;
+import com.miniclaw.gateway.session.SessionLane;
+import com.miniclaw.gateway.session.SessionStateMachine;
+import com.miniclaw.gateway.session.persistence.SessionEntity;
+import com.miniclaw.gateway.session.persistence.SessionEntityBatchWriter;
+import com.miniclaw.gateway.session.persistence.SessionEntityRepository;
+import com.miniclaw.gateway.session.persistence.SessionMessageRepository;
+import com.miniclaw.gateway.session.persistence.SessionWriteBehindQueue;
+import com.miniclaw.llm.LlmClient;
+import com.miniclaw.llm.model.LlmChunk;
+import com.miniclaw.llm.model.LlmRequest;
+import com.miniclaw.llm.model.LlmResponse;
+import com.miniclaw.memory.MemoryService;
+import com.miniclaw.memory.MemoryStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * chat.send 吞吐基准：WRITE_THROUGH（每次状态变化同步 save）对比 WRITE_BEHIND（合并后批量 upsert）。
+ * 数据库用固定延迟模拟一次 PostgreSQL 往返。
+ * 默认不跑，使用 mvn test -Dbenchmark=true -Dtest=ChatSendPersistenceBenchmarkTest 手动执行。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ChatSendPersistenceBenchmarkTest {
+
+    private static final Duration DATABASE_ROUND_TRIP = Duration.ofMillis(2);
+    private static final int SESSIONS = 200;
+    private static final int CHATS_PER_SESSION = 10;
+    private static final int CONCURRENCY = 256;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writeBehindIncreasesChatSendThroughput() {
+        double writeThrough = chatsPerSecond(SessionDurabilityMode.WRITE_THROUGH);
+        double writeBehind = chatsPerSecond(SessionDurabilityMode.WRITE_BEHIND);
+
+        System.out.printf("[chat.send persistence benchmark] db round trip=%dms, write-through=%.0f chats/s, write-behind=%.0f chats/s%n",
+                DATABASE_ROUND_TRIP.toMillis(), writeThrough, writeBehind);
+        assertTrue(writeBehind > writeThrough, "write-behind should not block chat.send on the database");
+    }
+
+    private double chatsPerSecond(SessionDurabilityMode mode) {
+        GatewayProperties properties = new GatewayProperties();
+        properties.getPersistence().setMode(mode);
+
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> {
+            databaseRoundTrip();
+            return invocation.getArgument(0);
+        });
+        SessionWriteBehindQueue writeBehindQueue = new SessionWriteBehindQueue(new SimulatedBatchWriter(), properties);
+        writeBehindQueue.start();
+        PersistentSessionService sessionService =
+                new PersistentSessionService(sessionRegistry, repository, writeBehindQueue, properties);
+
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        Disposable drain = eventBus.events(connection.getConnectionId()).subscribe();
+        DefaultChatHandler handler = new DefaultChatHandler(
+                sessionService,
+                new SessionStateMachine(),
+                new SessionLane(),
+                connectionRegistry,
+                eventBus,
+                new StaticLlmClient(),
+                new ChatDeltaCoalescer(properties),
+                new ConversationHistoryService(mock(SessionMessageRepository.class), properties),
+                mock(SemanticCache.class),
+                disabledMemory(),
+                objectMapper
+        );
+
+        List<RpcRequestFrame> requests = new ArrayList<>(SESSIONS * CHATS_PER_SESSION);
+        for (int i = 0; i < SESSIONS; i++) {
+            GatewaySession session = sessionService.create(connection.getConnectionId());
+            for (int j = 0; j < CHATS_PER_SESSION; j++) {
+                requests.add(RpcRequestFrame.builder()
+                        .requestId("req-" + i + "-" + j)
+                        .sessionId(session.getSessionId())
+                        .method("chat.send")
+                        .payload(objectMapper.createObjectNode().put("message", "hello"))
+                        .build());
+            }
+        }
+
+        try {
+            long start = System.nanoTime();
+            Long completed = Flux.fromIterable(requests)
+                    .flatMap(request -> handler.handle(connection.getConnectionId(), request)
+                            .subscribeOn(Schedulers.boundedElastic()), CONCURRENCY)
+                    .filter(RpcCompletedFrame.class::isInstance)
+                    .count()
+                    .block(Duration.ofMinutes(2));
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(requests.size(), completed);
+            return requests.size() / (elapsed / 1_000_000_000d);
+        } finally {
+            drain.dispose();
+            writeBehindQueue.destroy();
+        }
+    }
+
+    private static void databaseRoundTrip() {
+        LockSupport.parkNanos(DATABASE_ROUND_TRIP.toNanos());
+    }
+
+    private MemoryService disabledMemory() {
+        return new MemoryService(texts -> Mono.error(new IllegalStateException("embedding disabled")),
+                mock(MemoryStore.class), new MemoryProperties());
+    }
+
+    private static final class SimulatedBatchWriter extends SessionEntityBatchWriter {
+
+        private SimulatedBatchWriter() {
+            super(null);
+        }
+
+        @Override
+        public void upsert(List<SessionEntity> entities) {
+            databaseRoundTrip();
+        }
+    }
+
+    private static final class StaticLlmClient implements LlmClient {
+
+        @Override
+        public LlmResponse chat(LlmRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Flux<LlmChunk> stream(LlmRequest request) {
+            return Flux.just(
+                    LlmChunk.builder().delta("hel").build(),
+                    LlmChunk.builder().delta("lo").build(),
+                    LlmChunk.builder().finishReason("stop").done(true).build()
+            );
+        }
+    }
+}
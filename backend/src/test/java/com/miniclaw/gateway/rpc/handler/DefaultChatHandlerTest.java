@@ -2,6 +2,9 @@ package com.miniclaw.gateway.rpc.handler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.miniclaw.cache.SemanticCache;
+import com.miniclaw.config.GatewayProperties;
+import com.miniclaw.config.MemoryProperties;
 import com.miniclaw.gateway.connection.ConnectionContext;
 import com.miniclaw.gateway.connection.ConnectionRegistry;
 import com.miniclaw.gateway.event.GatewayEvent;
@@ -10,6 +13,7 @@ import com.miniclaw.gateway.rpc.model.RpcCompletedFrame;
 import com.miniclaw.gateway.rpc.model.RpcErrorFrame;
 import com.miniclaw.gateway.rpc.model.RpcEventFrame;
 import com.miniclaw.gateway.rpc.model.RpcRequestFrame;
+import com.miniclaw.gateway.session.ConversationHistoryService;
 import com.miniclaw.gateway.session.GatewaySession;
 import com.miniclaw.gateway.session.InMemorySessionRegistry;
 import com.miniclaw.gateway.session.PersistentSessionService;
@@ -18,20 +22,31 @@ import com.miniclaw.gateway.session.SessionState;
 import com.miniclaw.gateway.session.SessionStateMachine;
 import com.miniclaw.gateway.session.persistence.SessionEntity;
 import com.miniclaw.gateway.session.persistence.SessionEntityRepository;
+import com.miniclaw.gateway.session.persistence.SessionMessageRepository;
 import com.miniclaw.llm.LlmClient;
 import com.miniclaw.llm.model.LlmChunk;
 import com.miniclaw.llm.model.LlmRequest;
 import com.miniclaw.llm.model.LlmResponse;
+import com.miniclaw.memory.Memory;
+import com.miniclaw.memory.MemoryService;
+import com.miniclaw.memory.MemoryStore;
 import org.junit.jupiter.api.Test;
 import org.springframework.web.reactive.socket.WebSocketSession;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -49,7 +64,7 @@ class DefaultChatHandlerTest {
         when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
         PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
         GatewaySession session = sessionService.create(connection.getConnectionId());
-        GatewayEventBus eventBus = new GatewayEventBus();
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
         RecordingLlmClient llmClient = new RecordingLlmClient(Flux.just(
                 LlmChunk.builder().delta("hel").done(false).build(),
                 LlmChunk.builder().delta("lo").done(false).build()
@@ -59,8 +74,13 @@ class DefaultChatHandlerTest {
                 sessionService,
                 new SessionStateMachine(),
                 new SessionLane(),
+                connectionRegistry,
                 eventBus,
                 llmClient,
+                new ChatDeltaCoalescer(new GatewayProperties()),
+                new ConversationHistoryService(mock(SessionMessageRepository.class), new GatewayProperties()),
+                mock(SemanticCache.class),
+                disabledMemory(),
                 objectMapper
         );
 
@@ -71,7 +91,7 @@ class DefaultChatHandlerTest {
                 .payload(payload("message", "hello"))
                 .build();
 
-        List<GatewayEvent> events = eventBus.events()
+        List<GatewayEvent> events = eventBus.events(connection.getConnectionId())
                 .take(2)
                 .timeout(Duration.ofSeconds(1))
                 .collectList()
@@ -92,6 +112,256 @@ class DefaultChatHandlerTest {
         verify(repository, org.mockito.Mockito.atLeast(3)).save(any(SessionEntity.class));
     }
 
+    @Test
+    void shouldSendPreviousTurnsOnFollowUpChat() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
+        GatewaySession session = sessionService.create(connection.getConnectionId());
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        eventBus.events(connection.getConnectionId()).subscribe();
+        RecordingLlmClient llmClient = new RecordingLlmClient(Flux.just(
+                LlmChunk.builder().delta("hi there").done(false).build()
+        ));
+
+        DefaultChatHandler handler = new DefaultChatHandler(
+                sessionService,
+                new SessionStateMachine(),
+                new SessionLane(),
+                connectionRegistry,
+                eventBus,
+                llmClient,
+                new ChatDeltaCoalescer(new GatewayProperties()),
+                new ConversationHistoryService(mock(SessionMessageRepository.class), new GatewayProperties()),
+                mock(SemanticCache.class),
+                disabledMemory(),
+                objectMapper
+        );
+
+        for (String message : List.of("hello", "how are you")) {
+            handler.handle(connection.getConnectionId(), RpcRequestFrame.builder()
+                            .requestId("req-" + message)
+                            .sessionId(session.getSessionId())
+                            .method("chat.send")
+                            .payload(payload("message", message))
+                            .build())
+                    .block(Duration.ofSeconds(1));
+        }
+
+        List<LlmRequest.Message> messages = llmClient.lastRequest.getMessages();
+        assertEquals(List.of("user", "assistant", "user"), messages.stream().map(LlmRequest.Message::getRole).toList());
+        assertEquals("hi there", messages.get(1).getContent());
+        assertEquals("how are you", messages.get(2).getContent());
+    }
+
+    @Test
+    void shouldPublishReasoningBeforeAnswerWithoutAddingItToHistory() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
+        GatewaySession session = sessionService.create(connection.getConnectionId());
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        RecordingLlmClient llmClient = new RecordingLlmClient(Flux.just(
+                LlmChunk.builder().reasoningDelta("Let me think").build(),
+                LlmChunk.builder().reasoningDelta(" carefully").build(),
+                LlmChunk.builder().delta("42").build(),
+                LlmChunk.builder().finishReason("stop").done(true).build()
+        ));
+        DefaultChatHandler handler = createHandler(connectionRegistry, sessionService, eventBus, llmClient);
+
+        List<GatewayEvent> events = eventBus.events(connection.getConnectionId())
+                .take(3)
+                .timeout(Duration.ofSeconds(1))
+                .collectList()
+                .doOnSubscribe(ignored -> handler.handle(connection.getConnectionId(),
+                        chatRequest("req-chat-reasoning", session, payload("message", "hello"))).block(Duration.ofSeconds(1)))
+                .block();
+
+        assertEquals(List.of("chat.reasoning", "chat.reasoning", "chat.delta"),
+                events.stream().map(event -> ((RpcEventFrame) event.getFrame()).getName()).toList());
+        assertEquals("Let me think", ((RpcEventFrame) events.get(0).getFrame()).getPayload().get("delta").asText());
+        assertEquals(" carefully", ((RpcEventFrame) events.get(1).getFrame()).getPayload().get("delta").asText());
+        assertEquals("42", ((RpcEventFrame) events.get(2).getFrame()).getPayload().get("delta").asText());
+
+        handler.handle(connection.getConnectionId(), chatRequest("req-chat-follow-up", session, payload("message", "why")))
+                .block(Duration.ofSeconds(1));
+        assertEquals("42", llmClient.lastRequest.getMessages().get(1).getContent());
+    }
+
+    @Test
+    void shouldPublishWhitespaceOnlyFrames() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
+        GatewaySession session = sessionService.create(connection.getConnectionId());
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        RecordingLlmClient llmClient = new RecordingLlmClient(Flux.just(
+                LlmChunk.builder().reasoningDelta("Step 1").build(),
+                LlmChunk.builder().reasoningDelta("\n\n").build(),
+                LlmChunk.builder().reasoningDelta("Step 2").build(),
+                LlmChunk.builder().finishReason("stop").done(true).build()
+        ));
+        DefaultChatHandler handler = createHandler(connectionRegistry, sessionService, eventBus, llmClient);
+        ObjectNode payload = payload("message", "hello");
+        payload.put("reasoning", "stream");
+
+        List<GatewayEvent> events = eventBus.events(connection.getConnectionId())
+                .take(3)
+                .timeout(Duration.ofSeconds(1))
+                .collectList()
+                .doOnSubscribe(ignored -> handler.handle(connection.getConnectionId(),
+                        chatRequest("req-chat-whitespace", session, payload)).block(Duration.ofSeconds(1)))
+                .block();
+
+        assertEquals(List.of("Step 1", "\n\n", "Step 2"),
+                events.stream().map(event -> ((RpcEventFrame) event.getFrame()).getPayload().get("delta").asText()).toList());
+    }
+
+    @Test
+    void shouldSuppressReasoningWhenRequested() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
+        GatewaySession session = sessionService.create(connection.getConnectionId());
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        RecordingLlmClient llmClient = new RecordingLlmClient(Flux.just(
+                LlmChunk.builder().reasoningDelta("Let me think").build(),
+                LlmChunk.builder().delta("42").build()
+        ));
+        DefaultChatHandler handler = createHandler(connectionRegistry, sessionService, eventBus, llmClient);
+        ObjectNode payload = payload("message", "hello");
+
+        payload.put("reasoning", "verbose");
+        RpcErrorFrame invalid = (RpcErrorFrame) handler.handle(connection.getConnectionId(),
+                chatRequest("req-chat-invalid", session, payload)).block(Duration.ofSeconds(1));
+        assertEquals("INVALID_PAYLOAD", invalid.getError().getCode());
+
+        payload.put("reasoning", "off");
+        GatewayEvent event = eventBus.events(connection.getConnectionId())
+                .next()
+                .timeout(Duration.ofSeconds(1))
+                .doOnSubscribe(ignored -> handler.handle(connection.getConnectionId(),
+                        chatRequest("req-chat-off", session, payload)).block(Duration.ofSeconds(1)))
+                .block();
+
+        assertEquals("chat.delta", ((RpcEventFrame) event.getFrame()).getName());
+        assertEquals("42", ((RpcEventFrame) event.getFrame()).getPayload().get("delta").asText());
+    }
+
+    @Test
+    void shouldServeFirstTurnFromSemanticCache() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
+        GatewaySession session = sessionService.create(connection.getConnectionId());
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        RecordingLlmClient llmClient = new RecordingLlmClient(Flux.empty());
+        SemanticCache semanticCache = mock(SemanticCache.class);
+        when(semanticCache.isEnabled()).thenReturn(true);
+        when(semanticCache.lookup("hello"))
+                .thenReturn(Mono.just(new SemanticCache.Lookup("hello", new float[]{1f}, "cached answer")));
+
+        DefaultChatHandler handler = new DefaultChatHandler(
+                sessionService,
+                new SessionStateMachine(),
+                new SessionLane(),
+                connectionRegistry,
+                eventBus,
+                llmClient,
+                new ChatDeltaCoalescer(new GatewayProperties()),
+                new ConversationHistoryService(mock(SessionMessageRepository.class), new GatewayProperties()),
+                semanticCache,
+                disabledMemory(),
+                objectMapper
+        );
+
+        RpcRequestFrame request = RpcRequestFrame.builder()
+                .requestId("req-chat-cached")
+                .sessionId(session.getSessionId())
+                .method("chat.send")
+                .payload(payload("message", "hello"))
+                .build();
+
+        GatewayEvent event = eventBus.events(connection.getConnectionId())
+                .next()
+                .timeout(Duration.ofSeconds(1))
+                .doOnSubscribe(ignored -> handler.handle(connection.getConnectionId(), request).block(Duration.ofSeconds(1)))
+                .block();
+
+        assertEquals("cached answer", ((RpcEventFrame) event.getFrame()).getPayload().get("delta").asText());
+        assertNull(llmClient.lastRequest);
+        assertEquals(SessionState.IDLE, sessionService.find(session.getSessionId()).orElseThrow().getState());
+    }
+
+    @Test
+    void shouldInjectOwnerMemoriesBeforeCurrentMessage() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
+        GatewaySession session = sessionService.create(connection.getConnectionId(), "user-001");
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        eventBus.events(connection.getConnectionId()).subscribe();
+        RecordingLlmClient llmClient = new RecordingLlmClient(Flux.just(
+                LlmChunk.builder().delta("用 Java").done(false).build()
+        ));
+
+        MemoryProperties memoryProperties = new MemoryProperties();
+        memoryProperties.setEnabled(true);
+        MemoryStore memoryStore = mock(MemoryStore.class);
+        when(memoryStore.search(eq("user-001"), any(), eq(5)))
+                .thenReturn(List.of(new Memory(1L, "用户偏好 Java", 0.82)));
+        MemoryService memoryService = new MemoryService(
+                texts -> Mono.just(texts.stream().map(text -> new float[]{1f, 0f}).toList()),
+                memoryStore,
+                memoryProperties
+        );
+
+        DefaultChatHandler handler = new DefaultChatHandler(
+                sessionService,
+                new SessionStateMachine(),
+                new SessionLane(),
+                connectionRegistry,
+                eventBus,
+                llmClient,
+                new ChatDeltaCoalescer(new GatewayProperties()),
+                new ConversationHistoryService(mock(SessionMessageRepository.class), new GatewayProperties()),
+                mock(SemanticCache.class),
+                memoryService,
+                objectMapper
+        );
+
+        handler.handle(connection.getConnectionId(), RpcRequestFrame.builder()
+                        .requestId("req-chat-memory")
+                        .sessionId(session.getSessionId())
+                        .method("chat.send")
+                        .payload(payload("message", "推荐一门语言"))
+                        .build())
+                .block(Duration.ofSeconds(1));
+
+        List<LlmRequest.Message> messages = llmClient.lastRequest.getMessages();
+        assertEquals(List.of("system", "user"), messages.stream().map(LlmRequest.Message::getRole).toList());
+        assertTrue(messages.get(0).getContent().contains("用户偏好 Java"));
+        assertEquals("推荐一门语言", messages.get(1).getContent());
+    }
+
     @Test
     void shouldReturnErrorWhenSessionIsClosed() {
         ConnectionRegistry connectionRegistry = new ConnectionRegistry();
@@ -108,8 +378,13 @@ class DefaultChatHandlerTest {
                 sessionService,
                 new SessionStateMachine(),
                 new SessionLane(),
-                new GatewayEventBus(),
+                connectionRegistry,
+                new GatewayEventBus(connectionRegistry),
                 new RecordingLlmClient(Flux.empty()),
+                new ChatDeltaCoalescer(new GatewayProperties()),
+                new ConversationHistoryService(mock(SessionMessageRepository.class), new GatewayProperties()),
+                mock(SemanticCache.class),
+                disabledMemory(),
                 objectMapper
         );
 
@@ -127,6 +402,110 @@ class DefaultChatHandlerTest {
         assertEquals("INVALID_SESSION_STATE", result.getError().getCode());
     }
 
+    @Test
+    void shouldCancelInFlightChatAndDisposeUpstreamStream() throws InterruptedException {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
+        GatewaySession session = sessionService.create(connection.getConnectionId());
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        CountDownLatch upstreamSubscribed = new CountDownLatch(1);
+        CountDownLatch upstreamCancelled = new CountDownLatch(1);
+        RecordingLlmClient llmClient = new RecordingLlmClient(Flux.<LlmChunk>never()
+                .doOnSubscribe(ignored -> upstreamSubscribed.countDown())
+                .doOnCancel(upstreamCancelled::countDown));
+        DefaultChatHandler handler = createHandler(connectionRegistry, sessionService, eventBus, llmClient);
+        AtomicReference<Object> chatResult = new AtomicReference<>();
+
+        handler.handle(connection.getConnectionId(), chatRequest("req-chat-slow", session, payload("message", "hello")))
+                .subscribe(chatResult::set);
+        assertTrue(upstreamSubscribed.await(1, TimeUnit.SECONDS));
+        assertEquals(SessionState.RUNNING, session.getState());
+
+        RpcRequestFrame cancel = RpcRequestFrame.builder()
+                .requestId("req-cancel-001")
+                .sessionId(session.getSessionId())
+                .method("chat.cancel")
+                .payload(payload("requestId", "req-chat-slow"))
+                .build();
+        RpcCompletedFrame completed = (RpcCompletedFrame) handler.handle(connection.getConnectionId(), cancel)
+                .block(Duration.ofSeconds(1));
+
+        assertTrue(completed.getPayload().get("cancelled").asBoolean());
+        assertEquals("CANCELLED", ((RpcErrorFrame) chatResult.get()).getError().getCode());
+        assertTrue(upstreamCancelled.await(1, TimeUnit.SECONDS));
+        assertEquals(SessionState.IDLE, session.getState());
+
+        RpcCompletedFrame again = (RpcCompletedFrame) handler.handle(connection.getConnectionId(), cancel)
+                .block(Duration.ofSeconds(1));
+        assertFalse(again.getPayload().get("cancelled").asBoolean());
+    }
+
+    @Test
+    void shouldCancelInFlightChatWhenConnectionIsRemoved() throws InterruptedException {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        PersistentSessionService sessionService = new PersistentSessionService(sessionRegistry, repository);
+        GatewaySession session = sessionService.create(connection.getConnectionId());
+        GatewayEventBus eventBus = new GatewayEventBus(connectionRegistry);
+        CountDownLatch upstreamSubscribed = new CountDownLatch(1);
+        CountDownLatch upstreamCancelled = new CountDownLatch(1);
+        RecordingLlmClient llmClient = new RecordingLlmClient(Flux.<LlmChunk>never()
+                .doOnSubscribe(ignored -> upstreamSubscribed.countDown())
+                .doOnCancel(upstreamCancelled::countDown));
+        DefaultChatHandler handler = createHandler(connectionRegistry, sessionService, eventBus, llmClient);
+        AtomicReference<Object> chatResult = new AtomicReference<>();
+
+        handler.handle(connection.getConnectionId(), chatRequest("req-chat-slow", session, payload("message", "hello")))
+                .subscribe(chatResult::set);
+        assertTrue(upstreamSubscribed.await(1, TimeUnit.SECONDS));
+        connectionRegistry.remove(connection.getConnectionId());
+
+        RpcErrorFrame cancelled = (RpcErrorFrame) chatResult.get();
+        assertEquals("CANCELLED", cancelled.getError().getCode());
+        assertEquals("chat.send cancelled: connection closed", cancelled.getError().getMessage());
+        assertTrue(upstreamCancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    private DefaultChatHandler createHandler(ConnectionRegistry connectionRegistry,
+                                             PersistentSessionService sessionService,
+                                             GatewayEventBus eventBus,
+                                             RecordingLlmClient llmClient) {
+        return new DefaultChatHandler(
+                sessionService,
+                new SessionStateMachine(),
+                new SessionLane(),
+                connectionRegistry,
+                eventBus,
+                llmClient,
+                new ChatDeltaCoalescer(new GatewayProperties()),
+                new ConversationHistoryService(mock(SessionMessageRepository.class), new GatewayProperties()),
+                mock(SemanticCache.class),
+                disabledMemory(),
+                objectMapper
+        );
+    }
+
+    private RpcRequestFrame chatRequest(String requestId, GatewaySession session, ObjectNode payload) {
+        return RpcRequestFrame.builder()
+                .requestId(requestId)
+                .sessionId(session.getSessionId())
+                .method("chat.send")
+                .payload(payload)
+                .build();
+    }
+
+    private MemoryService disabledMemory() {
+        return new MemoryService(texts -> Mono.error(new IllegalStateException("embedding disabled")),
+                mock(MemoryStore.class), new MemoryProperties());
+    }
+
     private ObjectNode payload(String key, String value) {
         ObjectNode payload = objectMapper.createObjectNode();
         payload.put(key, value);
@@ -1,19 +1,30 @@
 package com.miniclaw.gateway.rpc.handler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.config.MemoryProperties;
 import com.miniclaw.gateway.connection.ConnectionContext;
 import com.miniclaw.gateway.connection.ConnectionRegistry;
 import com.miniclaw.gateway.rpc.model.RpcCompletedFrame;
 import com.miniclaw.gateway.rpc.model.RpcRequestFrame;
+import com.miniclaw.gateway.session.DefaultSessionOwnerResolver;
 import com.miniclaw.gateway.session.InMemorySessionRegistry;
 import com.miniclaw.gateway.session.PersistentSessionService;
 import com.miniclaw.gateway.session.persistence.SessionEntity;
 import com.miniclaw.gateway.session.persistence.SessionEntityRepository;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.socket.HandshakeInfo;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.security.Principal;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -33,6 +44,7 @@ class DefaultSessionHandlerTest {
         when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
         DefaultSessionHandler handler = new DefaultSessionHandler(
                 new PersistentSessionService(sessionRegistry, repository),
+                new DefaultSessionOwnerResolver(connectionRegistry, new MemoryProperties()),
                 objectMapper
         );
 
@@ -51,4 +63,93 @@ class DefaultSessionHandlerTest {
         assertTrue(sessionRegistry.find(result.getSessionId()).isPresent());
         verify(repository).save(any(SessionEntity.class));
     }
+
+    @Test
+    void shouldBindClientOwnerOnlyWhenExplicitlyTrusted() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        MemoryProperties memoryProperties = new MemoryProperties();
+        memoryProperties.setTrustClientOwnerId(true);
+        DefaultSessionHandler handler = new DefaultSessionHandler(
+                new PersistentSessionService(sessionRegistry, repository),
+                new DefaultSessionOwnerResolver(connectionRegistry, memoryProperties),
+                objectMapper
+        );
+
+        RpcRequestFrame request = RpcRequestFrame.builder()
+                .requestId("req-session-owner")
+                .method("session.create")
+                .payload(objectMapper.createObjectNode().put("ownerId", "user-001"))
+                .build();
+
+        RpcCompletedFrame result = (RpcCompletedFrame) handler.handle(connection.getConnectionId(), request)
+                .block();
+
+        assertEquals("user-001", result.getPayload().get("ownerId").asText());
+        assertEquals("user-001", sessionRegistry.find(result.getSessionId()).orElseThrow().getOwnerId());
+        ArgumentCaptor<SessionEntity> saved = ArgumentCaptor.forClass(SessionEntity.class);
+        verify(repository).save(saved.capture());
+        assertEquals("user-001", saved.getValue().getOwnerId());
+    }
+
+    @Test
+    void shouldIgnoreClientOwnerByDefault() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        DefaultSessionHandler handler = new DefaultSessionHandler(
+                new PersistentSessionService(sessionRegistry, repository),
+                new DefaultSessionOwnerResolver(connectionRegistry, new MemoryProperties()),
+                objectMapper
+        );
+
+        RpcRequestFrame request = RpcRequestFrame.builder()
+                .requestId("req-session-spoof")
+                .method("session.create")
+                .payload(objectMapper.createObjectNode().put("ownerId", "someone-else"))
+                .build();
+
+        RpcCompletedFrame result = (RpcCompletedFrame) handler.handle(connection.getConnectionId(), request)
+                .block();
+
+        assertFalse(result.getPayload().has("ownerId"));
+        assertNull(sessionRegistry.find(result.getSessionId()).orElseThrow().getOwnerId());
+    }
+
+    @Test
+    void shouldTakeOwnerFromHandshakePrincipalOverClientPayload() {
+        WebSocketSession webSocketSession = mock(WebSocketSession.class);
+        Principal principal = () -> "user-001";
+        when(webSocketSession.getHandshakeInfo()).thenReturn(new HandshakeInfo(
+                URI.create("ws://localhost/ws"), new HttpHeaders(), Mono.just(principal), null));
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(webSocketSession);
+        InMemorySessionRegistry sessionRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        when(repository.save(any(SessionEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        MemoryProperties memoryProperties = new MemoryProperties();
+        memoryProperties.setTrustClientOwnerId(true);
+        DefaultSessionHandler handler = new DefaultSessionHandler(
+                new PersistentSessionService(sessionRegistry, repository),
+                new DefaultSessionOwnerResolver(connectionRegistry, memoryProperties),
+                objectMapper
+        );
+
+        RpcRequestFrame request = RpcRequestFrame.builder()
+                .requestId("req-session-principal")
+                .method("session.create")
+                .payload(objectMapper.createObjectNode().put("ownerId", "someone-else"))
+                .build();
+
+        RpcCompletedFrame result = (RpcCompletedFrame) handler.handle(connection.getConnectionId(), request)
+                .block();
+
+        assertEquals("user-001", result.getPayload().get("ownerId").asText());
+        assertEquals("user-001", sessionRegistry.find(result.getSessionId()).orElseThrow().getOwnerId());
+    }
 }
@@ -0,0 +1,124 @@
+package com.miniclaw.gateway.session;
+
+import com.miniclaw.config.GatewayProperties;
+import com.miniclaw.gateway.session.persistence.SessionMessageEntity;
+import com.miniclaw.gateway.session.persistence.SessionMessageRepository;
+import com.miniclaw.llm.model.LlmRequest;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversationHistoryServiceTest {
+
+    @Test
+    void assemblesFollowUpTurnsFromCacheWithoutReloading() {
+        SessionMessageRepository repository = mock(SessionMessageRepository.class);
+        ConversationHistoryService service = service(repository, new GatewayProperties.History());
+
+        service.startTurn("session-001", "hello").block();
+        service.completeTurn("session-001", "hi there");
+        List<LlmRequest.Message> messages = service.startTurn("session-001", "how are you").block();
+
+        assertEquals(List.of("hello", "hi there", "how are you"), contents(messages));
+        verify(repository, times(1)).findBySessionIdOrderBySeqDesc(eq("session-001"), any(Pageable.class));
+    }
+
+    @Test
+    void loadsPersistedTailOnCacheMissAndContinuesSequence() {
+        SessionMessageRepository repository = mock(SessionMessageRepository.class);
+        when(repository.findBySessionIdOrderBySeqDesc(eq("session-002"), any(Pageable.class))).thenReturn(List.of(
+                message("session-002", 8, "assistant", "second answer"),
+                message("session-002", 7, "user", "second question")
+        ));
+        ConversationHistoryService service = service(repository, new GatewayProperties.History());
+
+        List<LlmRequest.Message> messages = service.startTurn("session-002", "third question").block();
+
+        assertEquals(List.of("second question", "second answer", "third question"), contents(messages));
+        assertEquals("assistant", messages.get(1).getRole());
+
+        ArgumentCaptor<SessionMessageEntity> saved = ArgumentCaptor.forClass(SessionMessageEntity.class);
+        verify(repository).save(saved.capture());
+        assertEquals(9, saved.getValue().getSeq());
+    }
+
+    @Test
+    void keepsOnlyTheConfiguredTail() {
+        GatewayProperties.History settings = new GatewayProperties.History();
+        settings.setMaxTailMessages(3);
+        ConversationHistoryService service = service(mock(SessionMessageRepository.class), settings);
+
+        service.startTurn("session-003", "q1").block();
+        service.completeTurn("session-003", "a1");
+        List<LlmRequest.Message> messages = service.startTurn("session-003", "q2").block();
+        service.completeTurn("session-003", "a2");
+
+        assertEquals(List.of("a1", "q2"), contents(messages).subList(1, 3));
+        // 超出上限后一次淘汰到低水位，并从 user 消息开始
+        assertEquals(List.of("q2", "a2"), contents(service.history("session-003").block()));
+    }
+
+    @Test
+    void evictsTailInChunksSoItsHeadStaysStableAcrossTurns() {
+        GatewayProperties.History settings = new GatewayProperties.History();
+        settings.setMaxTailMessages(8);
+        ConversationHistoryService service = service(mock(SessionMessageRepository.class), settings);
+
+        List<String> heads = new ArrayList<>();
+        for (int turn = 1; turn <= 8; turn++) {
+            List<LlmRequest.Message> messages = service.startTurn("session-006", "q" + turn).block();
+            service.completeTurn("session-006", "a" + turn);
+            heads.add(messages.get(0).getContent());
+            assertEquals("user", messages.get(0).getRole());
+        }
+
+        // 第 5 轮的输入让尾部超过 8 条，一次淘汰到 6 条并从 q3 开始，下一轮开头不动；第 7 轮再次超出才移到 q5
+        assertEquals(List.of("q1", "q1", "q1", "q1", "q3", "q3", "q5", "q5"), heads);
+    }
+
+    @Test
+    void skipsEmptyAssistantReplyAndEvictsIdleSessions() {
+        GatewayProperties.History settings = new GatewayProperties.History();
+        settings.setMaxCachedSessions(1);
+        SessionMessageRepository repository = mock(SessionMessageRepository.class);
+        ConversationHistoryService service = service(repository, settings);
+
+        service.startTurn("session-004", "hello").block();
+        service.completeTurn("session-004", "");
+        service.startTurn("session-005", "hello").block();
+
+        assertEquals(1, service.cachedSessions());
+        verify(repository, times(2)).save(any(SessionMessageEntity.class));
+    }
+
+    private ConversationHistoryService service(SessionMessageRepository repository, GatewayProperties.History settings) {
+        return new ConversationHistoryService(repository, settings, Schedulers.immediate());
+    }
+
+    private SessionMessageEntity message(String sessionId, int seq, String role, String content) {
+        return SessionMessageEntity.builder()
+                .sessionId(sessionId)
+                .seq(seq)
+                .role(role)
+                .content(content)
+                .createdAt(Instant.parse("2026-03-22T14:30:00Z"))
+                .build();
+    }
+
+    private List<String> contents(List<LlmRequest.Message> messages) {
+        return messages.stream().map(LlmRequest.Message::getContent).toList();
+    }
+}
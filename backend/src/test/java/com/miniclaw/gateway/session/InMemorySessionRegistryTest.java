@@ -6,6 +6,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.web.reactive.socket.WebSocketSession;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -57,4 +65,65 @@ class InMemorySessionRegistryTest {
         assertTrue(sessionRegistry.find(second.getSessionId()).isEmpty());
         assertTrue(connectionRegistry.find(connection.getConnectionId()).orElseThrow().getSessionIds().isEmpty());
     }
+
+    @Test
+    void shouldFindSessionsOfOneConnectionOnly() {
+        ConnectionContext first = connectionRegistry.register(mock(WebSocketSession.class));
+        ConnectionContext second = connectionRegistry.register(mock(WebSocketSession.class));
+        GatewaySession kept = sessionRegistry.create(first.getConnectionId());
+        GatewaySession removed = sessionRegistry.create(first.getConnectionId());
+        sessionRegistry.create(second.getConnectionId());
+
+        sessionRegistry.remove(removed.getSessionId());
+
+        assertEquals(List.of(kept), sessionRegistry.findByConnection(first.getConnectionId()));
+        assertEquals(1, sessionRegistry.findByConnection(second.getConnectionId()).size());
+        assertTrue(sessionRegistry.findByConnection("missing-connection").isEmpty());
+    }
+
+    @Test
+    void shouldCleanUpFiftyThousandSessionsOnFiveThousandSimultaneousDisconnects() throws Exception {
+        int connections = 5_000;
+        int sessionsPerConnection = 10;
+        WebSocketSession webSocketSession = mock(WebSocketSession.class);
+        List<String> connectionIds = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            ConnectionContext connection = connectionRegistry.register(webSocketSession);
+            connectionIds.add(connection.getConnectionId());
+            for (int j = 0; j < sessionsPerConnection; j++) {
+                sessionRegistry.create(connection.getConnectionId());
+            }
+        }
+        assertEquals(50_000, sessionRegistry.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> disconnects = new ArrayList<>(connections);
+            for (String connectionId : connectionIds) {
+                disconnects.add(executor.submit(() -> {
+                    start.await();
+                    sessionRegistry.removeAllByConnection(connectionId);
+                    return null;
+                }));
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> disconnect : disconnects) {
+                disconnect.get(30, TimeUnit.SECONDS);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+            assertEquals(0, sessionRegistry.size());
+            for (String connectionId : connectionIds) {
+                assertTrue(sessionRegistry.findByConnection(connectionId).isEmpty());
+                assertTrue(connectionRegistry.find(connectionId).orElseThrow().getSessionIds().isEmpty());
+            }
+            // 全表扫描的实现需要 5k x 50k 次比较；按连接索引只触及 50k 个会话
+            assertTrue(elapsedMillis < 5_000, "disconnect cleanup took " + elapsedMillis + "ms");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
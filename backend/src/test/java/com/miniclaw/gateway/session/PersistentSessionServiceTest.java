@@ -4,6 +4,7 @@ import com.miniclaw.gateway.connection.ConnectionContext;
 import com.miniclaw.gateway.connection.ConnectionRegistry;
 import com.miniclaw.gateway.session.persistence.SessionEntity;
 import com.miniclaw.gateway.session.persistence.SessionEntityRepository;
+import com.miniclaw.gateway.session.persistence.SessionWriteBehindQueue;
 import org.junit.jupiter.api.Test;
 import org.springframework.web.reactive.socket.WebSocketSession;
 
@@ -16,6 +17,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -85,4 +88,40 @@ class PersistentSessionServiceTest {
         verify(repository).save(any(SessionEntity.class));
         assertEquals(SessionState.RUNNING, runtimeRegistry.find(session.getSessionId()).orElseThrow().getState());
     }
+
+    @Test
+    void writeBehindModeQueuesStateChangesInsteadOfSavingSynchronously() {
+        ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+        ConnectionContext connection = connectionRegistry.register(mock(WebSocketSession.class));
+        InMemorySessionRegistry runtimeRegistry = new InMemorySessionRegistry(connectionRegistry);
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        SessionWriteBehindQueue writeBehindQueue = mock(SessionWriteBehindQueue.class);
+
+        PersistentSessionService service = new PersistentSessionService(runtimeRegistry, repository, writeBehindQueue);
+        GatewaySession session = service.create(connection.getConnectionId());
+        session.setState(SessionState.RUNNING);
+        service.save(session);
+
+        verify(writeBehindQueue, times(2)).enqueue(any(SessionEntity.class));
+        verify(repository, never()).save(any(SessionEntity.class));
+    }
+
+    @Test
+    void findReadsPendingWriteBehindStateBeforeDatabase() {
+        InMemorySessionRegistry runtimeRegistry = new InMemorySessionRegistry(new ConnectionRegistry());
+        SessionEntityRepository repository = mock(SessionEntityRepository.class);
+        SessionWriteBehindQueue writeBehindQueue = mock(SessionWriteBehindQueue.class);
+        Instant createdAt = Instant.parse("2026-03-22T14:30:00Z");
+        when(writeBehindQueue.findPending("session-002")).thenReturn(Optional.of(SessionEntity.builder()
+                .id("session-002")
+                .status(SessionState.CLOSED)
+                .createdAt(createdAt)
+                .updatedAt(createdAt)
+                .build()));
+
+        PersistentSessionService service = new PersistentSessionService(runtimeRegistry, repository, writeBehindQueue);
+
+        assertEquals(SessionState.CLOSED, service.find("session-002").orElseThrow().getState());
+        verify(repository, never()).findById("session-002");
+    }
 }
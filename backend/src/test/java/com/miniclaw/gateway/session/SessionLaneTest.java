@@ -1,6 +1,8 @@
 package com.miniclaw.gateway.session;
 
+import com.miniclaw.config.GatewayProperties;
 import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
@@ -9,9 +11,12 @@ import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SessionLaneTest {
@@ -88,4 +93,109 @@ class SessionLaneTest {
 
         assertEquals("after-error", result);
     }
+
+    @Test
+    void shouldReleaseLaneAndSkipQueuedTaskWhenCancelled() throws InterruptedException {
+        SessionLane sessionLane = new SessionLane();
+        AtomicBoolean firstCancelled = new AtomicBoolean();
+        AtomicBoolean secondStarted = new AtomicBoolean();
+        CountDownLatch thirdDone = new CountDownLatch(1);
+
+        Disposable first = sessionLane.submit("session-001", () -> Mono.never()
+                .doOnCancel(() -> firstCancelled.set(true))).subscribe();
+        Disposable second = sessionLane.submit("session-001", () -> Mono.fromCallable(() -> {
+            secondStarted.set(true);
+            return "second";
+        })).subscribe();
+        sessionLane.submit("session-001", () -> Mono.just("third"))
+                .subscribe(ignored -> thirdDone.countDown());
+
+        second.dispose();
+        first.dispose();
+
+        assertTrue(thirdDone.await(1, TimeUnit.SECONDS));
+        assertTrue(firstCancelled.get());
+        assertFalse(secondStarted.get());
+    }
+
+    @Test
+    void shouldRejectWhenSessionQueueIsFull() {
+        GatewayProperties properties = new GatewayProperties();
+        properties.getLane().setMaxQueuedPerSession(1);
+        SessionLaneMetrics metrics = new SessionLaneMetrics();
+        SessionLane sessionLane = new SessionLane(properties, metrics);
+        Sinks.One<String> firstGate = Sinks.one();
+
+        sessionLane.submit("session-001", () -> firstGate.asMono()).subscribe();
+        Mono<String> queued = sessionLane.submit("session-001", () -> Mono.just("queued"));
+        queued.subscribe();
+        Mono<String> rejected = sessionLane.submit("session-001", () -> Mono.just("rejected"));
+
+        SessionLaneRejectedException failure = assertThrows(SessionLaneRejectedException.class,
+                () -> rejected.block(Duration.ofSeconds(1)));
+        assertEquals(SessionLaneRejectedException.RATE_LIMITED, failure.getCode());
+        assertEquals(1, metrics.getRateLimitedTasks());
+        assertEquals(1, metrics.getQueuedTasks());
+
+        firstGate.tryEmitValue("done");
+        assertEquals("again", sessionLane.submit("session-001", () -> Mono.just("again")).block(Duration.ofSeconds(1)));
+        assertEquals(0, metrics.getQueuedTasks());
+    }
+
+    @Test
+    void shouldRunSystemTasksBeforeQueuedUserTasks() throws InterruptedException {
+        SessionLane sessionLane = new SessionLane();
+        Sinks.One<String> firstGate = Sinks.one();
+        List<String> execution = new CopyOnWriteArrayList<>();
+        CountDownLatch lastDone = new CountDownLatch(1);
+
+        sessionLane.submit("session-001", () -> firstGate.asMono()).subscribe();
+        sessionLane.submit("session-001", LanePriority.USER,
+                () -> Mono.fromCallable(() -> record(execution, "user-1"))).subscribe();
+        sessionLane.submit("session-001", LanePriority.SYSTEM,
+                () -> Mono.fromCallable(() -> record(execution, "system"))).subscribe();
+        sessionLane.submit("session-001", LanePriority.USER,
+                () -> Mono.fromCallable(() -> record(execution, "user-2"))).subscribe(ignored -> lastDone.countDown());
+
+        firstGate.tryEmitValue("done");
+
+        assertTrue(lastDone.await(1, TimeUnit.SECONDS));
+        assertEquals(List.of("system", "user-1", "user-2"), execution);
+    }
+
+    @Test
+    void shouldLimitConcurrentLanesAndRejectWhenWaitingLanesAreFull() throws InterruptedException {
+        GatewayProperties properties = new GatewayProperties();
+        properties.getLane().setMaxConcurrentLanes(1);
+        properties.getLane().setMaxWaitingLanes(1);
+        SessionLaneMetrics metrics = new SessionLaneMetrics();
+        SessionLane sessionLane = new SessionLane(properties, metrics);
+        Sinks.One<String> firstGate = Sinks.one();
+        CountDownLatch secondStarted = new CountDownLatch(1);
+
+        sessionLane.submit("session-001", () -> firstGate.asMono()).subscribe();
+        sessionLane.submit("session-002", () -> Mono.fromCallable(() -> {
+            secondStarted.countDown();
+            return "second";
+        })).subscribe();
+
+        SessionLaneRejectedException failure = assertThrows(SessionLaneRejectedException.class,
+                () -> sessionLane.submit("session-003", () -> Mono.just("third")).block(Duration.ofSeconds(1)));
+        assertEquals(SessionLaneRejectedException.BUSY, failure.getCode());
+        assertEquals(1, metrics.getRunningLanes());
+        assertEquals(1, metrics.getWaitingLanes());
+        assertFalse(secondStarted.await(100, TimeUnit.MILLISECONDS));
+
+        firstGate.tryEmitValue("done");
+
+        assertTrue(secondStarted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, metrics.getBusyRejections());
+        assertEquals(2, metrics.getStartedTasks());
+        assertTrue(metrics.getMaxWaitMillis() >= 100);
+    }
+
+    private static String record(List<String> execution, String name) {
+        execution.add(name);
+        return name;
+    }
 }
@@ -0,0 +1,143 @@
+package com.miniclaw.gateway.session.persistence;
+
+import com.miniclaw.config.GatewayProperties;
+import com.miniclaw.gateway.session.SessionState;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class SessionWriteBehindQueueTest {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final SessionEntityBatchWriter writer = mock(SessionEntityBatchWriter.class);
+
+    @Test
+    void coalescesTransitionsOfTheSameSessionIntoOneRow() {
+        SessionWriteBehindQueue queue = new SessionWriteBehindQueue(writer, settings(100, 200), scheduler);
+        queue.start();
+
+        queue.enqueue(entity("session-1", SessionState.IDLE));
+        queue.enqueue(entity("session-1", SessionState.RUNNING));
+        queue.enqueue(entity("session-1", SessionState.IDLE));
+        queue.enqueue(entity("session-2", SessionState.IDLE));
+        verify(writer, never()).upsert(anyList());
+
+        scheduler.advanceTimeBy(Duration.ofMillis(100));
+
+        List<SessionEntity> rows = captureSingleBatch();
+        assertEquals(2, rows.size());
+        assertEquals(SessionState.IDLE, rows.stream()
+                .filter(row -> row.getId().equals("session-1"))
+                .findFirst()
+                .orElseThrow()
+                .getStatus());
+        assertEquals(2, queue.getCoalescedUpdates());
+        assertEquals(0, queue.getPendingSessions());
+    }
+
+    @Test
+    void flushesAsSoonAsBatchSizeIsReached() {
+        SessionWriteBehindQueue queue = new SessionWriteBehindQueue(writer, settings(10_000, 2), scheduler);
+        queue.start();
+
+        queue.enqueue(entity("session-1", SessionState.RUNNING));
+        queue.enqueue(entity("session-2", SessionState.RUNNING));
+        scheduler.advanceTime();
+
+        assertEquals(2, captureSingleBatch().size());
+    }
+
+    @Test
+    void failedBatchIsRetriedWithoutOverwritingNewerState() {
+        SessionWriteBehindQueue queue = new SessionWriteBehindQueue(writer, settings(100, 200), scheduler);
+        queue.start();
+        doThrow(new IllegalStateException("database unavailable"))
+                .doNothing()
+                .when(writer).upsert(anyList());
+
+        queue.enqueue(entity("session-1", SessionState.RUNNING));
+        scheduler.advanceTimeBy(Duration.ofMillis(100));
+        assertEquals(1, queue.getFailedBatches());
+        assertTrue(queue.findPending("session-1").isPresent());
+
+        queue.enqueue(entity("session-1", SessionState.IDLE));
+        scheduler.advanceTimeBy(Duration.ofMillis(100));
+
+        ArgumentCaptor<List<SessionEntity>> captor = batchCaptor();
+        verify(writer, times(2)).upsert(captor.capture());
+        List<SessionEntity> retried = captor.getAllValues().get(1);
+        assertEquals(1, retried.size());
+        assertEquals(SessionState.IDLE, retried.get(0).getStatus());
+        assertEquals(1, queue.getWrittenRows());
+    }
+
+    @Test
+    void periodicFlushStartsOnlyAfterStart() {
+        SessionWriteBehindQueue queue = new SessionWriteBehindQueue(writer, settings(100, 200), scheduler);
+
+        queue.enqueue(entity("session-1", SessionState.RUNNING));
+        scheduler.advanceTimeBy(Duration.ofMillis(100));
+        verify(writer, never()).upsert(anyList());
+
+        queue.start();
+        queue.start();
+        scheduler.advanceTimeBy(Duration.ofMillis(100));
+
+        assertEquals(1, captureSingleBatch().size());
+    }
+
+    @Test
+    void destroyFlushesPendingRows() {
+        SessionWriteBehindQueue queue = new SessionWriteBehindQueue(writer, settings(10_000, 200), scheduler);
+        queue.start();
+        doNothing().when(writer).upsert(anyList());
+
+        queue.enqueue(entity("session-1", SessionState.CLOSED));
+        queue.destroy();
+
+        assertEquals(1, captureSingleBatch().size());
+    }
+
+    private List<SessionEntity> captureSingleBatch() {
+        ArgumentCaptor<List<SessionEntity>> captor = batchCaptor();
+        verify(writer).upsert(captor.capture());
+        return new ArrayList<>(captor.getValue());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArgumentCaptor<List<SessionEntity>> batchCaptor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+    }
+
+    private static GatewayProperties.Persistence settings(long flushIntervalMillis, int batchSize) {
+        GatewayProperties.Persistence settings = new GatewayProperties.Persistence();
+        settings.setFlushIntervalMillis(flushIntervalMillis);
+        settings.setBatchSize(batchSize);
+        return settings;
+    }
+
+    private static SessionEntity entity(String sessionId, SessionState state) {
+        Instant now = Instant.now();
+        return SessionEntity.builder()
+                .id(sessionId)
+                .status(state)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+    }
+}
@@ -14,12 +14,14 @@ import com.miniclaw.gateway.rpc.model.RpcRequestFrame;
 import com.miniclaw.gateway.session.InMemorySessionRegistry;
 import org.junit.jupiter.api.Test;
 import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
@@ -40,7 +42,7 @@ class GatewayWebSocketHandlerTest {
     @Test
     void shouldRegisterOnConnectAndRemoveOnDisconnect() throws Exception {
         ConnectionRegistry registry = new ConnectionRegistry();
-        GatewayEventBus eventBus = new GatewayEventBus();
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
         GatewayWebSocketHandler handler = new GatewayWebSocketHandler(
                 registry,
                 new InMemorySessionRegistry(registry),
@@ -66,7 +68,7 @@ class GatewayWebSocketHandlerTest {
     @Test
     void shouldRouteInboundRequestAndSendCompletedFrame() throws Exception {
         ConnectionRegistry registry = new ConnectionRegistry();
-        GatewayEventBus eventBus = new GatewayEventBus();
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
         GatewayWebSocketHandler handler = new GatewayWebSocketHandler(
                 registry,
                 new InMemorySessionRegistry(registry),
@@ -82,7 +84,7 @@ class GatewayWebSocketHandlerTest {
                 "{\"type\":\"request\",\"requestId\":\"req-001\",\"method\":\"session.create\",\"payload\":{}}"
         );
         when(session.receive()).thenReturn(Flux.just(inboundMessage));
-        when(session.textMessage(anyString())).thenAnswer(invocation -> outboundTextMessage(invocation.getArgument(0, String.class)));
+        when(session.bufferFactory()).thenReturn(DefaultDataBufferFactory.sharedInstance);
         when(session.send(any())).thenAnswer(invocation -> Flux.from(invocation.<Publisher<WebSocketMessage>>getArgument(0))
                 .doOnNext(message -> sentPayloads.add(message.getPayloadAsText()))
                 .then());
@@ -100,7 +102,7 @@ class GatewayWebSocketHandlerTest {
     void shouldClearBoundSessionsWhenConnectionDisconnects() throws Exception {
         ConnectionRegistry registry = new ConnectionRegistry();
         InMemorySessionRegistry sessionRegistry = mock(InMemorySessionRegistry.class);
-        GatewayEventBus eventBus = new GatewayEventBus();
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
         GatewayWebSocketHandler handler = new GatewayWebSocketHandler(
                 registry,
                 sessionRegistry,
@@ -132,25 +134,21 @@ class GatewayWebSocketHandlerTest {
                 registry,
                 new InMemorySessionRegistry(registry),
                 new RpcRouter(List.of(new RecordingSessionHandler())),
-                new GatewayEventBus(),
-                dispatcher
-                ,
+                new GatewayEventBus(registry),
+                dispatcher,
                 objectMapper
         );
 
         WebSocketSession session = mock(WebSocketSession.class);
         List<String> sentPayloads = new ArrayList<>();
         when(session.receive()).thenReturn(Flux.never());
-        when(dispatcher.outboundJson(anyString())).thenReturn(Flux.just(
-                "{\"type\":\"event\",\"requestId\":\"req-001\",\"sessionId\":\"session-001\",\"name\":\"chat.delta\"}"
-        ));
-        when(session.textMessage(anyString())).thenAnswer(invocation -> {
-            String payload = invocation.getArgument(0, String.class);
-            WebSocketMessage message = mock(WebSocketMessage.class);
-            when(message.getType()).thenReturn(WebSocketMessage.Type.TEXT);
-            when(message.getPayloadAsText()).thenReturn(payload);
-            return message;
-        });
+        when(session.bufferFactory()).thenReturn(DefaultDataBufferFactory.sharedInstance);
+        when(dispatcher.outboundMessages(anyString(), any())).thenReturn(Flux.just(new WebSocketMessage(
+                WebSocketMessage.Type.TEXT,
+                DefaultDataBufferFactory.sharedInstance.wrap(
+                        "{\"type\":\"event\",\"requestId\":\"req-001\",\"sessionId\":\"session-001\",\"name\":\"chat.delta\"}"
+                                .getBytes(StandardCharsets.UTF_8))
+        )));
         when(session.send(any())).thenAnswer(invocation -> Flux.from(invocation.<Publisher<WebSocketMessage>>getArgument(0))
                 .doOnNext(message -> sentPayloads.add(message.getPayloadAsText()))
                 .then());
@@ -164,7 +162,7 @@ class GatewayWebSocketHandlerTest {
                 "{\"type\":\"event\",\"requestId\":\"req-001\",\"sessionId\":\"session-001\",\"name\":\"chat.delta\"}",
                 sentPayloads.getFirst()
         );
-        verify(dispatcher, times(1)).outboundJson(anyString());
+        verify(dispatcher, times(1)).outboundMessages(anyString(), any());
 
         subscription.dispose();
     }
@@ -172,7 +170,7 @@ class GatewayWebSocketHandlerTest {
     @Test
     void shouldReturnErrorFrameForMalformedInboundJson() throws Exception {
         ConnectionRegistry registry = new ConnectionRegistry();
-        GatewayEventBus eventBus = new GatewayEventBus();
+        GatewayEventBus eventBus = new GatewayEventBus(registry);
         GatewayWebSocketHandler handler = new GatewayWebSocketHandler(
                 registry,
                 new InMemorySessionRegistry(registry),
@@ -186,7 +184,7 @@ class GatewayWebSocketHandlerTest {
         List<String> sentPayloads = new ArrayList<>();
         WebSocketMessage inboundMessage = inboundTextMessage("{broken json}");
         when(session.receive()).thenReturn(Flux.just(inboundMessage));
-        when(session.textMessage(anyString())).thenAnswer(invocation -> outboundTextMessage(invocation.getArgument(0, String.class)));
+        when(session.bufferFactory()).thenReturn(DefaultDataBufferFactory.sharedInstance);
         when(session.send(any())).thenAnswer(invocation -> Flux.from(invocation.<Publisher<WebSocketMessage>>getArgument(0))
                 .doOnNext(message -> sentPayloads.add(message.getPayloadAsText()))
                 .then());
@@ -207,12 +205,6 @@ class GatewayWebSocketHandlerTest {
         return message;
     }
 
-    private WebSocketMessage outboundTextMessage(String payload) {
-        WebSocketMessage message = mock(WebSocketMessage.class);
-        when(message.getPayloadAsText()).thenReturn(payload);
-        return message;
-    }
-
     private void waitUntil(Condition condition, String failureMessage) throws Exception {
         long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
         while (System.nanoTime() < deadline) {
@@ -0,0 +1,85 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.config.LlmProperties;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchingEmbeddingClientTest {
+
+    private final List<List<String>> backendCalls = new CopyOnWriteArrayList<>();
+    private final LocalEmbeddingClient local = new LocalEmbeddingClient(64);
+
+    @Test
+    void mergesConcurrentTextsIntoOneBatchAndDeduplicates() {
+        BatchingEmbeddingClient client = new BatchingEmbeddingClient(recordingBackend(), settings(3, 60_000));
+
+        Mono<float[]> first = client.embed("什么是向量数据库").cache();
+        Mono<float[]> duplicate = client.embed("什么是向量数据库").cache();
+        Mono<float[]> second = client.embed("今天天气怎么样").cache();
+        first.subscribe();
+        duplicate.subscribe();
+        second.subscribe();
+        // 第三条不同的文本攒满批次，立即发出
+        float[] third = client.embed("hello world").block(Duration.ofSeconds(1));
+
+        assertEquals(List.of(List.of("什么是向量数据库", "今天天气怎么样", "hello world")), backendCalls);
+        assertArrayEquals(local.vectorize("什么是向量数据库"), first.block(Duration.ofSeconds(1)));
+        assertArrayEquals(first.block(), duplicate.block());
+        assertArrayEquals(local.vectorize("hello world"), third);
+        assertEquals(1, client.getDeduplicated());
+        assertEquals(1, client.getBatches());
+    }
+
+    @Test
+    void flushesPartialBatchAfterWindowAndServesRepeatsFromCache() {
+        BatchingEmbeddingClient client = new BatchingEmbeddingClient(recordingBackend(), settings(32, 20));
+
+        List<float[]> vectors = client.embedAll(List.of("a", "b", "a")).block(Duration.ofSeconds(1));
+        float[] cached = client.embed("b").block(Duration.ofSeconds(1));
+
+        assertEquals(List.of(List.of("a", "b")), backendCalls);
+        assertEquals(3, vectors.size());
+        assertArrayEquals(vectors.get(0), vectors.get(2));
+        assertArrayEquals(vectors.get(1), cached);
+        assertEquals(1, client.getCacheHits());
+        assertEquals(2, client.getBackendTexts());
+    }
+
+    @Test
+    void propagatesBackendFailureAndRetriesOnNextCall() {
+        LlmProperties.Embedding settings = settings(1, 0);
+        int[] calls = {0};
+        BatchingEmbeddingClient client = new BatchingEmbeddingClient(texts -> {
+            if (calls[0]++ == 0) {
+                return Mono.error(new LlmException(LlmErrorType.SERVER_ERROR, true, 503, "unavailable"));
+            }
+            return local.embedAll(texts);
+        }, settings, Schedulers.immediate());
+
+        assertThrows(LlmException.class, () -> client.embed("hello").block(Duration.ofSeconds(1)));
+        assertArrayEquals(local.vectorize("hello"), client.embed("hello").block(Duration.ofSeconds(1)));
+    }
+
+    private EmbeddingClient recordingBackend() {
+        return texts -> {
+            backendCalls.add(List.copyOf(texts));
+            return local.embedAll(texts);
+        };
+    }
+
+    private LlmProperties.Embedding settings(int maxBatchSize, long windowMillis) {
+        LlmProperties.Embedding settings = new LlmProperties.Embedding();
+        settings.setMaxBatchSize(maxBatchSize);
+        settings.setBatchWindowMillis(windowMillis);
+        return settings;
+    }
+}
@@ -0,0 +1,137 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.llm.model.LlmRequest;
+import com.miniclaw.llm.model.ToolCall;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextWindowManagerTest {
+
+    private final TokenEstimator estimator = new TokenEstimator();
+    private final ContextWindowManager manager = new ContextWindowManager(estimator);
+
+    @Test
+    void returnsOriginalListWhenWithinBudget() {
+        List<LlmRequest.Message> messages = List.of(
+                LlmRequest.Message.user("hello"),
+                LlmRequest.Message.assistant("hi"),
+                LlmRequest.Message.user("how are you")
+        );
+
+        assertSame(messages, manager.fit(messages, 1000));
+        assertSame(messages, manager.fit(messages, 0));
+    }
+
+    @Test
+    void dropsOldestTurnsButKeepsSystemPromptAndLatestMessage() {
+        List<LlmRequest.Message> messages = List.of(
+                LlmRequest.Message.system("rules"),
+                LlmRequest.Message.user("x".repeat(400)),
+                LlmRequest.Message.assistant("y".repeat(400)),
+                LlmRequest.Message.user("short"),
+                LlmRequest.Message.assistant("reply"),
+                LlmRequest.Message.user("z".repeat(400))
+        );
+
+        List<LlmRequest.Message> fitted = manager.fit(messages, 130);
+
+        assertEquals(List.of("rules", "short", "reply", "z".repeat(400)), contents(fitted));
+    }
+
+    @Test
+    void neverStartsHistoryWithOrphanToolResult() {
+        List<LlmRequest.Message> messages = List.of(
+                LlmRequest.Message.user("a".repeat(200)),
+                LlmRequest.Message.assistantWithToolCalls(List.of(ToolCall.builder()
+                        .id("call_1")
+                        .type("function")
+                        .function(ToolCall.FunctionCall.builder().name("search").arguments("{}").build())
+                        .build())),
+                LlmRequest.Message.toolResult("call_1", "result"),
+                LlmRequest.Message.assistant("done"),
+                LlmRequest.Message.user("next")
+        );
+
+        List<LlmRequest.Message> fitted = manager.fit(messages, 30);
+
+        assertEquals(List.of("next"), contents(fitted));
+    }
+
+    @Test
+    void keepsTheSameFirstMessageUntilBudgetIsExceededAgain() {
+        int budget = 2000;
+        LlmRequest.Message system = LlmRequest.Message.system("rules");
+        List<LlmRequest.Message> history = new ArrayList<>(List.of(system));
+        int start = 1;
+        int overBudgetTurns = 0;
+        int trims = 0;
+
+        for (int turn = 0; turn < 120; turn++) {
+            history.add(LlmRequest.Message.user("question " + turn + " " + "q".repeat(60)));
+            List<LlmRequest.Message> fitted = manager.fit(List.copyOf(history), budget);
+            int kept = history.indexOf(fitted.get(1));
+
+            if (tokens(history) > budget) {
+                overBudgetTurns++;
+            }
+            if (estimator.estimate(system) + tokens(history.subList(start, history.size())) <= budget) {
+                // 从上一轮的第一条消息开始仍然放得下：请求开头不变
+                assertEquals(start, kept);
+            } else {
+                // 超出预算：一次裁到低水位附近，并从 user 消息开始
+                assertTrue(kept > start);
+                assertEquals("user", fitted.get(1).getRole());
+                assertTrue(tokens(fitted) <= budget * ContextWindowManager.LOW_WATERMARK_RATIO + 50);
+                trims++;
+            }
+            assertTrue(tokens(fitted) <= budget);
+            start = kept;
+
+            history.add(LlmRequest.Message.assistant("answer " + turn + " " + "a".repeat(60)));
+        }
+
+        assertTrue(overBudgetTurns > 60);
+        assertTrue(trims > 1 && trims <= overBudgetTurns / 5, "trims=" + trims + ", overBudgetTurns=" + overBudgetTurns);
+    }
+
+    @Test
+    void estimatesEachHistoryMessageOnlyOnce() {
+        List<LlmRequest.Message> history = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            history.add(i % 2 == 0 ? LlmRequest.Message.user("question " + i) : LlmRequest.Message.assistant("answer " + i));
+            manager.fit(List.copyOf(history), 100_000);
+        }
+
+        assertEquals(200, estimator.cachedTexts());
+    }
+
+    @Test
+    void reEstimatesMessageAfterItsContentChanges() {
+        LlmRequest.Message message = LlmRequest.Message.user("hello");
+        assertEquals(TokenEstimator.MESSAGE_OVERHEAD_TOKENS + 2, estimator.estimate(message));
+
+        message.setContent("x".repeat(400));
+
+        assertEquals(TokenEstimator.MESSAGE_OVERHEAD_TOKENS + 100, estimator.estimate(message));
+    }
+
+    @Test
+    void countsCjkCharactersIndividually() {
+        assertEquals(4, estimator.estimate("你好世界"));
+        assertEquals(2, estimator.estimate("hello"));
+    }
+
+    private int tokens(List<LlmRequest.Message> messages) {
+        return messages.stream().mapToInt(estimator::estimate).sum();
+    }
+
+    private List<String> contents(List<LlmRequest.Message> messages) {
+        return messages.stream().map(LlmRequest.Message::getContent).toList();
+    }
+}
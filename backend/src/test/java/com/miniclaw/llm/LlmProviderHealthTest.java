@@ -0,0 +1,143 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.config.LlmProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LlmProviderHealthTest {
+
+    private static final LlmException SERVER_ERROR = new LlmException(LlmErrorType.SERVER_ERROR, true, 503, "overloaded");
+    private static final LlmException BAD_REQUEST = new LlmException(LlmErrorType.BAD_REQUEST, false, 400, "bad");
+
+    @Test
+    void opensCircuitWhenFailureRateCrossesThresholdAndRecoversAfterProbes() {
+        AtomicLong clock = new AtomicLong();
+        LlmProperties properties = properties();
+        LlmProviderHealth health = new LlmProviderHealth(properties, clock::get);
+
+        for (int i = 0; i < 4; i++) {
+            health.acquire("deepseek").onSuccess();
+        }
+        for (int i = 0; i < 4; i++) {
+            health.acquire("deepseek").onError(SERVER_ERROR);
+        }
+        assertEquals(CircuitState.OPEN, health.getCircuitState("deepseek"));
+
+        LlmException rejected = assertThrows(LlmException.class, () -> health.acquire("deepseek"));
+        assertEquals(LlmErrorType.CIRCUIT_OPEN, rejected.getErrorType());
+        assertFalse(rejected.isRetryable());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        LlmProviderHealth.Permit firstProbe = health.acquire("deepseek");
+        LlmProviderHealth.Permit secondProbe = health.acquire("deepseek");
+        assertEquals(CircuitState.HALF_OPEN, health.getCircuitState("deepseek"));
+        assertThrows(LlmException.class, () -> health.acquire("deepseek"));
+
+        firstProbe.onSuccess();
+        secondProbe.onSuccess();
+        assertEquals(CircuitState.CLOSED, health.getCircuitState("deepseek"));
+    }
+
+    @Test
+    void failedProbeReopensCircuit() {
+        AtomicLong clock = new AtomicLong();
+        LlmProviderHealth health = new LlmProviderHealth(properties(), clock::get);
+        for (int i = 0; i < 8; i++) {
+            health.acquire("qwen").onError(SERVER_ERROR);
+        }
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        health.acquire("qwen").onError(SERVER_ERROR);
+
+        assertEquals(CircuitState.OPEN, health.getCircuitState("qwen"));
+        assertThrows(LlmException.class, () -> health.acquire("qwen"));
+    }
+
+    @Test
+    void requestErrorsDoNotCountAsProviderFailures() {
+        LlmProviderHealth health = new LlmProviderHealth(properties(), () -> 0L);
+
+        for (int i = 0; i < 20; i++) {
+            health.acquire("deepseek").onError(BAD_REQUEST);
+        }
+
+        assertEquals(CircuitState.CLOSED, health.getCircuitState("deepseek"));
+        assertEquals(4, health.getConcurrencyLimit("deepseek"));
+    }
+
+    @Test
+    void concurrencyLimitShedsExcessAndAdaptsWithAimd() {
+        LlmProperties properties = properties();
+        properties.getCircuitBreaker().setEnabled(false);
+        LlmProviderHealth health = new LlmProviderHealth(properties, () -> 0L);
+
+        LlmProviderHealth.Permit[] permits = new LlmProviderHealth.Permit[4];
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = health.acquire("deepseek");
+        }
+        LlmException limited = assertThrows(LlmException.class, () -> health.acquire("deepseek"));
+        assertEquals(LlmErrorType.CONCURRENCY_LIMITED, limited.getErrorType());
+
+        for (LlmProviderHealth.Permit permit : permits) {
+            permit.onSuccess();
+        }
+        // 获取许可时在途数已达上限一半的三次成功各加 1
+        assertEquals(7, health.getConcurrencyLimit("deepseek"));
+
+        health.acquire("deepseek").onError(SERVER_ERROR);
+        assertEquals(3, health.getConcurrencyLimit("deepseek"));
+        assertEquals(0, health.snapshot().get(0).inFlight());
+        assertEquals(1, health.snapshot().get(0).concurrencyRejections());
+    }
+
+    @Test
+    void queuedRequestTakesTheNextFreedPermitOrFailsAfterMaxWait() {
+        LlmProperties properties = properties();
+        properties.getCircuitBreaker().setEnabled(false);
+        properties.getConcurrencyLimit().setMaxWaitMillis(1000);
+        LlmProviderHealth health = new LlmProviderHealth(properties, () -> 0L);
+
+        LlmProviderHealth.Permit[] permits = new LlmProviderHealth.Permit[4];
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = health.acquire("deepseek");
+        }
+        CompletableFuture<LlmProviderHealth.Permit> queued = health.acquireAsync("deepseek").toFuture();
+        assertFalse(queued.isDone());
+
+        // 释放一个名额后排队的请求立即拿到，在途数不超过上限
+        permits[0].onSuccess();
+        LlmProviderHealth.Permit granted = queued.join();
+        assertEquals(4, health.snapshot().get(0).inFlight());
+
+        properties.getConcurrencyLimit().setMaxWaitMillis(50);
+        LlmException limited = assertThrows(LlmException.class,
+                () -> health.acquireAsync("deepseek").block(Duration.ofSeconds(5)));
+        assertEquals(LlmErrorType.CONCURRENCY_LIMITED, limited.getErrorType());
+        assertEquals(1, health.snapshot().get(0).concurrencyRejections());
+
+        granted.onSuccess();
+        assertEquals(3, health.snapshot().get(0).inFlight());
+    }
+
+    private LlmProperties properties() {
+        LlmProperties properties = new LlmProperties();
+        properties.getCircuitBreaker().setWindowSize(10);
+        properties.getCircuitBreaker().setMinimumCalls(8);
+        properties.getCircuitBreaker().setFailureRateThreshold(0.5);
+        properties.getCircuitBreaker().setOpenDurationMillis(30000);
+        properties.getCircuitBreaker().setHalfOpenProbes(2);
+        properties.getConcurrencyLimit().setInitialLimit(4);
+        properties.getConcurrencyLimit().setMinLimit(2);
+        properties.getConcurrencyLimit().setMaxLimit(16);
+        properties.getConcurrencyLimit().setBackoffRatio(0.5);
+        return properties;
+    }
+}
@@ -1,10 +1,15 @@
 package com.miniclaw.llm;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miniclaw.config.LlmProviderConfig;
 import com.miniclaw.config.LlmProperties;
 import com.miniclaw.llm.model.LlmRequest;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.Test;
 
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -50,6 +55,53 @@ class LlmProviderRegistryTest {
         assertEquals("Unknown LLM provider: unknown", exception.getMessage());
     }
 
+    @Test
+    void providerPoolSettingsAreAppliedAndExposedAsMetrics() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            byte[] body = """
+                    {"choices":[{"message":{"role":"assistant","content":"ok"},"finish_reason":"stop"}]}
+                    """.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+
+        LlmProperties properties = new LlmProperties();
+        properties.setDefaultModel("local:test-model");
+        properties.setProviders(List.of(LlmProviderConfig.builder()
+                .id("local")
+                .endpoint("http://127.0.0.1:" + server.getAddress().getPort())
+                .apiKey("local-key")
+                .models(List.of("test-model"))
+                .pool(LlmProviderConfig.Pool.builder()
+                        .maxConnections(4)
+                        .pendingAcquireMaxCount(16)
+                        .build())
+                .build()));
+        LlmConnectionPoolMetrics poolMetrics = new LlmConnectionPoolMetrics();
+        OpenAiCompatibleLlmClient client = new OpenAiCompatibleLlmClient(properties, new ObjectMapper(), poolMetrics);
+
+        try {
+            client.chat(LlmRequest.builder()
+                    .messages(List.of(LlmRequest.Message.user("ping")))
+                    .build());
+
+            List<LlmConnectionPoolMetrics.PoolSnapshot> snapshots = poolMetrics.snapshot();
+            assertEquals(1, snapshots.size());
+            assertEquals("llm-local", snapshots.get(0).poolName());
+            assertEquals(4, snapshots.get(0).maxAllocated());
+            assertEquals(16, snapshots.get(0).maxPendingAcquires());
+            assertEquals(0, poolMetrics.getPendingAcquires("llm-local"));
+        } finally {
+            client.destroy();
+            server.stop(0);
+        }
+    }
+
     private LlmProperties createProperties() {
         LlmProperties properties = new LlmProperties();
         properties.setDefaultModel("deepseek:deepseek-chat");
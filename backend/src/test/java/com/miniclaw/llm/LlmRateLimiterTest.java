@@ -0,0 +1,112 @@
+package com.miniclaw.llm;
+
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.config.LlmProviderConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LlmRateLimiterTest {
+
+    @Test
+    void parsesRateLimitResetDurations() {
+        assertEquals(Duration.ofSeconds(1), LlmRateLimiter.parseDuration("1s"));
+        assertEquals(Duration.ofMinutes(6), LlmRateLimiter.parseDuration("6m0s"));
+        assertEquals(Duration.ofMillis(60), LlmRateLimiter.parseDuration("59.5ms"));
+        assertEquals(Duration.ofMillis(3_723_500), LlmRateLimiter.parseDuration("1h2m3.5s"));
+        assertEquals(Duration.ofMillis(2500), LlmRateLimiter.parseDuration("2.5"));
+        assertNull(LlmRateLimiter.parseDuration("soon"));
+    }
+
+    @Test
+    void prefersRetryAfterHeadersAndFallsBackToExhaustedReset() {
+        HttpHeaders retryAfter = new HttpHeaders();
+        retryAfter.set(HttpHeaders.RETRY_AFTER, "3");
+        assertEquals(Duration.ofSeconds(3), LlmRateLimiter.retryAfter(retryAfter, 429));
+
+        HttpHeaders retryAfterMs = new HttpHeaders();
+        retryAfterMs.set("retry-after-ms", "250");
+        retryAfterMs.set(HttpHeaders.RETRY_AFTER, "3");
+        assertEquals(Duration.ofMillis(250), LlmRateLimiter.retryAfter(retryAfterMs, 503));
+
+        HttpHeaders exhausted = new HttpHeaders();
+        exhausted.set("x-ratelimit-remaining-requests", "12");
+        exhausted.set("x-ratelimit-reset-requests", "1s");
+        exhausted.set("x-ratelimit-remaining-tokens", "0");
+        exhausted.set("x-ratelimit-reset-tokens", "7.5s");
+        assertEquals(Duration.ofMillis(7500), LlmRateLimiter.retryAfter(exhausted, 429));
+        assertNull(LlmRateLimiter.retryAfter(exhausted, 503));
+    }
+
+    @Test
+    void queuesWithinConfiguredRequestsPerMinuteAndRejectsBeyondMaxQueue() {
+        AtomicLong clock = new AtomicLong();
+        LlmRateLimiter limiter = new LlmRateLimiter(properties(), clock::get);
+        ResolvedLlmContext context = context(LlmProviderConfig.builder().id("deepseek").requestsPerMinute(60).build());
+
+        for (int i = 0; i < 60; i++) {
+            assertEquals(Duration.ZERO, limiter.reserve(context, "deepseek-chat", 10));
+        }
+        // 60 RPM 每秒回填一个请求
+        assertEquals(Duration.ofSeconds(1), limiter.reserve(context, "deepseek-chat", 10));
+        assertEquals(Duration.ofSeconds(2), limiter.reserve(context, "deepseek-chat", 10));
+
+        LlmException rejected = assertThrows(LlmException.class, () -> limiter.reserve(context, "deepseek-chat", 10));
+        assertEquals(LlmErrorType.RATE_LIMIT, rejected.getErrorType());
+        assertEquals(Duration.ofSeconds(3), rejected.getRetryAfter());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        assertEquals(Duration.ZERO, limiter.reserve(context, "deepseek-chat", 10));
+        assertEquals(Duration.ZERO, limiter.reserve(context, "deepseek-reasoner", 10));
+    }
+
+    @Test
+    void learnsTokenBudgetFromHeadersAndReconcilesWithUsage() {
+        AtomicLong clock = new AtomicLong();
+        LlmRateLimiter limiter = new LlmRateLimiter(properties(), clock::get);
+        ResolvedLlmContext context = context(LlmProviderConfig.builder().id("qwen").build());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("x-ratelimit-limit-tokens", "6000");
+        headers.set("x-ratelimit-remaining-tokens", "1000");
+        limiter.update(context, "qwen3.5-flash", headers, null);
+
+        assertEquals(Duration.ZERO, limiter.reserve(context, "qwen3.5-flash", 1000));
+        // 6000 TPM 每 10ms 回填 1 个 token
+        assertEquals(Duration.ofSeconds(1), limiter.reserve(context, "qwen3.5-flash", 100));
+
+        // 预估 1000、实际只用了 300，多扣的 700 归还
+        limiter.reconcile(context, "qwen3.5-flash", 1000, 300);
+        assertEquals(Duration.ZERO, limiter.reserve(context, "qwen3.5-flash", 500));
+    }
+
+    @Test
+    void blocksUntilRetryAfterOnRateLimitedResponse() {
+        AtomicLong clock = new AtomicLong();
+        LlmRateLimiter limiter = new LlmRateLimiter(properties(), clock::get);
+        ResolvedLlmContext context = context(LlmProviderConfig.builder().id("deepseek").build());
+
+        limiter.update(context, "deepseek-chat", new HttpHeaders(), Duration.ofMillis(1500));
+
+        assertEquals(Duration.ofMillis(1500), limiter.reserve(context, "deepseek-chat", 10));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        assertEquals(Duration.ZERO, limiter.reserve(context, "deepseek-chat", 10));
+    }
+
+    private static LlmProperties properties() {
+        LlmProperties properties = new LlmProperties();
+        properties.getRateLimit().setMaxQueueMillis(2500);
+        return properties;
+    }
+
+    private static ResolvedLlmContext context(LlmProviderConfig provider) {
+        return new ResolvedLlmContext(provider.getId(), provider, null, false);
+    }
+}
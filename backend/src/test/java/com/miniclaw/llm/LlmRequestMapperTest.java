@@ -1,17 +1,20 @@
 package com.miniclaw.llm;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miniclaw.config.LlmProviderConfig;
 import com.miniclaw.config.LlmProperties;
 import com.miniclaw.llm.model.LlmRequest;
 import org.junit.jupiter.api.Test;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LlmRequestMapperTest {
 
@@ -97,6 +100,78 @@ class LlmRequestMapperTest {
         assertEquals(1, request.getTools().size());
     }
 
+    @Test
+    void trimsOldestTurnsToModelsContextWindowMinusReservedOutput() {
+        LlmRequestMapper mapper = new LlmRequestMapper(createProperties());
+        LlmProviderConfig provider = createProperties().getProvider("qwen");
+        provider.setContextWindows(Map.of("qwen3.5-plus", 80));
+        ResolvedLlmContext context = new ResolvedLlmContext("qwen", provider,
+                WebClient.builder().baseUrl("https://dashscope.aliyuncs.com/compatible-mode/v1").build(), false);
+
+        OpenAiChatCompletionRequest request = mapper.map(
+                LlmRequest.builder()
+                        .providerId("qwen")
+                        .maxTokens(20)
+                        .messages(List.of(
+                                LlmRequest.Message.system("You are helpful."),
+                                LlmRequest.Message.user("a".repeat(40)),
+                                LlmRequest.Message.assistant("b".repeat(40)),
+                                LlmRequest.Message.user("c".repeat(40)),
+                                LlmRequest.Message.assistant("d".repeat(40)),
+                                LlmRequest.Message.user("latest question")
+                        ))
+                        .build(),
+                context,
+                false
+        );
+
+        assertEquals(List.of("system", "user", "assistant", "user"),
+                request.getMessages().stream().map(OpenAiChatCompletionRequest.OpenAiChatMessage::getRole).toList());
+        assertEquals("c".repeat(40), request.getMessages().get(1).getContent());
+        assertEquals(20, request.getMaxTokens());
+    }
+
+    @Test
+    void serializesToolsIdenticallyRegardlessOfMapOrder() throws Exception {
+        LlmRequestMapper mapper = new LlmRequestMapper(createProperties());
+        Map<String, Object> weatherParameters = new LinkedHashMap<>();
+        weatherParameters.put("type", "object");
+        weatherParameters.put("properties", Map.of("city", Map.of("type", "string")));
+        Map<String, Object> weather = new LinkedHashMap<>();
+        weather.put("type", "function");
+        weather.put("function", Map.of("name", "get_weather", "parameters", weatherParameters));
+        Map<String, Object> time = new LinkedHashMap<>();
+        time.put("function", Map.of("name", "get_time"));
+        time.put("type", "function");
+
+        Map<String, Object> reorderedParameters = new LinkedHashMap<>();
+        reorderedParameters.put("properties", Map.of("city", Map.of("type", "string")));
+        reorderedParameters.put("type", "object");
+        Map<String, Object> reorderedWeather = new LinkedHashMap<>();
+        reorderedWeather.put("function", Map.of("parameters", reorderedParameters, "name", "get_weather"));
+        reorderedWeather.put("type", "function");
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        String first = objectMapper.writeValueAsString(mapper.map(toolRequest(List.of(weather, time)), qwenContext(), true));
+        String second = objectMapper.writeValueAsString(mapper.map(toolRequest(List.of(time, reorderedWeather)), qwenContext(), true));
+
+        assertEquals(first, second);
+        assertTrue(first.startsWith("{\"model\":\"qwen3.5-plus\",\"messages\":[{\"role\":\"system\""));
+        assertTrue(first.indexOf("get_time") < first.indexOf("get_weather"));
+        assertTrue(first.endsWith("\"stream\":true,\"stream_options\":{\"include_usage\":true}}"));
+    }
+
+    private LlmRequest toolRequest(List<Map<String, Object>> tools) {
+        return LlmRequest.builder()
+                .providerId("qwen")
+                .messages(List.of(
+                        LlmRequest.Message.system("You are a helpful assistant."),
+                        LlmRequest.Message.user("What's the weather?")
+                ))
+                .tools(tools)
+                .build();
+    }
+
     private LlmProperties createProperties() {
         LlmProperties properties = new LlmProperties();
         properties.setDefaultModel("deepseek:deepseek-chat");
@@ -0,0 +1,108 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.llm.model.LlmChunk;
+import com.miniclaw.llm.model.LlmResponse;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmResponseCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void chatAndStreamRequestsShareTheSameKey() {
+        LlmResponseCache cache = cache(100);
+
+        String chatKey = cache.keyOf("deepseek", request(0d, false, Map.of("type", "function", "name", "a")));
+        String streamKey = cache.keyOf("deepseek", request(0d, true, Map.of("name", "a", "type", "function")));
+
+        assertNotNull(chatKey);
+        assertEquals(chatKey, streamKey);
+        assertNotEquals(chatKey, cache.keyOf("qwen", request(0d, false, Map.of("type", "function", "name", "a"))));
+    }
+
+    @Test
+    void onlyCachesZeroTemperatureRequests() {
+        LlmResponseCache cache = cache(100);
+
+        assertNull(cache.keyOf("deepseek", request(0.7d, false, Map.of())));
+        assertNull(cache.keyOf("deepseek", request(null, false, Map.of())));
+    }
+
+    @Test
+    void expiresEntriesAfterTtlAndEvictsLeastRecentlyUsed() {
+        LlmResponseCache cache = cache(2);
+        cache.put("a", response("A"));
+        cache.put("b", response("B"));
+        cache.get("a");
+        cache.put("c", response("C"));
+
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a").getContent());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void recordsCompletedStreamAndReplaysIt() {
+        LlmResponseCache cache = cache(100);
+
+        cache.recordStream("key", Flux.just(
+                LlmChunk.builder().delta("Hel").build(),
+                LlmChunk.builder().delta("lo").build(),
+                LlmChunk.builder().finishReason("stop").done(true).build(),
+                LlmChunk.builder().done(true).build()
+        )).blockLast();
+        cache.recordStream("truncated", Flux.just(LlmChunk.builder().delta("Hel").build())).blockLast();
+
+        List<LlmChunk> replayed = cache.replay(cache.get("key")).collectList().block();
+
+        assertNull(cache.get("truncated"));
+        assertEquals(3, replayed.size());
+        assertEquals("Hello", replayed.get(0).getDelta());
+        assertEquals("stop", replayed.get(1).getFinishReason());
+        assertTrue(replayed.get(2).isDone());
+    }
+
+    private LlmResponseCache cache(int maxEntries) {
+        LlmProperties.ResponseCache settings = new LlmProperties.ResponseCache();
+        settings.setEnabled(true);
+        settings.setMaxEntries(maxEntries);
+        settings.setTtlSeconds(60);
+        return new LlmResponseCache(settings, new ObjectMapper(), clock::get);
+    }
+
+    private OpenAiChatCompletionRequest request(Double temperature, boolean stream, Map<String, Object> tool) {
+        OpenAiChatCompletionRequest.OpenAiChatMessage message = new OpenAiChatCompletionRequest.OpenAiChatMessage();
+        message.setRole("user");
+        message.setContent("Classify: refund request");
+        return OpenAiChatCompletionRequest.builder()
+                .model("deepseek-chat")
+                .messages(List.of(message))
+                .tools(List.of(tool))
+                .temperature(temperature)
+                .maxTokens(16)
+                .stream(stream)
+                .streamOptions(stream ? new OpenAiChatCompletionRequest.StreamOptions(true) : null)
+                .build();
+    }
+
+    private LlmResponse response(String content) {
+        return LlmResponse.builder().content(content).finishReason("stop").build();
+    }
+}
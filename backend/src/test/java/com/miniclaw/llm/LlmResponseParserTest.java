@@ -5,10 +5,12 @@ import com.miniclaw.llm.model.LlmChunk;
 import com.miniclaw.llm.model.LlmResponse;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LlmResponseParserTest {
@@ -65,6 +67,57 @@ class LlmResponseParserTest {
         assertFalse(chunk.get().isDone());
     }
 
+    @Test
+    void parsesReasoningContentSeparatelyFromAnswer() {
+        LlmResponseParser parser = new LlmResponseParser(new ObjectMapper());
+
+        Optional<LlmChunk> thinking = parser.parseSseLine(
+                "data: {\"choices\":[{\"delta\":{\"content\":null,\"reasoning_content\":\"Let me think\"},\"finish_reason\":null}]}"
+        );
+        Optional<LlmChunk> answer = parser.parseSseLine(
+                "data: {\"choices\":[{\"delta\":{\"content\":\"42\",\"reasoning_content\":null},\"finish_reason\":null}]}"
+        );
+
+        assertTrue(thinking.isPresent());
+        assertEquals("Let me think", thinking.get().getReasoningDelta());
+        assertNull(thinking.get().getDelta());
+        assertEquals("42", answer.get().getDelta());
+        assertNull(answer.get().getReasoningDelta());
+    }
+
+    @Test
+    void parsesOnlyFirstChoiceAndSkipsUnknownFields() {
+        LlmResponseParser parser = new LlmResponseParser(new ObjectMapper());
+
+        Optional<LlmChunk> chunk = parser.parseSseLine(
+                "data: {\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"hi\","
+                        + "\"extra\":{\"nested\":[1,2]}},\"logprobs\":null,\"finish_reason\":\"stop\"},"
+                        + "{\"index\":1,\"delta\":{\"content\":\"ignored\"}}],\"usage\":null}"
+        );
+
+        assertTrue(chunk.isPresent());
+        assertEquals("hi", chunk.get().getDelta());
+        assertEquals("stop", chunk.get().getFinishReason());
+        assertTrue(chunk.get().isDone());
+    }
+
+    @Test
+    void completesPendingToolCallsOnDoneMarker() {
+        LlmResponseParser parser = new LlmResponseParser(new ObjectMapper());
+        SseEventDecoder.DataParser<LlmChunk> streamParser = parser.newStreamParser();
+
+        LlmChunk fragment = parse(streamParser,
+                "{\"choices\":[{\"delta\":{\"tool_calls\":[{\"id\":\"call_1\",\"function\":{\"name\":\"list_files\"}}]}}]}");
+        LlmChunk done = parse(streamParser, "[DONE]");
+
+        assertEquals("list_files", fragment.getToolCallFunctionName());
+        assertFalse(fragment.hasToolCalls());
+        assertTrue(done.isDone());
+        assertEquals(1, done.getToolCalls().size());
+        assertEquals("call_1", done.getToolCalls().get(0).getId());
+        assertEquals("{}", done.getToolCalls().get(0).getArguments());
+    }
+
     @Test
     void parsesDoneMarker() {
         LlmResponseParser parser = new LlmResponseParser(new ObjectMapper());
@@ -75,6 +128,25 @@ class LlmResponseParserTest {
         assertTrue(chunk.get().isDone());
     }
 
+    @Test
+    void readsCachedPromptTokensFromDeepSeekAndOpenAiStyleUsage() {
+        LlmResponseParser parser = new LlmResponseParser(new ObjectMapper());
+
+        LlmResponse deepSeek = parser.parseChat("""
+                {"choices":[{"message":{"role":"assistant","content":"ok"},"finish_reason":"stop"}],
+                 "usage":{"prompt_tokens":1200,"completion_tokens":5,"total_tokens":1205,
+                          "prompt_cache_hit_tokens":1024,"prompt_cache_miss_tokens":176}}
+                """);
+        LlmChunk qwenUsage = parse(parser.newStreamParser(),
+                "{\"choices\":[],\"usage\":{\"prompt_tokens\":900,\"completion_tokens\":7,\"total_tokens\":907,"
+                        + "\"prompt_tokens_details\":{\"cached_tokens\":768}}}");
+
+        assertEquals(1024, deepSeek.getUsage().getCacheReadInputTokens());
+        assertEquals(768, qwenUsage.getUsage().getCacheReadInputTokens());
+        assertEquals(900, qwenUsage.getUsage().getPromptTokens());
+        assertFalse(qwenUsage.isDone());
+    }
+
     @Test
     void ignoresMalformedSseJson() {
         LlmResponseParser parser = new LlmResponseParser(new ObjectMapper());
@@ -83,4 +155,9 @@ class LlmResponseParserTest {
 
         assertTrue(chunk.isEmpty());
     }
+
+    private static LlmChunk parse(SseEventDecoder.DataParser<LlmChunk> streamParser, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        return streamParser.parse(bytes, 0, bytes.length);
+    }
 }
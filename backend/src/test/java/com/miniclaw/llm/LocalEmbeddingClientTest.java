@@ -0,0 +1,37 @@
+package com.miniclaw.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalEmbeddingClientTest {
+
+    @Test
+    void producesDeterministicNormalizedVectors() {
+        LocalEmbeddingClient client = new LocalEmbeddingClient(256);
+
+        List<float[]> vectors = client.embedAll(List.of("什么是向量数据库", "什么是向量数据库")).block();
+
+        assertEquals(256, vectors.get(0).length);
+        assertArrayEquals(vectors.get(0), vectors.get(1));
+        assertArrayEquals(new LocalEmbeddingClient(256).vectorize("什么是向量数据库"), vectors.get(0));
+        assertEquals(1.0, EmbeddingVectors.dot(vectors.get(0), vectors.get(0)), 1e-5);
+    }
+
+    @Test
+    void ranksLexicallyCloserTextsHigher() {
+        LocalEmbeddingClient client = new LocalEmbeddingClient(1024);
+        float[] query = client.vectorize("向量数据库是什么");
+
+        double similar = EmbeddingVectors.dot(query, client.vectorize("什么是向量数据库"));
+        double unrelated = EmbeddingVectors.dot(query, client.vectorize("今天天气怎么样"));
+
+        assertTrue(similar > 0.6, "similar=" + similar);
+        assertTrue(similar > unrelated + 0.4, "similar=" + similar + ", unrelated=" + unrelated);
+        assertTrue(EmbeddingVectors.dot(client.vectorize("Hello, World"), client.vectorize("hello world")) > 0.99);
+    }
+}
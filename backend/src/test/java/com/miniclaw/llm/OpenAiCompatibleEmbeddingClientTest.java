@@ -0,0 +1,87 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.llm.model.LlmRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OpenAiCompatibleEmbeddingClientTest {
+
+    @Test
+    void embeddingsShareTheChatProvidersCircuitBreaker() throws Exception {
+        AtomicInteger chatRequests = new AtomicInteger();
+        AtomicInteger embeddingRequests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            chatRequests.incrementAndGet();
+            respond(exchange, 503, "{\"error\":{\"message\":\"overloaded\"}}");
+        });
+        server.createContext("/v1/embeddings", exchange -> {
+            embeddingRequests.incrementAndGet();
+            respond(exchange, 200, "{\"data\":[{\"index\":0,\"embedding\":[0.1,0.2]}]}");
+        });
+        server.start();
+
+        try {
+            LlmProperties properties = properties(server);
+            LlmProviderHealth health = new LlmProviderHealth(properties);
+            OpenAiCompatibleLlmClient llmClient = new OpenAiCompatibleLlmClient(
+                    properties, new ObjectMapper(), new LlmConnectionPoolMetrics(), new LlmUsageMetrics(), health);
+            OpenAiCompatibleEmbeddingClient embeddingClient =
+                    new OpenAiCompatibleEmbeddingClient(llmClient, properties, new ObjectMapper());
+
+            assertEquals(1, embeddingClient.embedAll(List.of("hello")).block(Duration.ofSeconds(5)).size());
+
+            // 成功的 embeddings 调用和失败的 chat 记在同一个熔断窗口里：1 次成功 + 2 次 5xx 超过 50% 失败率
+            for (int i = 0; i < 2; i++) {
+                assertThrows(LlmException.class, () -> llmClient.chat(LlmRequest.builder()
+                        .messages(List.of(LlmRequest.Message.user("hello")))
+                        .build()));
+            }
+            assertEquals(CircuitState.OPEN, health.getCircuitState("__legacy__"));
+
+            // 熔断打开后，同一 Provider 的 embeddings 也不再发出
+            LlmException rejected = assertThrows(LlmException.class,
+                    () -> embeddingClient.embedAll(List.of("world")).block(Duration.ofSeconds(5)));
+
+            assertEquals(LlmErrorType.CIRCUIT_OPEN, rejected.getErrorType());
+            assertEquals(2, chatRequests.get());
+            assertEquals(1, embeddingRequests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static LlmProperties properties(HttpServer server) {
+        LlmProperties properties = new LlmProperties();
+        properties.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+        properties.setApiKey("test-key");
+        properties.setModel("test-model");
+        properties.setTimeout(5);
+        properties.setMaxRetries(0);
+        properties.getCircuitBreaker().setMinimumCalls(3);
+        return properties;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
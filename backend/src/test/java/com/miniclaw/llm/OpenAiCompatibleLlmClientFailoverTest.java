@@ -0,0 +1,332 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.config.LlmProviderConfig;
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.llm.model.LlmChunk;
+import com.miniclaw.llm.model.LlmRequest;
+import com.miniclaw.llm.model.LlmResponse;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAiCompatibleLlmClientFailoverTest {
+
+    private static final String CHAT_OK = """
+            {"choices":[{"message":{"role":"assistant","content":"%s"},"finish_reason":"stop"}]}
+            """;
+
+    private static final String STREAM_OK = """
+            data: {"choices":[{"delta":{"content":"%s"},"finish_reason":null}]}
+
+            data: {"choices":[{"delta":{},"finish_reason":"stop"}]}
+
+            data: [DONE]
+
+            """;
+
+    /**
+     * DeepSeek、Qwen 的流都以只有 role 的空 chunk 开头，响应头之后立即到达
+     */
+    private static final String ROLE_CHUNK = """
+            data: {"choices":[{"index":0,"delta":{"role":"assistant","content":""},"finish_reason":null}]}
+
+            """;
+
+    @Test
+    void chatFailsOverToFallbackModelWithoutRetryingPrimary() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.start(503, 0, "application/json", "{\"error\":{\"message\":\"overloaded\"}}");
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "application/json", CHAT_OK.formatted("qwen ok"))) {
+
+            LlmUsageMetrics metrics = new LlmUsageMetrics();
+            OpenAiCompatibleLlmClient client = createClient(properties(primary, fallback), metrics);
+
+            LlmResponse response = client.chat(userRequest("hello"));
+
+            assertEquals("qwen ok", response.getContent());
+            assertEquals(1, primary.requestCount());
+            assertEquals(1, fallback.requestCount());
+            assertEquals(1, metrics.getFailovers());
+        }
+    }
+
+    @Test
+    void chatDoesNotFailOverOnBadRequest() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.start(400, 0, "application/json", "{\"error\":{\"message\":\"bad\"}}");
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "application/json", CHAT_OK.formatted("qwen ok"))) {
+
+            OpenAiCompatibleLlmClient client = createClient(properties(primary, fallback), new LlmUsageMetrics());
+
+            LlmException exception = assertThrows(LlmException.class, () -> client.chat(userRequest("hello")));
+
+            assertEquals(LlmErrorType.BAD_REQUEST, exception.getErrorType());
+            assertEquals(0, fallback.requestCount());
+        }
+    }
+
+    @Test
+    void chatWithExplicitProviderSkipsFallbackChain() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.start(503, 0, "application/json", "{}");
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "application/json", CHAT_OK.formatted("qwen ok"))) {
+
+            OpenAiCompatibleLlmClient client = createClient(properties(primary, fallback), new LlmUsageMetrics());
+
+            LlmException exception = assertThrows(LlmException.class, () -> client.chat(LlmRequest.builder()
+                    .providerId("deepseek")
+                    .messages(List.of(LlmRequest.Message.user("hello")))
+                    .build()));
+
+            assertEquals(LlmErrorType.SERVER_ERROR, exception.getErrorType());
+            assertEquals(0, fallback.requestCount());
+        }
+    }
+
+    @Test
+    void chatReroutesToFallbackWhilePrimaryCircuitIsOpen() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.start(503, 0, "application/json", "{}");
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "application/json", CHAT_OK.formatted("qwen ok"))) {
+
+            LlmProperties properties = properties(primary, fallback);
+            properties.getCircuitBreaker().setMinimumCalls(3);
+            LlmProviderHealth health = new LlmProviderHealth(properties);
+            OpenAiCompatibleLlmClient client = new OpenAiCompatibleLlmClient(
+                    properties, new ObjectMapper(), new LlmConnectionPoolMetrics(), new LlmUsageMetrics(), health);
+
+            for (int i = 0; i < 5; i++) {
+                assertEquals("qwen ok", client.chat(userRequest("hello")).getContent());
+            }
+
+            assertEquals(CircuitState.OPEN, health.getCircuitState("deepseek"));
+            assertEquals(3, primary.requestCount());
+            assertEquals(5, fallback.requestCount());
+        }
+    }
+
+    @Test
+    void streamFailsOverBeforeFirstChunk() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.start(502, 0, "application/json", "{}");
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "text/event-stream", STREAM_OK.formatted("qwen"))) {
+
+            OpenAiCompatibleLlmClient client = createClient(properties(primary, fallback), new LlmUsageMetrics());
+
+            List<LlmChunk> chunks = client.stream(userRequest("hello")).collectList().block(Duration.ofSeconds(5));
+
+            assertEquals("qwen", chunks.get(0).getDelta());
+            assertEquals(1, primary.requestCount());
+        }
+    }
+
+    @Test
+    void streamFailsOverWhenPrimaryStallsAfterRoleChunk() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.startStream(ROLE_CHUNK, 3000, STREAM_OK.formatted("deepseek"));
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "text/event-stream", ROLE_CHUNK + STREAM_OK.formatted("qwen"))) {
+
+            LlmProperties properties = properties(primary, fallback);
+            properties.getProviders().getFirst().setTimeouts(LlmProviderConfig.Timeouts.builder()
+                    .firstTokenMillis(200)
+                    .interTokenMillis(200)
+                    .build());
+            LlmUsageMetrics metrics = new LlmUsageMetrics();
+            OpenAiCompatibleLlmClient client = createClient(properties, metrics);
+
+            List<LlmChunk> chunks = client.stream(userRequest("hello")).collectList().block(Duration.ofSeconds(5));
+
+            assertEquals(List.of("qwen"), deltas(chunks));
+            assertEquals(1, metrics.getFailovers());
+        }
+    }
+
+    @Test
+    void streamHedgesSlowPrimaryAndCancelsLoser() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.startStream(ROLE_CHUNK, 3000, STREAM_OK.formatted("deepseek"));
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "text/event-stream", ROLE_CHUNK + STREAM_OK.formatted("qwen"))) {
+
+            LlmProperties properties = properties(primary, fallback);
+            properties.getHedge().setEnabled(true);
+            properties.getHedge().setInitialDelayMillis(100);
+            properties.getHedge().setMinDelayMillis(50);
+            LlmUsageMetrics metrics = new LlmUsageMetrics();
+            OpenAiCompatibleLlmClient client = createClient(properties, metrics);
+
+            long startedAt = System.nanoTime();
+            List<LlmChunk> chunks = client.stream(userRequest("hello")).collectList().block(Duration.ofSeconds(5));
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - startedAt).toMillis();
+
+            // 主请求的 role 空 chunk 先到，但对冲以首个实际内容为准
+            assertEquals(List.of("qwen"), deltas(chunks));
+            assertEquals(1, metrics.getHedgesStarted());
+            assertEquals(1, metrics.getHedgesWon());
+            assertTrue(elapsedMillis < 2000, "hedged stream took " + elapsedMillis + "ms");
+        }
+    }
+
+    @Test
+    void streamDoesNotHedgeWhenPrimaryAnswersWithinDelay() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.start(200, 0, "text/event-stream", STREAM_OK.formatted("deepseek"));
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "text/event-stream", STREAM_OK.formatted("qwen"))) {
+
+            LlmProperties properties = properties(primary, fallback);
+            properties.getHedge().setEnabled(true);
+            properties.getHedge().setInitialDelayMillis(2000);
+            LlmUsageMetrics metrics = new LlmUsageMetrics();
+            OpenAiCompatibleLlmClient client = createClient(properties, metrics);
+
+            List<LlmChunk> chunks = client.stream(userRequest("hello")).collectList().block(Duration.ofSeconds(5));
+
+            assertEquals("deepseek", chunks.get(0).getDelta());
+            assertEquals(0, metrics.getHedgesStarted());
+            assertEquals(0, fallback.requestCount());
+        }
+    }
+
+    @Test
+    void healthyBurstAboveConcurrencyLimitQueuesInsteadOfFailing() throws Exception {
+        try (ScriptedHttpServer primary = ScriptedHttpServer.startStream(ROLE_CHUNK, 300, STREAM_OK.formatted("deepseek"));
+             ScriptedHttpServer fallback = ScriptedHttpServer.start(200, 0, "text/event-stream", ROLE_CHUNK + STREAM_OK.formatted("qwen"))) {
+
+            LlmProperties properties = properties(primary, fallback);
+            properties.getConcurrencyLimit().setInitialLimit(2);
+            properties.getConcurrencyLimit().setMinLimit(1);
+            OpenAiCompatibleLlmClient client = createClient(properties, new LlmUsageMetrics());
+
+            // 同时发起的流式请求超过并发上限，排队等待名额而不是直接失败或切到备用模型
+            List<List<LlmChunk>> results = Flux.range(0, 6)
+                    .flatMap(i -> client.stream(userRequest("hello " + i)).collectList())
+                    .collectList()
+                    .block(Duration.ofSeconds(10));
+
+            assertEquals(6, results.size());
+            for (List<LlmChunk> chunks : results) {
+                assertEquals(List.of("deepseek"), deltas(chunks));
+            }
+            assertEquals(6, primary.requestCount());
+            assertEquals(0, fallback.requestCount());
+        }
+    }
+
+    private static List<String> deltas(List<LlmChunk> chunks) {
+        return chunks.stream()
+                .filter(LlmChunk::hasOutput)
+                .map(LlmChunk::getDelta)
+                .toList();
+    }
+
+    private static OpenAiCompatibleLlmClient createClient(LlmProperties properties, LlmUsageMetrics metrics) {
+        return new OpenAiCompatibleLlmClient(properties, new ObjectMapper(), new LlmConnectionPoolMetrics(), metrics);
+    }
+
+    private static LlmProperties properties(ScriptedHttpServer primary, ScriptedHttpServer fallback) {
+        LlmProperties properties = new LlmProperties();
+        properties.setMaxRetries(3);
+        properties.setRetryMinBackoffMillis(10L);
+        properties.setRetryMaxBackoffMillis(20L);
+        properties.setDefaultModel("deepseek:deepseek-chat");
+        properties.setFallbackModels(List.of("qwen:qwen3.5-flash"));
+        properties.setProviders(List.of(
+                LlmProviderConfig.builder()
+                        .id("deepseek")
+                        .endpoint("http://127.0.0.1:" + primary.port())
+                        .models(List.of("deepseek-chat"))
+                        .build(),
+                LlmProviderConfig.builder()
+                        .id("qwen")
+                        .endpoint("http://127.0.0.1:" + fallback.port())
+                        .models(List.of("qwen3.5-flash"))
+                        .build()
+        ));
+        return properties;
+    }
+
+    private static LlmRequest userRequest(String prompt) {
+        return LlmRequest.builder()
+                .messages(List.of(LlmRequest.Message.user(prompt)))
+                .build();
+    }
+
+    private static final class ScriptedHttpServer implements AutoCloseable {
+        private final HttpServer server;
+        private final AtomicInteger requestCount = new AtomicInteger();
+
+        private ScriptedHttpServer(HttpServer server) {
+            this.server = server;
+        }
+
+        static ScriptedHttpServer start(int status, long delayMillis, String contentType, String body) throws IOException {
+            HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            ScriptedHttpServer scripted = new ScriptedHttpServer(server);
+            server.createContext("/v1/chat/completions", exchange -> {
+                scripted.requestCount.incrementAndGet();
+                exchange.getRequestBody().readAllBytes();
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    exchange.sendResponseHeaders(status, bytes.length);
+                    outputStream.write(bytes);
+                } catch (IOException ignored) {
+                    // 对冲落败的一方已经断开连接
+                }
+            });
+            server.start();
+            return scripted;
+        }
+
+        /**
+         * 先发出响应头和 {@code prelude}，停顿 {@code pauseMillis} 后再发出剩余内容（chunked 编码）
+         */
+        static ScriptedHttpServer startStream(String prelude, long pauseMillis, String rest) throws IOException {
+            HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            ScriptedHttpServer scripted = new ScriptedHttpServer(server);
+            server.createContext("/v1/chat/completions", exchange -> {
+                scripted.requestCount.incrementAndGet();
+                exchange.getRequestBody().readAllBytes();
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    exchange.sendResponseHeaders(200, 0);
+                    outputStream.write(prelude.getBytes(StandardCharsets.UTF_8));
+                    outputStream.flush();
+                    Thread.sleep(pauseMillis);
+                    outputStream.write(rest.getBytes(StandardCharsets.UTF_8));
+                } catch (IOException ignored) {
+                    // 客户端超时或对冲落败后已经断开连接
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            server.start();
+            return scripted;
+        }
+
+        int port() {
+            return server.getAddress().getPort();
+        }
+
+        int requestCount() {
+            return requestCount.get();
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+}
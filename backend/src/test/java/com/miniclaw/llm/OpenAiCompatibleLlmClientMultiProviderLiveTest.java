@@ -112,7 +112,7 @@ class OpenAiCompatibleLlmClientMultiProviderLiveTest {
 
     @SpringBootConfiguration
     @EnableConfigurationProperties(LlmProperties.class)
-    @Import(OpenAiCompatibleLlmClient.class)
+    @Import({OpenAiCompatibleLlmClient.class, LlmConnectionPoolMetrics.class, LlmUsageMetrics.class, LlmProviderHealth.class})
     static class TestConfig {
 
         @Bean
@@ -123,7 +123,7 @@ class OpenAiCompatibleLlmClientMultimodalTest {
 
     @SpringBootConfiguration
     @EnableConfigurationProperties(LlmProperties.class)
-    @Import(OpenAiCompatibleLlmClient.class)
+    @Import({OpenAiCompatibleLlmClient.class, LlmConnectionPoolMetrics.class, LlmUsageMetrics.class, LlmProviderHealth.class})
     static class TestConfig {
 
         @Bean
@@ -2,17 +2,20 @@ package com.miniclaw.llm;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miniclaw.config.LlmProperties;
+import com.miniclaw.llm.model.LlmChunk;
 import com.miniclaw.llm.model.LlmRequest;
 import com.miniclaw.llm.model.LlmResponse;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +25,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class OpenAiCompatibleLlmClientReliabilityTest {
 
@@ -47,6 +53,31 @@ class OpenAiCompatibleLlmClientReliabilityTest {
         }
     }
 
+    @Test
+    void chatAsyncRetriesWithoutBlockingTheCaller() throws Exception {
+        try (ScriptedHttpServer server = ScriptedHttpServer.start(List.of(
+                ScriptedResponse.json(503, """
+                        {"error":{"message":"upstream overloaded"}}
+                        """),
+                ScriptedResponse.json(200, """
+                        {
+                          "choices":[{"message":{"role":"assistant","content":"async ok"},"finish_reason":"stop"}]
+                        }
+                        """)
+        ))) {
+            OpenAiCompatibleLlmClient client = createClient(server.port(), 2);
+
+            // 组装 Mono 时不发请求，订阅后才发起
+            Mono<LlmResponse> response = client.chatAsync(userRequest("hello"));
+            assertEquals(0, server.requestCount());
+
+            StepVerifier.create(response)
+                    .assertNext(result -> assertEquals("async ok", result.getContent()))
+                    .verifyComplete();
+            assertEquals(2, server.requestCount());
+        }
+    }
+
     @Test
     void chatDoesNotRetryAuthenticationFailures() throws Exception {
         try (ScriptedHttpServer server = ScriptedHttpServer.start(List.of(
@@ -107,6 +138,118 @@ class OpenAiCompatibleLlmClientReliabilityTest {
         }
     }
 
+    @Test
+    void chatWaitsForRetryAfterBeforeRetryingRateLimit() throws Exception {
+        try (ScriptedHttpServer server = ScriptedHttpServer.start(List.of(
+                ScriptedResponse.json(429, """
+                        {"error":{"message":"slow down"}}
+                        """, Map.of("Retry-After", "1")),
+                ScriptedResponse.json(200, """
+                        {"choices":[{"message":{"role":"assistant","content":"after wait"},"finish_reason":"stop"}]}
+                        """)
+        ))) {
+            OpenAiCompatibleLlmClient client = createClient(server.port(), 2);
+
+            long startedAt = System.nanoTime();
+            LlmResponse response = client.chat(userRequest("hello"));
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - startedAt).toMillis();
+
+            assertEquals("after wait", response.getContent());
+            assertEquals(2, server.requestCount());
+            assertTrue(elapsedMillis >= 900, "retried after " + elapsedMillis + "ms");
+        }
+    }
+
+    @Test
+    void chatDoesNotRetryWhenRetryAfterExceedsLimit() throws Exception {
+        try (ScriptedHttpServer server = ScriptedHttpServer.start(List.of(
+                ScriptedResponse.json(429, """
+                        {"error":{"message":"quota exhausted"}}
+                        """, Map.of("Retry-After", "120"))
+        ))) {
+            OpenAiCompatibleLlmClient client = createClient(server.port(), 2);
+
+            LlmException exception = assertThrows(LlmException.class, () -> client.chat(userRequest("hello")));
+
+            assertEquals(LlmErrorType.RATE_LIMIT, exception.getErrorType());
+            assertEquals(Duration.ofSeconds(120), exception.getRetryAfter());
+            assertEquals(1, server.requestCount());
+        }
+    }
+
+    @Test
+    void chatRejectsLocallyWhenAdvertisedRequestBudgetIsExhausted() throws Exception {
+        try (ScriptedHttpServer server = ScriptedHttpServer.start(List.of(
+                ScriptedResponse.json(200, """
+                        {"choices":[{"message":{"role":"assistant","content":"last one"},"finish_reason":"stop"}]}
+                        """, Map.of(
+                        "x-ratelimit-limit-requests", "60",
+                        "x-ratelimit-remaining-requests", "0",
+                        "x-ratelimit-reset-requests", "30s"))
+        ))) {
+            OpenAiCompatibleLlmClient client = createClient(server.port(), 2);
+
+            assertEquals("last one", client.chat(userRequest("hello")).getContent());
+            LlmException exception = assertThrows(LlmException.class, () -> client.chat(userRequest("again")));
+
+            assertEquals(LlmErrorType.RATE_LIMIT, exception.getErrorType());
+            assertNull(exception.getHttpStatus());
+            assertEquals(1, server.requestCount());
+        }
+    }
+
+    @Test
+    void chatRefundsTokenReservationOfFailedAttempts() throws Exception {
+        Map<String, String> budget = Map.of("x-ratelimit-limit-tokens", "1000", "x-ratelimit-remaining-tokens", "1000");
+        try (ScriptedHttpServer server = ScriptedHttpServer.start(List.of(
+                ScriptedResponse.json(503, "{\"error\":{\"message\":\"overloaded\"}}", budget),
+                ScriptedResponse.json(503, "{\"error\":{\"message\":\"overloaded\"}}", budget),
+                ScriptedResponse.json(200, """
+                        {"choices":[{"message":{"role":"assistant","content":"third time"},"finish_reason":"stop"}]}
+                        """, budget)
+        ))) {
+            OpenAiCompatibleLlmClient client = createClient(server.port(), 2);
+
+            // 每次尝试预留 700 多个 token：失败的尝试不退还时，第三次要等 20 多秒才有额度，直接被本地限流拒绝
+            LlmResponse response = client.chat(LlmRequest.builder()
+                    .messages(List.of(LlmRequest.Message.user("hello")))
+                    .maxTokens(700)
+                    .build());
+
+            assertEquals("third time", response.getContent());
+            assertEquals(3, server.requestCount());
+        }
+    }
+
+    @Test
+    void streamRefundsTokenReservationOfFailedAttempts() throws Exception {
+        Map<String, String> budget = Map.of("x-ratelimit-limit-tokens", "1000", "x-ratelimit-remaining-tokens", "1000");
+        try (ScriptedHttpServer server = ScriptedHttpServer.start(List.of(
+                ScriptedResponse.json(503, "{\"error\":{\"message\":\"overloaded\"}}", budget),
+                ScriptedResponse.json(503, "{\"error\":{\"message\":\"overloaded\"}}", budget),
+                ScriptedResponse.sse("""
+                        data: {"choices":[{"delta":{"content":"Hi"},"finish_reason":null}]}
+
+                        data: {"choices":[{"delta":{},"finish_reason":"stop"}]}
+
+                        data: [DONE]
+
+                        """)
+        ))) {
+            OpenAiCompatibleLlmClient client = createClient(server.port(), 2);
+
+            List<LlmChunk> chunks = client.stream(LlmRequest.builder()
+                            .messages(List.of(LlmRequest.Message.user("hello")))
+                            .maxTokens(700)
+                            .build())
+                    .collectList()
+                    .block(Duration.ofSeconds(5));
+
+            assertEquals("Hi", chunks.getFirst().getDelta());
+            assertEquals(3, server.requestCount());
+        }
+    }
+
     private static OpenAiCompatibleLlmClient createClient(int port, int maxRetries) {
         LlmProperties properties = new LlmProperties();
         properties.setEndpoint("http://127.0.0.1:" + port);
@@ -130,6 +273,10 @@ class OpenAiCompatibleLlmClientReliabilityTest {
             return new ScriptedResponse(status, "application/json", body, Map.of());
         }
 
+        static ScriptedResponse json(int status, String body, Map<String, String> headers) {
+            return new ScriptedResponse(status, "application/json", body, headers);
+        }
+
         static ScriptedResponse sse(String body) {
             return new ScriptedResponse(200, "text/event-stream", body, Map.of());
         }
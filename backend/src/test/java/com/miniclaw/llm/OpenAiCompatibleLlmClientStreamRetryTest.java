@@ -0,0 +1,229 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.llm.model.LlmChunk;
+import com.miniclaw.llm.model.LlmRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAiCompatibleLlmClientStreamRetryTest {
+
+    private static final String DONE = """
+            data: {"choices":[{"delta":{},"finish_reason":"stop"}]}
+
+            data: [DONE]
+
+            """;
+
+    @Test
+    void defaultModeRetriesOnlyBeforeFirstToken() throws Exception {
+        try (DroppingHttpServer server = DroppingHttpServer.start(List.of(
+                Scripted.dropAfter(""),
+                Scripted.dropAfter(delta("Hel")),
+                Scripted.complete(delta("Hello") + DONE)))) {
+
+            OpenAiCompatibleLlmClient client = createClient(server, StreamRetryMode.BEFORE_FIRST_TOKEN);
+            List<String> deltas = new CopyOnWriteArrayList<>();
+
+            LlmException failure = assertThrows(LlmException.class, () -> collect(client, deltas));
+
+            assertEquals(LlmErrorType.NETWORK, failure.getErrorType());
+            assertEquals(List.of("Hel"), deltas);
+            assertEquals(2, server.requestCount());
+        }
+    }
+
+    @Test
+    void deduplicateModeDropsReplayedPrefix() throws Exception {
+        try (DroppingHttpServer server = DroppingHttpServer.start(List.of(
+                Scripted.dropAfter(delta("Hel") + delta("lo")),
+                Scripted.complete(delta("Hell") + delta("o wor") + delta("ld") + DONE)))) {
+
+            OpenAiCompatibleLlmClient client = createClient(server, StreamRetryMode.DEDUPLICATE);
+            List<String> deltas = new CopyOnWriteArrayList<>();
+
+            collect(client, deltas);
+
+            assertEquals(List.of("Hel", "lo", " wor", "ld"), deltas);
+            assertEquals(2, server.requestCount());
+        }
+    }
+
+    @Test
+    void deduplicateModeFailsWhenReplayDiverges() throws Exception {
+        try (DroppingHttpServer server = DroppingHttpServer.start(List.of(
+                Scripted.dropAfter(delta("Hello")),
+                Scripted.complete(delta("Hi there") + DONE),
+                Scripted.complete(delta("Hello world") + DONE)))) {
+
+            OpenAiCompatibleLlmClient client = createClient(server, StreamRetryMode.DEDUPLICATE);
+            List<String> deltas = new CopyOnWriteArrayList<>();
+
+            LlmException failure = assertThrows(LlmException.class, () -> collect(client, deltas));
+
+            assertEquals(LlmErrorType.INVALID_RESPONSE, failure.getErrorType());
+            assertEquals(List.of("Hello"), deltas);
+            assertEquals(2, server.requestCount());
+        }
+    }
+
+    @Test
+    void continueModeSendsEmittedContentAsAssistantPrefix() throws Exception {
+        try (DroppingHttpServer server = DroppingHttpServer.start(List.of(
+                Scripted.dropAfter(delta("Hello")),
+                Scripted.complete(delta(" world") + DONE)))) {
+
+            OpenAiCompatibleLlmClient client = createClient(server, StreamRetryMode.CONTINUE);
+            List<String> deltas = new CopyOnWriteArrayList<>();
+
+            collect(client, deltas);
+
+            assertEquals(List.of("Hello", " world"), deltas);
+            JsonNode messages = new ObjectMapper().readTree(server.requestBodies().get(1)).get("messages");
+            JsonNode prefix = messages.get(messages.size() - 1);
+            assertEquals("assistant", prefix.get("role").asText());
+            assertEquals("Hello", prefix.get("content").asText());
+            assertTrue(prefix.get("prefix").asBoolean());
+            assertEquals(1, new ObjectMapper().readTree(server.requestBodies().get(0)).get("messages").size());
+        }
+    }
+
+    private static void collect(OpenAiCompatibleLlmClient client, List<String> deltas) {
+        client.stream(LlmRequest.builder()
+                        .messages(List.of(LlmRequest.Message.user("hello")))
+                        .build())
+                .mapNotNull(LlmChunk::getDelta)
+                .doOnNext(deltas::add)
+                .blockLast(Duration.ofSeconds(5));
+    }
+
+    private static OpenAiCompatibleLlmClient createClient(DroppingHttpServer server, StreamRetryMode mode) {
+        LlmProperties properties = new LlmProperties();
+        properties.setEndpoint("http://127.0.0.1:" + server.port());
+        properties.setApiKey("test-key");
+        properties.setModel("test-model");
+        properties.setTimeout(5);
+        properties.setMaxRetries(3);
+        properties.setRetryMinBackoffMillis(10L);
+        properties.setRetryMaxBackoffMillis(20L);
+        properties.setStreamRetryMode(mode);
+        return new OpenAiCompatibleLlmClient(properties, new ObjectMapper());
+    }
+
+    private static String delta(String content) {
+        return "data: {\"choices\":[{\"delta\":{\"content\":\"" + content + "\"},\"finish_reason\":null}]}\n\n";
+    }
+
+    /**
+     * @param truncated 为 true 时写完 body 后不结束响应就断开连接
+     */
+    private record Scripted(String body, boolean truncated) {
+        static Scripted complete(String body) {
+            return new Scripted(body, false);
+        }
+
+        static Scripted dropAfter(String body) {
+            return new Scripted(body, true);
+        }
+    }
+
+    /**
+     * 按顺序回放脚本的最小 HTTP/1.1 服务端；直接操作 socket，才能在响应体写到一半时断开
+     */
+    private static final class DroppingHttpServer implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final Queue<Scripted> responses;
+        private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+
+        private DroppingHttpServer(ServerSocket serverSocket, List<Scripted> responses) {
+            this.serverSocket = serverSocket;
+            this.responses = new ArrayDeque<>(responses);
+        }
+
+        static DroppingHttpServer start(List<Scripted> responses) throws IOException {
+            DroppingHttpServer server = new DroppingHttpServer(new ServerSocket(0), responses);
+            Thread acceptor = new Thread(server::serve, "dropping-http-server");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            return server;
+        }
+
+        private void serve() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    requestBodies.add(readRequestBody(socket.getInputStream()));
+                    Scripted response = responses.poll();
+                    byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+                    // 截断的响应声明更长的 Content-Length，写完已有内容就关闭连接
+                    String head = "HTTP/1.1 200 OK\r\n"
+                            + "Content-Type: text/event-stream\r\n"
+                            + "Content-Length: " + (response.truncated() ? body.length + 1024 : body.length) + "\r\n"
+                            + "Connection: close\r\n\r\n";
+                    OutputStream outputStream = socket.getOutputStream();
+                    outputStream.write(head.getBytes(StandardCharsets.US_ASCII));
+                    outputStream.write(body);
+                    outputStream.flush();
+                } catch (IOException e) {
+                    // 服务端已关闭
+                }
+            }
+        }
+
+        private static String readRequestBody(InputStream inputStream) throws IOException {
+            int contentLength = 0;
+            String line;
+            while (!(line = readLine(inputStream)).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                    contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+                }
+            }
+            return new String(inputStream.readNBytes(contentLength), StandardCharsets.UTF_8);
+        }
+
+        private static String readLine(InputStream inputStream) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int next;
+            while ((next = inputStream.read()) != -1 && next != '\n') {
+                if (next != '\r') {
+                    line.append((char) next);
+                }
+            }
+            return line.toString();
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        int requestCount() {
+            return requestBodies.size();
+        }
+
+        List<String> requestBodies() {
+            return requestBodies;
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
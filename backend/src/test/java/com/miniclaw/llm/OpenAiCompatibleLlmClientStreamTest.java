@@ -13,6 +13,8 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 class OpenAiCompatibleLlmClientStreamTest {
 
@@ -66,13 +68,182 @@ class OpenAiCompatibleLlmClientStreamTest {
         }
     }
 
+    @Test
+    void streamAssemblesToolCallsFromArgumentFragments() throws Exception {
+        HttpServer server = startSseServer("""
+                data: {"choices":[{"delta":{"tool_calls":[{"index":0,"id":"call_1","type":"function","function":{"name":"get_weather","arguments":""}}]},"finish_reason":null}]}
+
+                data: {"choices":[{"delta":{"tool_calls":[{"index":0,"function":{"arguments":"{\\"city\\":"}}]},"finish_reason":null}]}
+
+                data: {"choices":[{"delta":{"tool_calls":[{"index":0,"function":{"arguments":"\\"Shanghai\\"}"}}]},"finish_reason":null}]}
+
+                data: {"choices":[{"delta":{"tool_calls":[{"index":1,"id":"call_2","type":"function","function":{"name":"get_time","arguments":"{}"}}]},"finish_reason":null}]}
+
+                data: {"choices":[{"delta":{},"finish_reason":"tool_calls"}]}
+
+                data: [DONE]
+
+                """);
+
+        try {
+            OpenAiCompatibleLlmClient client = createClient(server);
+
+            StepVerifier.create(client.stream(userRequest("weather and time")))
+                    .assertNext(chunk -> {
+                        org.junit.jupiter.api.Assertions.assertEquals(0, chunk.getToolCallIndex());
+                        org.junit.jupiter.api.Assertions.assertEquals("get_weather", chunk.getToolCallFunctionName());
+                        org.junit.jupiter.api.Assertions.assertFalse(chunk.hasToolCalls());
+                    })
+                    .assertNext(chunk -> org.junit.jupiter.api.Assertions.assertEquals("{\"city\":", chunk.getToolCallArgumentsDelta()))
+                    .assertNext(chunk -> org.junit.jupiter.api.Assertions.assertEquals("\"Shanghai\"}", chunk.getToolCallArgumentsDelta()))
+                    .assertNext(chunk -> {
+                        // 第二个调用开始时，第一个调用已经完整
+                        org.junit.jupiter.api.Assertions.assertEquals(1, chunk.getToolCallIndex());
+                        org.junit.jupiter.api.Assertions.assertEquals(1, chunk.getToolCalls().size());
+                        org.junit.jupiter.api.Assertions.assertEquals("call_1", chunk.getToolCalls().get(0).getId());
+                        org.junit.jupiter.api.Assertions.assertEquals("{\"city\":\"Shanghai\"}", chunk.getToolCalls().get(0).getArguments());
+                    })
+                    .assertNext(chunk -> {
+                        org.junit.jupiter.api.Assertions.assertEquals("tool_calls", chunk.getFinishReason());
+                        org.junit.jupiter.api.Assertions.assertEquals(1, chunk.getToolCalls().size());
+                        org.junit.jupiter.api.Assertions.assertEquals("get_time", chunk.getToolCalls().get(0).getName());
+                    })
+                    .assertNext(chunk -> assertChunk(chunk, null, null, true))
+                    .verifyComplete();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void streamRecordsFirstTokenLatencyAndCachedPromptTokens() throws Exception {
+        HttpServer server = startSseServer("""
+                data: {"choices":[{"delta":{"content":"Hi"},"finish_reason":null}],"usage":null}
+
+                data: {"choices":[{"delta":{},"finish_reason":"stop"}],"usage":null}
+
+                data: {"choices":[],"usage":{"prompt_tokens":1000,"completion_tokens":1,"total_tokens":1001,"prompt_tokens_details":{"cached_tokens":896}}}
+
+                data: [DONE]
+
+                """);
+
+        try {
+            LlmUsageMetrics usageMetrics = new LlmUsageMetrics();
+            OpenAiCompatibleLlmClient client = createClient(server, usageMetrics);
+
+            StepVerifier.create(client.stream(userRequest("hello")))
+                    .assertNext(chunk -> assertChunk(chunk, "Hi", null, false))
+                    .assertNext(chunk -> assertChunk(chunk, null, "stop", true))
+                    .assertNext(chunk -> org.junit.jupiter.api.Assertions.assertEquals(896, chunk.getUsage().getCacheReadInputTokens()))
+                    .assertNext(chunk -> assertChunk(chunk, null, null, true))
+                    .verifyComplete();
+
+            LlmUsageMetrics.UsageSnapshot snapshot = usageMetrics.snapshot().get(0);
+            org.junit.jupiter.api.Assertions.assertEquals(1, snapshot.firstTokens());
+            org.junit.jupiter.api.Assertions.assertEquals(1000, snapshot.promptTokens());
+            org.junit.jupiter.api.Assertions.assertEquals(0.896, snapshot.promptCacheHitRatio(), 1e-9);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void streamMeasuresFirstTokenFromFirstRealOutputNotRoleChunk() throws Exception {
+        HttpServer server = startSseServer("""
+                data: {"choices":[{"delta":{"role":"assistant","content":""},"finish_reason":null}]}
+
+                """, 1000, """
+                data: {"choices":[{"delta":{"reasoning_content":"think"},"finish_reason":null}]}
+
+                data: {"choices":[{"delta":{"content":"Hi"},"finish_reason":null}]}
+
+                data: {"choices":[{"delta":{},"finish_reason":"stop"}]}
+
+                data: [DONE]
+
+                """);
+
+        try {
+            LlmUsageMetrics usageMetrics = new LlmUsageMetrics();
+            OpenAiCompatibleLlmClient client = createClient(server, usageMetrics);
+
+            AtomicLong firstOutputMillis = new AtomicLong(-1);
+            long subscribedAt = System.nanoTime();
+            client.stream(userRequest("hello"))
+                    .doOnNext(chunk -> {
+                        if (chunk.hasOutput()) {
+                            firstOutputMillis.compareAndSet(-1, (System.nanoTime() - subscribedAt) / 1_000_000);
+                        }
+                    })
+                    .blockLast();
+
+            LlmUsageMetrics.UsageSnapshot snapshot = usageMetrics.snapshot().get(0);
+            org.junit.jupiter.api.Assertions.assertEquals(1, snapshot.firstTokens());
+            // 角色块先到，推理内容 1s 后才到：TTFT 应覆盖这段停顿，而不是停在角色块到达的时刻
+            org.junit.jupiter.api.Assertions.assertTrue(snapshot.maxFirstTokenMillis() >= firstOutputMillis.get() - 500,
+                    "first token latency " + snapshot.maxFirstTokenMillis() + "ms should include the pause after the role chunk, "
+                            + "first output arrived after " + firstOutputMillis.get() + "ms");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void streamReplaysCachedResponseForDeterministicRequests() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = startSseServer("""
+                data: {"choices":[{"delta":{"content":"refund"},"finish_reason":null}]}
+
+                data: {"choices":[{"delta":{},"finish_reason":"stop"}]}
+
+                data: [DONE]
+
+                """, requests);
+
+        try {
+            LlmUsageMetrics usageMetrics = new LlmUsageMetrics();
+            LlmProperties properties = properties(server);
+            properties.getResponseCache().setEnabled(true);
+            OpenAiCompatibleLlmClient client = new OpenAiCompatibleLlmClient(
+                    properties, new ObjectMapper(), new LlmConnectionPoolMetrics(), usageMetrics);
+            LlmRequest request = LlmRequest.builder()
+                    .messages(List.of(LlmRequest.Message.user("Classify: I want my money back")))
+                    .temperature(0d)
+                    .build();
+
+            for (int i = 0; i < 2; i++) {
+                StepVerifier.create(client.stream(request))
+                        .assertNext(chunk -> assertChunk(chunk, "refund", null, false))
+                        .assertNext(chunk -> assertChunk(chunk, null, "stop", true))
+                        .assertNext(chunk -> assertChunk(chunk, null, null, true))
+                        .verifyComplete();
+            }
+
+            org.junit.jupiter.api.Assertions.assertEquals("refund", client.chat(request).getContent());
+            org.junit.jupiter.api.Assertions.assertEquals(1, requests.get());
+            org.junit.jupiter.api.Assertions.assertEquals(2, usageMetrics.getResponseCacheHits());
+            org.junit.jupiter.api.Assertions.assertEquals(1, usageMetrics.getResponseCacheMisses());
+        } finally {
+            server.stop(0);
+        }
+    }
+
     private static OpenAiCompatibleLlmClient createClient(HttpServer server) {
+        return createClient(server, new LlmUsageMetrics());
+    }
+
+    private static OpenAiCompatibleLlmClient createClient(HttpServer server, LlmUsageMetrics usageMetrics) {
+        return new OpenAiCompatibleLlmClient(properties(server), new ObjectMapper(), new LlmConnectionPoolMetrics(), usageMetrics);
+    }
+
+    private static LlmProperties properties(HttpServer server) {
         LlmProperties properties = new LlmProperties();
         properties.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
         properties.setApiKey("test-key");
         properties.setModel("test-model");
         properties.setTimeout(5);
-        return new OpenAiCompatibleLlmClient(properties, new ObjectMapper());
+        return properties;
     }
 
     private static LlmRequest userRequest(String prompt) {
@@ -82,8 +253,13 @@ class OpenAiCompatibleLlmClientStreamTest {
     }
 
     private static HttpServer startSseServer(String body) throws IOException {
+        return startSseServer(body, new AtomicInteger());
+    }
+
+    private static HttpServer startSseServer(String body, AtomicInteger requests) throws IOException {
         HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
         server.createContext("/v1/chat/completions", exchange -> {
+            requests.incrementAndGet();
             exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
             exchange.sendResponseHeaders(200, 0);
             try (OutputStream outputStream = exchange.getResponseBody()) {
@@ -94,6 +270,27 @@ class OpenAiCompatibleLlmClientStreamTest {
         return server;
     }
 
+    /**
+     * 先写出 prelude 并刷新，停顿 pauseMillis 后再写出剩余内容
+     */
+    private static HttpServer startSseServer(String prelude, long pauseMillis, String rest) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(prelude.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                Thread.sleep(pauseMillis);
+                outputStream.write(rest.getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        return server;
+    }
+
     private static void assertChunk(LlmChunk chunk, String expectedDelta, String expectedFinishReason, boolean expectedDone) {
         org.junit.jupiter.api.Assertions.assertEquals(expectedDelta, chunk.getDelta());
         org.junit.jupiter.api.Assertions.assertEquals(expectedFinishReason, chunk.getFinishReason());
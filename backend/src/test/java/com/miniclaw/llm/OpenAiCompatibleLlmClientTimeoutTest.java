@@ -0,0 +1,258 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.config.LlmProperties;
+import com.miniclaw.config.LlmProviderConfig;
+import com.miniclaw.llm.model.LlmChunk;
+import com.miniclaw.llm.model.LlmRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAiCompatibleLlmClientTimeoutTest {
+
+    private static final String DONE = """
+            data: {"choices":[{"delta":{},"finish_reason":"stop"}]}
+
+            data: [DONE]
+
+            """;
+
+    @Test
+    void failsWithConnectTimeoutWhenHeadersDoNotArrive() throws Exception {
+        try (SlowSseServer server = SlowSseServer.start(500, List.of(Step.after(0, delta("late") + DONE)), false)) {
+            LlmProviderConfig.Timeouts timeouts = LlmProviderConfig.Timeouts.builder()
+                    .connectMillis(100)
+                    .build();
+
+            LlmException failure = assertThrows(LlmException.class,
+                    () -> collect(createClient(server, timeouts, Map.of()), "deepseek-chat", new CopyOnWriteArrayList<>()));
+
+            assertEquals(LlmErrorType.CONNECT_TIMEOUT, failure.getErrorType());
+            assertTrue(failure.isRetryable());
+        }
+    }
+
+    @Test
+    void failsWithFirstTokenTimeoutWhenModelStaysSilent() throws Exception {
+        try (SlowSseServer server = SlowSseServer.start(0, List.of(Step.after(500, delta("late") + DONE)), false)) {
+            LlmProviderConfig.Timeouts timeouts = LlmProviderConfig.Timeouts.builder()
+                    .connectMillis(1000)
+                    .firstTokenMillis(100)
+                    .build();
+
+            LlmException failure = assertThrows(LlmException.class,
+                    () -> collect(createClient(server, timeouts, Map.of()), "deepseek-chat", new CopyOnWriteArrayList<>()));
+
+            assertEquals(LlmErrorType.FIRST_TOKEN_TIMEOUT, failure.getErrorType());
+        }
+    }
+
+    @Test
+    void modelOverrideAllowsSlowFirstTokenButFailsFastOnIdleStream() throws Exception {
+        try (SlowSseServer server = SlowSseServer.start(0, List.of(Step.after(300, delta("Hi"))), true)) {
+            LlmProviderConfig.Timeouts timeouts = LlmProviderConfig.Timeouts.builder()
+                    .firstTokenMillis(100)
+                    .interTokenMillis(150)
+                    .build();
+            Map<String, LlmProviderConfig.Timeouts> modelTimeouts = Map.of("deepseek-reasoner",
+                    LlmProviderConfig.Timeouts.builder().firstTokenMillis(2000).build());
+            List<String> deltas = new CopyOnWriteArrayList<>();
+
+            LlmException failure = assertThrows(LlmException.class,
+                    () -> collect(createClient(server, timeouts, modelTimeouts), "deepseek-reasoner", deltas));
+
+            assertEquals(LlmErrorType.INTER_TOKEN_TIMEOUT, failure.getErrorType());
+            assertEquals(List.of("Hi"), deltas);
+        }
+    }
+
+    @Test
+    void roleChunkDoesNotEndFirstTokenBudget() throws Exception {
+        String role = "data: {\"choices\":[{\"delta\":{\"role\":\"assistant\",\"content\":\"\"},\"finish_reason\":null}]}\n\n";
+        try (SlowSseServer server = SlowSseServer.start(0, List.of(
+                Step.after(0, role),
+                Step.after(400, delta("Hi") + DONE)), false)) {
+            LlmProviderConfig.Timeouts timeouts = LlmProviderConfig.Timeouts.builder()
+                    .firstTokenMillis(100)
+                    .interTokenMillis(100)
+                    .build();
+            Map<String, LlmProviderConfig.Timeouts> modelTimeouts = Map.of("deepseek-reasoner",
+                    LlmProviderConfig.Timeouts.builder().firstTokenMillis(2000).build());
+            List<String> deltas = new CopyOnWriteArrayList<>();
+
+            // 推理模型的长思考停顿落在首 token 预算里，不按 token 间隔超时
+            collect(createClient(server, timeouts, modelTimeouts), "deepseek-reasoner", deltas);
+            assertEquals(List.of("", "Hi"), deltas);
+
+            LlmException failure = assertThrows(LlmException.class,
+                    () -> collect(createClient(server, timeouts, Map.of()), "deepseek-chat", new CopyOnWriteArrayList<>()));
+            assertEquals(LlmErrorType.FIRST_TOKEN_TIMEOUT, failure.getErrorType());
+        }
+    }
+
+    @Test
+    void failsWithTotalTimeoutOnSteadyButEndlessStream() throws Exception {
+        List<Step> steps = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            steps.add(Step.after(50, delta("x")));
+        }
+        try (SlowSseServer server = SlowSseServer.start(0, steps, true)) {
+            LlmProviderConfig.Timeouts timeouts = LlmProviderConfig.Timeouts.builder()
+                    .interTokenMillis(500)
+                    .totalMillis(300)
+                    .build();
+            List<String> deltas = new CopyOnWriteArrayList<>();
+
+            LlmException failure = assertThrows(LlmException.class,
+                    () -> collect(createClient(server, timeouts, Map.of()), "deepseek-chat", deltas));
+
+            assertEquals(LlmErrorType.TOTAL_TIMEOUT, failure.getErrorType());
+            assertFalse(failure.isRetryable());
+            assertFalse(deltas.isEmpty());
+        }
+    }
+
+    @Test
+    void resolvesModelTimeoutsOverProviderDefaults() {
+        LlmProviderConfig provider = LlmProviderConfig.builder()
+                .timeouts(new LlmProviderConfig.Timeouts(1000, 2000, 3000, 0))
+                .modelTimeouts(Map.of("deepseek-reasoner", LlmProviderConfig.Timeouts.builder()
+                        .firstTokenMillis(120000)
+                        .totalMillis(600000)
+                        .build()))
+                .build();
+
+        assertEquals(new LlmProviderConfig.Timeouts(1000, 120000, 3000, 600000), provider.resolveTimeouts("deepseek-reasoner"));
+        assertEquals(new LlmProviderConfig.Timeouts(1000, 2000, 3000, 0), provider.resolveTimeouts("deepseek-chat"));
+    }
+
+    private static void collect(OpenAiCompatibleLlmClient client, String model, List<String> deltas) {
+        client.stream(LlmRequest.builder()
+                        .providerId("deepseek")
+                        .model(model)
+                        .messages(List.of(LlmRequest.Message.user("hello")))
+                        .build())
+                .mapNotNull(LlmChunk::getDelta)
+                .doOnNext(deltas::add)
+                .blockLast(Duration.ofSeconds(5));
+    }
+
+    private static OpenAiCompatibleLlmClient createClient(SlowSseServer server,
+                                                          LlmProviderConfig.Timeouts timeouts,
+                                                          Map<String, LlmProviderConfig.Timeouts> modelTimeouts) {
+        LlmProperties properties = new LlmProperties();
+        properties.setMaxRetries(0);
+        properties.setDefaultModel("deepseek:deepseek-chat");
+        properties.setProviders(List.of(LlmProviderConfig.builder()
+                .id("deepseek")
+                .endpoint("http://127.0.0.1:" + server.port())
+                .models(List.of("deepseek-chat", "deepseek-reasoner"))
+                .timeouts(timeouts)
+                .modelTimeouts(modelTimeouts)
+                .build()));
+        return new OpenAiCompatibleLlmClient(properties, new ObjectMapper());
+    }
+
+    private static String delta(String content) {
+        return "data: {\"choices\":[{\"delta\":{\"content\":\"" + content + "\"},\"finish_reason\":null}]}\n\n";
+    }
+
+    private record Step(long delayMillis, String data) {
+        static Step after(long delayMillis, String data) {
+            return new Step(delayMillis, data);
+        }
+    }
+
+    /**
+     * 按时间表写出 SSE 的最小 HTTP/1.1 服务端；响应体以关闭连接结束，{@code hang} 时写完后保持连接不关
+     */
+    private static final class SlowSseServer implements AutoCloseable {
+        private final ServerSocket serverSocket;
+
+        private SlowSseServer(ServerSocket serverSocket) {
+            this.serverSocket = serverSocket;
+        }
+
+        static SlowSseServer start(long headerDelayMillis, List<Step> steps, boolean hang) throws IOException {
+            SlowSseServer server = new SlowSseServer(new ServerSocket(0));
+            Thread acceptor = new Thread(() -> server.serve(headerDelayMillis, steps, hang), "slow-sse-server");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            return server;
+        }
+
+        private void serve(long headerDelayMillis, List<Step> steps, boolean hang) {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    skipRequest(socket.getInputStream());
+                    Thread.sleep(headerDelayMillis);
+                    OutputStream outputStream = socket.getOutputStream();
+                    outputStream.write(("HTTP/1.1 200 OK\r\n"
+                            + "Content-Type: text/event-stream\r\n"
+                            + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    outputStream.flush();
+                    for (Step step : steps) {
+                        Thread.sleep(step.delayMillis());
+                        outputStream.write(step.data().getBytes(StandardCharsets.UTF_8));
+                        outputStream.flush();
+                    }
+                    while (hang && !serverSocket.isClosed()) {
+                        Thread.sleep(50);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // 客户端超时后断开，或服务端已关闭
+                }
+            }
+        }
+
+        private static void skipRequest(InputStream inputStream) throws IOException {
+            int contentLength = 0;
+            StringBuilder line = new StringBuilder();
+            int next;
+            while ((next = inputStream.read()) != -1) {
+                if (next == '\r') {
+                    continue;
+                }
+                if (next != '\n') {
+                    line.append((char) next);
+                    continue;
+                }
+                if (line.isEmpty()) {
+                    break;
+                }
+                String header = line.toString();
+                int colon = header.indexOf(':');
+                if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                    contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+                }
+                line.setLength(0);
+            }
+            inputStream.readNBytes(contentLength);
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.llm.model.LlmChunk;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseEventDecoderTest {
+
+    private final LlmResponseParser parser = new LlmResponseParser(new ObjectMapper());
+
+    @Test
+    void decodesEventsSplitAcrossArbitraryBufferBoundaries() {
+        String body = "data: {\"choices\":[{\"delta\":{\"content\":\"你好\"},\"finish_reason\":null}]}\n\n"
+                + "data: {\"choices\":[{\"delta\":{\"content\":\"，世界\"},\"finish_reason\":null}]}\n\n"
+                + "data: [DONE]\n\n";
+
+        List<LlmChunk> chunks = decode(body.getBytes(StandardCharsets.UTF_8), 1);
+
+        assertEquals(3, chunks.size());
+        assertEquals("你好", chunks.get(0).getDelta());
+        assertEquals("，世界", chunks.get(1).getDelta());
+        assertTrue(chunks.get(2).isDone());
+    }
+
+    @Test
+    void handlesCrLfCommentsAndUnterminatedFinalLine() {
+        String body = ": keep-alive\r\n\r\n"
+                + "event: message\r\n"
+                + "data:{\"choices\":[{\"delta\":{\"content\":\"ok\"},\"finish_reason\":null}]}\r\n\r\n"
+                + "data: [DONE]";
+
+        List<LlmChunk> chunks = decode(body.getBytes(StandardCharsets.UTF_8), 5);
+
+        assertEquals(2, chunks.size());
+        assertEquals("ok", chunks.get(0).getDelta());
+        assertTrue(chunks.get(1).isDone());
+    }
+
+    @Test
+    void transcriptDecodesSameChunksAsLineParser() throws IOException {
+        byte[] body;
+        try (InputStream inputStream = getClass().getResourceAsStream("/sse/qwen-plus-stream.sse")) {
+            body = inputStream.readAllBytes();
+        }
+
+        StringBuilder expected = new StringBuilder();
+        int expectedChunks = 0;
+        for (String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            LlmChunk chunk = parser.parseSseLine(line).orElse(null);
+            if (chunk != null) {
+                expectedChunks++;
+                if (chunk.getDelta() != null) {
+                    expected.append(chunk.getDelta());
+                }
+            }
+        }
+
+        List<LlmChunk> chunks = decode(body, 1460);
+        StringBuilder actual = new StringBuilder();
+        chunks.stream().filter(chunk -> chunk.getDelta() != null).forEach(chunk -> actual.append(chunk.getDelta()));
+
+        assertEquals(expectedChunks, chunks.size());
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals("stop", chunks.get(chunks.size() - 3).getFinishReason());
+        assertEquals(273, chunks.get(chunks.size() - 2).getUsage().getTotalTokens());
+    }
+
+    private List<LlmChunk> decode(byte[] body, int segmentSize) {
+        SseEventDecoder decoder = new SseEventDecoder();
+        SseEventDecoder.DataParser<LlmChunk> streamParser = parser.newStreamParser();
+        List<LlmChunk> chunks = new ArrayList<>();
+        for (int offset = 0; offset < body.length; offset += segmentSize) {
+            int length = Math.min(segmentSize, body.length - offset);
+            DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.allocateBuffer(length);
+            buffer.write(body, offset, length);
+            chunks.addAll(decoder.decode(buffer, streamParser));
+        }
+        chunks.addAll(decoder.finish(streamParser));
+        return chunks;
+    }
+}
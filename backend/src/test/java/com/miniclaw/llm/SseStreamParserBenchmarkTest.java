@@ -0,0 +1,172 @@
+package com.miniclaw.llm;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniclaw.llm.model.LlmChunk;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SSE 解析基准：旧路径（按行 String + substring + readTree）对比增量字节解码 + 流式 JsonParser。
+ * 输入是 DeepSeek / Qwen 兼容模式线上格式的流式转录，按 1460 字节（一个 TCP 段）切成池化 DataBuffer。
+ * 默认不跑，使用 mvn test -Dbenchmark=true -Dtest=SseStreamParserBenchmarkTest 手动执行。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SseStreamParserBenchmarkTest {
+
+    private static final int SEGMENT_SIZE = 1460;
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int MEASURED_ROUNDS = 5_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LlmResponseParser responseParser = new LlmResponseParser(objectMapper);
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void deepSeekTranscript() throws IOException {
+        compare("deepseek-chat-stream.sse");
+    }
+
+    @Test
+    void qwenTranscript() throws IOException {
+        compare("qwen-plus-stream.sse");
+    }
+
+    private void compare(String transcript) throws IOException {
+        byte[] body = load(transcript);
+
+        int legacyChunks = runLegacy(body, 1);
+        int streamingChunks = runStreaming(body, 1);
+        assertEquals(legacyChunks, streamingChunks, "both parsers should yield the same chunks");
+
+        runLegacy(body, WARMUP_ROUNDS);
+        runStreaming(body, WARMUP_ROUNDS);
+
+        Measurement legacy = measure(() -> runLegacy(body, MEASURED_ROUNDS), legacyChunks);
+        Measurement streaming = measure(() -> runStreaming(body, MEASURED_ROUNDS), streamingChunks);
+
+        System.out.printf("[sse parser benchmark] %s: legacy=%.0f ns/event %.0f B/event, streaming=%.0f ns/event %.0f B/event%n",
+                transcript, legacy.nanosPerEvent(), legacy.bytesPerEvent(),
+                streaming.nanosPerEvent(), streaming.bytesPerEvent());
+        assertTrue(streaming.bytesPerEvent() < legacy.bytesPerEvent(),
+                "streaming parser should allocate less heap per event than the line/tree parser");
+    }
+
+    private Measurement measure(IoSupplier run, int chunksPerRound) throws IOException {
+        long allocatedBefore = threadMXBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        run.get();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        double events = (double) chunksPerRound * MEASURED_ROUNDS;
+        return new Measurement(elapsed / events, allocated / events);
+    }
+
+    /**
+     * 新路径：与 LlmExecutionSupport#executeStream 相同的 SseEventDecoder + 流解析器。
+     */
+    private int runStreaming(byte[] body, int rounds) {
+        int chunks = 0;
+        for (int round = 0; round < rounds; round++) {
+            SseEventDecoder decoder = new SseEventDecoder();
+            SseEventDecoder.DataParser<LlmChunk> streamParser = responseParser.newStreamParser();
+            for (int offset = 0; offset < body.length; offset += SEGMENT_SIZE) {
+                chunks += decoder.decode(segment(body, offset), streamParser).size();
+            }
+            chunks += decoder.finish(streamParser).size();
+        }
+        return chunks / rounds;
+    }
+
+    /**
+     * 旧路径：bodyToFlux(String.class) 先把数据块解码成 String 再切行，
+     * 每行 substring + trim 后 readTree 构建完整 JSON 树。
+     */
+    private int runLegacy(byte[] body, int rounds) throws JsonProcessingException {
+        int chunks = 0;
+        for (int round = 0; round < rounds; round++) {
+            StringBuilder pending = new StringBuilder();
+            for (int offset = 0; offset < body.length; offset += SEGMENT_SIZE) {
+                DataBuffer buffer = segment(body, offset);
+                pending.append(buffer.toString(StandardCharsets.UTF_8));
+                DataBufferUtils.release(buffer);
+
+                int lineEnd;
+                while ((lineEnd = pending.indexOf("\n")) >= 0) {
+                    String line = pending.substring(0, lineEnd);
+                    pending.delete(0, lineEnd + 1);
+                    if (!line.isBlank() && parseLegacy(line) != null) {
+                        chunks++;
+                    }
+                }
+            }
+        }
+        return chunks / rounds;
+    }
+
+    private LlmChunk parseLegacy(String line) throws JsonProcessingException {
+        if (!line.startsWith("data:")) {
+            return null;
+        }
+        String data = line.substring(5).trim();
+        if ("[DONE]".equals(data)) {
+            return LlmChunk.builder().done(true).build();
+        }
+
+        JsonNode root = objectMapper.readTree(data);
+        JsonNode choices = root.get("choices");
+        if (choices == null || choices.isEmpty()) {
+            // include_usage 的末尾事件只有 usage
+            return root.path("usage").isObject() ? LlmChunk.builder().build() : null;
+        }
+        JsonNode delta = choices.get(0).get("delta");
+        JsonNode finishReasonNode = choices.get(0).get("finish_reason");
+        String content = delta != null && delta.has("content") && !delta.get("content").isNull()
+                ? delta.get("content").asText()
+                : null;
+        String finishReason = finishReasonNode != null && !finishReasonNode.isNull() ? finishReasonNode.asText() : null;
+        if (content == null && finishReason == null) {
+            return null;
+        }
+        return LlmChunk.builder().delta(content).finishReason(finishReason).done(finishReason != null).build();
+    }
+
+    private DataBuffer segment(byte[] body, int offset) {
+        int length = Math.min(SEGMENT_SIZE, body.length - offset);
+        DataBuffer buffer = bufferFactory.allocateBuffer(length);
+        buffer.write(body, offset, length);
+        return buffer;
+    }
+
+    private static byte[] load(String transcript) throws IOException {
+        try (InputStream inputStream = SseStreamParserBenchmarkTest.class.getResourceAsStream("/sse/" + transcript)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing SSE transcript: " + transcript);
+            }
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private record Measurement(double nanosPerEvent, double bytesPerEvent) {
+    }
+
+    @FunctionalInterface
+    private interface IoSupplier {
+        int get() throws IOException;
+    }
+}
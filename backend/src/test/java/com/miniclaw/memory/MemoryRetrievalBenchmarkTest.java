@@ -0,0 +1,105 @@
+package com.miniclaw.memory;
+
+import com.miniclaw.llm.EmbeddingVectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 堆外热点缓存在 100 万条向量下的检索延迟基准。
+ * 默认不跑，使用 mvn test -Dbenchmark=true -Dtest=MemoryRetrievalBenchmarkTest -DargLine=-XX:MaxDirectMemorySize=2g 手动执行。
+ *
+ * 两种分布：
+ * - 1000 个用户各 1000 条：热点缓存的典型形态，每次检索只扫描一个用户的块
+ * - 单个用户 100 万条：说明为什么记忆太多的用户不进热点缓存，而是交给 pgvector 的 HNSW 索引
+ *
+ * 维度默认 128，可用 -Dbenchmark.dimensions=1024 按线上维度跑（需要约 4GB 堆外内存）。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MemoryRetrievalBenchmarkTest {
+
+    private static final int TOTAL_VECTORS = 1_000_000;
+    private static final int OWNERS = 1_000;
+    private static final int TOP_K = 5;
+    private static final int QUERIES = 2_000;
+    private static final int FULL_SCAN_QUERIES = 20;
+    private static final int DIMENSIONS = Integer.getInteger("benchmark.dimensions", 128);
+
+    @Test
+    void hotOwnerRetrievalStaysWellBelowFullScanAtOneMillionVectors() {
+        Random random = new Random(42);
+
+        OffHeapVectorCache sharded = new OffHeapVectorCache(Long.MAX_VALUE);
+        int perOwner = TOTAL_VECTORS / OWNERS;
+        long id = 0;
+        for (int owner = 0; owner < OWNERS; owner++) {
+            List<MemoryStore.MemoryVector> vectors = new ArrayList<>(perOwner);
+            for (int i = 0; i < perOwner; i++) {
+                vectors.add(new MemoryStore.MemoryVector(++id, "memory-" + id, randomVector(random)));
+            }
+            assertTrue(sharded.put("owner-" + owner, vectors));
+        }
+        assertEquals((long) TOTAL_VECTORS * DIMENSIONS * Float.BYTES, sharded.usedBytes());
+
+        long[] hot = new long[QUERIES];
+        for (int warmup = 0; warmup < 2; warmup++) {
+            for (int i = 0; i < QUERIES; i++) {
+                float[] query = randomVector(random);
+                long start = System.nanoTime();
+                List<Memory> memories = sharded.search("owner-" + random.nextInt(OWNERS), query, TOP_K, -1);
+                hot[i] = System.nanoTime() - start;
+                assertEquals(TOP_K, memories.size());
+            }
+        }
+        for (int i = 0; i < OWNERS; i++) {
+            sharded.remove("owner-" + i);
+        }
+
+        OffHeapVectorCache single = new OffHeapVectorCache(Long.MAX_VALUE);
+        single.put("owner-large", List.of(new MemoryStore.MemoryVector(1, "memory-1", randomVector(random))));
+        for (int i = 2; i <= TOTAL_VECTORS; i++) {
+            single.appendIfPresent("owner-large", i, "memory-" + i, randomVector(random));
+        }
+
+        long[] fullScan = new long[FULL_SCAN_QUERIES];
+        for (int warmup = 0; warmup < 2; warmup++) {
+            for (int i = 0; i < FULL_SCAN_QUERIES; i++) {
+                float[] query = randomVector(random);
+                long start = System.nanoTime();
+                List<Memory> memories = single.search("owner-large", query, TOP_K, -1);
+                fullScan[i] = System.nanoTime() - start;
+                assertEquals(TOP_K, memories.size());
+            }
+        }
+
+        System.out.printf("[memory benchmark] vectors=%d dims=%d hot owner (%d vectors) p50=%.3fms p99=%.3fms%n",
+                TOTAL_VECTORS, DIMENSIONS, perOwner, percentileMillis(hot, 50), percentileMillis(hot, 99));
+        System.out.printf("[memory benchmark] vectors=%d dims=%d single owner full scan p50=%.1fms p99=%.1fms%n",
+                TOTAL_VECTORS, DIMENSIONS, percentileMillis(fullScan, 50), percentileMillis(fullScan, 99));
+
+        assertTrue(percentileMillis(hot, 50) * 100 < percentileMillis(fullScan, 50),
+                "per-owner scan should be orders of magnitude cheaper than scanning all vectors");
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return EmbeddingVectors.normalize(vector);
+    }
+
+    private double percentileMillis(long[] nanos, int percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100d * sorted.length) - 1);
+        return sorted[index] / 1_000_000d;
+    }
+}
@@ -0,0 +1,113 @@
+package com.miniclaw.memory;
+
+import com.miniclaw.config.MemoryProperties;
+import com.miniclaw.llm.EmbeddingClient;
+import com.miniclaw.llm.model.LlmRequest;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MemoryServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-22T14:30:00Z");
+
+    private final EmbeddingClient embeddingClient = texts -> Mono.just(texts.stream()
+            .map(text -> text.contains("爬山") ? new float[]{2f, 0f} : new float[]{0f, 3f})
+            .toList());
+
+    @Test
+    void promotesFrequentOwnerToHotCacheAndStopsQueryingIndex() {
+        MemoryStore store = mock(MemoryStore.class);
+        when(store.search(eq("user-001"), any(), eq(5))).thenReturn(List.of(new Memory(1L, "喜欢爬山", 0.9)));
+        when(store.loadOwner("user-001", 20001)).thenReturn(List.of(
+                new MemoryStore.MemoryVector(1L, "喜欢爬山", new float[]{1f, 0f}),
+                new MemoryStore.MemoryVector(2L, "住在杭州", new float[]{0f, 1f})
+        ));
+        MemoryService service = service(store, enabled());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("喜欢爬山", service.recall("user-001", "周末去爬山吗").block().get(0).content());
+        }
+        List<Memory> hot = service.recall("user-001", "周末去爬山吗").block();
+
+        assertEquals(List.of(1L), hot.stream().map(Memory::id).toList());
+        assertEquals(1, service.getHotOwners());
+        assertEquals(1, service.getHotRecalls());
+        verify(store, times(3)).search(eq("user-001"), any(), anyInt());
+    }
+
+    @Test
+    void appendsNewMemoriesToHotOwner() {
+        MemoryStore store = mock(MemoryStore.class);
+        when(store.search(any(), any(), anyInt())).thenReturn(List.of());
+        when(store.loadOwner("user-001", 20001)).thenReturn(List.of(
+                new MemoryStore.MemoryVector(1L, "住在杭州", new float[]{0f, 1f})
+        ));
+        when(store.insert(eq("user-001"), eq("喜欢爬山"), any(), eq(NOW))).thenReturn(2L);
+        MemoryProperties properties = enabled();
+        properties.setPromoteAfterRecalls(1);
+        MemoryService service = service(store, properties);
+
+        service.recall("user-001", "你好").block();
+        assertEquals(2L, service.remember("user-001", "喜欢爬山").block());
+
+        assertEquals("喜欢爬山", service.recall("user-001", "爬山").block().get(0).content());
+    }
+
+    @Test
+    void skipsAnonymousSessionsAndDropsLowSimilarityHits() {
+        MemoryStore store = mock(MemoryStore.class);
+        when(store.search(any(), any(), anyInt())).thenReturn(List.of(
+                new Memory(1L, "喜欢爬山", 0.9),
+                new Memory(2L, "无关内容", 0.2)
+        ));
+        MemoryService service = service(store, enabled());
+
+        assertTrue(service.recall(null, "爬山").block().isEmpty());
+        assertEquals(List.of(1L), service.recall("user-001", "爬山").block().stream().map(Memory::id).toList());
+        verify(store, never()).search(eq(null), any(), anyInt());
+    }
+
+    @Test
+    void injectsMemoriesRightBeforeCurrentMessage() {
+        MemoryService service = service(mock(MemoryStore.class), enabled());
+        List<LlmRequest.Message> messages = List.of(
+                LlmRequest.Message.user("你好"),
+                LlmRequest.Message.assistant("你好！"),
+                LlmRequest.Message.user("周末去哪")
+        );
+
+        List<LlmRequest.Message> injected = service.inject(messages, List.of(new Memory(1L, "喜欢爬山", 0.9)));
+
+        assertEquals(List.of("user", "assistant", "system", "user"),
+                injected.stream().map(LlmRequest.Message::getRole).toList());
+        assertTrue(injected.get(2).getContent().endsWith("- 喜欢爬山"));
+        assertEquals(messages, service.inject(messages, List.of()));
+    }
+
+    private MemoryProperties enabled() {
+        MemoryProperties properties = new MemoryProperties();
+        properties.setEnabled(true);
+        return properties;
+    }
+
+    private MemoryService service(MemoryStore store, MemoryProperties properties) {
+        return new MemoryService(embeddingClient, store, properties, Schedulers.immediate(), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,62 @@
+package com.miniclaw.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapVectorCacheTest {
+
+    @Test
+    void returnsTopKBySimilarityAboveThreshold() {
+        OffHeapVectorCache cache = new OffHeapVectorCache(1024 * 1024);
+        cache.put("user-001", List.of(
+                vector(1, "喜欢爬山", 1f, 0f),
+                vector(2, "住在杭州", 0f, 1f),
+                vector(3, "周末常去徒步", 0.8f, 0.6f)
+        ));
+
+        List<Memory> memories = cache.search("user-001", new float[]{1f, 0f}, 2, 0.5);
+
+        assertEquals(List.of(1L, 3L), memories.stream().map(Memory::id).toList());
+        assertEquals(1.0, memories.get(0).similarity(), 1e-6);
+        assertNull(cache.search("user-002", new float[]{1f, 0f}, 2, 0.5));
+    }
+
+    @Test
+    void appendsToCachedOwnerWithoutAffectingEarlierSnapshots() {
+        OffHeapVectorCache cache = new OffHeapVectorCache(1024 * 1024);
+        cache.put("user-001", List.of(vector(1, "喜欢爬山", 1f, 0f)));
+
+        assertTrue(cache.appendIfPresent("user-001", 2, "住在杭州", new float[]{0f, 1f}));
+        assertTrue(cache.appendIfPresent("user-001", 2, "住在杭州", new float[]{0f, 1f}));
+        assertFalse(cache.appendIfPresent("user-002", 3, "不在缓存里", new float[]{0f, 1f}));
+
+        List<Memory> memories = cache.search("user-001", new float[]{0f, 1f}, 5, 0.5);
+        assertEquals(List.of(2L), memories.stream().map(Memory::id).toList());
+        assertEquals(2, cache.search("user-001", new float[]{0.6f, 0.8f}, 5, 0).size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOwnersOverByteBudget() {
+        // 每个用户 1 条 2 维向量，加载时按实际条数分配：8 字节
+        OffHeapVectorCache cache = new OffHeapVectorCache(16);
+        cache.put("user-001", List.of(vector(1, "a", 1f, 0f)));
+        cache.put("user-002", List.of(vector(2, "b", 1f, 0f)));
+        cache.search("user-001", new float[]{1f, 0f}, 1, 0);
+        cache.put("user-003", List.of(vector(3, "c", 1f, 0f)));
+
+        assertEquals(2, cache.owners());
+        assertEquals(16, cache.usedBytes());
+        assertTrue(cache.contains("user-001"));
+        assertFalse(cache.contains("user-002"));
+    }
+
+    private MemoryStore.MemoryVector vector(long id, String content, float... embedding) {
+        return new MemoryStore.MemoryVector(id, content, embedding);
+    }
+}